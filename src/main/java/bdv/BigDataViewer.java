@@ -1,9 +1,14 @@
 package bdv;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,6 +29,7 @@ import net.imglib2.Volatile;
 import net.imglib2.display.RealARGBColorConverter;
 import net.imglib2.display.ScaledARGBConverter;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.VolatileARGBType;
 
@@ -37,6 +43,7 @@ import org.jdom2.output.XMLOutputter;
 import bdv.export.ProgressWriter;
 import bdv.export.ProgressWriterConsole;
 import bdv.img.cache.Cache;
+import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.spimdata.SpimDataMinimal;
 import bdv.spimdata.WrapBasicImgLoader;
 import bdv.spimdata.XmlIoSpimDataMinimal;
@@ -91,6 +98,20 @@ public class BigDataViewer
 
 	protected File proposedSettingsFile;
 
+	protected final Cache cache;
+
+	/**
+	 * Where the warm-start manifest is saved when the viewer window is closed
+	 * (see {@link #tryLoadManifest(String, boolean)}). {@code null} if no manifest
+	 * should be saved.
+	 */
+	protected File manifestFile;
+
+	/**
+	 * Maximum number of cells recorded in the warm-start manifest.
+	 */
+	public static final int MAX_NUM_MANIFEST_CELLS = 16384;
+
 	public void toggleManualTransformation()
 	{
 		manualTransformationEditor.toggle();
@@ -129,6 +150,18 @@ public class BigDataViewer
 		return name;
 	}
 
+	/**
+	 * Get the size of the lookup table for a {@link RealARGBColorConverter.Lut}
+	 * converter for {@code type}, or 0 if {@code type} is not an (at most)
+	 * 16-bit unsigned integer type.
+	 */
+	private static int lutSize( final RealType< ? > type, final double typeMin, final double typeMax )
+	{
+		if ( !( type instanceof IntegerType ) || typeMin < 0 || typeMax > 65535 )
+			return 0;
+		return ( int ) typeMax + 1;
+	}
+
 	private static < T extends RealType< T >, V extends Volatile< T > & RealType< V > > void initSetupsRealType(
 			final AbstractSpimData< ? > spimData,
 			final T type,
@@ -145,9 +178,14 @@ public class BigDataViewer
 		final AbstractSequenceDescription< ?, ?, ? > seq = spimData.getSequenceDescription();
 		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
 		{
-			final RealARGBColorConverter< V > vconverter = new RealARGBColorConverter.Imp0< V >( typeMin, typeMax );
+			final int lutSize = lutSize( type, typeMin, typeMax );
+			final RealARGBColorConverter< V > vconverter = lutSize > 0
+					? new RealARGBColorConverter.Lut0< V >( typeMin, typeMax, lutSize )
+					: new RealARGBColorConverter.Imp0< V >( typeMin, typeMax );
 			vconverter.setColor( new ARGBType( 0xffffffff ) );
-			final RealARGBColorConverter< T > converter = new RealARGBColorConverter.Imp1< T >( typeMin, typeMax );
+			final RealARGBColorConverter< T > converter = lutSize > 0
+					? new RealARGBColorConverter.Lut1< T >( typeMin, typeMax, lutSize )
+					: new RealARGBColorConverter.Imp1< T >( typeMin, typeMax );
 			converter.setColor( new ARGBType( 0xffffffff ) );
 
 			final int setupId = setup.getId();
@@ -179,7 +217,10 @@ public class BigDataViewer
 		final AbstractSequenceDescription< ?, ?, ? > seq = spimData.getSequenceDescription();
 		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
 		{
-			final RealARGBColorConverter< T > converter = new RealARGBColorConverter.Imp1< T >( typeMin, typeMax );
+			final int lutSize = lutSize( type, typeMin, typeMax );
+			final RealARGBColorConverter< T > converter = lutSize > 0
+					? new RealARGBColorConverter.Lut1< T >( typeMin, typeMax, lutSize )
+					: new RealARGBColorConverter.Imp1< T >( typeMin, typeMax );
 			converter.setColor( new ARGBType( 0xffffffff ) );
 
 			final int setupId = setup.getId();
@@ -312,6 +353,15 @@ public class BigDataViewer
 		if ( windowTitle != null )
 			viewerFrame.setTitle( windowTitle );
 		viewer = viewerFrame.getViewerPanel();
+		this.cache = cache;
+		viewerFrame.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				saveManifest();
+			}
+		} );
 
 		for ( final ConverterSetup cs : converterSetups )
 			if ( RealARGBColorConverterSetup.class.isInstance( cs ) )
@@ -458,8 +508,10 @@ public class BigDataViewer
 	{
 		final SpimDataMinimal spimData = new XmlIoSpimDataMinimal().load( xmlFilename );
 		final BigDataViewer bdv = open ( spimData, windowTitle, progressWriter );
-		if ( !bdv.tryLoadSettings( xmlFilename ) )
+		final boolean settingsLoaded = bdv.tryLoadSettings( xmlFilename );
+		if ( !settingsLoaded )
 			InitializeViewerState.initBrightness( 0.001, 0.999, bdv.viewer, bdv.setupAssignments );
+		bdv.tryLoadManifest( xmlFilename, !settingsLoaded );
 		return bdv;
 	}
 
@@ -533,6 +585,93 @@ public class BigDataViewer
 		return false;
 	}
 
+	/**
+	 * Warm-start from the manifest saved when the viewer was last closed, if
+	 * there is one. The manifest is stored next to the dataset XML (for
+	 * "dataset.xml" it is "dataset.manifest.xml"). It contains the viewer
+	 * state (position, timepoint, ...) and a list of the cells that were
+	 * loaded. The cells are enqueued for loading, most recently used first,
+	 * with the lowest priority.
+	 * <p>
+	 * Explicitly saved settings (see {@link #tryLoadSettings(String)}) take
+	 * precedence over the manifest: the viewer state of the manifest is only
+	 * restored if {@code restoreViewerState} is true, which the {@code open}
+	 * methods pass only if no settings were loaded.
+	 * <p>
+	 * This also sets the location where the manifest is saved when the viewer
+	 * window is closed. This is only done for local datasets with a
+	 * {@link VolatileGlobalCellCache}.
+	 * <p>
+	 * A manifest that cannot be read is reported and ignored. It is replaced
+	 * when the viewer window is closed.
+	 *
+	 * @param restoreViewerState
+	 *            whether to restore the viewer state from the manifest.
+	 * @return true, if a manifest was loaded.
+	 */
+	protected boolean tryLoadManifest( final String xmlFilename, final boolean restoreViewerState )
+	{
+		manifestFile = null;
+		if ( !( cache instanceof VolatileGlobalCellCache ) || !xmlFilename.endsWith( ".xml" ) ||
+				xmlFilename.startsWith( "http://" ) || xmlFilename.startsWith( "https://" ) )
+			return false;
+
+		manifestFile = new File( xmlFilename.substring( 0, xmlFilename.length() - ".xml".length() ) + ".manifest" + ".xml" );
+		if ( !manifestFile.isFile() )
+			return false;
+		try
+		{
+			final SAXBuilder sax = new SAXBuilder();
+			final Element root = sax.build( manifestFile ).getRootElement();
+			if ( restoreViewerState )
+				viewer.stateFromXml( root );
+			final Element cells = root.getChild( "Cells" );
+			if ( cells != null )
+				( ( VolatileGlobalCellCache< ? > ) cache ).readManifest( new StringReader( cells.getText() ) );
+			viewer.requestRepaint();
+			return true;
+		}
+		catch ( final Exception e )
+		{
+			System.err.println( "WARNING:\nIgnoring unreadable warm-start manifest " + manifestFile + ":\n" + e.getMessage() );
+		}
+		return false;
+	}
+
+	/**
+	 * Save the warm-start manifest (see {@link #tryLoadManifest(String, boolean)}), if
+	 * there is a {@link #manifestFile}. If saving fails, the failure is
+	 * reported and the incomplete manifest is deleted.
+	 */
+	protected void saveManifest()
+	{
+		if ( manifestFile == null )
+			return;
+		try
+		{
+			final StringWriter cells = new StringWriter();
+			( ( VolatileGlobalCellCache< ? > ) cache ).writeManifest( cells, MAX_NUM_MANIFEST_CELLS );
+			final Element root = new Element( "Manifest" );
+			root.addContent( viewer.stateToXml() );
+			root.addContent( new Element( "Cells" ).setText( cells.toString() ) );
+			final XMLOutputter xout = new XMLOutputter( Format.getRawFormat() );
+			final Writer writer = new FileWriter( manifestFile );
+			try
+			{
+				xout.output( new Document( root ), writer );
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch ( final IOException e )
+		{
+			System.err.println( "WARNING:\nCould not save warm-start manifest " + manifestFile + ":\n" + e.getMessage() );
+			manifestFile.delete();
+		}
+	}
+
 	protected void saveSettings()
 	{
 		fileChooser.setSelectedFile( proposedSettingsFile );
@@ -601,8 +740,10 @@ public class BigDataViewer
 	public BigDataViewer( final String xmlFilename, final String windowTitle, final ProgressWriter progressWriter ) throws SpimDataException
 	{
 		this( new XmlIoSpimDataMinimal().load( xmlFilename ), windowTitle, progressWriter );
-		if ( !tryLoadSettings( xmlFilename ) )
+		final boolean settingsLoaded = tryLoadSettings( xmlFilename );
+		if ( !settingsLoaded )
 			InitializeViewerState.initBrightness( 0.001, 0.999, viewer, setupAssignments );
+		tryLoadManifest( xmlFilename, !settingsLoaded );
 	}
 
 	/**
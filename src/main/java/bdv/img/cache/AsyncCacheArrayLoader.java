@@ -0,0 +1,52 @@
+package bdv.img.cache;
+
+/**
+ * A {@link CacheArrayLoader} that can load data arrays asynchronously, such
+ * that many loads can be in flight without blocking a thread for each.
+ * {@link VolatileGlobalCellCache} uses this (see
+ * {@link VolatileGlobalCellCache#setMaxNumRequestsInFlight(int)}) for loaders
+ * that spend most of their time waiting for the network.
+ *
+ * @param <A>
+ *            the type of data array.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public interface AsyncCacheArrayLoader< A > extends CacheArrayLoader< A >
+{
+	/**
+	 * Receives the result of an asynchronous load.
+	 */
+	public interface Callback< A >
+	{
+		/**
+		 * Called with the loaded data array if the load succeeded. Exactly one
+		 * of {@link #loaded(Object)} and {@link #failed(Exception)} is called
+		 * once per
+		 * {@link AsyncCacheArrayLoader#loadArrayAsync(int, int, int, int[], long[], Callback)}
+		 * call.
+		 */
+		public void loaded( A array );
+
+		/**
+		 * Called if the load failed, e.g., because of a network error or
+		 * incomplete data. The cell is not filled, and will be loaded again
+		 * later.
+		 */
+		public void failed( Exception e );
+	}
+
+	/**
+	 * Whether asynchronous loading is possible with the current
+	 * configuration (e.g., the protocol of the URL that data is loaded from).
+	 */
+	public boolean isAsyncSupported();
+
+	/**
+	 * Start loading a data array. This should return quickly, and call
+	 * {@code callback} when the data is available, typically on a different
+	 * thread. Failures must be reported through
+	 * {@link Callback#failed(Exception)}.
+	 */
+	public void loadArrayAsync( final int timepoint, final int setup, final int level, int[] dimensions, long[] min, Callback< ? super A > callback );
+}
@@ -0,0 +1,54 @@
+package bdv.img.cache;
+
+import java.util.List;
+
+/**
+ * A {@link CacheArrayLoader} that can load several adjacent cells in one I/O
+ * operation, e.g., a single larger hyperslab read or a single request for
+ * multiple cells.
+ *
+ * <p>
+ * If the {@link VolatileGlobalCellCache} is constructed with a
+ * {@link BatchCacheArrayLoader}, fetcher threads look for cells that are
+ * adjacent to the cell they are about to load and that are enqueued for
+ * loading as well. These are then loaded together by
+ * {@link #loadArrays(int, int, int, int[][], long[][], List)}.
+ *
+ * @param <A>
+ *            the type of data array.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public interface BatchCacheArrayLoader< A > extends CacheArrayLoader< A >
+{
+	/**
+	 * Get the maximum number of cells to load in one
+	 * {@link #loadArrays(int, int, int, int[][], long[][], List)} call.
+	 */
+	public int getMaxBatchSize();
+
+	/**
+	 * Load the data for several cells of the same (timepoint, setup, level).
+	 * The cells are adjacent along dimension 0, ordered by increasing
+	 * {@code min[0]}, and have the same min and size in all other dimensions.
+	 * That is, together they form a box.
+	 *
+	 * @param timepoint
+	 *            timepoint coordinate of the cells
+	 * @param setup
+	 *            setup coordinate of the cells
+	 * @param level
+	 *            level coordinate of the cells
+	 * @param dimensions
+	 *            dimensions of each cell
+	 * @param min
+	 *            minimum spatial coordinates of each cell
+	 * @param arrays
+	 *            the loaded data of each cell is added to this list, in the
+	 *            same order as the cells. Cells that failed to load are
+	 *            added as {@code null} or invalid arrays (see
+	 *            {@link CacheArrayLoader#loadArray(int, int, int, int[], long[])}).
+	 * @throws InterruptedException
+	 */
+	public void loadArrays( final int timepoint, final int setup, final int level, int[][] dimensions, long[][] min, List< ? super A > arrays ) throws InterruptedException;
+}
@@ -1,7 +1,11 @@
 package bdv.img.cache;
 
 import java.util.ArrayDeque;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -14,7 +18,27 @@ import java.util.concurrent.locks.ReentrantLock;
  * size to provides elements when all the queues are exhausted. {@link #clear()}
  * empties all queues, and moves the removed elements to the prefetch queue.
  *
- * Locking is adapted from {@link ArrayBlockingQueue}.
+ * <p>
+ * Elements can be {@link #put(Object, int, boolean, long) put} with a
+ * deadline. Within each priority level, elements with deadline are taken
+ * earliest-deadline-first, before elements without deadline. To avoid
+ * starvation, elements are aged: If no element without deadline was taken
+ * from a priority level for {@link #setAgingNanos(long) some time}, the next
+ * one is taken regardless of pending deadlines. Likewise, if nothing was taken
+ * from the prefetch deque for that time, the next element is taken from there
+ * regardless of pending priority requests.
+ *
+ * <p>
+ * Locking is striped: every priority queue and the prefetch deque is guarded by
+ * its own lock, which is held only for constant time by {@link #put(Object, int, boolean)}
+ * and {@link #take()}. In particular, producers enqueueing at one priority do
+ * not contend with consumers taking from another priority. {@link #clear()}
+ * swaps out each priority queue in constant time, and moves the elements to
+ * the prefetch deque without holding the priority queue locks. Consumers
+ * check the size and aging of the prefetch deque without locking, and lock it
+ * only to actually take an element, so fetchers serving the priority queues
+ * do not contend on the prefetch lock. Blocking of consumers on an empty queue
+ * is adapted from {@link LinkedBlockingQueue}.
  *
  * @param <E>
  *            element type.
@@ -23,17 +47,148 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class BlockingFetchQueues< E >
 {
-	private final ArrayDeque< E >[] queues;
+	/**
+	 * Deadline that means "no deadline".
+	 */
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	public static final long DEFAULT_AGING_NANOS = 100l * 1000000l;
+
+	/**
+	 * An element with a deadline, ordered by deadline, then by insertion
+	 * order.
+	 */
+	private static class Deadlined< E > implements Comparable< Deadlined< E > >
+	{
+		final E element;
+
+		final long deadline;
+
+		final long sequence;
+
+		Deadlined( final E element, final long deadline, final long sequence )
+		{
+			this.element = element;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo( final Deadlined< E > o )
+		{
+			// deadlines are System.nanoTime() values, compare by difference
+			final long d = deadline - o.deadline;
+			if ( d != 0 )
+				return d < 0 ? -1 : 1;
+			return sequence < o.sequence ? -1 : ( sequence > o.sequence ? 1 : 0 );
+		}
+	}
+
+	/**
+	 * A priority level: a deque and a deadline heap with its own lock.
+	 */
+	private static class Stripe< E >
+	{
+		final ReentrantLock lock = new ReentrantLock();
+
+		ArrayDeque< E > deque = new ArrayDeque< E >();
+
+		/**
+		 * Elements with deadline, earliest first.
+		 */
+		PriorityQueue< Deadlined< E > > deadlined = new PriorityQueue< Deadlined< E > >();
+
+		/**
+		 * An empty deque that is swapped in by {@link BlockingFetchQueues#clear()}.
+		 * Only accessed while holding {@link BlockingFetchQueues#clearLock}.
+		 */
+		ArrayDeque< E > spare = new ArrayDeque< E >();
+
+		PriorityQueue< Deadlined< E > > spareDeadlined = new PriorityQueue< Deadlined< E > >();
+
+		/**
+		 * When an element was last taken from {@link #deque} (or the deque
+		 * became non-empty). Guarded by {@link #lock}.
+		 */
+		long lastDequeTakeNanos = System.nanoTime();
+
+		long sequence = 0;
+
+		/**
+		 * Size of {@link #deque} plus {@link #deadlined}, readable without
+		 * locking.
+		 */
+		volatile int size = 0;
+
+		void updateSize()
+		{
+			size = deque.size() + deadlined.size();
+		}
+
+		/**
+		 * Remove the next element: earliest deadline first, unless the
+		 * {@link #deque} has waited longer than {@code agingNanos}. Must be
+		 * called while holding {@link #lock}.
+		 */
+		E pollFirst( final long agingNanos )
+		{
+			final Deadlined< E > d = deadlined.peek();
+			if ( d != null && ( deque.isEmpty() || System.nanoTime() - lastDequeTakeNanos < agingNanos ) )
+			{
+				deadlined.poll();
+				return d.element;
+			}
+			final E element = deque.pollFirst();
+			if ( element != null )
+				lastDequeTakeNanos = System.nanoTime();
+			return element;
+		}
+	}
+
+	private final Stripe< E >[] queues;
 
 	private final int prefetchCapacity;
 
 	private final ArrayDeque< E > prefetch;
 
-	/** Number of elements in the queue */
-	private int count;
+	/** Lock guarding {@link #prefetch} */
+	private final ReentrantLock prefetchLock;
+
+	/**
+	 * When an element was last taken from {@link #prefetch}, or when it
+	 * became non-empty. Written while holding {@link #prefetchLock}, readable
+	 * without locking.
+	 */
+	private volatile long lastPrefetchTakeNanos;
+
+	/**
+	 * Size of {@link #prefetch}. Written while holding {@link #prefetchLock},
+	 * readable without locking.
+	 */
+	private volatile int prefetchSize;
+
+	private volatile long agingNanos;
+
+	/** Serializes {@link #clear()} calls */
+	private final Object clearLock = new Object();
 
-	/** Main lock guarding all access */
-	private final ReentrantLock lock;
+	/**
+	 * Number of elements in the queue. It is updated while holding the lock
+	 * of the stripe or prefetch deque that elements are removed from or moved
+	 * to (except for {@link #put(Object, int, boolean, long)}, which counts
+	 * the element right after adding it). So {@link #take()} does not see
+	 * elements that were already removed by {@link #clear()}.
+	 */
+	private final AtomicInteger count;
+
+	/**
+	 * Number of elements dropped by {@link #clear()} because they did not fit
+	 * into the prefetch deque.
+	 */
+	private final AtomicLong numPrefetchDropped;
+
+	/** Lock held by consumers waiting for elements */
+	private final ReentrantLock takeLock;
 
 	/** Condition for waiting takes */
 	private final Condition notEmpty;
@@ -46,13 +201,19 @@ public class BlockingFetchQueues< E >
 	@SuppressWarnings( "unchecked" )
 	public BlockingFetchQueues( final int numPriorities, final int prefetchCapacity )
 	{
-		queues = new ArrayDeque[ numPriorities ];
+		queues = new Stripe[ numPriorities ];
 		for ( int i = 0; i < numPriorities; ++i )
-			queues[ i ] = new ArrayDeque< E >();
+			queues[ i ] = new Stripe< E >();
 		this.prefetchCapacity = prefetchCapacity;
 		prefetch = new ArrayDeque< E >( prefetchCapacity );
-		lock = new ReentrantLock();
-		notEmpty = lock.newCondition();
+		prefetchLock = new ReentrantLock();
+		lastPrefetchTakeNanos = System.nanoTime();
+		prefetchSize = 0;
+		agingNanos = DEFAULT_AGING_NANOS;
+		count = new AtomicInteger();
+		numPrefetchDropped = new AtomicLong();
+		takeLock = new ReentrantLock();
+		notEmpty = takeLock.newCondition();
 	}
 
 	/**
@@ -69,21 +230,52 @@ public class BlockingFetchQueues< E >
 	 */
 	public void put( final E element, final int priority, final boolean enqueuToFront )
 	{
-		final ReentrantLock lock = this.lock;
+		put( element, priority, enqueuToFront, NO_DEADLINE );
+	}
+
+	/**
+	 * Add element to the queue of the specified priority. If it has a
+	 * deadline, it is taken before elements without deadline and elements
+	 * with later deadline of the same priority. Otherwise, the element is
+	 * added to the front or back of the queue.
+	 *
+	 * @param element
+	 *            the element to enqueue
+	 * @param priority
+	 *            lower values mean higher priority
+	 * @param enqueuToFront
+	 *            if true, enqueu element at the front (LIFO). if false, enqueue
+	 *            element at the back (FIFO). Ignored if the element has a
+	 *            deadline.
+	 * @param deadlineNanos
+	 *            {@link System#nanoTime()} by which the element should be
+	 *            handled, or {@link #NO_DEADLINE}.
+	 */
+	public void put( final E element, final int priority, final boolean enqueuToFront, final long deadlineNanos )
+	{
+		final Stripe< E > q = queues[ priority ];
+		final ReentrantLock lock = q.lock;
 		lock.lock();
 		try
 		{
-			if ( enqueuToFront )
-				queues[ priority ].addFirst( element );
+			if ( deadlineNanos != NO_DEADLINE )
+				q.deadlined.add( new Deadlined< E >( element, deadlineNanos, q.sequence++ ) );
 			else
-				queues[ priority ].add( element );
-			++count;
-			notEmpty.signal();
+			{
+				if ( q.deque.isEmpty() )
+					q.lastDequeTakeNanos = System.nanoTime();
+				if ( enqueuToFront )
+					q.deque.addFirst( element );
+				else
+					q.deque.addLast( element );
+			}
+			q.updateSize();
 		}
 		finally
 		{
 			lock.unlock();
 		}
+		added( 1 );
 	}
 
 	/**
@@ -96,17 +288,100 @@ public class BlockingFetchQueues< E >
 	 */
 	public E take() throws InterruptedException
 	{
-		final ReentrantLock lock = this.lock;
-		lock.lockInterruptibly();
+		while ( true )
+		{
+			final E element = poll();
+			if ( element != null )
+				return element;
+
+			final ReentrantLock takeLock = this.takeLock;
+			takeLock.lockInterruptibly();
+			try
+			{
+				while ( count.get() == 0 )
+					notEmpty.await();
+				// cascade notifications to other waiting takes
+				if ( count.get() > 1 )
+					notEmpty.signal();
+			}
+			finally
+			{
+				takeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Remove and return an element from the highest priority non-empty queue,
+	 * or from the prefetch deque if all queues are empty. Returns {@code null}
+	 * if the prefetch deque is also empty.
+	 *
+	 * @return element or {@code null}.
+	 */
+	public E poll()
+	{
+		if ( count.get() == 0 )
+			return null;
+
+		final long aging = agingNanos;
+		final E aged = pollPrefetch( aging );
+		if ( aged != null )
+			return aged;
+
+		for ( final Stripe< E > q : queues )
+		{
+			if ( q.size == 0 )
+				continue;
+			final ReentrantLock lock = q.lock;
+			lock.lock();
+			try
+			{
+				final E element = q.pollFirst( aging );
+				if ( element != null )
+				{
+					q.updateSize();
+					count.decrementAndGet();
+					return element;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		return pollPrefetch( -1 );
+	}
+
+	/**
+	 * Remove and return the first element of the prefetch deque, if nothing
+	 * was taken from it for at least {@code minWaitNanos}. A negative
+	 * {@code minWaitNanos} means to take unconditionally.
+	 *
+	 * @return element or {@code null}.
+	 */
+	private E pollPrefetch( final long minWaitNanos )
+	{
+		// check without locking first, this is the common case
+		if ( prefetchSize == 0 )
+			return null;
+		if ( minWaitNanos >= 0 && System.nanoTime() - lastPrefetchTakeNanos < minWaitNanos )
+			return null;
+
+		final ReentrantLock lock = prefetchLock;
+		lock.lock();
 		try
 		{
-			while ( count == 0 )
-				notEmpty.await();
-			--count;
-			for ( final ArrayDeque< E > q : queues )
-				if ( !q.isEmpty() )
-					return q.remove();
-			return prefetch.poll();
+			final long now = System.nanoTime();
+			if ( prefetch.isEmpty() )
+				return null;
+			if ( minWaitNanos >= 0 && now - lastPrefetchTakeNanos < minWaitNanos )
+				return null;
+			final E element = prefetch.pollFirst();
+			prefetchSize = prefetch.size();
+			lastPrefetchTakeNanos = now;
+			count.decrementAndGet();
+			return element;
 		}
 		finally
 		{
@@ -115,55 +390,239 @@ public class BlockingFetchQueues< E >
 	}
 
 	/**
-	 * Atomically removes all of the elements from this queue. The queue will be
-	 * empty after this call returns. Removed elements are moved to the
-	 * {@link #prefetch} deque.
+	 * Removes all of the elements from the priority queues. The queues will be
+	 * empty after this call returns (unless elements are concurrently
+	 * {@link #put(Object, int, boolean) put}). Removed elements are moved to
+	 * the {@link #prefetch} deque.
 	 */
+	@SuppressWarnings( "unchecked" )
 	public void clear()
 	{
-		final ReentrantLock lock = this.lock;
-		lock.lock();
-		try
+		synchronized ( clearLock )
 		{
-//			System.out.println( "prefetch size before clear = " + prefetch.size() );
+			// swap out queue contents
+			final ArrayDeque< E >[] removed = new ArrayDeque[ queues.length ];
+			final PriorityQueue< Deadlined< E > >[] removedDeadlined = new PriorityQueue[ queues.length ];
+			int numRemoved = 0;
+			for ( int j = 0; j < queues.length; ++j )
+			{
+				final Stripe< E > q = queues[ j ];
+				final ReentrantLock lock = q.lock;
+				lock.lock();
+				try
+				{
+					removed[ j ] = q.deque;
+					q.deque = q.spare;
+					removedDeadlined[ j ] = q.deadlined;
+					q.deadlined = q.spareDeadlined;
+					q.size = 0;
+					final int n = removed[ j ].size() + removedDeadlined[ j ].size();
+					count.addAndGet( -n );
+					numRemoved += n;
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
 
-			// make room in the prefetch deque
-			final int toRemoveFromPrefetch = Math.max( 0, Math.min( prefetch.size(), count - prefetchCapacity ) );
-//			System.out.println( "toRemoveFromPrefetch = " + toRemoveFromPrefetch );
-			if ( toRemoveFromPrefetch == prefetch.size() )
-				prefetch.clear();
-			else
-				for ( int i = 0; i < toRemoveFromPrefetch; ++i )
-					prefetch.remove();
+			// elements with deadline go before the other elements of their
+			// priority level, earliest deadline first
+			for ( int j = 0; j < queues.length; ++j )
+			{
+				final PriorityQueue< Deadlined< E > > d = removedDeadlined[ j ];
+				if ( d.isEmpty() )
+					continue;
+				final ArrayList< E > sorted = new ArrayList< E >( d.size() );
+				for ( Deadlined< E > e = d.poll(); e != null; e = d.poll() )
+					sorted.add( e.element );
+				for ( int i = sorted.size() - 1; i >= 0; --i )
+					removed[ j ].addFirst( sorted.get( i ) );
+			}
 
 			// move queue contents to the prefetch
-			int c = prefetchCapacity; // prefetch capacity left
-			// add elements of first queue to the front of the prefetch
-			final ArrayDeque< E > q0 = queues[ 0 ];
-			final int q0n = Math.min( q0.size(), c );
-			for ( int i = 0; i < q0n; ++i )
-				prefetch.addFirst( q0.removeLast() );
-			q0.clear();
-			c -= q0n;
-			// add elements of remaining queues to the end of the prefetch
-			for ( int j = 1; j < queues.length; ++j )
+			int numAdded = 0;
+			int numDropped = 0;
+			boolean wasEmpty = false;
+			final ReentrantLock lock = prefetchLock;
+			lock.lock();
+			try
+			{
+				// start aging when the prefetch deque becomes non-empty
+				if ( prefetch.isEmpty() )
+					lastPrefetchTakeNanos = System.nanoTime();
+
+				// make room in the prefetch deque
+				final int toRemoveFromPrefetch = Math.max( 0, Math.min( prefetch.size(), prefetch.size() + numRemoved - prefetchCapacity ) );
+				if ( toRemoveFromPrefetch == prefetch.size() )
+					prefetch.clear();
+				else
+					for ( int i = 0; i < toRemoveFromPrefetch; ++i )
+						prefetch.remove();
+				numDropped += toRemoveFromPrefetch;
+				count.addAndGet( -toRemoveFromPrefetch );
+
+				int c = prefetchCapacity - prefetch.size(); // prefetch capacity left
+				// add elements of first queue to the front of the prefetch
+				final ArrayDeque< E > q0 = removed[ 0 ];
+				final int q0n = Math.min( q0.size(), c );
+				for ( int i = 0; i < q0n; ++i )
+					prefetch.addFirst( q0.removeLast() );
+				c -= q0n;
+				numAdded += q0n;
+				// add elements of remaining queues to the end of the prefetch
+				for ( int j = 1; j < removed.length; ++j )
+				{
+					final ArrayDeque< E > q = removed[ j ];
+					final int qn = Math.min( q.size(), c );
+					for ( int i = 0; i < qn; ++i )
+						prefetch.addLast( q.removeFirst() );
+					c -= qn;
+					numAdded += qn;
+				}
+				prefetchSize = prefetch.size();
+				wasEmpty = numAdded > 0 && count.getAndAdd( numAdded ) == 0;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			if ( wasEmpty )
+				signalNotEmpty();
+
+			// recycle the removed deques as spares for the next clear()
+			for ( int j = 0; j < queues.length; ++j )
+			{
+				removed[ j ].clear();
+				queues[ j ].spare = removed[ j ];
+				removedDeadlined[ j ].clear();
+				queues[ j ].spareDeadlined = removedDeadlined[ j ];
+			}
+
+			numPrefetchDropped.addAndGet( numDropped + numRemoved - numAdded );
+		}
+	}
+
+	/**
+	 * Removes all of the elements from the priority queues and the prefetch
+	 * deque. In contrast to {@link #clear()}, nothing is kept for
+	 * prefetching.
+	 */
+	public void clearAll()
+	{
+		synchronized ( clearLock )
+		{
+			for ( final Stripe< E > q : queues )
 			{
-				final ArrayDeque< E > q = queues[ j ];
-				final int qn = Math.min( q.size(), c );
-				for ( int i = 0; i < qn; ++i )
-					prefetch.addLast( q.removeFirst() );
-				q.clear();
-				c -= qn;
+				final ReentrantLock lock = q.lock;
+				lock.lock();
+				try
+				{
+					count.addAndGet( -( q.deque.size() + q.deadlined.size() ) );
+					q.deque.clear();
+					q.deadlined.clear();
+					q.size = 0;
+				}
+				finally
+				{
+					lock.unlock();
+				}
 			}
 
-			// update count: only prefetch is non-empty now
-			count = prefetch.size();
+			final ReentrantLock lock = prefetchLock;
+			lock.lock();
+			try
+			{
+				count.addAndGet( -prefetch.size() );
+				prefetch.clear();
+				prefetchSize = 0;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Set after how long without being served elements without deadline (of
+	 * a priority level, or in the prefetch deque) are taken before others.
+	 */
+	public void setAgingNanos( final long agingNanos )
+	{
+		this.agingNanos = agingNanos;
+	}
+
+	public long getAgingNanos()
+	{
+		return agingNanos;
+	}
+
+	/**
+	 * Get the current number of elements (including the prefetch deque).
+	 */
+	public int size()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Get the number of priority levels.
+	 */
+	public int getNumPriorities()
+	{
+		return queues.length;
+	}
+
+	/**
+	 * Get the current number of elements with the specified priority.
+	 */
+	public int getQueueSize( final int priority )
+	{
+		return queues[ priority ].size;
+	}
 
-//			System.out.println( "prefetch size after clear = " + prefetch.size() );
+	/**
+	 * Get the current number of elements in the prefetch deque.
+	 */
+	public int getPrefetchSize()
+	{
+		return prefetchSize;
+	}
+
+	/**
+	 * Get the total number of elements that were dropped by {@link #clear()}
+	 * because they did not fit into the prefetch deque.
+	 */
+	public long getNumPrefetchDropped()
+	{
+		return numPrefetchDropped.get();
+	}
+
+	/**
+	 * Account for {@code n} newly added elements, and wake up a waiting take
+	 * if the queue was empty before.
+	 */
+	private void added( final int n )
+	{
+		if ( count.getAndAdd( n ) == 0 )
+			signalNotEmpty();
+	}
+
+	/**
+	 * Wake up a waiting take.
+	 */
+	private void signalNotEmpty()
+	{
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try
+		{
+			notEmpty.signal();
 		}
 		finally
 		{
-			lock.unlock();
+			takeLock.unlock();
 		}
 	}
 }
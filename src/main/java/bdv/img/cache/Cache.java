@@ -23,6 +23,20 @@ public interface Cache
 	 */
 	public void prepareNextFrame();
 
+	/**
+	 * Drop pending requests that are no longer wanted, because the view
+	 * changed discontinuously (e.g., the timepoint changed, or the viewer
+	 * jumped to a bookmark).
+	 * <p>
+	 * For the {@link VolatileGlobalCellCache}, this means that
+	 * <ul>
+	 * <li>enqueued requests which were issued more than a configurable number
+	 * of frames ago are removed from the fetch queues and the prefetch, and
+	 * <li>fetcher threads currently loading such requests are interrupted.
+	 * </ul>
+	 */
+	public void cancelStaleRequests();
+
 	/**
 	 * (Re-)initialize the IO time budget.
 	 */
@@ -42,6 +56,10 @@ public interface Cache
 		public void prepareNextFrame()
 		{}
 
+		@Override
+		public void cancelStaleRequests()
+		{}
+
 		@Override
 		public void initIoTimeBudget( final long[] partialBudget )
 		{}
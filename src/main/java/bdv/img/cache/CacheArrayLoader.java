@@ -4,6 +4,15 @@ public interface CacheArrayLoader< A >
 {
 	public int getBytesPerElement();
 
+	/**
+	 * Load the data array of a cell.
+	 *
+	 * @return the loaded data array. If loading failed, e.g., because of a
+	 *         network error or incomplete data, return {@code null} or an
+	 *         array that is not {@link net.imglib2.img.basictypeaccess.volatiles.VolatileAccess#isValid()
+	 *         valid}. The cache does not keep or persist such arrays, and
+	 *         loads the cell again later.
+	 */
 	public A loadArray( final int timepoint, final int setup, final int level, int[] dimensions, long[] min ) throws InterruptedException;
 
 	public A emptyArray( final int[] dimensions );
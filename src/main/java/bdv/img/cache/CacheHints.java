@@ -8,7 +8,9 @@ import bdv.img.cache.VolatileGlobalCellCache.VolatileCellCache;
  * enqueue cells to the {@link BlockingFetchQueues} (if they are enqueued) and
  * whether they should be enqueued to the front (most recent requests are
  * handled first) or back (requests are handled in order) of the respective
- * priority level.
+ * priority level. Optionally, a deadline by which enqueued cells are needed
+ * can be given. Within a priority level, cells with deadline are loaded
+ * earliest-deadline-first (see {@link BlockingFetchQueues}).
  *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
@@ -20,6 +22,8 @@ public class CacheHints
 
 	private final boolean enqueuToFront;
 
+	private final long deadlineNanos;
+
 	/**
 	 *
 	 * @param loadingStrategy
@@ -27,11 +31,25 @@ public class CacheHints
 	 * @param enqueuToFront
 	 */
 	public CacheHints( final LoadingStrategy loadingStrategy, final int queuePriority, final boolean enqueuToFront )
+	{
+		this( loadingStrategy, queuePriority, enqueuToFront, BlockingFetchQueues.NO_DEADLINE );
+	}
+
+	/**
+	 *
+	 * @param loadingStrategy
+	 * @param queuePriority
+	 * @param enqueuToFront
+	 * @param deadlineNanos
+	 *            {@link System#nanoTime()} by which enqueued cells are needed,
+	 *            or {@link BlockingFetchQueues#NO_DEADLINE}.
+	 */
+	public CacheHints( final LoadingStrategy loadingStrategy, final int queuePriority, final boolean enqueuToFront, final long deadlineNanos )
 	{
 		this.loadingStrategy = loadingStrategy;
 		this.queuePriority = queuePriority;
 		this.enqueuToFront = enqueuToFront;
-
+		this.deadlineNanos = deadlineNanos;
 	}
 
 	/**
@@ -70,4 +88,14 @@ public class CacheHints
 	{
 		return enqueuToFront;
 	}
+
+	/**
+	 * Get the {@link System#nanoTime()} by which enqueued cells are needed.
+	 *
+	 * @return deadline, or {@link BlockingFetchQueues#NO_DEADLINE}.
+	 */
+	public long getDeadlineNanos()
+	{
+		return deadlineNanos;
+	}
 }
@@ -1,6 +1,11 @@
 package bdv.img.cache;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import net.imglib2.ui.util.StopWatch;
 
@@ -8,6 +13,13 @@ import net.imglib2.ui.util.StopWatch;
  * Utilities for per {@link ThreadGroup} measuring and budgeting of time spent
  * in (blocking) IO.
  *
+ * <p>
+ * Most bookkeeping that happens per cache access (budget queries and updates,
+ * starting and stopping IO timers, counting IO bytes) is lock-free and does
+ * not allocate, such that many rendering threads do not serialize on it. Only
+ * starting and stopping the group-wide IO timer, when the first thread of a
+ * group enters or the last thread leaves IO, takes a short lock.
+ *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
 public class CacheIoTiming
@@ -20,11 +32,11 @@ public class CacheIoTiming
 	 */
 	public static class IoTimeBudget
 	{
-		private final long[] budget;
+		private final AtomicLongArray budget;
 
 		public IoTimeBudget( final int numLevels )
 		{
-			budget = new long[ numLevels ];
+			budget = new AtomicLongArray( numLevels );
 		}
 
 		public synchronized void reset( final long[] partialBudget )
@@ -33,92 +45,239 @@ public class CacheIoTiming
 				clear();
 			else
 			{
-				for ( int i = 0; i < budget.length; ++i )
-					budget[ i ] = partialBudget.length > i ? partialBudget[ i ] : partialBudget[ partialBudget.length - 1 ];
-				for ( int i = 1; i < budget.length; ++i )
-					if ( budget[ i ] > budget[ i - 1 ] )
-						budget[ i ] = budget[ i - 1 ];
+				long previous = Long.MAX_VALUE;
+				for ( int i = 0; i < budget.length(); ++i )
+				{
+					final long b = Math.min( previous, partialBudget.length > i ? partialBudget[ i ] : partialBudget[ partialBudget.length - 1 ] );
+					budget.set( i, b );
+					previous = b;
+				}
 			}
 		}
 
 		public synchronized void clear()
 		{
-			for ( int i = 0; i < budget.length; ++i )
-				budget[ i ] = 0;
+			for ( int i = 0; i < budget.length(); ++i )
+				budget.set( i, 0 );
 		}
 
-		public synchronized long timeLeft( final int level )
+		public long timeLeft( final int level )
 		{
-			return budget[ level ];
+			return budget.get( level );
 		}
 
-		public synchronized void use( final long t, final int level )
+		/**
+		 * Subtract {@code t} from the budget of {@code level} and all higher
+		 * priority levels. Then make sure that the budget of lower priority
+		 * levels does not exceed the budget of {@code level}.
+		 */
+		public void use( final long t, final int level )
 		{
 			int l = 0;
 			for ( ; l <= level; ++l )
-				budget[ l ] -= t;
-			for ( ; l < budget.length && budget[ l ] > budget[ l - 1 ]; ++l )
-				budget[ l ] = budget[ l - 1 ];
+				budget.addAndGet( l, -t );
+			for ( ; l < budget.length(); ++l )
+			{
+				final long max = budget.get( l - 1 );
+				long b = budget.get( l );
+				if ( b <= max )
+					break;
+				while ( b > max && !budget.compareAndSet( l, b, max ) )
+					b = budget.get( l );
+			}
 		}
 	}
 
 	public static class IoStatistics
 	{
-		private final ConcurrentHashMap< Thread, StopWatch > perThreadStopWatches = new ConcurrentHashMap< Thread, StopWatch >();
+		/**
+		 * Statistics of one thread. Fields are only written by the owning
+		 * thread.
+		 */
+		private static class ThreadIoStatistics
+		{
+			final WeakReference< Thread > thread = new WeakReference< Thread >( Thread.currentThread() );
 
-		private final StopWatch stopWatch;
+			final StopWatch stopWatch = new StopWatch();
 
-		private int numRunningThreads;
+			volatile long ioBytes = 0;
 
-		private long ioBytes;
+			boolean isRetired()
+			{
+				final Thread t = thread.get();
+				return t == null || !t.isAlive();
+			}
+		}
+
+		private final ThreadLocal< ThreadIoStatistics > perThreadStatistics = new ThreadLocal< ThreadIoStatistics >()
+		{
+			@Override
+			protected ThreadIoStatistics initialValue()
+			{
+				final ThreadIoStatistics s = new ThreadIoStatistics();
+				synchronized ( IoStatistics.this )
+				{
+					retireThreadStatistics();
+					allThreadStatistics.add( s );
+				}
+				return s;
+			}
+		};
 
-		private IoTimeBudget ioTimeBudget;
+		/**
+		 * Statistics of threads that are (or were until recently) alive.
+		 * Guarded by {@code this}.
+		 */
+		private final ArrayList< ThreadIoStatistics > allThreadStatistics = new ArrayList< ThreadIoStatistics >();
+
+		/**
+		 * Totals of threads that have terminated. Guarded by {@code this}.
+		 */
+		private long retiredIoBytes;
+
+		private long retiredIoNanoTime;
+
+		/**
+		 * Number of threads of the group that are currently in IO. The
+		 * group-wide IO timer is running while this is &gt; 0. Changes between
+		 * 0 and 1 are made while holding {@link #groupTimerLock}, all other
+		 * changes are lock-free.
+		 */
+		private final AtomicInteger numRunningThreads;
+
+		private final Object groupTimerLock;
+
+		/**
+		 * Time when the group-wide IO timer was started last. Guarded by
+		 * {@link #groupTimerLock}.
+		 */
+		private long groupStartNanos;
+
+		/**
+		 * Time accumulated by the group-wide IO timer, not including the
+		 * current run. Guarded by {@link #groupTimerLock}.
+		 */
+		private long groupAccumulatedNanos;
+
+		private volatile IoTimeBudget ioTimeBudget;
 
 		public IoStatistics()
 		{
-			stopWatch = new StopWatch();
-			ioBytes = 0;
-			numRunningThreads = 0;
+			numRunningThreads = new AtomicInteger();
+			groupTimerLock = new Object();
+			groupStartNanos = 0;
+			groupAccumulatedNanos = 0;
+			retiredIoBytes = 0;
+			retiredIoNanoTime = 0;
 			ioTimeBudget = null;
 		}
 
-		public synchronized void start()
+		public void start()
 		{
-			getThreadStopWatch().start();
-			if( numRunningThreads++ == 0 )
-				stopWatch.start();
+			perThreadStatistics.get().stopWatch.start();
+			while ( true )
+			{
+				final int n = numRunningThreads.get();
+				if ( n > 0 )
+				{
+					if ( numRunningThreads.compareAndSet( n, n + 1 ) )
+						return;
+				}
+				else
+				{
+					synchronized ( groupTimerLock )
+					{
+						if ( numRunningThreads.get() == 0 )
+						{
+							groupStartNanos = System.nanoTime();
+							numRunningThreads.set( 1 );
+							return;
+						}
+					}
+				}
+			}
 		}
 
-		public synchronized void stop()
+		public void stop()
 		{
-			getThreadStopWatch().stop();
-			if( --numRunningThreads == 0 )
-				stopWatch.stop();
+			perThreadStatistics.get().stopWatch.stop();
+			while ( true )
+			{
+				final int n = numRunningThreads.get();
+				if ( n > 1 )
+				{
+					if ( numRunningThreads.compareAndSet( n, n - 1 ) )
+						return;
+				}
+				else
+				{
+					synchronized ( groupTimerLock )
+					{
+						if ( numRunningThreads.get() == 1 )
+						{
+							groupAccumulatedNanos += System.nanoTime() - groupStartNanos;
+							numRunningThreads.set( 0 );
+							return;
+						}
+					}
+				}
+			}
 		}
 
 		public void incIoBytes( final long n )
 		{
-			ioBytes += n;
+			perThreadStatistics.get().ioBytes += n;
 		}
 
-		public long getIoBytes()
+		public synchronized long getIoBytes()
 		{
-			return ioBytes;
+			retireThreadStatistics();
+			long sum = retiredIoBytes;
+			for ( final ThreadIoStatistics s : allThreadStatistics )
+				sum += s.ioBytes;
+			return sum;
 		}
 
 		public long getIoNanoTime()
 		{
-			return stopWatch.nanoTime();
+			synchronized ( groupTimerLock )
+			{
+				return numRunningThreads.get() > 0
+						? groupAccumulatedNanos + System.nanoTime() - groupStartNanos
+						: groupAccumulatedNanos;
+			}
 		}
 
-		public long getCumulativeIoNanoTime()
+		public synchronized long getCumulativeIoNanoTime()
 		{
-			long sum = 0;
-			for ( final StopWatch w : perThreadStopWatches.values() )
-				sum += w.nanoTime();
+			retireThreadStatistics();
+			long sum = retiredIoNanoTime;
+			for ( final ThreadIoStatistics s : allThreadStatistics )
+				sum += s.stopWatch.nanoTime();
 			return sum;
 		}
 
+		/**
+		 * Fold the statistics of terminated threads into the retired totals,
+		 * such that {@link #allThreadStatistics} does not grow with every
+		 * thread that ever did IO. Must be called while holding the lock on
+		 * {@code this}.
+		 */
+		private void retireThreadStatistics()
+		{
+			final Iterator< ThreadIoStatistics > it = allThreadStatistics.iterator();
+			while ( it.hasNext() )
+			{
+				final ThreadIoStatistics s = it.next();
+				if ( s.isRetired() )
+				{
+					retiredIoBytes += s.ioBytes;
+					retiredIoNanoTime += s.stopWatch.nanoTime();
+					it.remove();
+				}
+			}
+		}
+
 		public IoTimeBudget getIoTimeBudget()
 		{
 			return ioTimeBudget;
@@ -128,32 +287,29 @@ public class CacheIoTiming
 		{
 			ioTimeBudget = budget;
 		}
-
-		private StopWatch getThreadStopWatch()
-		{
-			final Thread thread = Thread.currentThread();
-			StopWatch w = perThreadStopWatches.get( thread );
-			if ( w == null )
-			{
-				w = new StopWatch();
-				perThreadStopWatches.put( thread, w );
-			}
-			return w;
-		}
 	}
 
 	private final ConcurrentHashMap< ThreadGroup, IoStatistics > perThreadGroupIoStatistics = new ConcurrentHashMap< ThreadGroup, IoStatistics >();
 
-	public IoStatistics getThreadGroupIoStatistics()
+	/**
+	 * Caches the {@link IoStatistics} of the current thread's group. (The
+	 * group of a thread does not change while it is running.)
+	 */
+	private final ThreadLocal< IoStatistics > currentThreadGroupIoStatistics = new ThreadLocal< IoStatistics >()
 	{
-		final ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
-		IoStatistics statistics = perThreadGroupIoStatistics.get( threadGroup );
-		if ( statistics == null )
+		@Override
+		protected IoStatistics initialValue()
 		{
-			statistics = new IoStatistics();
-			perThreadGroupIoStatistics.put( threadGroup, statistics );
+			final ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
+			final IoStatistics statistics = new IoStatistics();
+			final IoStatistics existing = perThreadGroupIoStatistics.putIfAbsent( threadGroup, statistics );
+			return existing == null ? statistics : existing;
 		}
-		return statistics;
+	};
+
+	public IoStatistics getThreadGroupIoStatistics()
+	{
+		return currentThreadGroupIoStatistics.get();
 	}
 
 	public long getThreadGroupIoNanoTime()
@@ -0,0 +1,254 @@
+package bdv.img.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coordinates the {@link VolatileGlobalCellCache caches} of several image
+ * loaders in one process, such that they do not compete blindly for memory
+ * and I/O.
+ * <ul>
+ * <li>All registered caches keep their loaded cells in one shared
+ * {@link ClockMemoryBudget}. When it is exceeded, cells are evicted from
+ * whichever cache holds the least recently used ones. Each cache is
+ * guaranteed a fair part of the budget (see {@link ClockMemoryBudget}).
+ * <li>The number of loads in progress over all registered caches is limited.
+ * The fetcher threads of all caches wait in one line for a load permit, which
+ * is ordered by the priority of the requests they are about to load, then
+ * first-come-first-served. So a cache that is busy prefetching does not hold
+ * up urgent requests of another cache.
+ * </ul>
+ * Caches register when they are created (see
+ * {@link VolatileGlobalCellCache#VolatileGlobalCellCache(CacheArrayLoader, int, int, int, int, CacheManager)}),
+ * unregister when they are {@link VolatileGlobalCellCache#clearCache()
+ * cleared} or {@link VolatileGlobalCellCache#close() closed}, and register
+ * again when they load new cells. The manager only references registered
+ * caches weakly, so it does not keep them from being garbage collected.
+ * Usually, the {@link #getDefault() default} manager is used.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class CacheManager
+{
+	private static CacheManager defaultManager;
+
+	/**
+	 * Get the process-wide manager with the
+	 * {@link ClockMemoryBudget#defaultMaxBytes() default} memory budget, and
+	 * {@link #DEFAULT_MAX_NUM_CONCURRENT_LOADS} concurrent loads.
+	 */
+	public static synchronized CacheManager getDefault()
+	{
+		if ( defaultManager == null )
+			defaultManager = new CacheManager( ClockMemoryBudget.defaultMaxBytes(), DEFAULT_MAX_NUM_CONCURRENT_LOADS );
+		return defaultManager;
+	}
+
+	public static final int DEFAULT_MAX_NUM_CONCURRENT_LOADS = 64;
+
+	private final ClockMemoryBudget memoryBudget;
+
+	private final int maxNumConcurrentLoads;
+
+	/**
+	 * A fetcher thread waiting for a load permit.
+	 */
+	private static class Waiter implements Comparable< Waiter >
+	{
+		final int priority;
+
+		final long sequence;
+
+		final Condition granted;
+
+		boolean isGranted;
+
+		Waiter( final int priority, final long sequence, final Condition granted )
+		{
+			this.priority = priority;
+			this.sequence = sequence;
+			this.granted = granted;
+			isGranted = false;
+		}
+
+		@Override
+		public int compareTo( final Waiter o )
+		{
+			if ( priority != o.priority )
+				return priority < o.priority ? -1 : 1;
+			return sequence < o.sequence ? -1 : ( sequence > o.sequence ? 1 : 0 );
+		}
+	}
+
+	/** Lock guarding {@link #numLoads} and {@link #waiting}. */
+	private final ReentrantLock loadLock;
+
+	/** Number of loads in progress. Guarded by {@link #loadLock}. */
+	private int numLoads;
+
+	/** Threads waiting for a load permit. Guarded by {@link #loadLock}. */
+	private final PriorityQueue< Waiter > waiting;
+
+	private long sequence;
+
+	/**
+	 * Registered caches, referenced weakly. Guarded by {@code this}.
+	 */
+	private final Set< VolatileGlobalCellCache< ? > > caches;
+
+	/**
+	 * @param maxBytes
+	 *            maximum total size of the loaded data retained by all
+	 *            registered caches.
+	 * @param maxNumConcurrentLoads
+	 *            maximum number of loads in progress over all registered
+	 *            caches.
+	 */
+	public CacheManager( final long maxBytes, final int maxNumConcurrentLoads )
+	{
+		memoryBudget = new ClockMemoryBudget( maxBytes );
+		this.maxNumConcurrentLoads = maxNumConcurrentLoads;
+		loadLock = new ReentrantLock();
+		numLoads = 0;
+		waiting = new PriorityQueue< Waiter >();
+		sequence = 0;
+		caches = Collections.newSetFromMap( new WeakHashMap< VolatileGlobalCellCache< ? >, Boolean >() );
+	}
+
+	/**
+	 * Register a cache. Its entries should be added to the
+	 * {@link #getMemoryBudget() shared budget} with its own
+	 * {@link ClockMemoryBudget#newShare() share}. Registering a cache that is
+	 * already registered has no effect.
+	 */
+	synchronized void register( final VolatileGlobalCellCache< ? > cache )
+	{
+		caches.add( cache );
+	}
+
+	/**
+	 * Unregister a cache. The cache must have removed its resident entries
+	 * from the shared budget.
+	 */
+	synchronized void unregister( final VolatileGlobalCellCache< ? > cache )
+	{
+		caches.remove( cache );
+	}
+
+	/**
+	 * Wait for a permit to start a load. If no permit is available, permits
+	 * that are {@link #releaseLoadPermit() released} are handed to the
+	 * waiting thread with the highest priority (and, among those, to the
+	 * thread that waited longest). Every call must be followed by
+	 * {@link #releaseLoadPermit()} when the load is done.
+	 *
+	 * @param priority
+	 *            priority of the request that will be loaded. Lower values
+	 *            mean higher priority, as in {@link BlockingFetchQueues}.
+	 */
+	void acquireLoadPermit( final int priority )
+	{
+		final ReentrantLock lock = loadLock;
+		lock.lock();
+		try
+		{
+			if ( numLoads < maxNumConcurrentLoads && waiting.isEmpty() )
+			{
+				++numLoads;
+				return;
+			}
+			final Waiter w = new Waiter( priority, sequence++, lock.newCondition() );
+			waiting.add( w );
+			while ( !w.isGranted )
+				w.granted.awaitUninterruptibly();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	void releaseLoadPermit()
+	{
+		final ReentrantLock lock = loadLock;
+		lock.lock();
+		try
+		{
+			// hand the permit on directly, numLoads stays the same
+			final Waiter w = waiting.poll();
+			if ( w != null )
+			{
+				w.isGranted = true;
+				w.granted.signal();
+			}
+			else
+				--numLoads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the shared {@link ClockMemoryBudget} of all registered caches.
+	 */
+	public ClockMemoryBudget getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	public int getMaxNumConcurrentLoads()
+	{
+		return maxNumConcurrentLoads;
+	}
+
+	/**
+	 * Get the number of loads currently in progress over all registered
+	 * caches.
+	 */
+	public int getNumConcurrentLoads()
+	{
+		final ReentrantLock lock = loadLock;
+		lock.lock();
+		try
+		{
+			return numLoads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of fetcher threads currently waiting for a load permit.
+	 */
+	public int getNumWaitingLoads()
+	{
+		final ReentrantLock lock = loadLock;
+		lock.lock();
+		try
+		{
+			return waiting.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the currently registered caches.
+	 */
+	public synchronized List< VolatileGlobalCellCache< ? > > getCaches()
+	{
+		return new ArrayList< VolatileGlobalCellCache< ? > >( caches );
+	}
+}
@@ -0,0 +1,415 @@
+package bdv.img.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of a {@link VolatileGlobalCellCache} and its
+ * {@link BlockingFetchQueues}: cache hits and misses per setup and level,
+ * number and throughput of loaded cells and bytes, a load latency histogram,
+ * queue depths, and resident and pinned memory.
+ *
+ * <p>
+ * Counting hits and misses is off by default, because it adds an atomic
+ * update of a shared counter to every cell access. It can be switched on with
+ * {@link #setAccessCountingEnabled(boolean)}.
+ *
+ * <p>
+ * The metrics can be {@link #register(String) exposed} as a JMX MXBean.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class CacheMetrics implements CacheMetricsMXBean
+{
+	private final int numSetups;
+
+	private final int numLevels;
+
+	private final BlockingFetchQueues< ? > queue;
+
+	private final ClockMemoryBudget.Share memoryBudgetShare;
+
+	/**
+	 * Hits indexed by {@code setup * numLevels + level}.
+	 */
+	private final AtomicLongArray hits;
+
+	/**
+	 * Misses indexed by {@code setup * numLevels + level}.
+	 */
+	private final AtomicLongArray misses;
+
+	/**
+	 * Whether {@link #access(int, int, boolean)} counts hits and misses.
+	 */
+	private volatile boolean accessCountingEnabled;
+
+	private final AtomicLong cellsLoaded;
+
+	private final AtomicLong bytesLoaded;
+
+	private final AtomicLong failedLoads;
+
+	private final LatencyHistogram loadLatency;
+
+	private final AtomicLong pinnedCells;
+
+	private final AtomicLong pinnedBytes;
+
+	private volatile int numFetcherThreads;
+
+	private long evictionsAtReset;
+
+	private long prefetchEvictionsAtReset;
+
+	/**
+	 * State for {@link #getCellsLoadedPerSecond()} and
+	 * {@link #getBytesLoadedPerSecond()}: the rates are computed over the
+	 * interval between two updates, which are at least
+	 * {@link #RATE_INTERVAL_MILLIS} apart. Guarded by {@code this}.
+	 */
+	private long rateTimestamp;
+
+	private long rateCells;
+
+	private long rateBytes;
+
+	private double cellsPerSecond;
+
+	private double bytesPerSecond;
+
+	private static final long RATE_INTERVAL_MILLIS = 1000;
+
+	private ObjectName objectName;
+
+	public CacheMetrics( final int numSetups, final int numLevels, final BlockingFetchQueues< ? > queue, final ClockMemoryBudget.Share memoryBudgetShare )
+	{
+		this.numSetups = numSetups;
+		this.numLevels = numLevels;
+		this.queue = queue;
+		this.memoryBudgetShare = memoryBudgetShare;
+		hits = new AtomicLongArray( numSetups * numLevels );
+		misses = new AtomicLongArray( numSetups * numLevels );
+		cellsLoaded = new AtomicLong();
+		bytesLoaded = new AtomicLong();
+		failedLoads = new AtomicLong();
+		loadLatency = new LatencyHistogram();
+		pinnedCells = new AtomicLong();
+		pinnedBytes = new AtomicLong();
+		accessCountingEnabled = false;
+		reset();
+	}
+
+	/**
+	 * Record a cache access, if {@link #isAccessCountingEnabled() access
+	 * counting is enabled}.
+	 *
+	 * @param hit
+	 *            whether valid data was found in the cache.
+	 */
+	public void access( final int setup, final int level, final boolean hit )
+	{
+		if ( accessCountingEnabled && setup < numSetups && level < numLevels )
+		{
+			final int i = setup * numLevels + level;
+			if ( hit )
+				hits.incrementAndGet( i );
+			else
+				misses.incrementAndGet( i );
+		}
+	}
+
+	/**
+	 * Record a load operation of the {@link CacheArrayLoader}.
+	 *
+	 * @param numCells
+	 *            number of cells loaded.
+	 * @param numBytes
+	 *            number of bytes loaded.
+	 * @param nanos
+	 *            duration of the load operation.
+	 */
+	public void loaded( final int numCells, final long numBytes, final long nanos )
+	{
+		cellsLoaded.addAndGet( numCells );
+		bytesLoaded.addAndGet( numBytes );
+		loadLatency.record( nanos );
+	}
+
+	/**
+	 * Record a failed load of a cell, that is, a load for which the
+	 * {@link CacheArrayLoader} did not provide valid data.
+	 */
+	public void loadFailed()
+	{
+		failedLoads.incrementAndGet();
+	}
+
+	/**
+	 * Record a change of the set of pinned cells.
+	 *
+	 * @param numCells
+	 *            number of cells that were pinned (negative if unpinned).
+	 * @param numBytes
+	 *            number of bytes that were pinned (negative if unpinned).
+	 */
+	public void pinned( final int numCells, final long numBytes )
+	{
+		pinnedCells.addAndGet( numCells );
+		pinnedBytes.addAndGet( numBytes );
+	}
+
+	/**
+	 * Record the current number of fetcher threads.
+	 */
+	public void setNumFetcherThreads( final int numFetcherThreads )
+	{
+		this.numFetcherThreads = numFetcherThreads;
+	}
+
+	@Override
+	public int getNumFetcherThreads()
+	{
+		return numFetcherThreads;
+	}
+
+	@Override
+	public boolean isAccessCountingEnabled()
+	{
+		return accessCountingEnabled;
+	}
+
+	@Override
+	public void setAccessCountingEnabled( final boolean enabled )
+	{
+		accessCountingEnabled = enabled;
+	}
+
+	@Override
+	public long getNumHits()
+	{
+		return sum( hits );
+	}
+
+	@Override
+	public long getNumMisses()
+	{
+		return sum( misses );
+	}
+
+	@Override
+	public long[][] getHitsPerSetupAndLevel()
+	{
+		return perSetupAndLevel( hits );
+	}
+
+	@Override
+	public long[][] getMissesPerSetupAndLevel()
+	{
+		return perSetupAndLevel( misses );
+	}
+
+	@Override
+	public long getNumCellsLoaded()
+	{
+		return cellsLoaded.get();
+	}
+
+	@Override
+	public long getNumBytesLoaded()
+	{
+		return bytesLoaded.get();
+	}
+
+	@Override
+	public long getNumFailedLoads()
+	{
+		return failedLoads.get();
+	}
+
+	@Override
+	public synchronized double getCellsLoadedPerSecond()
+	{
+		updateRates();
+		return cellsPerSecond;
+	}
+
+	@Override
+	public synchronized double getBytesLoadedPerSecond()
+	{
+		updateRates();
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Get the load latency histogram.
+	 */
+	public LatencyHistogram getLoadLatency()
+	{
+		return loadLatency;
+	}
+
+	@Override
+	public long[] getLoadLatencyHistogram()
+	{
+		return loadLatency.getCounts();
+	}
+
+	@Override
+	public long[] getLoadLatencyBucketLowerBoundsNanos()
+	{
+		return LatencyHistogram.getBucketLowerBoundsNanos();
+	}
+
+	@Override
+	public double getMeanLoadLatencyMillis()
+	{
+		return loadLatency.getMeanNanos() / 1000000.0;
+	}
+
+	@Override
+	public int[] getQueueSizes()
+	{
+		final int[] sizes = new int[ queue.getNumPriorities() ];
+		for ( int i = 0; i < sizes.length; ++i )
+			sizes[ i ] = queue.getQueueSize( i );
+		return sizes;
+	}
+
+	@Override
+	public int getPrefetchQueueSize()
+	{
+		return queue.getPrefetchSize();
+	}
+
+	@Override
+	public synchronized long getNumPrefetchEvictions()
+	{
+		return queue.getNumPrefetchDropped() - prefetchEvictionsAtReset;
+	}
+
+	@Override
+	public long getResidentBytes()
+	{
+		return memoryBudgetShare.getResidentBytes();
+	}
+
+	@Override
+	public long getMaxResidentBytes()
+	{
+		return memoryBudgetShare.getBudget().getMaxBytes();
+	}
+
+	@Override
+	public long getNumPinnedCells()
+	{
+		return pinnedCells.get();
+	}
+
+	@Override
+	public long getPinnedBytes()
+	{
+		return pinnedBytes.get();
+	}
+
+	@Override
+	public synchronized long getNumEvictions()
+	{
+		return memoryBudgetShare.getNumEvicted() - evictionsAtReset;
+	}
+
+	/**
+	 * Reset all counters. Current values (queue sizes, resident and pinned
+	 * bytes) are not affected.
+	 */
+	@Override
+	public synchronized void reset()
+	{
+		for ( int i = 0; i < hits.length(); ++i )
+		{
+			hits.set( i, 0 );
+			misses.set( i, 0 );
+		}
+		cellsLoaded.set( 0 );
+		bytesLoaded.set( 0 );
+		failedLoads.set( 0 );
+		loadLatency.reset();
+		evictionsAtReset = memoryBudgetShare.getNumEvicted();
+		prefetchEvictionsAtReset = queue.getNumPrefetchDropped();
+		rateTimestamp = System.currentTimeMillis();
+		rateCells = 0;
+		rateBytes = 0;
+		cellsPerSecond = 0;
+		bytesPerSecond = 0;
+	}
+
+	/**
+	 * Register these metrics as an MXBean with the platform MBean server.
+	 *
+	 * @param name
+	 *            a name distinguishing this cache from others, e.g., the
+	 *            dataset name.
+	 * @throws JMException
+	 */
+	public synchronized void register( final String name ) throws JMException
+	{
+		unregister();
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName on = new ObjectName( "bdv.img.cache:type=CacheMetrics,name=" + ObjectName.quote( name ) );
+		server.registerMBean( this, on );
+		objectName = on;
+	}
+
+	/**
+	 * Unregister from the platform MBean server, if {@link #register(String)
+	 * registered}.
+	 *
+	 * @throws JMException
+	 */
+	public synchronized void unregister() throws JMException
+	{
+		if ( objectName != null )
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+			objectName = null;
+		}
+	}
+
+	private void updateRates()
+	{
+		final long t = System.currentTimeMillis();
+		final long dt = t - rateTimestamp;
+		if ( dt >= RATE_INTERVAL_MILLIS )
+		{
+			final long cells = cellsLoaded.get();
+			final long bytes = bytesLoaded.get();
+			cellsPerSecond = ( cells - rateCells ) * 1000.0 / dt;
+			bytesPerSecond = ( bytes - rateBytes ) * 1000.0 / dt;
+			rateCells = cells;
+			rateBytes = bytes;
+			rateTimestamp = t;
+		}
+	}
+
+	private long[][] perSetupAndLevel( final AtomicLongArray counts )
+	{
+		final long[][] result = new long[ numSetups ][ numLevels ];
+		for ( int s = 0; s < numSetups; ++s )
+			for ( int l = 0; l < numLevels; ++l )
+				result[ s ][ l ] = counts.get( s * numLevels + l );
+		return result;
+	}
+
+	private static long sum( final AtomicLongArray counts )
+	{
+		long sum = 0;
+		for ( int i = 0; i < counts.length(); ++i )
+			sum += counts.get( i );
+		return sum;
+	}
+}
@@ -0,0 +1,95 @@
+package bdv.img.cache;
+
+/**
+ * Management interface for {@link CacheMetrics}, see
+ * {@link CacheMetrics#register(String)}.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public interface CacheMetricsMXBean
+{
+	/**
+	 * Whether cache hits and misses are counted. This is off by default.
+	 */
+	public boolean isAccessCountingEnabled();
+
+	public void setAccessCountingEnabled( boolean enabled );
+
+	public long getNumHits();
+
+	public long getNumMisses();
+
+	/**
+	 * Cache hits indexed by {@code [setup][level]}.
+	 */
+	public long[][] getHitsPerSetupAndLevel();
+
+	/**
+	 * Cache misses indexed by {@code [setup][level]}.
+	 */
+	public long[][] getMissesPerSetupAndLevel();
+
+	public long getNumCellsLoaded();
+
+	public long getNumBytesLoaded();
+
+	/**
+	 * Number of loads that failed, e.g., because of network errors. Failed
+	 * cells stay invalid and are retried.
+	 */
+	public long getNumFailedLoads();
+
+	public double getCellsLoadedPerSecond();
+
+	public double getBytesLoadedPerSecond();
+
+	/**
+	 * Number of loads per bucket of the load latency histogram. See
+	 * {@link #getLoadLatencyBucketLowerBoundsNanos()}.
+	 */
+	public long[] getLoadLatencyHistogram();
+
+	public long[] getLoadLatencyBucketLowerBoundsNanos();
+
+	public double getMeanLoadLatencyMillis();
+
+	/**
+	 * Number of enqueued requests per priority level.
+	 */
+	public int[] getQueueSizes();
+
+	public int getPrefetchQueueSize();
+
+	/**
+	 * Number of requests dropped from the prefetch queue because it was full.
+	 */
+	public long getNumPrefetchEvictions();
+
+	public long getResidentBytes();
+
+	/**
+	 * Size of the memory budget. If the budget is shared by several caches
+	 * (see {@link CacheManager}), this is the size of the shared budget.
+	 */
+	public long getMaxResidentBytes();
+
+	/**
+	 * Number of loaded pinned cells. These are not included in
+	 * {@link #getResidentBytes()}.
+	 */
+	public long getNumPinnedCells();
+
+	public long getPinnedBytes();
+
+	/**
+	 * Number of loaded cells evicted from memory.
+	 */
+	public long getNumEvictions();
+
+	/**
+	 * Get the current number of fetcher threads.
+	 */
+	public int getNumFetcherThreads();
+
+	public void reset();
+}
@@ -11,10 +11,21 @@ final public class CachedCellImg< T extends NativeType< T >, A extends VolatileA
 {
 	private final CellCache< A > cache;
 
+	private final VolatileImgCells< A > imgCells;
+
 	public CachedCellImg( final VolatileImgCells< A > cells )
 	{
 		super( null, cells );
 		this.cache = cells.cache;
+		this.imgCells = cells;
+	}
+
+	/**
+	 * Get the cells of this image, for direct access to cell data.
+	 */
+	public VolatileImgCells< A > getVolatileImgCells()
+	{
+		return imgCells;
 	}
 
 	public void setCacheHints( final CacheHints cacheHints )
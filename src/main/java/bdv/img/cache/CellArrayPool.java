@@ -0,0 +1,214 @@
+package bdv.img.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A pool of data arrays of evicted cells, which can be reused for loading
+ * new cells (see {@link RecyclingCacheArrayLoader}). Arrays are pooled by
+ * their number of elements.
+ *
+ * <p>
+ * The data array of an evicted cell may still be accessed by renderers,
+ * {@link net.imglib2.RandomAccess}es, or other viewers that obtained the cell
+ * before it was evicted. Therefore, the storage of a
+ * {@link #releaseWhenUnreachable(Object, Object, int) released} array is only
+ * handed out again after the array itself has become unreachable, that is,
+ * after the garbage collector cleared a weak reference to it. Code that
+ * extracts the raw storage of a cell's data array must keep the data array
+ * (or the cell) reachable while it uses the storage.
+ *
+ * <p>
+ * The total size of pooled arrays (including arrays that wait to become
+ * unreachable) is limited. Arrays that do not fit are left to the garbage
+ * collector.
+ *
+ * @param <A>
+ *            the type of data array.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class CellArrayPool< A >
+{
+	/**
+	 * Weak reference to a released data array, holding another data array
+	 * (created by {@link RecyclingCacheArrayLoader#wrapStorage(Object)}) that
+	 * is backed by the same storage.
+	 */
+	private static class Released< A > extends WeakReference< A >
+	{
+		final A storage;
+
+		final int numElements;
+
+		Released( final A array, final A storage, final int numElements, final ReferenceQueue< ? super A > queue )
+		{
+			super( array, queue );
+			this.storage = storage;
+			this.numElements = numElements;
+		}
+	}
+
+	private final long maxBytes;
+
+	private final int bytesPerElement;
+
+	/**
+	 * Arrays that can be handed out, by number of elements.
+	 */
+	private final HashMap< Integer, ArrayDeque< A > > free;
+
+	/**
+	 * Released arrays that may still be reachable. The {@link Released}
+	 * references are kept here, such that they are not garbage collected
+	 * themselves before they are enqueued.
+	 */
+	private final HashSet< Released< A > > released;
+
+	/**
+	 * Receives the {@link Released} references of arrays that became
+	 * unreachable.
+	 */
+	private final ReferenceQueue< A > unreachable;
+
+	private long pooledBytes;
+
+	private long numReused;
+
+	/**
+	 * @param maxBytes
+	 *            maximum total size of pooled arrays.
+	 * @param bytesPerElement
+	 *            size of an array element.
+	 */
+	public CellArrayPool( final long maxBytes, final int bytesPerElement )
+	{
+		this.maxBytes = maxBytes;
+		this.bytesPerElement = bytesPerElement;
+		free = new HashMap< Integer, ArrayDeque< A > >();
+		released = new HashSet< Released< A > >();
+		unreachable = new ReferenceQueue< A >();
+		pooledBytes = 0;
+		numReused = 0;
+	}
+
+	/**
+	 * Get an array with the specified number of elements, or {@code null} if
+	 * there is none.
+	 */
+	public synchronized A take( final int numElements )
+	{
+		collectUnreachable();
+		final ArrayDeque< A > arrays = free.get( numElements );
+		if ( arrays == null )
+			return null;
+		final A array = arrays.pollLast();
+		if ( array != null )
+		{
+			pooledBytes -= ( long ) numElements * bytesPerElement;
+			++numReused;
+		}
+		return array;
+	}
+
+	/**
+	 * Put an array that was never handed out to users of the cache into the
+	 * pool. It can be handed out again immediately.
+	 */
+	public synchronized void release( final A array, final int numElements )
+	{
+		final long size = ( long ) numElements * bytesPerElement;
+		if ( pooledBytes + size > maxBytes )
+			return;
+		pooledBytes += size;
+		addFree( array, numElements );
+	}
+
+	/**
+	 * Put the storage of an array that is no longer used by the cache, but
+	 * may still be used elsewhere, into the pool. It will be handed out after
+	 * {@code array} has become unreachable.
+	 *
+	 * @param array
+	 *            the data array of an evicted cell.
+	 * @param storage
+	 *            a data array backed by the same storage as {@code array}
+	 *            (see {@link RecyclingCacheArrayLoader#wrapStorage(Object)}).
+	 *            This is what is handed out by {@link #take(int)}.
+	 * @param numElements
+	 *            number of elements of {@code array}.
+	 */
+	public synchronized void releaseWhenUnreachable( final A array, final A storage, final int numElements )
+	{
+		collectUnreachable();
+		final long size = ( long ) numElements * bytesPerElement;
+		if ( pooledBytes + size > maxBytes )
+			return;
+		pooledBytes += size;
+		released.add( new Released< A >( array, storage, numElements, unreachable ) );
+	}
+
+	/**
+	 * Move the storage of released arrays that became unreachable to the
+	 * {@link #free} arrays.
+	 */
+	private void collectUnreachable()
+	{
+		for ( Reference< ? extends A > ref = unreachable.poll(); ref != null; ref = unreachable.poll() )
+		{
+			@SuppressWarnings( "unchecked" )
+			final Released< A > r = ( Released< A > ) ref;
+			if ( released.remove( r ) )
+				addFree( r.storage, r.numElements );
+		}
+	}
+
+	private void addFree( final A array, final int numElements )
+	{
+		ArrayDeque< A > arrays = free.get( numElements );
+		if ( arrays == null )
+		{
+			arrays = new ArrayDeque< A >();
+			free.put( numElements, arrays );
+		}
+		arrays.addLast( array );
+	}
+
+	/**
+	 * Remove all arrays from the pool.
+	 */
+	public synchronized void clear()
+	{
+		free.clear();
+		released.clear();
+		while ( unreachable.poll() != null )
+			;
+		pooledBytes = 0;
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Get the total size of pooled arrays, including arrays that wait to
+	 * become unreachable.
+	 */
+	public synchronized long getPooledBytes()
+	{
+		return pooledBytes;
+	}
+
+	/**
+	 * Get the number of arrays that were handed out for reuse so far.
+	 */
+	public synchronized long getNumReused()
+	{
+		return numReused;
+	}
+}
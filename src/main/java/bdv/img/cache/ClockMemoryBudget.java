@@ -0,0 +1,394 @@
+package bdv.img.cache;
+
+/**
+ * Keeps track of resident (loaded) cache entries and the memory they occupy.
+ * If the total size of resident entries exceeds a fixed budget (in bytes),
+ * entries are evicted according to the CLOCK policy: Resident entries form a
+ * ring, with a clock hand pointing to the next eviction candidate. Every
+ * access sets the {@link Resident#touch() referenced} flag of an entry. When
+ * memory needs to be reclaimed, the hand sweeps the ring, clearing referenced
+ * flags, and evicts the first entry which was not referenced since the hand
+ * passed it last.
+ *
+ * <p>
+ * A budget can be shared by several caches, each adding its entries with its
+ * own {@link Share}. Eviction is then across caches, with one exception for
+ * fairness: entries are not evicted from a {@link Share} that holds less than
+ * its fair part of the budget (half of the budget divided by the number of
+ * shares that currently hold entries), unless no other entries can be
+ * evicted. A share that holds no entries, for example of a cache that was
+ * cleared, does not reduce the fair part of the others.
+ *
+ * <p>
+ * In contrast to {@link java.lang.ref.SoftReference}-based caching, what is
+ * retained does not depend on garbage collector heuristics. For a given
+ * sequence of accesses, eviction is deterministic.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class ClockMemoryBudget
+{
+	/**
+	 * A node in the CLOCK ring. Cache entries extend this class and implement
+	 * {@link #evict()} to remove themselves from their cache.
+	 */
+	public static abstract class Resident
+	{
+		private Resident prev;
+
+		private Resident next;
+
+		private long sizeInBytes;
+
+		private Share share;
+
+		/**
+		 * Whether the entry was accessed since the clock hand passed it last.
+		 * This is written without synchronization, because it is set on every
+		 * cache access. A lost update only means that an entry gets a second
+		 * chance less.
+		 */
+		private boolean referenced;
+
+		/**
+		 * Mark this entry as recently used.
+		 */
+		public void touch()
+		{
+			referenced = true;
+		}
+
+		/**
+		 * Whether this entry is currently in the ring of resident entries.
+		 */
+		public boolean isResident()
+		{
+			return next != null;
+		}
+
+		/**
+		 * Get the number of bytes accounted for this entry.
+		 */
+		public long getSizeInBytes()
+		{
+			return sizeInBytes;
+		}
+
+		/**
+		 * Called when the entry is evicted from the {@link ClockMemoryBudget}.
+		 * Implementations should remove the entry from their cache, such that
+		 * its data can be garbage collected. This is called while holding the
+		 * lock of the {@link ClockMemoryBudget}.
+		 */
+		protected abstract void evict();
+	}
+
+	/**
+	 * The part of a {@link ClockMemoryBudget} used by one cache. Keeps track
+	 * of the entries added with this share.
+	 */
+	public static class Share
+	{
+		private final ClockMemoryBudget budget;
+
+		private long residentBytes;
+
+		private int numResident;
+
+		private long numEvicted;
+
+		private Share( final ClockMemoryBudget budget )
+		{
+			this.budget = budget;
+		}
+
+		/**
+		 * Get the {@link ClockMemoryBudget} this is a share of.
+		 */
+		public ClockMemoryBudget getBudget()
+		{
+			return budget;
+		}
+
+		/**
+		 * Get the current total size of resident entries of this share.
+		 */
+		public long getResidentBytes()
+		{
+			synchronized ( budget )
+			{
+				return residentBytes;
+			}
+		}
+
+		/**
+		 * Get the current number of resident entries of this share.
+		 */
+		public int getNumResident()
+		{
+			synchronized ( budget )
+			{
+				return numResident;
+			}
+		}
+
+		/**
+		 * Get the number of entries of this share evicted so far.
+		 */
+		public long getNumEvicted()
+		{
+			synchronized ( budget )
+			{
+				return numEvicted;
+			}
+		}
+	}
+
+	/**
+	 * Default budget, if nothing else is specified: half of the maximum heap
+	 * size.
+	 */
+	public static long defaultMaxBytes()
+	{
+		return Runtime.getRuntime().maxMemory() / 2;
+	}
+
+	private final long maxBytes;
+
+	private long residentBytes;
+
+	private int numResident;
+
+	private long numEvicted;
+
+	/**
+	 * Number of {@link Share}s that currently hold resident entries.
+	 */
+	private int numShares;
+
+	/**
+	 * The clock hand. This is the next entry to be examined for eviction. New
+	 * entries are inserted just before the hand, i.e., they are examined last.
+	 */
+	private Resident hand;
+
+	/**
+	 * Create a budget of {@code maxBytes} bytes.
+	 *
+	 * @param maxBytes
+	 *            maximum total size of resident entries.
+	 */
+	public ClockMemoryBudget( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+		residentBytes = 0;
+		numResident = 0;
+		numEvicted = 0;
+		numShares = 0;
+		hand = null;
+	}
+
+	/**
+	 * Create a new {@link Share} of this budget, for a cache that adds its
+	 * entries with {@link #add(Resident, long, Share)}.
+	 */
+	public synchronized Share newShare()
+	{
+		return new Share( this );
+	}
+
+	/**
+	 * Remove all entries of {@code share} (without calling
+	 * {@link Resident#evict()}), and stop accounting for it in the fair
+	 * division of the budget. The share is accounted for again when entries
+	 * are added to it.
+	 */
+	public synchronized void removeShare( final Share share )
+	{
+		clear( share );
+	}
+
+	/**
+	 * Add an entry to the set of resident entries. If the budget is exceeded
+	 * afterwards, evict other entries until the total size is within the
+	 * budget again. The added entry itself is never evicted by this call.
+	 *
+	 * @param resident
+	 *            the entry to add.
+	 * @param sizeInBytes
+	 *            the memory occupied by the entry.
+	 */
+	public synchronized void add( final Resident resident, final long sizeInBytes )
+	{
+		add( resident, sizeInBytes, null );
+	}
+
+	/**
+	 * Add an entry to the set of resident entries, accounted to
+	 * {@code share}. If the budget is exceeded afterwards, evict other entries
+	 * until the total size is within the budget again. The added entry itself
+	 * is never evicted by this call.
+	 *
+	 * @param resident
+	 *            the entry to add.
+	 * @param sizeInBytes
+	 *            the memory occupied by the entry.
+	 * @param share
+	 *            the share of the cache that the entry belongs to, or
+	 *            {@code null}.
+	 */
+	public synchronized void add( final Resident resident, final long sizeInBytes, final Share share )
+	{
+		if ( resident.isResident() )
+			return;
+
+		resident.sizeInBytes = sizeInBytes;
+		resident.share = share;
+		resident.referenced = false;
+		if ( hand == null )
+		{
+			resident.prev = resident;
+			resident.next = resident;
+			hand = resident;
+		}
+		else
+		{
+			resident.next = hand;
+			resident.prev = hand.prev;
+			hand.prev.next = resident;
+			hand.prev = resident;
+		}
+		residentBytes += sizeInBytes;
+		++numResident;
+		if ( share != null )
+		{
+			share.residentBytes += sizeInBytes;
+			if ( share.numResident++ == 0 )
+				++numShares;
+		}
+
+		// Entries of shares below the fair size are skipped, unless a full
+		// sweep finds nothing else to evict.
+		final long fairBytes = numShares > 1 ? maxBytes / ( 2 * numShares ) : 0;
+		int numSkipped = 0;
+		while ( residentBytes > maxBytes && numResident > 1 )
+		{
+			if ( hand == resident || hand.referenced )
+			{
+				hand.referenced = false;
+				hand = hand.next;
+			}
+			else if ( hand.share != null && hand.share.residentBytes <= fairBytes && numSkipped < numResident )
+			{
+				++numSkipped;
+				hand = hand.next;
+			}
+			else
+			{
+				final Resident victim = hand;
+				final Share victimShare = victim.share;
+				unlink( victim );
+				++numEvicted;
+				if ( victimShare != null )
+					++victimShare.numEvicted;
+				victim.evict();
+			}
+		}
+	}
+
+	/**
+	 * Remove an entry from the set of resident entries, without calling
+	 * {@link Resident#evict()}.
+	 *
+	 * @return whether the entry was resident.
+	 */
+	public synchronized boolean remove( final Resident resident )
+	{
+		if ( !resident.isResident() )
+			return false;
+		unlink( resident );
+		return true;
+	}
+
+	/**
+	 * Remove all entries from the set of resident entries, without calling
+	 * {@link Resident#evict()}.
+	 */
+	public synchronized void clear()
+	{
+		while ( hand != null )
+			unlink( hand );
+	}
+
+	/**
+	 * Remove all entries of {@code share} from the set of resident entries,
+	 * without calling {@link Resident#evict()}.
+	 */
+	public synchronized void clear( final Share share )
+	{
+		for ( int i = numResident; i > 0 && share.numResident > 0; --i )
+		{
+			final Resident r = hand;
+			hand = hand.next;
+			if ( r.share == share )
+				unlink( r );
+		}
+	}
+
+	/**
+	 * Get the maximum total size of resident entries.
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Get the current total size of resident entries.
+	 */
+	public synchronized long getResidentBytes()
+	{
+		return residentBytes;
+	}
+
+	/**
+	 * Get the current number of resident entries.
+	 */
+	public synchronized int getNumResident()
+	{
+		return numResident;
+	}
+
+	/**
+	 * Get the number of entries evicted so far.
+	 */
+	public synchronized long getNumEvicted()
+	{
+		return numEvicted;
+	}
+
+	private void unlink( final Resident resident )
+	{
+		if ( resident.next == resident )
+			hand = null;
+		else
+		{
+			if ( hand == resident )
+				hand = resident.next;
+			resident.prev.next = resident.next;
+			resident.next.prev = resident.prev;
+		}
+		resident.prev = null;
+		resident.next = null;
+		residentBytes -= resident.sizeInBytes;
+		--numResident;
+		final Share share = resident.share;
+		if ( share != null )
+		{
+			share.residentBytes -= resident.sizeInBytes;
+			if ( --share.numResident == 0 )
+				--numShares;
+			resident.share = null;
+		}
+	}
+}
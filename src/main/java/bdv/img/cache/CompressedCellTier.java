@@ -0,0 +1,289 @@
+package bdv.img.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import bdv.img.cache.DiskCellCache.ArrayCodec;
+
+/**
+ * In-memory tier of compressed cell data, between the loaded cells of a
+ * {@link VolatileGlobalCellCache} and the {@link CacheArrayLoader}. Cells
+ * that are evicted from the {@link ClockMemoryBudget} are compressed and kept
+ * here, and are decompressed when they are requested again, instead of being
+ * loaded from the original source (see
+ * {@link VolatileGlobalCellCache#setCompressedTier(CompressedCellTier)}).
+ *
+ * <p>
+ * Cell data is serialized by an {@link ArrayCodec}. The bytes are shuffled
+ * such that the <em>i</em>th bytes of all elements are contiguous, delta
+ * coded, and deflated at {@link Deflater#BEST_SPEED}. For typical 16-bit
+ * microscopy data, the high bytes of neighboring elements are mostly equal,
+ * which makes this compress several times better than deflating the raw
+ * bytes.
+ *
+ * <p>
+ * The total size of the compressed data is limited. When the limit is
+ * exceeded, the least recently stored cells are dropped.
+ *
+ * @param <A>
+ *            the type of data array stored in the cells.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class CompressedCellTier< A extends VolatileAccess >
+{
+	private final long maxBytes;
+
+	private final ArrayCodec< A > codec;
+
+	private static class CompressedCell
+	{
+		final byte[] data;
+
+		final int numBytes;
+
+		CompressedCell( final byte[] data, final int numBytes )
+		{
+			this.data = data;
+			this.numBytes = numBytes;
+		}
+	}
+
+	/**
+	 * Compressed cells, by key, in LRU order (least recently used first).
+	 * Guarded by {@code this}.
+	 */
+	private final LinkedHashMap< Long, CompressedCell > cells;
+
+	/**
+	 * Total size of compressed data. Guarded by {@code this}.
+	 */
+	private long compressedBytes;
+
+	/**
+	 * Total uncompressed size of the cells. Guarded by {@code this}.
+	 */
+	private long uncompressedBytes;
+
+	private long numHits;
+
+	private long numMisses;
+
+	private final ThreadLocal< Deflater > deflater = new ThreadLocal< Deflater >()
+	{
+		@Override
+		protected Deflater initialValue()
+		{
+			return new Deflater( Deflater.BEST_SPEED );
+		}
+	};
+
+	private final ThreadLocal< Inflater > inflater = new ThreadLocal< Inflater >()
+	{
+		@Override
+		protected Inflater initialValue()
+		{
+			return new Inflater();
+		}
+	};
+
+	/**
+	 * @param maxBytes
+	 *            maximum total size of compressed cell data.
+	 * @param codec
+	 *            converts data arrays from and to their binary representation.
+	 */
+	public CompressedCellTier( final long maxBytes, final ArrayCodec< A > codec )
+	{
+		this.maxBytes = maxBytes;
+		this.codec = codec;
+		cells = new LinkedHashMap< Long, CompressedCell >( 16, 0.75f, true );
+		compressedBytes = 0;
+		uncompressedBytes = 0;
+	}
+
+	/**
+	 * Whether the cell with the given key is in this tier.
+	 */
+	public synchronized boolean contains( final long key )
+	{
+		return cells.containsKey( key );
+	}
+
+	/**
+	 * Remove a cell from this tier and decompress it.
+	 *
+	 * @param key
+	 *            the cell key (see {@link VolatileGlobalCellCache#key(int, int, int, int)}).
+	 * @param numElements
+	 *            the number of elements in the cell.
+	 * @return the cell data or {@code null} if the cell is not in this tier.
+	 */
+	public A get( final long key, final int numElements )
+	{
+		final CompressedCell cell;
+		synchronized ( this )
+		{
+			cell = cells.remove( key );
+			if ( cell == null )
+			{
+				++numMisses;
+				return null;
+			}
+			++numHits;
+			compressedBytes -= cell.data.length;
+			uncompressedBytes -= cell.numBytes;
+		}
+
+		final int bytesPerElement = codec.getBytesPerElement();
+		final byte[] shuffled = new byte[ numElements * bytesPerElement ];
+		final Inflater inf = inflater.get();
+		inf.reset();
+		inf.setInput( cell.data );
+		try
+		{
+			int n = 0;
+			while ( n < shuffled.length && !inf.finished() )
+			{
+				final int r = inf.inflate( shuffled, n, shuffled.length - n );
+				if ( r == 0 && ( inf.needsInput() || inf.needsDictionary() ) )
+					break;
+				n += r;
+			}
+			if ( n != shuffled.length )
+				return null;
+		}
+		catch ( final DataFormatException e )
+		{
+			return null;
+		}
+
+		for ( int i = 1; i < shuffled.length; ++i )
+			shuffled[ i ] += shuffled[ i - 1 ];
+		final byte[] raw = new byte[ shuffled.length ];
+		for ( int b = 0, j = 0; b < bytesPerElement; ++b )
+			for ( int i = b; i < raw.length; i += bytesPerElement, ++j )
+				raw[ i ] = shuffled[ j ];
+		return codec.read( ByteBuffer.wrap( raw ), numElements );
+	}
+
+	/**
+	 * Compress a cell and add it to this tier. If the size limit is exceeded
+	 * afterwards, least recently stored cells are dropped.
+	 *
+	 * @param key
+	 *            the cell key (see {@link VolatileGlobalCellCache#key(int, int, int, int)}).
+	 * @param data
+	 *            the cell data.
+	 * @param numElements
+	 *            the number of elements in the cell.
+	 */
+	public void put( final long key, final A data, final int numElements )
+	{
+		final int bytesPerElement = codec.getBytesPerElement();
+		final byte[] raw = new byte[ numElements * bytesPerElement ];
+		codec.write( data, ByteBuffer.wrap( raw ), numElements );
+
+		final byte[] shuffled = new byte[ raw.length ];
+		for ( int b = 0, j = 0; b < bytesPerElement; ++b )
+			for ( int i = b; i < raw.length; i += bytesPerElement, ++j )
+				shuffled[ j ] = raw[ i ];
+		for ( int i = shuffled.length - 1; i > 0; --i )
+			shuffled[ i ] -= shuffled[ i - 1 ];
+
+		// reuse raw as the output buffer. If the data does not compress, the
+		// cell is not worth keeping.
+		final Deflater def = deflater.get();
+		def.reset();
+		def.setInput( shuffled );
+		def.finish();
+		int n = 0;
+		while ( !def.finished() && n < raw.length )
+			n += def.deflate( raw, n, raw.length - n );
+		if ( !def.finished() )
+			return;
+		final byte[] compressed = new byte[ n ];
+		System.arraycopy( raw, 0, compressed, 0, n );
+		final CompressedCell cell = new CompressedCell( compressed, raw.length );
+
+		synchronized ( this )
+		{
+			final CompressedCell previous = cells.put( key, cell );
+			if ( previous != null )
+			{
+				compressedBytes -= previous.data.length;
+				uncompressedBytes -= previous.numBytes;
+			}
+			compressedBytes += compressed.length;
+			uncompressedBytes += raw.length;
+
+			final Iterator< CompressedCell > it = cells.values().iterator();
+			while ( compressedBytes > maxBytes && it.hasNext() )
+			{
+				final CompressedCell victim = it.next();
+				it.remove();
+				compressedBytes -= victim.data.length;
+				uncompressedBytes -= victim.numBytes;
+			}
+		}
+	}
+
+	/**
+	 * Remove all cells.
+	 */
+	public synchronized void clear()
+	{
+		cells.clear();
+		compressedBytes = 0;
+		uncompressedBytes = 0;
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Get the total size of the compressed data in this tier.
+	 */
+	public synchronized long getCompressedBytes()
+	{
+		return compressedBytes;
+	}
+
+	/**
+	 * Get the total size of the cells in this tier, if they were
+	 * decompressed.
+	 */
+	public synchronized long getUncompressedBytes()
+	{
+		return uncompressedBytes;
+	}
+
+	public synchronized int getNumCells()
+	{
+		return cells.size();
+	}
+
+	/**
+	 * Get the number of {@link #get(long, int)} calls that found the cell.
+	 */
+	public synchronized long getNumHits()
+	{
+		return numHits;
+	}
+
+	/**
+	 * Get the number of {@link #get(long, int)} calls that did not find the
+	 * cell.
+	 */
+	public synchronized long getNumMisses()
+	{
+		return numMisses;
+	}
+}
@@ -0,0 +1,216 @@
+package bdv.img.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An open-addressing hash map from primitive {@code long} keys to values that
+ * know their own key. {@link #get(long)} does not allocate and does not lock.
+ * Modifications are synchronized on the map.
+ *
+ * <p>
+ * Values are stored in slots of an {@link AtomicReferenceArray}, collisions
+ * are resolved by linear probing, and removal uses backward shifting (no
+ * tombstones). Because each value carries its own key, an unsynchronized
+ * {@link #get(long)} never returns a value for the wrong key. It may however
+ * miss a value that is concurrently being moved by a {@link #remove(Keyed)}
+ * or resize. Callers that need an exact answer must synchronize on the map.
+ *
+ * @param <V>
+ *            value type.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class ConcurrentLongKeyMap< V extends ConcurrentLongKeyMap.Keyed >
+{
+	/**
+	 * A value that can be stored in a {@link ConcurrentLongKeyMap}. The key
+	 * must not change while the value is in the map.
+	 */
+	public interface Keyed
+	{
+		public long getKey();
+	}
+
+	private static final int MIN_CAPACITY = 64;
+
+	private volatile AtomicReferenceArray< V > table;
+
+	/** Number of values in the map. Guarded by {@code this}. */
+	private int size;
+
+	public ConcurrentLongKeyMap()
+	{
+		this( MIN_CAPACITY );
+	}
+
+	public ConcurrentLongKeyMap( final int initialCapacity )
+	{
+		int capacity = MIN_CAPACITY;
+		while ( capacity < 2 * initialCapacity )
+			capacity <<= 1;
+		table = new AtomicReferenceArray< V >( capacity );
+		size = 0;
+	}
+
+	/**
+	 * Get the value for the specified key, or {@code null} if there is no such
+	 * value.
+	 */
+	public V get( final long key )
+	{
+		final AtomicReferenceArray< V > t = table;
+		final int mask = t.length() - 1;
+		for ( int i = hash( key ) & mask;; i = ( i + 1 ) & mask )
+		{
+			final V v = t.get( i );
+			if ( v == null )
+				return null;
+			if ( v.getKey() == key )
+				return v;
+		}
+	}
+
+	/**
+	 * Put a value into the map, replacing any previous value with the same
+	 * key.
+	 *
+	 * @return the previous value for the key, or {@code null}.
+	 */
+	public synchronized V put( final V value )
+	{
+		final long key = value.getKey();
+		final AtomicReferenceArray< V > t = table;
+		final int mask = t.length() - 1;
+		int i = hash( key ) & mask;
+		for ( V v = t.get( i ); v != null; i = ( i + 1 ) & mask, v = t.get( i ) )
+		{
+			if ( v.getKey() == key )
+			{
+				t.set( i, value );
+				return v;
+			}
+		}
+		t.set( i, value );
+		if ( ++size > t.length() / 2 )
+			resize( t.length() * 2 );
+		return null;
+	}
+
+	/**
+	 * Remove the value for the specified key, if it is identical to
+	 * {@code value}.
+	 *
+	 * @return true, if the value was removed.
+	 */
+	public synchronized boolean remove( final V value )
+	{
+		final long key = value.getKey();
+		final AtomicReferenceArray< V > t = table;
+		final int mask = t.length() - 1;
+		for ( int i = hash( key ) & mask;; i = ( i + 1 ) & mask )
+		{
+			final V v = t.get( i );
+			if ( v == null )
+				return false;
+			if ( v.getKey() == key )
+			{
+				if ( v != value )
+					return false;
+				removeSlot( t, i );
+				--size;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Remove all values.
+	 */
+	public synchronized void clear()
+	{
+		table = new AtomicReferenceArray< V >( MIN_CAPACITY );
+		size = 0;
+	}
+
+	/**
+	 * Get the number of values in the map.
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get a snapshot of the values in the map.
+	 */
+	public synchronized List< V > values()
+	{
+		final AtomicReferenceArray< V > t = table;
+		final ArrayList< V > values = new ArrayList< V >( size );
+		for ( int i = 0; i < t.length(); ++i )
+		{
+			final V v = t.get( i );
+			if ( v != null )
+				values.add( v );
+		}
+		return values;
+	}
+
+	/**
+	 * Empty slot {@code i} and move subsequent values of the probe sequence
+	 * back, such that every value remains reachable from its home slot.
+	 */
+	private static < V extends Keyed > void removeSlot( final AtomicReferenceArray< V > t, int i )
+	{
+		final int mask = t.length() - 1;
+		for ( int j = ( i + 1 ) & mask;; j = ( j + 1 ) & mask )
+		{
+			final V v = t.get( j );
+			if ( v == null )
+				break;
+			final int home = hash( v.getKey() ) & mask;
+			// move v to i, if i lies cyclically in [home, j)
+			if ( ( ( j - home ) & mask ) >= ( ( j - i ) & mask ) )
+			{
+				t.set( i, v );
+				i = j;
+			}
+		}
+		t.set( i, null );
+	}
+
+	private void resize( final int capacity )
+	{
+		final AtomicReferenceArray< V > t = table;
+		final AtomicReferenceArray< V > n = new AtomicReferenceArray< V >( capacity );
+		final int mask = capacity - 1;
+		for ( int j = 0; j < t.length(); ++j )
+		{
+			final V v = t.get( j );
+			if ( v != null )
+			{
+				int i = hash( v.getKey() ) & mask;
+				while ( n.get( i ) != null )
+					i = ( i + 1 ) & mask;
+				n.set( i, v );
+			}
+		}
+		table = n;
+	}
+
+	/**
+	 * Spread the bits of a {@code long} key (finalizer of MurmurHash3).
+	 */
+	private static int hash( final long key )
+	{
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return ( int ) h;
+	}
+}
@@ -0,0 +1,499 @@
+package bdv.img.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+/**
+ * Persistent second-level cache for cell data, intended for image loaders
+ * that fetch cells over the network. Cells are stored in local files (one
+ * file per cell) which are memory-mapped for reading and writing. Files are
+ * grouped in a directory per loader identity (e.g., the base URL of the
+ * dataset), so the same cache directory can be shared between datasets.
+ *
+ * <p>
+ * The directory also holds a header with a fingerprint of the dataset (see
+ * {@link VolatileGlobalCellCache#describeDataset(VolatileGlobalCellCache.CellGrids, String)}),
+ * that is, everything that determines which cell a file holds: the key
+ * layout, the image and cell dimensions, the element size, and the dataset
+ * version if the server provides one. If the header does not match when the
+ * {@link DiskCellCache} is created, e.g., because the dataset behind the same
+ * URL changed, all cells are deleted.
+ *
+ * <p>
+ * The total size of the files is limited. When the limit is exceeded, the
+ * least recently used cells are deleted. Recency is persisted through the
+ * file modification times, so the LRU order survives across sessions.
+ *
+ * <p>
+ * {@link VolatileGlobalCellCache} checks the {@link DiskCellCache} (see
+ * {@link VolatileGlobalCellCache#setDiskCache(DiskCellCache)}) before it asks
+ * the {@link CacheArrayLoader} to load a cell, and stores every successfully
+ * loaded cell in the {@link DiskCellCache}.
+ *
+ * @param <A>
+ *            the type of data array stored in the cells.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class DiskCellCache< A extends VolatileAccess >
+{
+	/**
+	 * Converts data arrays from and to their binary representation.
+	 */
+	public interface ArrayCodec< A >
+	{
+		public int getBytesPerElement();
+
+		/**
+		 * Write {@code numElements} elements of {@code array} to {@code buffer}.
+		 */
+		public void write( final A array, final ByteBuffer buffer, final int numElements );
+
+		/**
+		 * Read {@code numElements} elements from {@code buffer} into a new
+		 * valid array.
+		 */
+		public A read( final ByteBuffer buffer, final int numElements );
+	}
+
+	public static final ArrayCodec< VolatileByteArray > BYTE_ARRAY_CODEC = new ArrayCodec< VolatileByteArray >()
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 1;
+		}
+
+		@Override
+		public void write( final VolatileByteArray array, final ByteBuffer buffer, final int numElements )
+		{
+			buffer.put( array.getCurrentStorageArray(), 0, numElements );
+		}
+
+		@Override
+		public VolatileByteArray read( final ByteBuffer buffer, final int numElements )
+		{
+			final byte[] data = new byte[ numElements ];
+			buffer.get( data );
+			return new VolatileByteArray( data, true );
+		}
+	};
+
+	public static final ArrayCodec< VolatileShortArray > SHORT_ARRAY_CODEC = new ArrayCodec< VolatileShortArray >()
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 2;
+		}
+
+		@Override
+		public void write( final VolatileShortArray array, final ByteBuffer buffer, final int numElements )
+		{
+			buffer.asShortBuffer().put( array.getCurrentStorageArray(), 0, numElements );
+		}
+
+		@Override
+		public VolatileShortArray read( final ByteBuffer buffer, final int numElements )
+		{
+			final short[] data = new short[ numElements ];
+			buffer.asShortBuffer().get( data );
+			return new VolatileShortArray( data, true );
+		}
+	};
+
+	public static final ArrayCodec< VolatileIntArray > INT_ARRAY_CODEC = new ArrayCodec< VolatileIntArray >()
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 4;
+		}
+
+		@Override
+		public void write( final VolatileIntArray array, final ByteBuffer buffer, final int numElements )
+		{
+			buffer.asIntBuffer().put( array.getCurrentStorageArray(), 0, numElements );
+		}
+
+		@Override
+		public VolatileIntArray read( final ByteBuffer buffer, final int numElements )
+		{
+			final int[] data = new int[ numElements ];
+			buffer.asIntBuffer().get( data );
+			return new VolatileIntArray( data, true );
+		}
+	};
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	private final ArrayCodec< A > codec;
+
+	/**
+	 * Sizes of the cell files, by key, in LRU order (least recently used
+	 * first). Guarded by {@code this}.
+	 */
+	private final LinkedHashMap< Long, Long > index;
+
+	/**
+	 * Total size of the cell files. Guarded by {@code this}.
+	 */
+	private long totalBytes;
+
+	private static final String HEADER_FILE_NAME = "dataset.header";
+
+	private static final String HEADER_MAGIC = "bdv-disk-cell-cache 1";
+
+	/**
+	 * Create a {@link DiskCellCache}. Cells stored previously for the same
+	 * {@code loaderIdentity} under the same {@code cacheDirectory} are picked
+	 * up, if they were stored with the same {@code datasetFingerprint}.
+	 * Otherwise they are deleted.
+	 *
+	 * @param cacheDirectory
+	 *            the root directory of the cache.
+	 * @param loaderIdentity
+	 *            uniquely identifies the dataset (e.g., its base URL).
+	 * @param datasetFingerprint
+	 *            describes the layout and version of the dataset, see
+	 *            {@link VolatileGlobalCellCache#describeDataset(VolatileGlobalCellCache.CellGrids, String)}.
+	 * @param maxBytes
+	 *            maximum total size of the cell files for this dataset.
+	 * @param codec
+	 *            converts data arrays from and to their binary representation.
+	 */
+	public DiskCellCache( final File cacheDirectory, final String loaderIdentity, final String datasetFingerprint, final long maxBytes, final ArrayCodec< A > codec )
+	{
+		this.directory = new File( cacheDirectory, directoryName( loaderIdentity ) );
+		this.maxBytes = maxBytes;
+		this.codec = codec;
+		index = new LinkedHashMap< Long, Long >( 16, 0.75f, true );
+		totalBytes = 0;
+		directory.mkdirs();
+		scan();
+		validateHeader( HEADER_MAGIC + "\nbytesPerElement " + codec.getBytesPerElement() + "\n" + datasetFingerprint + "\n" );
+	}
+
+	/**
+	 * Read a cell from disk.
+	 *
+	 * @param key
+	 *            the cell key (see {@link VolatileGlobalCellCache#key(int, int, int, int)}).
+	 * @param numElements
+	 *            the number of elements in the cell.
+	 * @return the cell data or {@code null} if the cell is not in the cache.
+	 */
+	public A get( final long key, final int numElements )
+	{
+		synchronized ( this )
+		{
+			if ( index.get( key ) == null )
+				return null;
+		}
+		final File file = cellFile( key );
+		try
+		{
+			final RandomAccessFile raf = new RandomAccessFile( file, "r" );
+			try
+			{
+				final FileChannel channel = raf.getChannel();
+				final long size = ( long ) numElements * codec.getBytesPerElement();
+				if ( channel.size() != size )
+				{
+					remove( key );
+					return null;
+				}
+				final MappedByteBuffer buffer = channel.map( MapMode.READ_ONLY, 0, size );
+				final A data = codec.read( buffer, numElements );
+				file.setLastModified( System.currentTimeMillis() );
+				return data;
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+		catch ( final IOException e )
+		{
+			remove( key );
+			return null;
+		}
+	}
+
+	/**
+	 * Write a cell to disk. If the cache size exceeds the limit afterwards,
+	 * least recently used cells are deleted.
+	 *
+	 * @param key
+	 *            the cell key (see {@link VolatileGlobalCellCache#key(int, int, int, int)}).
+	 * @param data
+	 *            the cell data.
+	 * @param numElements
+	 *            the number of elements in the cell.
+	 */
+	public void put( final long key, final A data, final int numElements )
+	{
+		final long size = ( long ) numElements * codec.getBytesPerElement();
+		final File file = cellFile( key );
+		final File tmp = new File( file.getPath() + ".tmp" + Thread.currentThread().getId() );
+		try
+		{
+			file.getParentFile().mkdirs();
+			final RandomAccessFile raf = new RandomAccessFile( tmp, "rw" );
+			try
+			{
+				final MappedByteBuffer buffer = raf.getChannel().map( MapMode.READ_WRITE, 0, size );
+				codec.write( data, buffer, numElements );
+			}
+			finally
+			{
+				raf.close();
+			}
+			if ( !tmp.renameTo( file ) )
+			{
+				file.delete();
+				if ( !tmp.renameTo( file ) )
+				{
+					tmp.delete();
+					return;
+				}
+			}
+		}
+		catch ( final IOException e )
+		{
+			tmp.delete();
+			return;
+		}
+
+		synchronized ( this )
+		{
+			final Long previous = index.put( key, size );
+			if ( previous != null )
+				totalBytes -= previous;
+			totalBytes += size;
+			evictIfNecessary();
+		}
+	}
+
+	/**
+	 * Delete all cell files of this dataset.
+	 */
+	public synchronized void clear()
+	{
+		for ( final Long key : index.keySet() )
+			cellFile( key ).delete();
+		index.clear();
+		totalBytes = 0;
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Get the total size of the cell files of this dataset.
+	 */
+	public synchronized long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	private synchronized void remove( final long key )
+	{
+		final Long size = index.remove( key );
+		if ( size != null )
+		{
+			totalBytes -= size;
+			cellFile( key ).delete();
+		}
+	}
+
+	private void evictIfNecessary()
+	{
+		final Iterator< Map.Entry< Long, Long > > it = index.entrySet().iterator();
+		while ( totalBytes > maxBytes && it.hasNext() )
+		{
+			final Map.Entry< Long, Long > e = it.next();
+			totalBytes -= e.getValue();
+			cellFile( e.getKey() ).delete();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Cell files are stored in a sub-directory per (timepoint, setup, level),
+	 * named by the upper 32 bits of the key. The file name is the lower 32
+	 * bits (the cell index).
+	 */
+	private File cellFile( final long key )
+	{
+		final File dir = new File( directory, Integer.toHexString( ( int ) ( key >>> 32 ) ) );
+		return new File( dir, Integer.toHexString( ( int ) key ) + ".cell" );
+	}
+
+	/**
+	 * Compare the header file with {@code header}. If it is missing or
+	 * different, delete all cells and write {@code header}.
+	 */
+	private synchronized void validateHeader( final String header )
+	{
+		final File file = new File( directory, HEADER_FILE_NAME );
+		if ( header.equals( readHeader( file ) ) )
+			return;
+
+		for ( final Long key : index.keySet() )
+			cellFile( key ).delete();
+		index.clear();
+		totalBytes = 0;
+
+		final File tmp = new File( file.getPath() + ".tmp" );
+		try
+		{
+			final Writer writer = new OutputStreamWriter( new FileOutputStream( tmp ), "UTF-8" );
+			try
+			{
+				writer.write( header );
+			}
+			finally
+			{
+				writer.close();
+			}
+			file.delete();
+			if ( !tmp.renameTo( file ) )
+				tmp.delete();
+		}
+		catch ( final IOException e )
+		{
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Read the header file, or return {@code null} if it cannot be read.
+	 */
+	private static String readHeader( final File file )
+	{
+		if ( !file.isFile() )
+			return null;
+		try
+		{
+			final Reader reader = new InputStreamReader( new FileInputStream( file ), "UTF-8" );
+			try
+			{
+				final StringBuilder sb = new StringBuilder();
+				final char[] buf = new char[ 4096 ];
+				for ( int l = reader.read( buf ); l >= 0; l = reader.read( buf ) )
+					sb.append( buf, 0, l );
+				return sb.toString();
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final IOException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Build the index from the files on disk, ordered by modification time.
+	 */
+	private synchronized void scan()
+	{
+		final ArrayList< File > files = new ArrayList< File >();
+		final ArrayList< Long > keys = new ArrayList< Long >();
+		final File[] dirs = directory.listFiles();
+		if ( dirs == null )
+			return;
+		for ( final File dir : dirs )
+		{
+			final File[] cells = dir.listFiles();
+			if ( !dir.isDirectory() || cells == null )
+				continue;
+			for ( final File cell : cells )
+			{
+				final String name = cell.getName();
+				if ( !name.endsWith( ".cell" ) )
+				{
+					// left-over temporary file of an interrupted write
+					cell.delete();
+					continue;
+				}
+				try
+				{
+					final long hi = Long.parseLong( dir.getName(), 16 );
+					final long lo = Long.parseLong( name.substring( 0, name.length() - 5 ), 16 );
+					files.add( cell );
+					keys.add( ( hi << 32 ) | lo );
+				}
+				catch ( final NumberFormatException e )
+				{}
+			}
+		}
+
+		final Integer[] order = new Integer[ files.size() ];
+		final long[] modified = new long[ files.size() ];
+		for ( int i = 0; i < order.length; ++i )
+		{
+			order[ i ] = i;
+			modified[ i ] = files.get( i ).lastModified();
+		}
+		final ArrayList< Integer > sorted = new ArrayList< Integer >();
+		Collections.addAll( sorted, order );
+		Collections.sort( sorted, new Comparator< Integer >()
+		{
+			@Override
+			public int compare( final Integer o1, final Integer o2 )
+			{
+				final long m1 = modified[ o1 ];
+				final long m2 = modified[ o2 ];
+				return m1 < m2 ? -1 : ( m1 == m2 ? 0 : 1 );
+			}
+		} );
+
+		for ( final Integer i : sorted )
+		{
+			final long size = files.get( i ).length();
+			index.put( keys.get( i ), size );
+			totalBytes += size;
+		}
+		evictIfNecessary();
+	}
+
+	/**
+	 * Derive a file system safe directory name from the loader identity.
+	 */
+	private static String directoryName( final String loaderIdentity )
+	{
+		final String s = loaderIdentity.replaceAll( "[^a-zA-Z0-9.-]", "_" );
+		final String prefix = s.length() > 64 ? s.substring( s.length() - 64 ) : s;
+		return prefix + "-" + Integer.toHexString( loaderIdentity.hashCode() );
+	}
+}
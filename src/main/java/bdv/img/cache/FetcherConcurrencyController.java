@@ -0,0 +1,184 @@
+package bdv.img.cache;
+
+/**
+ * Decides how many fetcher threads a {@link VolatileGlobalCellCache} should
+ * use, based on the observed load throughput, load latency, and queue
+ * backlog.
+ *
+ * <p>
+ * The controller is updated periodically (see {@link #update(long, long, long, long, int, int)})
+ * and performs a simple hill climbing on throughput: While there is enough
+ * backlog to keep more threads busy, it adds a thread. If throughput improved
+ * by the last change, it continues in the same direction. If throughput did
+ * not improve, or the mean latency per load increased as much as the
+ * concurrency did (meaning that the storage is saturated), it reverts the last
+ * change. If there is less backlog than threads, it removes threads.
+ *
+ * <p>
+ * This class is not thread-safe. {@link VolatileGlobalCellCache} calls
+ * {@link #update(long, long, long, long, int, int)} while synchronized.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class FetcherConcurrencyController
+{
+	/**
+	 * Minimum time between two adjustments.
+	 */
+	public static final long DEFAULT_INTERVAL_NANOS = 1000l * 1000 * 1000;
+
+	/**
+	 * Relative change of throughput that is considered significant.
+	 */
+	private static final double THRESHOLD = 0.05;
+
+	private final int minNumThreads;
+
+	private final int maxNumThreads;
+
+	private final long intervalNanos;
+
+	private long lastTime;
+
+	private long lastCells;
+
+	private long lastLatencyNanos;
+
+	private long lastLatencyCount;
+
+	private double lastThroughput;
+
+	private double lastMeanLatency;
+
+	/**
+	 * Direction of the last change: +1 (added thread), -1 (removed thread),
+	 * or 0 (no change).
+	 */
+	private int lastDirection;
+
+	private boolean initialized;
+
+	/**
+	 * @param minNumThreads
+	 *            minimum number of fetcher threads.
+	 * @param maxNumThreads
+	 *            maximum number of fetcher threads.
+	 */
+	public FetcherConcurrencyController( final int minNumThreads, final int maxNumThreads )
+	{
+		this( minNumThreads, maxNumThreads, DEFAULT_INTERVAL_NANOS );
+	}
+
+	/**
+	 * @param minNumThreads
+	 *            minimum number of fetcher threads.
+	 * @param maxNumThreads
+	 *            maximum number of fetcher threads.
+	 * @param intervalNanos
+	 *            minimum time between two adjustments.
+	 */
+	public FetcherConcurrencyController( final int minNumThreads, final int maxNumThreads, final long intervalNanos )
+	{
+		if ( minNumThreads < 1 || maxNumThreads < minNumThreads )
+			throw new IllegalArgumentException( "invalid number of threads: min=" + minNumThreads + ", max=" + maxNumThreads );
+		this.minNumThreads = minNumThreads;
+		this.maxNumThreads = maxNumThreads;
+		this.intervalNanos = intervalNanos;
+		initialized = false;
+	}
+
+	public int getMinNumThreads()
+	{
+		return minNumThreads;
+	}
+
+	public int getMaxNumThreads()
+	{
+		return maxNumThreads;
+	}
+
+	/**
+	 * Whether at least the update interval has passed since the last
+	 * adjustment.
+	 */
+	public boolean isDue( final long nowNanos )
+	{
+		return !initialized || nowNanos - lastTime >= intervalNanos;
+	}
+
+	/**
+	 * Compute the number of fetcher threads to use from now on.
+	 *
+	 * @param nowNanos
+	 *            current {@link System#nanoTime()}.
+	 * @param cellsLoaded
+	 *            total number of cells loaded so far.
+	 * @param latencyNanos
+	 *            total time spent in load operations so far.
+	 * @param latencyCount
+	 *            total number of load operations so far.
+	 * @param backlog
+	 *            number of requests waiting in the fetch queues.
+	 * @param numThreads
+	 *            current number of fetcher threads.
+	 * @return the new number of fetcher threads.
+	 */
+	public int update( final long nowNanos, final long cellsLoaded, final long latencyNanos, final long latencyCount, final int backlog, final int numThreads )
+	{
+		final long dt = nowNanos - lastTime;
+		final long dCells = cellsLoaded - lastCells;
+		final long dLatencyNanos = latencyNanos - lastLatencyNanos;
+		final long dLatencyCount = latencyCount - lastLatencyCount;
+		final boolean valid = initialized && dt > 0 && dCells >= 0 && dLatencyCount >= 0;
+
+		lastTime = nowNanos;
+		lastCells = cellsLoaded;
+		lastLatencyNanos = latencyNanos;
+		lastLatencyCount = latencyCount;
+		initialized = true;
+
+		if ( !valid )
+		{
+			// first update, or metrics have been reset
+			lastDirection = 0;
+			return clamp( numThreads );
+		}
+
+		final double throughput = dCells * 1e9 / dt;
+		final double meanLatency = dLatencyCount == 0 ? lastMeanLatency : ( double ) dLatencyNanos / dLatencyCount;
+
+		int direction;
+		if ( backlog < numThreads )
+			// not enough work to keep the current threads busy
+			direction = -1;
+		else if ( lastDirection == 0 )
+			// probe whether more threads help
+			direction = 1;
+		else if ( throughput > lastThroughput * ( 1 + THRESHOLD ) )
+		{
+			// last change helped. but if latency grew as much as concurrency
+			// did, the storage is saturated and we do not go further.
+			final double concurrencyRatio = ( double ) numThreads / ( numThreads - lastDirection );
+			final double latencyRatio = lastMeanLatency > 0 ? meanLatency / lastMeanLatency : 1;
+			direction = ( lastDirection > 0 && latencyRatio >= concurrencyRatio ) ? 0 : lastDirection;
+		}
+		else if ( throughput < lastThroughput * ( 1 - THRESHOLD ) )
+			// last change hurt, revert it
+			direction = -lastDirection;
+		else
+			// no significant difference: prefer fewer threads
+			direction = lastDirection > 0 ? -1 : 0;
+
+		lastThroughput = throughput;
+		lastMeanLatency = meanLatency;
+
+		final int n = clamp( numThreads + direction );
+		lastDirection = n - numThreads;
+		return n;
+	}
+
+	private int clamp( final int numThreads )
+	{
+		return Math.max( minNumThreads, Math.min( maxNumThreads, numThreads ) );
+	}
+}
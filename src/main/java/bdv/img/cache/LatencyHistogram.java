@@ -0,0 +1,129 @@
+package bdv.img.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of durations with logarithmic buckets. Bucket
+ * <em>i</em> counts durations in [2<sup>i</sup>, 2<sup>i+1</sup>) microseconds,
+ * except for the first bucket, which counts everything below 2 microseconds,
+ * and the last bucket, which counts everything above.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class LatencyHistogram
+{
+	public static final int NUM_BUCKETS = 32;
+
+	private final AtomicLongArray counts;
+
+	private final AtomicLong totalNanos;
+
+	private final AtomicLong count;
+
+	public LatencyHistogram()
+	{
+		counts = new AtomicLongArray( NUM_BUCKETS );
+		totalNanos = new AtomicLong();
+		count = new AtomicLong();
+	}
+
+	/**
+	 * Record a duration.
+	 *
+	 * @param nanos
+	 *            the duration in nanoseconds.
+	 */
+	public void record( final long nanos )
+	{
+		counts.incrementAndGet( bucket( nanos ) );
+		totalNanos.addAndGet( nanos );
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Get the number of recorded durations in each bucket.
+	 */
+	public long[] getCounts()
+	{
+		final long[] c = new long[ NUM_BUCKETS ];
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+			c[ i ] = counts.get( i );
+		return c;
+	}
+
+	/**
+	 * Get the lower bound (in nanoseconds) of each bucket.
+	 */
+	public static long[] getBucketLowerBoundsNanos()
+	{
+		final long[] b = new long[ NUM_BUCKETS ];
+		for ( int i = 1; i < NUM_BUCKETS; ++i )
+			b[ i ] = 1000l << i;
+		return b;
+	}
+
+	/**
+	 * Get the number of recorded durations.
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Get the sum of recorded durations in nanoseconds.
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos.get();
+	}
+
+	/**
+	 * Get the mean of recorded durations in nanoseconds, or 0 if nothing was
+	 * recorded.
+	 */
+	public double getMeanNanos()
+	{
+		final long n = count.get();
+		return n == 0 ? 0 : ( double ) totalNanos.get() / n;
+	}
+
+	/**
+	 * Get an estimate of the <em>q</em>-quantile in nanoseconds (the lower
+	 * bound of the bucket containing it).
+	 */
+	public long getQuantileNanos( final double q )
+	{
+		final long[] c = getCounts();
+		long n = 0;
+		for ( final long ci : c )
+			n += ci;
+		final long target = ( long ) Math.ceil( q * n );
+		long sum = 0;
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+		{
+			sum += c[ i ];
+			if ( sum >= target && sum > 0 )
+				return i == 0 ? 0 : 1000l << i;
+		}
+		return 0;
+	}
+
+	public void reset()
+	{
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+			counts.set( i, 0 );
+		totalNanos.set( 0 );
+		count.set( 0 );
+	}
+
+	private static int bucket( final long nanos )
+	{
+		final long micros = nanos / 1000;
+		if ( micros < 2 )
+			return 0;
+		final int b = 63 - Long.numberOfLeadingZeros( micros );
+		return Math.min( b, NUM_BUCKETS - 1 );
+	}
+}
@@ -0,0 +1,40 @@
+package bdv.img.cache;
+
+/**
+ * A {@link CacheArrayLoader} that can load data into the storage of a
+ * previously used data array, instead of allocating a new one.
+ * {@link VolatileGlobalCellCache} keeps the arrays of evicted cells in a
+ * {@link CellArrayPool} and hands them back to the loader for new cells.
+ *
+ * @param <A>
+ *            the type of data array.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public interface RecyclingCacheArrayLoader< A > extends CacheArrayLoader< A >
+{
+	/**
+	 * Load the data of a cell into the storage of {@code buffer}.
+	 *
+	 * @param buffer
+	 *            a data array that is no longer used by the cache, with
+	 *            exactly as many elements as the cell. Its contents are
+	 *            undefined.
+	 * @return a valid data array backed by the storage of {@code buffer}, or,
+	 *         if loading failed, {@code null} or an invalid array (see
+	 *         {@link CacheArrayLoader#loadArray(int, int, int, int[], long[])}).
+	 */
+	public A loadArray( final int timepoint, final int setup, final int level, int[] dimensions, long[] min, A buffer ) throws InterruptedException;
+
+	/**
+	 * Create a new (invalid) data array that is backed by the same storage as
+	 * {@code array}. The cache uses this to keep the storage of an evicted
+	 * cell without keeping its data array reachable (see
+	 * {@link CellArrayPool#releaseWhenUnreachable(Object, Object, int)}).
+	 *
+	 * @param array
+	 *            the data array of an evicted cell.
+	 * @return a new data array backed by the storage of {@code array}.
+	 */
+	public A wrapStorage( A array );
+}
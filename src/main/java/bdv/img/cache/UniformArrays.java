@@ -0,0 +1,152 @@
+package bdv.img.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+/**
+ * Detection of uniform data arrays, and shared constant flyweight arrays to
+ * replace them, for implementing
+ * {@link UniformCellCacheArrayLoader#getUniformArray(Object, int)}.
+ *
+ * <p>
+ * There is one flyweight for each type, value, and number of elements. To
+ * bound the memory used by flyweights, at most {@link #MAX_NUM_FLYWEIGHTS}
+ * are created per type. (Usually only a few values, like 0, occur in large
+ * uniform regions.)
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class UniformArrays
+{
+	public static final int MAX_NUM_FLYWEIGHTS = 64;
+
+	private static final HashMap< Long, VolatileByteArray > byteFlyweights = new HashMap< Long, VolatileByteArray >();
+
+	private static final HashMap< Long, VolatileShortArray > shortFlyweights = new HashMap< Long, VolatileShortArray >();
+
+	private static final HashMap< Long, VolatileIntArray > intFlyweights = new HashMap< Long, VolatileIntArray >();
+
+	private static final HashMap< Long, VolatileFloatArray > floatFlyweights = new HashMap< Long, VolatileFloatArray >();
+
+	private static long key( final int valueBits, final int numElements )
+	{
+		return ( ( long ) valueBits << 32 ) | ( numElements & 0xffffffffl );
+	}
+
+	/**
+	 * Get a shared array with {@code numElements} elements of the value of
+	 * {@code data}, if the first {@code numElements} elements of {@code data}
+	 * are all equal. Otherwise return {@code null}.
+	 */
+	public static VolatileByteArray uniform( final VolatileByteArray data, final int numElements )
+	{
+		final byte[] a = data.getCurrentStorageArray();
+		final byte v = a[ 0 ];
+		for ( int i = 1; i < numElements; ++i )
+			if ( a[ i ] != v )
+				return null;
+		synchronized ( byteFlyweights )
+		{
+			final Long key = key( v, numElements );
+			VolatileByteArray flyweight = byteFlyweights.get( key );
+			if ( flyweight == null && byteFlyweights.size() < MAX_NUM_FLYWEIGHTS )
+			{
+				final byte[] f = new byte[ numElements ];
+				if ( v != 0 )
+					Arrays.fill( f, v );
+				flyweight = new VolatileByteArray( f, true );
+				byteFlyweights.put( key, flyweight );
+			}
+			return flyweight;
+		}
+	}
+
+	/**
+	 * Get a shared array with {@code numElements} elements of the value of
+	 * {@code data}, if the first {@code numElements} elements of {@code data}
+	 * are all equal. Otherwise return {@code null}.
+	 */
+	public static VolatileShortArray uniform( final VolatileShortArray data, final int numElements )
+	{
+		final short[] a = data.getCurrentStorageArray();
+		final short v = a[ 0 ];
+		for ( int i = 1; i < numElements; ++i )
+			if ( a[ i ] != v )
+				return null;
+		synchronized ( shortFlyweights )
+		{
+			final Long key = key( v, numElements );
+			VolatileShortArray flyweight = shortFlyweights.get( key );
+			if ( flyweight == null && shortFlyweights.size() < MAX_NUM_FLYWEIGHTS )
+			{
+				final short[] f = new short[ numElements ];
+				if ( v != 0 )
+					Arrays.fill( f, v );
+				flyweight = new VolatileShortArray( f, true );
+				shortFlyweights.put( key, flyweight );
+			}
+			return flyweight;
+		}
+	}
+
+	/**
+	 * Get a shared array with {@code numElements} elements of the value of
+	 * {@code data}, if the first {@code numElements} elements of {@code data}
+	 * are all equal. Otherwise return {@code null}.
+	 */
+	public static VolatileIntArray uniform( final VolatileIntArray data, final int numElements )
+	{
+		final int[] a = data.getCurrentStorageArray();
+		final int v = a[ 0 ];
+		for ( int i = 1; i < numElements; ++i )
+			if ( a[ i ] != v )
+				return null;
+		synchronized ( intFlyweights )
+		{
+			final Long key = key( v, numElements );
+			VolatileIntArray flyweight = intFlyweights.get( key );
+			if ( flyweight == null && intFlyweights.size() < MAX_NUM_FLYWEIGHTS )
+			{
+				final int[] f = new int[ numElements ];
+				if ( v != 0 )
+					Arrays.fill( f, v );
+				flyweight = new VolatileIntArray( f, true );
+				intFlyweights.put( key, flyweight );
+			}
+			return flyweight;
+		}
+	}
+
+	/**
+	 * Get a shared array with {@code numElements} elements of the value of
+	 * {@code data}, if the first {@code numElements} elements of {@code data}
+	 * are all equal (bitwise). Otherwise return {@code null}.
+	 */
+	public static VolatileFloatArray uniform( final VolatileFloatArray data, final int numElements )
+	{
+		final float[] a = data.getCurrentStorageArray();
+		final int v = Float.floatToRawIntBits( a[ 0 ] );
+		for ( int i = 1; i < numElements; ++i )
+			if ( Float.floatToRawIntBits( a[ i ] ) != v )
+				return null;
+		synchronized ( floatFlyweights )
+		{
+			final Long key = key( v, numElements );
+			VolatileFloatArray flyweight = floatFlyweights.get( key );
+			if ( flyweight == null && floatFlyweights.size() < MAX_NUM_FLYWEIGHTS )
+			{
+				final float[] f = new float[ numElements ];
+				if ( v != 0 )
+					Arrays.fill( f, a[ 0 ] );
+				flyweight = new VolatileFloatArray( f, true );
+				floatFlyweights.put( key, flyweight );
+			}
+			return flyweight;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package bdv.img.cache;
+
+/**
+ * A {@link CacheArrayLoader} that can detect cells in which all elements have
+ * the same value (e.g., empty background). {@link VolatileGlobalCellCache}
+ * stores such cells as a shared, constant flyweight array instead of the
+ * loaded array, and accounts them with a nominal size in its memory budget.
+ *
+ * @param <A>
+ *            the type of data array.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public interface UniformCellCacheArrayLoader< A > extends CacheArrayLoader< A >
+{
+	/**
+	 * Check whether the first {@code numElements} elements of {@code data}
+	 * all have the same value. If so, return a shared array with at least
+	 * {@code numElements} elements of this value (see {@link UniformArrays}).
+	 * The returned array is never modified, and must not be modified by the
+	 * caller.
+	 *
+	 * @param data
+	 *            a freshly loaded, valid data array.
+	 * @param numElements
+	 *            the number of elements in the cell.
+	 * @return a shared uniform array, or {@code null} if {@code data} is not
+	 *         uniform.
+	 */
+	public A getUniformArray( A data, int numElements );
+}
@@ -6,19 +6,42 @@ import net.imglib2.img.cell.AbstractCell;
 public class VolatileCell< A extends VolatileAccess > extends AbstractCell< A >
 {
 	public VolatileCell( final int[] dimensions, final long[] min, final A data )
+	{
+		this( dimensions, min, data, false );
+	}
+
+	/**
+	 * @param uniform
+	 *            whether all elements of the cell have the same value, and
+	 *            {@code data} is a shared flyweight array (see
+	 *            {@link UniformCellCacheArrayLoader}).
+	 */
+	public VolatileCell( final int[] dimensions, final long[] min, final A data, final boolean uniform )
 	{
 		super( dimensions, min );
 		this.data = data;
+		this.uniform = uniform;
 	}
 
 	private final A data;
 
+	private final boolean uniform;
+
 	@Override
 	public A getData()
 	{
 		return data;
 	}
 
+	/**
+	 * Whether all elements of the cell have the same value. The data array
+	 * is then shared with other cells and must not be modified.
+	 */
+	public boolean isUniform()
+	{
+		return uniform;
+	}
+
 	long[] getMin()
 	{
 		return min;
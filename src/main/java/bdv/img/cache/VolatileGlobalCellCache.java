@@ -1,19 +1,60 @@
 package bdv.img.cache;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import bdv.img.cache.CacheIoTiming.IoStatistics;
 import bdv.img.cache.CacheIoTiming.IoTimeBudget;
+import bdv.img.cache.ClockMemoryBudget.Resident;
 import bdv.img.cache.VolatileImgCells.CellCache;
 
+/**
+ * A cache of {@link VolatileCell}s for all timepoints, setups, and mipmap
+ * levels of a dataset. Cells that have not been loaded yet are only weakly
+ * referenced. Loaded cells are kept in a {@link ClockMemoryBudget} which
+ * retains them up to a fixed number of bytes and evicts them according to the
+ * CLOCK policy.
+ *
+ * <p>
+ * Cache accesses and load operations are recorded in {@link CacheMetrics}
+ * (see {@link #getMetrics()}).
+ *
+ * <p>
+ * If the {@link CacheArrayLoader} is a {@link RecyclingCacheArrayLoader}, the
+ * data arrays of evicted cells are kept in a {@link CellArrayPool} and reused
+ * for loading new cells, once they are no longer reachable from outside the
+ * cache.
+ *
+ * <p>
+ * Cells of selected mipmap levels or timepoints can be
+ * {@link #pinLevels(int) pinned}. Loaded pinned cells are never evicted, and
+ * can be {@link #preloadPinned(CellGrids) preloaded} in the background.
+ *
+ * @param <A>
+ *            the type of data array stored in the cells.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
 public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cache
 {
 	private final int maxNumTimepoints;
@@ -22,7 +63,87 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 	private final int maxNumLevels;
 
-	class Key
+	/**
+	 * Number of bits used for the level in a packed key.
+	 */
+	private final int levelBits;
+
+	/**
+	 * Number of bits used for the setup in a packed key.
+	 */
+	private final int setupBits;
+
+	/**
+	 * Whether (timepoint, setup, level) of ids in range fit into 31 bits,
+	 * see {@link #key(int, int, int, int)}.
+	 */
+	private final boolean packed;
+
+	/**
+	 * Set in keys whose upper 32 bits hold an {@link #imageIds interned} id
+	 * instead of packed (timepoint, setup, level).
+	 */
+	private static final long INTERNED_KEY_FLAG = 1l << 63;
+
+	/**
+	 * Ids for (timepoint, setup, level) triples that cannot be packed into a
+	 * key. They are assigned in the order of first use, so they are not
+	 * stable across sessions.
+	 */
+	private final ConcurrentHashMap< ImageId, Integer > imageIds = new ConcurrentHashMap< ImageId, Integer >();
+
+	private final AtomicInteger nextImageId = new AtomicInteger();
+
+	/**
+	 * Make a {@code long} key for (timepoint, setup, level, index). The lower
+	 * 32 bits hold the cell index. If the dataset is small enough, and the ids
+	 * are in range, the upper 32 bits hold level, setup, and timepoint (from
+	 * least to most significant), using as many bits as required for
+	 * {@link #maxNumLevels}, {@link #maxNumSetups}, and
+	 * {@link #maxNumTimepoints}, respectively. The most significant bit is
+	 * not used.
+	 * <p>
+	 * Otherwise, the upper 32 bits hold {@link #INTERNED_KEY_FLAG} and an id
+	 * that is assigned to the (timepoint, setup, level) triple on first use.
+	 * Such keys are not {@link #isPersistentKey(long) persistent}.
+	 */
+	protected long key( final int timepoint, final int setup, final int level, final int index )
+	{
+		final long hi;
+		if ( packed &&
+				timepoint >= 0 && timepoint < maxNumTimepoints &&
+				setup >= 0 && setup < maxNumSetups &&
+				level >= 0 && level < maxNumLevels )
+			hi = ( ( ( long ) timepoint << setupBits ) | setup ) << levelBits | level;
+		else
+			hi = ( INTERNED_KEY_FLAG >>> 32 ) | imageId( timepoint, setup, level );
+		return ( hi << 32 ) | ( index & 0xffffffffL );
+	}
+
+	/**
+	 * Whether a key is the same for the same cell in every session, such that
+	 * it can be used to store the cell in a {@link DiskCellCache}.
+	 */
+	protected static boolean isPersistentKey( final long key )
+	{
+		return ( key & INTERNED_KEY_FLAG ) == 0;
+	}
+
+	/**
+	 * Get the interned id of a (timepoint, setup, level) triple.
+	 */
+	private int imageId( final int timepoint, final int setup, final int level )
+	{
+		final ImageId id = new ImageId( timepoint, setup, level );
+		final Integer existing = imageIds.get( id );
+		if ( existing != null )
+			return existing;
+		final Integer created = nextImageId.getAndIncrement();
+		final Integer previous = imageIds.putIfAbsent( id, created );
+		return previous != null ? previous : created;
+	}
+
+	private static final class ImageId
 	{
 		private final int timepoint;
 
@@ -30,43 +151,52 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 		private final int level;
 
-		private final int index;
-
-		public Key( final int timepoint, final int setup, final int level, final int index )
+		ImageId( final int timepoint, final int setup, final int level )
 		{
 			this.timepoint = timepoint;
 			this.setup = setup;
 			this.level = level;
-			this.index = index;
-
-			final long value = ( ( index * maxNumLevels + level ) * maxNumSetups + setup ) * maxNumTimepoints + timepoint;
-			hashcode = ( int ) ( value ^ ( value >>> 32 ) );
 		}
 
 		@Override
-		public boolean equals( final Object other )
+		public boolean equals( final Object obj )
 		{
-			if ( this == other )
-				return true;
-			if ( !( other instanceof VolatileGlobalCellCache.Key ) )
+			if ( !( obj instanceof ImageId ) )
 				return false;
-			@SuppressWarnings( "unchecked" )
-			final Key that = ( Key ) other;
-			return ( this.timepoint == that.timepoint ) && ( this.setup == that.setup ) && ( this.level == that.level ) && ( this.index == that.index );
+			final ImageId other = ( ImageId ) obj;
+			return timepoint == other.timepoint && setup == other.setup && level == other.level;
 		}
 
-		final int hashcode;
-
 		@Override
 		public int hashCode()
 		{
-			return hashcode;
+			return ( timepoint * 31 + setup ) * 31 + level;
 		}
 	}
 
-	class Entry
+	/**
+	 * Number of bits required to represent values in {@code [0, n)}.
+	 */
+	private static int bitsFor( final int n )
+	{
+		return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros( n - 1 );
+	}
+
+	class Entry extends Resident
 	{
-		private final Key key;
+		private final long key;
+
+		private final int timepoint;
+
+		private final int setup;
+
+		private final int level;
+
+		/**
+		 * The reference to this entry that is stored in
+		 * {@link VolatileGlobalCellCache#weakReferenceCache}.
+		 */
+		private MyWeakReference ref;
 
 		private VolatileCell< A > data;
 
@@ -78,50 +208,170 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 		 */
 		private long enqueueFrame;
 
-		public Entry( final Key key, final VolatileCell< A > data )
+		/**
+		 * The priority with which this entry was last enqueued.
+		 */
+		private int enqueuePriority;
+
+		/**
+		 * The deadline with which this entry was last enqueued.
+		 */
+		private long enqueueDeadline = BlockingFetchQueues.NO_DEADLINE;
+
+		/**
+		 * Whether an asynchronous load of this entry is in flight. Guarded by
+		 * {@code this}.
+		 */
+		private boolean loadingAsync;
+
+		/**
+		 * The {@link VolatileGlobalCellCache#currentQueueFrame frame} in which
+		 * this entry was last accessed.
+		 */
+		private long lastAccessFrame;
+
+		/**
+		 * How often loading this entry failed since it was last retried from
+		 * the {@link VolatileGlobalCellCache#queue} (see
+		 * {@link VolatileGlobalCellCache#loadFailed(Entry)}). Guarded by
+		 * {@code this}.
+		 */
+		private int numFailedLoads;
+
+		public Entry( final long key, final int timepoint, final int setup, final int level, final VolatileCell< A > data )
 		{
 			this.key = key;
+			this.timepoint = timepoint;
+			this.setup = setup;
+			this.level = level;
 			this.data = data;
 			enqueueFrame = -1;
 		}
-	}
 
-	interface GetKey< K >
-	{
-		public K getKey();
+		@Override
+		protected void evict()
+		{
+			weakReferenceCache.remove( ref );
+			if ( compressedTier != null )
+				evictedEntries.add( this );
+			else
+				recycle( data );
+		}
 	}
 
-	class MySoftReference extends SoftReference< Entry > implements GetKey< Key >
+	class MyWeakReference extends WeakReference< Entry > implements ConcurrentLongKeyMap.Keyed
 	{
-		private final Key key;
+		private final long key;
 
-		public MySoftReference( final Entry referent, final ReferenceQueue< ? super Entry > q )
+		public MyWeakReference( final Entry referent, final ReferenceQueue< ? super Entry > q )
 		{
 			super( referent, q );
 			key = referent.key;
 		}
 
 		@Override
-		public Key getKey()
+		public long getKey()
 		{
 			return key;
 		}
 	}
 
-	class MyWeakReference extends WeakReference< Entry > implements GetKey< Key >
+	/**
+	 * Provides the cell grids of the images of a dataset, such that the cache
+	 * can enumerate the cells to {@link VolatileGlobalCellCache#preloadPinned(CellGrids)
+	 * preload}.
+	 */
+	public interface CellGrids
 	{
-		private final Key key;
+		/**
+		 * Get the dimensions of the image for the given (timepoint, setup,
+		 * level), or {@code null} if there is no such image.
+		 */
+		public long[] getImageDimensions( int timepoint, int setup, int level );
 
-		public MyWeakReference( final Entry referent, final ReferenceQueue< ? super Entry > q )
+		/**
+		 * Get the cell dimensions of the image for the given (timepoint,
+		 * setup, level).
+		 */
+		public int[] getCellDimensions( int timepoint, int setup, int level );
+	}
+
+	/**
+	 * Loads all pinned cells, coarsest level first. Cells are loaded in this
+	 * thread (not by the {@link Fetcher fetchers}), one after another.
+	 */
+	class Preloader extends Thread
+	{
+		private final CellGrids grids;
+
+		public Preloader( final CellGrids grids )
 		{
-			super( referent, q );
-			key = referent.key;
+			this.grids = grids;
 		}
 
 		@Override
-		public Key getKey()
+		public final void run()
 		{
-			return key;
+			try
+			{
+				for ( int level = maxNumLevels - 1; level >= 0; --level )
+					for ( int timepoint = 0; timepoint < maxNumTimepoints; ++timepoint )
+						if ( isPinned( timepoint, level ) )
+							for ( int setup = 0; setup < maxNumSetups; ++setup )
+								preload( timepoint, setup, level );
+			}
+			catch ( final InterruptedException e )
+			{}
+		}
+
+		private void preload( final int timepoint, final int setup, final int level ) throws InterruptedException
+		{
+			final long[] dimensions = grids.getImageDimensions( timepoint, setup, level );
+			if ( dimensions == null )
+				return;
+			final int[] cellDimensions = grids.getCellDimensions( timepoint, setup, level );
+			final int n = dimensions.length;
+			final long numCellsTotal = numCells( dimensions, cellDimensions );
+			for ( int index = 0; index < numCellsTotal; ++index )
+			{
+				if ( isInterrupted() )
+					throw new InterruptedException();
+				if ( !isPinned( timepoint, level ) )
+					return;
+				final int[] cellDims = new int[ n ];
+				final long[] cellMin = new long[ n ];
+				getCell( dimensions, cellDimensions, index, cellDims, cellMin );
+				final Entry entry = getOrCreateEntry( cellDims, cellMin, timepoint, setup, level, index );
+				loadEntryIfNotValid( entry );
+			}
+		}
+	}
+
+	/**
+	 * Get the number of cells in the cell grid of an image.
+	 */
+	private static long numCells( final long[] dimensions, final int[] cellDimensions )
+	{
+		long numCells = 1;
+		for ( int d = 0; d < dimensions.length; ++d )
+			numCells *= ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+		return numCells;
+	}
+
+	/**
+	 * Get the dimensions and min of the cell with the given (flattened)
+	 * {@code index} in the cell grid of an image.
+	 */
+	private static void getCell( final long[] dimensions, final int[] cellDimensions, final int index, final int[] cellDims, final long[] cellMin )
+	{
+		long i = index;
+		for ( int d = 0; d < dimensions.length; ++d )
+		{
+			final long numCells = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+			final long pos = i % numCells;
+			i /= numCells;
+			cellMin[ d ] = pos * cellDimensions[ d ];
+			cellDims[ d ] = ( int ) Math.min( cellDimensions[ d ], dimensions[ d ] - cellMin[ d ] );
 		}
 	}
 
@@ -129,7 +379,7 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 	protected void finalizeRemovedCacheEntries()
 	{
-		synchronized ( softReferenceCache )
+		synchronized ( weakReferenceCache )
 		{
 			for ( int i = 0; i < MAX_PER_FRAME_FINALIZE_ENTRIES; ++i )
 			{
@@ -137,15 +387,18 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 				if ( poll == null )
 					break;
 				@SuppressWarnings( "unchecked" )
-				final Key key = ( ( GetKey< Key > ) poll ).getKey();
-				final Reference< Entry > ref = softReferenceCache.get( key );
-				if ( ref == poll )
-					softReferenceCache.remove( key );
+				final MyWeakReference ref = ( MyWeakReference ) poll;
+				weakReferenceCache.remove( ref );
 			}
 		}
 	}
 
-	protected final ConcurrentHashMap< Key, Reference< Entry > > softReferenceCache = new ConcurrentHashMap< Key, Reference< Entry > >();
+	/**
+	 * Maps keys to {@link Entry entries}. Entries are only weakly referenced
+	 * here. Entries with valid data are strongly referenced by the
+	 * {@link #memoryBudget} until they are evicted.
+	 */
+	protected final ConcurrentLongKeyMap< MyWeakReference > weakReferenceCache = new ConcurrentLongKeyMap< MyWeakReference >();
 
 	protected final ReferenceQueue< Entry > finalizeQueue = new ReferenceQueue< Entry >();
 
@@ -155,25 +408,53 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 */
 	protected final List< Entry > currentFrameEntries = Collections.synchronizedList( new ArrayList< Entry >() );
 
-	protected final BlockingFetchQueues< Key > queue;
+	protected final BlockingFetchQueues< Entry > queue;
 
 	protected volatile long currentQueueFrame = 0;
 
+	/**
+	 * Requests that were enqueued before this frame are stale (see
+	 * {@link #cancelStaleRequests()}). Fetchers drop stale requests instead
+	 * of loading them.
+	 */
+	protected volatile long oldestValidQueueFrame = 0;
+
+	/**
+	 * How many frames (including the current one) requests are kept when
+	 * {@link #cancelStaleRequests()} is called.
+	 */
+	protected volatile int numValidQueueFrames = 0;
+
+	/**
+	 * Whether the {@link Entry} was enqueued for loading in a frame that was
+	 * invalidated by {@link #cancelStaleRequests()}.
+	 */
+	protected boolean isStale( final Entry entry )
+	{
+		return entry.enqueueFrame < oldestValidQueueFrame;
+	}
+
 	class Fetcher extends Thread
 	{
 		@Override
 		public final void run()
 		{
-			Key key = null;
+			Entry entry = null;
 			while ( true )
 			{
-				while ( key == null )
+				while ( entry == null )
+				{
+					if ( retired )
+						return;
 					try
 					{
-						key = queue.take();
+						entry = queue.take();
+						if ( isStale( entry ) )
+							entry = null;
 					}
 					catch ( final InterruptedException e )
 					{}
+				}
 				long waitMillis = pauseUntilTimeMillis - System.currentTimeMillis();
 				while ( waitMillis > 0 )
 				{
@@ -190,11 +471,29 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 				}
 				try
 				{
-					loadIfNotValid( key );
-					key = null;
+					loading = entry;
+					loadIfNotValid( entry );
+					entry = null;
 				}
 				catch ( final InterruptedException e )
-				{}
+				{
+					if ( isStale( entry ) )
+						entry = null;
+				}
+				finally
+				{
+					loading = null;
+					// clear interrupt that may have arrived after the load
+					Thread.interrupted();
+				}
+				if ( retired )
+				{
+					// hand back an interrupted request to the remaining fetchers
+					if ( entry != null )
+						queue.put( entry, entry.enqueuePriority, true, entry.enqueueDeadline );
+					return;
+				}
+				adjustNumFetcherThreads();
 			}
 		}
 
@@ -202,140 +501,1237 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 		private volatile long pauseUntilTimeMillis = 0;
 
+		/**
+		 * The {@link Entry} that is currently being loaded, or {@code null}.
+		 */
+		private volatile Entry loading = null;
+
+		/**
+		 * Whether this fetcher should terminate.
+		 */
+		private volatile boolean retired = false;
+
+		/**
+		 * Make this fetcher terminate after the current load. If it is
+		 * waiting for a request, it is woken up.
+		 */
+		public void retire()
+		{
+			retired = true;
+			if ( loading == null )
+				interrupt();
+		}
+
+		/**
+		 * Interrupt the current load, if the {@link Entry} being loaded is
+		 * stale. Loaders that support interruption will abort the load by
+		 * throwing an {@link InterruptedException}.
+		 */
+		public void cancelIfStale()
+		{
+			final Entry entry = loading;
+			if ( entry != null && isStale( entry ) )
+				interrupt();
+		}
+
 		public void pauseUntil( final long timeMillis )
 		{
-			pauseUntilTimeMillis = timeMillis;
-			interrupt();
+			pauseUntilTimeMillis = timeMillis;
+			interrupt();
+		}
+
+		public void wakeUp()
+		{
+			pauseUntilTimeMillis = 0;
+			synchronized ( lock )
+			{
+				lock.notify();
+			}
+		}
+	}
+
+	/**
+	 * Takes requests from the {@link #queue} in priority order and starts
+	 * asynchronous loads, as long as less than a maximum number of loads are
+	 * in flight. Replaces the {@link Fetcher} threads if the
+	 * {@link #loader} is an {@link AsyncCacheArrayLoader}.
+	 */
+	class AsyncDispatcher extends Thread
+	{
+		/**
+		 * Permits for loads in flight.
+		 */
+		private final Semaphore window;
+
+		private volatile boolean stopped = false;
+
+		public AsyncDispatcher( final int maxNumRequestsInFlight )
+		{
+			window = new Semaphore( maxNumRequestsInFlight );
+		}
+
+		@Override
+		public final void run()
+		{
+			while ( !stopped )
+			{
+				try
+				{
+					window.acquire();
+				}
+				catch ( final InterruptedException e )
+				{
+					continue;
+				}
+				Entry entry = null;
+				while ( entry == null && !stopped )
+					try
+					{
+						entry = queue.take();
+						if ( isStale( entry ) )
+							entry = null;
+					}
+					catch ( final InterruptedException e )
+					{}
+				if ( stopped )
+				{
+					if ( entry != null )
+						queue.put( entry, entry.enqueuePriority, true, entry.enqueueDeadline );
+					return;
+				}
+				if ( !loadAsyncIfNotValid( entry, window ) )
+					window.release();
+			}
+		}
+
+		public void shutdown()
+		{
+			stopped = true;
+			interrupt();
+		}
+	}
+
+	/**
+	 * pause all {@link Fetcher} threads for the specified number of milliseconds.
+	 */
+	public void pauseFetcherThreadsFor( final long ms )
+	{
+		pauseFetcherThreadsUntil( System.currentTimeMillis() + ms );
+	}
+
+	/**
+	 * pause all {@link Fetcher} threads until the given time (see
+	 * {@link System#currentTimeMillis()}).
+	 */
+	public void pauseFetcherThreadsUntil( final long timeMillis )
+	{
+		for ( final Fetcher f : fetchers )
+			f.pauseUntil( timeMillis );
+	}
+
+	/**
+	 * Wake up all Fetcher threads immediately. This ends any
+	 * {@link #pauseFetcherThreadsFor(long)} and
+	 * {@link #pauseFetcherThreadsUntil(long)} set earlier.
+	 */
+	public void wakeFetcherThreads()
+	{
+		for ( final Fetcher f : fetchers )
+			f.wakeUp();
+	}
+
+	private final CopyOnWriteArrayList< Fetcher > fetchers;
+
+	/**
+	 * Used to name {@link Fetcher} threads.
+	 */
+	private int fetcherId = 0;
+
+	/**
+	 * Decides the number of {@link Fetcher} threads. If {@code null}, the
+	 * number of threads is fixed.
+	 */
+	private volatile FetcherConcurrencyController concurrencyController;
+
+	/**
+	 * {@link System#nanoTime()} after which {@link #concurrencyController}
+	 * should be asked again.
+	 */
+	private volatile long nextConcurrencyUpdateNanos;
+
+	/**
+	 * {@link #loader} if it is a {@link RecyclingCacheArrayLoader}, otherwise
+	 * {@code null}.
+	 */
+	private final RecyclingCacheArrayLoader< A > recyclingLoader;
+
+	/**
+	 * Data arrays of evicted cells, for reuse by the {@link #recyclingLoader}.
+	 * {@code null} if the {@link #loader} does not support recycling.
+	 */
+	private final CellArrayPool< A > arrayPool;
+
+	/**
+	 * {@link #loader} if it is a {@link UniformCellCacheArrayLoader},
+	 * otherwise {@code null}.
+	 */
+	private final UniformCellCacheArrayLoader< A > uniformLoader;
+
+	/**
+	 * {@link #loader} if it is an {@link AsyncCacheArrayLoader}, otherwise
+	 * {@code null}.
+	 */
+	private final AsyncCacheArrayLoader< ? extends A > asyncLoader;
+
+	/**
+	 * If not {@code null}, requests are loaded asynchronously by this
+	 * dispatcher instead of by {@link Fetcher} threads.
+	 */
+	private volatile AsyncDispatcher asyncDispatcher;
+
+	/**
+	 * Number of {@link Fetcher} threads before asynchronous loading was
+	 * enabled. These are restored when it is disabled.
+	 */
+	private int numFetcherThreadsBeforeAsync;
+
+	private final CacheArrayLoader< ? extends A > loader;
+
+	/**
+	 * {@link #loader} if it is a {@link BatchCacheArrayLoader}, otherwise
+	 * {@code null}.
+	 */
+	private final BatchCacheArrayLoader< ? extends A > batchLoader;
+
+	private final CacheIoTiming cacheIoTiming;
+
+	/**
+	 * Keeps loaded {@link Entry entries} resident up to a maximum number of
+	 * bytes. This may be shared with other caches (see {@link CacheManager}).
+	 */
+	private final ClockMemoryBudget memoryBudget;
+
+	/**
+	 * The part of the {@link #memoryBudget} used by this cache.
+	 */
+	private final ClockMemoryBudget.Share budgetShare;
+
+	/**
+	 * The {@link CacheManager} this cache is registered with, or {@code null}
+	 * if it has its own {@link #memoryBudget}.
+	 */
+	private final CacheManager manager;
+
+	/**
+	 * Whether this cache is currently registered with the {@link #manager}.
+	 * It unregisters when it is cleared, and registers again when entries are
+	 * made resident.
+	 */
+	private volatile boolean registered;
+
+	/**
+	 * Optional persistent second-level cache, checked before cells are loaded
+	 * by the {@link #loader}. May be {@code null}.
+	 */
+	private volatile DiskCellCache< A > diskCache;
+
+	/**
+	 * The cell grids of the dataset, used to validate a
+	 * {@link #readManifest(Reader) manifest}. May be {@code null}.
+	 */
+	private volatile CellGrids cellGrids;
+
+	/**
+	 * Optional in-memory tier of compressed cells, checked before the
+	 * {@link #diskCache} and the {@link #loader}. May be {@code null}.
+	 */
+	private volatile CompressedCellTier< A > compressedTier;
+
+	/**
+	 * Evicted entries whose data is still to be put into the
+	 * {@link #compressedTier}. Entries are evicted while the
+	 * {@link #memoryBudget} is locked, so compression is deferred to
+	 * {@link #compressEvictedEntries()}.
+	 */
+	private final ConcurrentLinkedQueue< Entry > evictedEntries = new ConcurrentLinkedQueue< Entry >();
+
+	private final CacheMetrics metrics;
+
+	/**
+	 * Cells of levels greater than or equal to this are pinned.
+	 */
+	private volatile int pinnedMinLevel = Integer.MAX_VALUE;
+
+	/**
+	 * Cells of timepoints in the range {@code [pinnedMinTimepoint, pinnedMaxTimepoint]}
+	 * are pinned.
+	 */
+	private volatile int pinnedMinTimepoint = 0;
+
+	private volatile int pinnedMaxTimepoint = -1;
+
+	/**
+	 * Loaded {@link Entry entries} that are {@link #isPinned(int, int)
+	 * pinned}. These are strongly referenced here instead of by the
+	 * {@link #memoryBudget}, so they are never evicted.
+	 */
+	private final HashSet< Entry > pinnedEntries = new HashSet< Entry >();
+
+	private Preloader preloader;
+
+	/**
+	 * Create a cache that is registered with the
+	 * {@link CacheManager#getDefault() default} {@link CacheManager}. It
+	 * shares the memory budget and load concurrency with all other caches
+	 * registered there.
+	 *
+	 * @param loader
+	 * @param maxNumTimepoints
+	 *            the highest occurring timepoint id plus 1.
+	 * @param maxNumSetups
+	 *            the highest occurring setup id plus 1.
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 */
+	public VolatileGlobalCellCache( final CacheArrayLoader< ? extends A > loader, final int maxNumTimepoints, final int maxNumSetups, final int maxNumLevels, final int numFetcherThreads )
+	{
+		this( loader, maxNumTimepoints, maxNumSetups, maxNumLevels, numFetcherThreads, CacheManager.getDefault() );
+	}
+
+	/**
+	 * Create a cache that is registered with the given {@link CacheManager}.
+	 * It shares the memory budget and load concurrency with all other caches
+	 * registered there.
+	 *
+	 * @param loader
+	 * @param maxNumTimepoints
+	 *            the highest occurring timepoint id plus 1.
+	 * @param maxNumSetups
+	 *            the highest occurring setup id plus 1.
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 * @param manager
+	 */
+	public VolatileGlobalCellCache( final CacheArrayLoader< ? extends A > loader, final int maxNumTimepoints, final int maxNumSetups, final int maxNumLevels, final int numFetcherThreads, final CacheManager manager )
+	{
+		this( loader, maxNumTimepoints, maxNumSetups, maxNumLevels, numFetcherThreads, manager.getMemoryBudget(), manager );
+	}
+
+	/**
+	 * Create a cache with its own memory budget, that is not registered with
+	 * a {@link CacheManager}.
+	 *
+	 * @param loader
+	 * @param maxNumTimepoints
+	 *            the highest occurring timepoint id plus 1.
+	 * @param maxNumSetups
+	 *            the highest occurring setup id plus 1.
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 * @param maxCacheSizeInBytes
+	 *            maximum total size of the loaded data retained by the cache
+	 *            (over all timepoints, setups, and levels). The size of a cell
+	 *            is computed as the number of its elements times
+	 *            {@link CacheArrayLoader#getBytesPerElement()}.
+	 */
+	public VolatileGlobalCellCache( final CacheArrayLoader< ? extends A > loader, final int maxNumTimepoints, final int maxNumSetups, final int maxNumLevels, final int numFetcherThreads, final long maxCacheSizeInBytes )
+	{
+		this( loader, maxNumTimepoints, maxNumSetups, maxNumLevels, numFetcherThreads, new ClockMemoryBudget( maxCacheSizeInBytes ), null );
+	}
+
+	private VolatileGlobalCellCache( final CacheArrayLoader< ? extends A > loader, final int maxNumTimepoints, final int maxNumSetups, final int maxNumLevels, final int numFetcherThreads, final ClockMemoryBudget memoryBudget, final CacheManager manager )
+	{
+		this.loader = loader;
+		this.batchLoader = ( loader instanceof BatchCacheArrayLoader ) ? ( BatchCacheArrayLoader< ? extends A > ) loader : null;
+		this.asyncLoader = ( loader instanceof AsyncCacheArrayLoader ) ? ( AsyncCacheArrayLoader< ? extends A > ) loader : null;
+		if ( loader instanceof RecyclingCacheArrayLoader )
+		{
+			// The pool only contains arrays of evicted cells, which were
+			// created by the loader. So it only hands back arrays of the
+			// loader's type.
+			@SuppressWarnings( "unchecked" )
+			final RecyclingCacheArrayLoader< A > l = ( RecyclingCacheArrayLoader< A > ) loader;
+			recyclingLoader = l;
+			arrayPool = new CellArrayPool< A >( memoryBudget.getMaxBytes() / 8, loader.getBytesPerElement() );
+		}
+		else
+		{
+			recyclingLoader = null;
+			arrayPool = null;
+		}
+		if ( loader instanceof UniformCellCacheArrayLoader )
+		{
+			// Uniform arrays are only requested for arrays that were loaded
+			// by the loader.
+			@SuppressWarnings( "unchecked" )
+			final UniformCellCacheArrayLoader< A > l = ( UniformCellCacheArrayLoader< A > ) loader;
+			uniformLoader = l;
+		}
+		else
+			uniformLoader = null;
+		this.maxNumTimepoints = maxNumTimepoints;
+		this.maxNumSetups = maxNumSetups;
+		this.maxNumLevels = maxNumLevels;
+		levelBits = bitsFor( maxNumLevels );
+		setupBits = bitsFor( maxNumSetups );
+		packed = levelBits + setupBits + bitsFor( maxNumTimepoints ) <= 31;
+
+		cacheIoTiming = new CacheIoTiming();
+		this.memoryBudget = memoryBudget;
+		this.manager = manager;
+		budgetShare = memoryBudget.newShare();
+		if ( manager != null )
+		{
+			manager.register( this );
+			registered = true;
+		}
+		queue = new BlockingFetchQueues< Entry >( maxNumLevels );
+		metrics = new CacheMetrics( maxNumSetups, maxNumLevels, queue, budgetShare );
+		fetchers = new CopyOnWriteArrayList< Fetcher >();
+		resizeFetcherPool( numFetcherThreads );
+	}
+
+	/**
+	 * Start or retire {@link Fetcher} threads, such that there are
+	 * {@code numThreads} active ones.
+	 */
+	private void resizeFetcherPool( final int numThreads )
+	{
+		synchronized ( fetchers )
+		{
+			while ( fetchers.size() < numThreads )
+			{
+				final Fetcher f = new Fetcher();
+				f.setDaemon( true );
+				f.setName( "Fetcher-" + fetcherId++ );
+				fetchers.add( f );
+				f.start();
+			}
+			while ( fetchers.size() > numThreads )
+				fetchers.remove( fetchers.size() - 1 ).retire();
+			metrics.setNumFetcherThreads( fetchers.size() );
+		}
+	}
+
+	/**
+	 * Set a fixed number of {@link Fetcher} threads. This disables
+	 * {@link #setAdaptiveNumFetcherThreads(int, int) adaptive} sizing.
+	 */
+	public void setNumFetcherThreads( final int numThreads )
+	{
+		concurrencyController = null;
+		resizeFetcherPool( Math.max( 1, numThreads ) );
+	}
+
+	/**
+	 * Let the number of {@link Fetcher} threads adapt to the observed load
+	 * throughput, load latency, and queue backlog (see
+	 * {@link FetcherConcurrencyController}).
+	 *
+	 * @param minNumThreads
+	 *            minimum number of fetcher threads.
+	 * @param maxNumThreads
+	 *            maximum number of fetcher threads.
+	 */
+	public void setAdaptiveNumFetcherThreads( final int minNumThreads, final int maxNumThreads )
+	{
+		setFetcherConcurrencyController( new FetcherConcurrencyController( minNumThreads, maxNumThreads ) );
+	}
+
+	/**
+	 * Set the {@link FetcherConcurrencyController} that decides the number of
+	 * {@link Fetcher} threads. If {@code null}, the current number of threads
+	 * is kept fixed.
+	 */
+	public void setFetcherConcurrencyController( final FetcherConcurrencyController controller )
+	{
+		concurrencyController = controller;
+		nextConcurrencyUpdateNanos = System.nanoTime();
+		if ( controller != null )
+			resizeFetcherPool( Math.max( controller.getMinNumThreads(), Math.min( controller.getMaxNumThreads(), getNumFetcherThreads() ) ) );
+	}
+
+	public FetcherConcurrencyController getFetcherConcurrencyController()
+	{
+		return concurrencyController;
+	}
+
+	/**
+	 * Enable or disable asynchronous loading. If enabled, the {@link Fetcher}
+	 * threads are stopped, and a single dispatcher thread starts
+	 * {@link AsyncCacheArrayLoader#loadArrayAsync(int, int, int, int[], long[], AsyncCacheArrayLoader.Callback)
+	 * asynchronous loads} in the priority order of the fetch queues, keeping
+	 * at most {@code maxNumRequestsInFlight} loads in flight. This requires
+	 * that the {@link CacheArrayLoader} is an {@link AsyncCacheArrayLoader}
+	 * which {@link AsyncCacheArrayLoader#isAsyncSupported() supports}
+	 * asynchronous loading. Otherwise, this does nothing. Asynchronous loading
+	 * is disabled by default.
+	 *
+	 * @param maxNumRequestsInFlight
+	 *            maximum number of concurrent asynchronous loads, or 0 to
+	 *            disable asynchronous loading.
+	 * @return whether asynchronous loading is enabled.
+	 */
+	public boolean setMaxNumRequestsInFlight( final int maxNumRequestsInFlight )
+	{
+		synchronized ( fetchers )
+		{
+			final AsyncDispatcher previous = asyncDispatcher;
+			if ( previous != null )
+			{
+				previous.shutdown();
+				asyncDispatcher = null;
+			}
+
+			if ( maxNumRequestsInFlight > 0 && asyncLoader != null && asyncLoader.isAsyncSupported() )
+			{
+				if ( previous == null )
+					numFetcherThreadsBeforeAsync = getNumFetcherThreads();
+				final AsyncDispatcher d = new AsyncDispatcher( maxNumRequestsInFlight );
+				d.setDaemon( true );
+				d.setName( "AsyncFetcher" );
+				asyncDispatcher = d;
+				resizeFetcherPool( 0 );
+				d.start();
+				return true;
+			}
+			else
+			{
+				if ( previous != null )
+					resizeFetcherPool( numFetcherThreadsBeforeAsync );
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Whether requests are loaded asynchronously (see
+	 * {@link #setMaxNumRequestsInFlight(int)}).
+	 */
+	public boolean isAsyncLoading()
+	{
+		return asyncDispatcher != null;
+	}
+
+	/**
+	 * Get the current number of {@link Fetcher} threads.
+	 */
+	public int getNumFetcherThreads()
+	{
+		return fetchers.size();
+	}
+
+	/**
+	 * Ask the {@link #concurrencyController} (if there is one) for the number
+	 * of {@link Fetcher} threads, if it is due for an update. This is called
+	 * by the fetchers after each load, and by {@link #prepareNextFrame()}.
+	 */
+	protected void adjustNumFetcherThreads()
+	{
+		final FetcherConcurrencyController controller = concurrencyController;
+		if ( controller == null || asyncDispatcher != null || System.nanoTime() - nextConcurrencyUpdateNanos < 0 )
+			return;
+		synchronized ( controller )
+		{
+			final long now = System.nanoTime();
+			if ( !controller.isDue( now ) )
+				return;
+			final LatencyHistogram latency = metrics.getLoadLatency();
+			final int n = controller.update( now,
+					metrics.getNumCellsLoaded(),
+					latency.getTotalNanos(),
+					latency.getCount(),
+					queue.size(),
+					getNumFetcherThreads() );
+			nextConcurrencyUpdateNanos = now + FetcherConcurrencyController.DEFAULT_INTERVAL_NANOS;
+			if ( concurrencyController == controller && asyncDispatcher == null )
+				resizeFetcherPool( n );
+		}
+	}
+
+	/**
+	 * Load the data for the {@link Entry}, if
+	 * <ul>
+	 * <li>the {@link Entry} is (still) in the cache, and
+	 * <li>the data is not yet loaded (valid).
+	 * </ul>
+	 *
+	 * @param entry
+	 * @throws InterruptedException
+	 */
+	protected void loadIfNotValid( final Entry entry ) throws InterruptedException
+	{
+		if ( weakReferenceCache.get( entry.key ) == entry.ref )
+		{
+			if ( batchLoader != null && diskCache == null )
+				loadBatchIfNotValid( entry );
+			else
+				loadEntryIfNotValid( entry );
+		}
+	}
+
+	/**
+	 * Load the data for the {@link Entry}, if it is not yet loaded (valid),
+	 * together with adjacent entries that are enqueued for loading as well.
+	 * Adjacent entries are collected along dimension 0 (that is, by
+	 * incrementing and decrementing the cell index), up to
+	 * {@link BatchCacheArrayLoader#getMaxBatchSize()} cells. They are loaded
+	 * in one {@link BatchCacheArrayLoader#loadArrays(int, int, int, int[][], long[][], List)
+	 * batch}.
+	 *
+	 * @throws InterruptedException
+	 */
+	protected void loadBatchIfNotValid( final Entry entry ) throws InterruptedException
+	{
+		if ( entry.data.getData().isValid() )
+			return;
+
+		final CompressedCellTier< A > tier = compressedTier;
+		if ( tier != null && tier.contains( entry.key ) )
+		{
+			loadEntryIfNotValid( entry );
+			return;
+		}
+
+		final int maxBatchSize = batchLoader.getMaxBatchSize();
+		final ArrayList< Entry > batch = new ArrayList< Entry >( maxBatchSize );
+		batch.add( entry );
+		for ( Entry last = entry; batch.size() < maxBatchSize; )
+		{
+			final Entry next = getPendingEntry( last.key + 1 );
+			if ( next == null || !isAdjacent( last, next ) || ( tier != null && tier.contains( next.key ) ) )
+				break;
+			batch.add( next );
+			last = next;
+		}
+		for ( Entry first = entry; batch.size() < maxBatchSize; )
+		{
+			final Entry prev = getPendingEntry( first.key - 1 );
+			if ( prev == null || !isAdjacent( prev, first ) || ( tier != null && tier.contains( prev.key ) ) )
+				break;
+			batch.add( 0, prev );
+			first = prev;
+		}
+
+		if ( batch.size() == 1 )
+		{
+			loadEntryIfNotValid( entry );
+			return;
+		}
+
+		final int numCells = batch.size();
+		final int[][] dims = new int[ numCells ][];
+		final long[][] mins = new long[ numCells ][];
+		for ( int i = 0; i < numCells; ++i )
+		{
+			final VolatileCell< A > c = batch.get( i ).data;
+			dims[ i ] = c.getDimensions();
+			mins[ i ] = c.getMin();
+		}
+		final ArrayList< A > arrays = new ArrayList< A >( numCells );
+		final long t0 = System.nanoTime();
+		final boolean permit = acquireLoadPermit( entry );
+		try
+		{
+			batchLoader.loadArrays( entry.timepoint, entry.setup, entry.level, dims, mins, arrays );
+		}
+		finally
+		{
+			if ( permit )
+				manager.releaseLoadPermit();
+		}
+		long numBytes = 0;
+		for ( int i = 0; i < numCells; ++i )
+			numBytes += sizeInBytes( dims[ i ] );
+		loaded( numCells, numBytes, System.nanoTime() - t0 );
+
+		for ( int i = 0; i < numCells; ++i )
+			setLoadedData( batch.get( i ), dims[ i ], mins[ i ], i < arrays.size() ? arrays.get( i ) : null );
+		compressEvictedEntries();
+	}
+
+	/**
+	 * Set the data of an {@link Entry} that was loaded outside of the
+	 * {@link Entry}'s lock, unless it has become valid in the meantime. Wake
+	 * up threads waiting for the {@link Entry}. If {@code data} is not
+	 * {@link #isLoaded(VolatileAccess) loaded}, the load is handled as
+	 * {@link #loadFailed(Entry) failed}.
+	 */
+	private void setLoadedData( final Entry entry, final int[] cellDims, final long[] cellMin, final A data )
+	{
+		if ( !isLoaded( data ) )
+		{
+			loadFailed( entry );
+			return;
+		}
+		synchronized ( entry )
+		{
+			if ( !entry.data.getData().isValid() )
+			{
+				entry.data = createLoadedCell( cellDims, cellMin, data );
+				entry.enqueueFrame = Long.MAX_VALUE;
+				makeResident( entry, sizeInBytes( entry.data ) );
+				entry.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Start an asynchronous load of the data for the {@link Entry}, if
+	 * <ul>
+	 * <li>the {@link Entry} is (still) in the cache,
+	 * <li>the data is not yet loaded (valid), and
+	 * <li>no asynchronous load is in flight for the {@link Entry} already.
+	 * </ul>
+	 * If there is a {@link CompressedCellTier} or {@link DiskCellCache}
+	 * containing the data, it is loaded from there immediately instead. When the asynchronous load completes, a
+	 * permit is released to {@code window}.
+	 *
+	 * @return true, if an asynchronous load was started.
+	 */
+	protected boolean loadAsyncIfNotValid( final Entry entry, final Semaphore window )
+	{
+		if ( weakReferenceCache.get( entry.key ) != entry.ref )
+			return false;
+		synchronized ( entry )
+		{
+			if ( entry.loadingAsync || entry.data.getData().isValid() )
+				return false;
+			entry.loadingAsync = true;
+		}
+
+		final int[] cellDims = entry.data.getDimensions();
+		final long[] cellMin = entry.data.getMin();
+		final DiskCellCache< A > disk = isPersistentKey( entry.key ) ? diskCache : null;
+		final int numElements = numElements( cellDims );
+		final CompressedCellTier< A > tier = compressedTier;
+		if ( tier != null || disk != null )
+		{
+			A data = tier == null ? null : tier.get( entry.key, numElements );
+			if ( data == null && disk != null )
+				data = disk.get( entry.key, numElements );
+			if ( data != null )
+			{
+				setLoadedData( entry, cellDims, cellMin, data );
+				finishAsyncLoad( entry );
+				return false;
+			}
+		}
+
+		final long t0 = System.nanoTime();
+		final AsyncCacheArrayLoader.Callback< A > callback = new AsyncCacheArrayLoader.Callback< A >()
+		{
+			/**
+			 * Guards against a loader that calls back more than once, e.g.,
+			 * after throwing from {@code loadArrayAsync}.
+			 */
+			private final AtomicBoolean done = new AtomicBoolean();
+
+			@Override
+			public void loaded( final A data )
+			{
+				if ( done.getAndSet( true ) )
+					return;
+				try
+				{
+					VolatileGlobalCellCache.this.loaded( 1, sizeInBytes( cellDims ), System.nanoTime() - t0 );
+					if ( isLoaded( data ) )
+					{
+						if ( disk != null )
+							disk.put( entry.key, data, numElements );
+						setLoadedData( entry, cellDims, cellMin, data );
+						compressEvictedEntries();
+					}
+				}
+				finally
+				{
+					finishAsyncLoad( entry );
+					window.release();
+				}
+				if ( !isLoaded( data ) )
+					loadFailed( entry );
+			}
+
+			@Override
+			public void failed( final Exception e )
+			{
+				if ( done.getAndSet( true ) )
+					return;
+				finishAsyncLoad( entry );
+				window.release();
+				loadFailed( entry );
+			}
+		};
+		try
+		{
+			asyncLoader.loadArrayAsync( entry.timepoint, entry.setup, entry.level, cellDims, cellMin, callback );
+		}
+		catch ( final RuntimeException e )
+		{
+			callback.failed( e );
+		}
+		return true;
+	}
+
+	private void finishAsyncLoad( final Entry entry )
+	{
+		synchronized ( entry )
+		{
+			entry.loadingAsync = false;
+		}
+	}
+
+	/**
+	 * Get the {@link Entry} for the given key if it is in the cache, not yet
+	 * valid, and has been enqueued for loading. Otherwise return {@code null}.
+	 */
+	private Entry getPendingEntry( final long key )
+	{
+		final MyWeakReference ref = weakReferenceCache.get( key );
+		if ( ref == null )
+			return null;
+		final Entry entry = ref.get();
+		if ( entry == null || entry.enqueueFrame < 0 || isStale( entry ) || entry.data.getData().isValid() )
+			return null;
+		return entry;
+	}
+
+	/**
+	 * Check whether cell {@code b} immediately follows cell {@code a} along
+	 * dimension 0 (with the same (timepoint, setup, level)), such that
+	 * together they form a box.
+	 */
+	private boolean isAdjacent( final Entry a, final Entry b )
+	{
+		if ( ( a.key >>> 32 ) != ( b.key >>> 32 ) )
+			return false;
+		final int[] aDims = a.data.getDimensions();
+		final long[] aMin = a.data.getMin();
+		final int[] bDims = b.data.getDimensions();
+		final long[] bMin = b.data.getMin();
+		if ( aMin[ 0 ] + aDims[ 0 ] != bMin[ 0 ] )
+			return false;
+		for ( int d = 1; d < aDims.length; ++d )
+			if ( aMin[ d ] != bMin[ d ] || aDims[ d ] != bDims[ d ] )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Load the data for the {@link Entry}, if it is not yet loaded (valid).
+	 * @throws InterruptedException
+	 */
+	protected void loadEntryIfNotValid( final Entry entry ) throws InterruptedException
+	{
+		final VolatileCell< A > c = entry.data;
+		if ( !c.getData().isValid() )
+		{
+			final int[] cellDims = c.getDimensions();
+			final long[] cellMin = c.getMin();
+			boolean failed = false;
+			synchronized ( entry )
+			{
+				if ( !entry.data.getData().isValid() )
+				{
+					final A data = loadArray( entry, cellDims, cellMin );
+					if ( isLoaded( data ) )
+					{
+						final VolatileCell< A > cell = createLoadedCell( cellDims, cellMin, data );
+						entry.data = cell;
+						entry.enqueueFrame = Long.MAX_VALUE;
+						makeResident( entry, sizeInBytes( cell ) );
+						entry.notifyAll();
+					}
+					else
+						failed = true;
+				}
+			}
+			if ( failed )
+				loadFailed( entry );
+			compressEvictedEntries();
+		}
+	}
+
+	/**
+	 * Load the data array for an {@link Entry}. If there is a
+	 * {@link CompressedCellTier}, try to decompress the data from there
+	 * first, then try the {@link DiskCellCache}. Otherwise use the
+	 * {@link CacheArrayLoader}, and store the result in the
+	 * {@link DiskCellCache} if it is {@link #isLoaded(VolatileAccess) loaded}.
+	 */
+	protected A loadArray( final Entry entry, final int[] cellDims, final long[] cellMin ) throws InterruptedException
+	{
+		final int numElements = numElements( cellDims );
+		final CompressedCellTier< A > tier = compressedTier;
+		if ( tier != null )
+		{
+			final A data = tier.get( entry.key, numElements );
+			if ( data != null )
+				return data;
+		}
+
+		final DiskCellCache< A > disk = isPersistentKey( entry.key ) ? diskCache : null;
+		if ( disk == null )
+			return loadArrayFromLoader( entry, cellDims, cellMin );
+
+		A data = disk.get( entry.key, numElements );
+		if ( data == null )
+		{
+			data = loadArrayFromLoader( entry, cellDims, cellMin );
+			if ( isLoaded( data ) )
+				disk.put( entry.key, data, numElements );
+		}
+		return data;
+	}
+
+	/**
+	 * Whether {@code data} returned by a {@link CacheArrayLoader} holds
+	 * successfully loaded data. Failed loads return {@code null} or an invalid
+	 * array.
+	 */
+	private static boolean isLoaded( final VolatileAccess data )
+	{
+		return data != null && data.isValid();
+	}
+
+	/**
+	 * Maximum number of times a failed load is retried within a frame (see
+	 * {@link #loadFailed(Entry)}).
+	 */
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	/**
+	 * Handle a failed load of the data for the {@link Entry}. The data stays
+	 * invalid and is neither cached nor persisted. If the {@link Entry} was
+	 * enqueued for loading, it is put back into the {@link #queue}, up to
+	 * {@link #MAX_LOAD_ATTEMPTS} times in a row. To back off, every retry is
+	 * enqueued one priority level lower than the previous attempt, without
+	 * deadline, and at the back of its level, so that other requests are
+	 * served before a failing source is tried again. After that, it is
+	 * enqueued again only when it is requested in a later frame.
+	 */
+	private void loadFailed( final Entry entry )
+	{
+		metrics.loadFailed();
+		synchronized ( entry )
+		{
+			if ( entry.data.getData().isValid() || entry.enqueueFrame < 0 )
+				return;
+			if ( ++entry.numFailedLoads < MAX_LOAD_ATTEMPTS )
+			{
+				entry.enqueuePriority = Math.min( entry.enqueuePriority + 1, queue.getNumPriorities() - 1 );
+				entry.enqueueDeadline = BlockingFetchQueues.NO_DEADLINE;
+				queue.put( entry, entry.enqueuePriority, false, BlockingFetchQueues.NO_DEADLINE );
+			}
+			else
+				entry.numFailedLoads = 0;
+		}
+	}
+
+	/**
+	 * Load the data array for an {@link Entry} using the
+	 * {@link CacheArrayLoader}, and record the load in the {@link #metrics}.
+	 */
+	private A loadArrayFromLoader( final Entry entry, final int[] cellDims, final long[] cellMin ) throws InterruptedException
+	{
+		final long t0 = System.nanoTime();
+		final A buffer = arrayPool == null ? null : arrayPool.take( numElements( cellDims ) );
+		final A data;
+		final boolean permit = acquireLoadPermit( entry );
+		try
+		{
+			data = ( buffer == null )
+					? loader.loadArray( entry.timepoint, entry.setup, entry.level, cellDims, cellMin )
+					: recyclingLoader.loadArray( entry.timepoint, entry.setup, entry.level, cellDims, cellMin, buffer );
+		}
+		finally
+		{
+			if ( permit )
+				manager.releaseLoadPermit();
+		}
+		loaded( 1, sizeInBytes( cellDims ), System.nanoTime() - t0 );
+		return data;
+	}
+
+	/**
+	 * If called from a {@link Fetcher} and there is a {@link #manager}, wait
+	 * for a load permit. This is only called right before the loader is
+	 * invoked, so requests that turn out to be valid or stale do not hold up
+	 * other loads.
+	 *
+	 * @return whether a permit was acquired, which must then be released
+	 *         after the load.
+	 */
+	private boolean acquireLoadPermit( final Entry entry )
+	{
+		if ( manager == null || !( Thread.currentThread() instanceof VolatileGlobalCellCache.Fetcher ) )
+			return false;
+		manager.acquireLoadPermit( entry.enqueuePriority );
+		return true;
+	}
+
+	/**
+	 * Compress the data of {@link #evictedEntries} into the
+	 * {@link #compressedTier}, and release their data arrays to the
+	 * {@link #arrayPool}. This is called after loading, outside of any locks.
+	 */
+	private void compressEvictedEntries()
+	{
+		for ( Entry entry = evictedEntries.poll(); entry != null; entry = evictedEntries.poll() )
+		{
+			final VolatileCell< A > cell = entry.data;
+			final int numElements = numElements( cell.getDimensions() );
+			final CompressedCellTier< A > tier = compressedTier;
+			if ( tier != null && cell.getData().isValid() )
+				tier.put( entry.key, cell.getData(), numElements );
+			recycle( cell );
+		}
+	}
+
+	/**
+	 * Hand the storage of the data array of an evicted cell to the
+	 * {@link #arrayPool}. The cell may still be used by renderers or
+	 * {@link net.imglib2.RandomAccess}es, so the storage is reused only after the data
+	 * array has become unreachable.
+	 */
+	private void recycle( final VolatileCell< A > cell )
+	{
+		if ( arrayPool != null && !cell.isUniform() )
+		{
+			final A data = cell.getData();
+			arrayPool.releaseWhenUnreachable( data, recyclingLoader.wrapStorage( data ), numElements( cell.getDimensions() ) );
+		}
+	}
+
+	/**
+	 * Record a load operation of the {@link CacheArrayLoader} in the
+	 * {@link #metrics} and the {@link IoStatistics} of the current thread
+	 * group.
+	 */
+	private void loaded( final int numCells, final long numBytes, final long nanos )
+	{
+		metrics.loaded( numCells, numBytes, nanos );
+		cacheIoTiming.getThreadGroupIoStatistics().incIoBytes( numBytes );
+	}
+
+	/**
+	 * Keep a loaded {@link Entry} in memory: in {@link #pinnedEntries} if it
+	 * is {@link #isPinned(int, int) pinned}, otherwise in the
+	 * {@link #memoryBudget}.
+	 */
+	private void makeResident( final Entry entry, final long sizeInBytes )
+	{
+		if ( manager != null && !registered )
+		{
+			registered = true;
+			manager.register( this );
 		}
-
-		public void wakeUp()
+		synchronized ( pinnedEntries )
 		{
-			pauseUntilTimeMillis = 0;
-			synchronized ( lock )
+			if ( isPinned( entry.timepoint, entry.level ) )
 			{
-				lock.notify();
+				if ( pinnedEntries.add( entry ) )
+					metrics.pinned( 1, sizeInBytes );
+				return;
 			}
 		}
+		memoryBudget.add( entry, sizeInBytes, budgetShare );
 	}
 
 	/**
-	 * pause all {@link Fetcher} threads for the specified number of milliseconds.
+	 * Whether cells of the given timepoint and level are pinned.
 	 */
-	public void pauseFetcherThreadsFor( final long ms )
+	protected boolean isPinned( final int timepoint, final int level )
 	{
-		pauseFetcherThreadsUntil( System.currentTimeMillis() + ms );
+		return level >= pinnedMinLevel || ( timepoint >= pinnedMinTimepoint && timepoint <= pinnedMaxTimepoint );
 	}
 
 	/**
-	 * pause all {@link Fetcher} threads until the given time (see
-	 * {@link System#currentTimeMillis()}).
+	 * Pin all cells of mipmap levels {@code >= minLevel}, that is, of the
+	 * coarsest levels. Loaded pinned cells are never evicted. This replaces
+	 * previously pinned levels.
+	 * <p>
+	 * To load the pinned cells in the background, use
+	 * {@link #preloadPinned(CellGrids)}.
+	 *
+	 * @param minLevel
+	 *            finest pinned level, or {@link Integer#MAX_VALUE} to pin no
+	 *            levels.
 	 */
-	public void pauseFetcherThreadsUntil( final long timeMillis )
+	public void pinLevels( final int minLevel )
 	{
-		for ( final Fetcher f : fetchers )
-			f.pauseUntil( timeMillis );
+		synchronized ( pinnedEntries )
+		{
+			pinnedMinLevel = minLevel;
+			updatePinnedEntries();
+		}
 	}
 
 	/**
-	 * Wake up all Fetcher threads immediately. This ends any
-	 * {@link #pauseFetcherThreadsFor(long)} and
-	 * {@link #pauseFetcherThreadsUntil(long)} set earlier.
+	 * Pin all cells of timepoints in the range {@code [minTimepoint, maxTimepoint]}
+	 * (all levels). Loaded pinned cells are never evicted. This replaces
+	 * previously pinned timepoints.
+	 * <p>
+	 * To load the pinned cells in the background, use
+	 * {@link #preloadPinned(CellGrids)}.
 	 */
-	public void wakeFetcherThreads()
+	public void pinTimepoints( final int minTimepoint, final int maxTimepoint )
 	{
-		for ( final Fetcher f : fetchers )
-			f.wakeUp();
+		synchronized ( pinnedEntries )
+		{
+			pinnedMinTimepoint = minTimepoint;
+			pinnedMaxTimepoint = maxTimepoint;
+			updatePinnedEntries();
+		}
 	}
 
-	private final ArrayList< Fetcher > fetchers;
-
-	private final CacheArrayLoader< A > loader;
-
-	private final CacheIoTiming cacheIoTiming;
-
 	/**
-	 *
-	 * @param loader
-	 * @param maxNumTimepoints
-	 *            the highest occurring timepoint id plus 1. This is only used to
-	 *            compute a hashcode, thus it can be initialized with a best
-	 *            guess if necessary.
-	 * @param maxNumSetups
-	 *            the highest occurring setup id plus 1. This is only used to
-	 *            compute a hashcode, thus it can be initialized with a best
-	 *            guess if necessary.
-	 * @param maxNumLevels
-	 *            the highest occurring mipmap level plus 1.
-	 * @param numFetcherThreads
+	 * Unpin all levels and timepoints. Previously pinned cells are handed to
+	 * the {@link ClockMemoryBudget} and may be evicted from now on.
 	 */
-	public VolatileGlobalCellCache( final CacheArrayLoader< A > loader, final int maxNumTimepoints, final int maxNumSetups, final int maxNumLevels, final int numFetcherThreads )
+	public void unpinAll()
 	{
-		this.loader = loader;
-		this.maxNumTimepoints = maxNumTimepoints;
-		this.maxNumSetups = maxNumSetups;
-		this.maxNumLevels = maxNumLevels;
+		synchronized ( pinnedEntries )
+		{
+			pinnedMinLevel = Integer.MAX_VALUE;
+			pinnedMinTimepoint = 0;
+			pinnedMaxTimepoint = -1;
+			updatePinnedEntries();
+		}
+	}
 
-		cacheIoTiming = new CacheIoTiming();
-		queue = new BlockingFetchQueues< Key >( maxNumLevels );
-		fetchers = new ArrayList< Fetcher >();
-		for ( int i = 0; i < numFetcherThreads; ++i )
+	/**
+	 * Move loaded entries between {@link #pinnedEntries} and the
+	 * {@link #memoryBudget}, according to the current pinning. Must be called
+	 * while holding the {@link #pinnedEntries} lock.
+	 */
+	private void updatePinnedEntries()
+	{
+		final Iterator< Entry > it = pinnedEntries.iterator();
+		while ( it.hasNext() )
 		{
-			final Fetcher f = new Fetcher();
-			f.setDaemon( true );
-			f.setName( "Fetcher-" + i );
-			fetchers.add( f );
-			f.start();
+			final Entry entry = it.next();
+			if ( !isPinned( entry.timepoint, entry.level ) )
+			{
+				it.remove();
+				final long size = sizeInBytes( entry.data );
+				metrics.pinned( -1, -size );
+				memoryBudget.add( entry, size, budgetShare );
+			}
+		}
+		for ( final MyWeakReference ref : weakReferenceCache.values() )
+		{
+			final Entry entry = ref.get();
+			// the entry might be evicted concurrently, so only pin it if it
+			// was actually removed from the memory budget
+			if ( entry != null && isPinned( entry.timepoint, entry.level ) && memoryBudget.remove( entry ) )
+			{
+				pinnedEntries.add( entry );
+				metrics.pinned( 1, sizeInBytes( entry.data ) );
+			}
 		}
 	}
 
 	/**
-	 * Load the data for the {@link VolatileCell} referenced by k, if
-	 * <ul>
-	 * <li>the {@link VolatileCell} is in the cache, and
-	 * <li>the data is not yet loaded (valid).
-	 * </ul>
+	 * Start loading all {@link #isPinned(int, int) pinned} cells in the
+	 * background, coarsest level first. Cells are loaded by a separate
+	 * thread, one at a time. A preload that is still running is stopped.
 	 *
-	 * @param k
-	 * @throws InterruptedException
+	 * @param grids
+	 *            provides the cell grids of the images.
 	 */
-	protected void loadIfNotValid( final Key k ) throws InterruptedException
+	public synchronized void preloadPinned( final CellGrids grids )
 	{
-		final Reference< Entry > ref = softReferenceCache.get( k );
-		if ( ref != null )
+		stopPreload();
+		preloader = new Preloader( grids );
+		preloader.setDaemon( true );
+		preloader.setPriority( Thread.MIN_PRIORITY );
+		preloader.setName( "Preloader" );
+		preloader.start();
+	}
+
+	/**
+	 * Stop a running {@link #preloadPinned(CellGrids) preload}.
+	 */
+	public synchronized void stopPreload()
+	{
+		if ( preloader != null )
 		{
-			final Entry entry = ref.get();
-			if ( entry != null )
-				loadEntryIfNotValid( entry );
+			preloader.interrupt();
+			preloader = null;
 		}
 	}
 
 	/**
-	 * Load the data for the {@link Entry}, if it is not yet loaded (valid).
-	 * @throws InterruptedException
+	 * Stop all loading threads, remove all cells, and unregister from the
+	 * {@link CacheManager}. The cache must not be used afterwards.
 	 */
-	protected void loadEntryIfNotValid( final Entry entry ) throws InterruptedException
+	public void close()
 	{
-		final VolatileCell< A > c = entry.data;
-		if ( !c.getData().isValid() )
+		stopPreload();
+		concurrencyController = null;
+		setMaxNumRequestsInFlight( 0 );
+		resizeFetcherPool( 0 );
+		clearCache();
+	}
+
+	/**
+	 * Get the number of elements in a cell with the given dimensions.
+	 */
+	protected static int numElements( final int[] cellDims )
+	{
+		int numElements = 1;
+		for ( int d = 0; d < cellDims.length; ++d )
+			numElements *= cellDims[ d ];
+		return numElements;
+	}
+
+	/**
+	 * Get the number of bytes occupied by the data of a cell with the given
+	 * dimensions.
+	 */
+	protected long sizeInBytes( final int[] cellDims )
+	{
+		return ( long ) numElements( cellDims ) * loader.getBytesPerElement();
+	}
+
+	/**
+	 * Nominal size accounted for a {@link VolatileCell#isUniform() uniform}
+	 * cell, whose data array is shared.
+	 */
+	protected static final long UNIFORM_CELL_SIZE_IN_BYTES = 256;
+
+	/**
+	 * Get the number of bytes accounted for a loaded cell in the memory
+	 * budget.
+	 */
+	protected long sizeInBytes( final VolatileCell< A > cell )
+	{
+		return cell.isUniform() ? UNIFORM_CELL_SIZE_IN_BYTES : sizeInBytes( cell.getDimensions() );
+	}
+
+	/**
+	 * Create a {@link VolatileCell} for freshly loaded {@code data}. If the
+	 * {@link #uniformLoader} detects that the data is uniform, the cell
+	 * shares a flyweight array instead, and {@code data} is recycled.
+	 */
+	private VolatileCell< A > createLoadedCell( final int[] cellDims, final long[] cellMin, final A data )
+	{
+		if ( uniformLoader != null )
 		{
-			final int[] cellDims = c.getDimensions();
-			final long[] cellMin = c.getMin();
-			final Key k = entry.key;
-			final int timepoint = k.timepoint;
-			final int setup = k.setup;
-			final int level = k.level;
-			synchronized ( entry )
+			final int numElements = numElements( cellDims );
+			final A uniform = uniformLoader.getUniformArray( data, numElements );
+			if ( uniform != null )
 			{
-				if ( !entry.data.getData().isValid() )
-				{
-					final VolatileCell< A > cell = new VolatileCell< A >( cellDims, cellMin, loader.loadArray( timepoint, setup, level, cellDims, cellMin ) );
-					entry.data = cell;
-					entry.enqueueFrame = Long.MAX_VALUE;
-					softReferenceCache.put( entry.key, new MySoftReference( entry, finalizeQueue ) );
-					entry.notifyAll();
-				}
+				if ( arrayPool != null && uniform != data )
+					arrayPool.release( data, numElements );
+				return new VolatileCell< A >( cellDims, cellMin, uniform, true );
 			}
 		}
+		return new VolatileCell< A >( cellDims, cellMin, data );
 	}
 
 	/**
@@ -343,12 +1739,23 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 * already.
 	 */
 	protected void enqueueEntry( final Entry entry, final int priority, final boolean enqueuToFront )
+	{
+		enqueueEntry( entry, priority, enqueuToFront, BlockingFetchQueues.NO_DEADLINE );
+	}
+
+	/**
+	 * Enqueue the {@link Entry} with a deadline (see
+	 * {@link BlockingFetchQueues#put(Object, int, boolean, long)}) if it hasn't
+	 * been enqueued for this frame already.
+	 */
+	protected void enqueueEntry( final Entry entry, final int priority, final boolean enqueuToFront, final long deadlineNanos )
 	{
 		if ( entry.enqueueFrame < currentQueueFrame )
 		{
 			entry.enqueueFrame = currentQueueFrame;
-			final Key k = entry.key;
-			queue.put( k, priority, enqueuToFront );
+			entry.enqueuePriority = priority;
+			entry.enqueueDeadline = deadlineNanos;
+			queue.put( entry, priority, enqueuToFront, deadlineNanos );
 			currentFrameEntries.add( entry );
 		}
 	}
@@ -359,6 +1766,15 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 * {@link Entry} if it hasn't been enqueued for this frame already.
 	 */
 	protected void loadOrEnqueue( final Entry entry, final int priority, final boolean enqueuToFront )
+	{
+		loadOrEnqueue( entry, priority, enqueuToFront, BlockingFetchQueues.NO_DEADLINE );
+	}
+
+	/**
+	 * Like {@link #loadOrEnqueue(Entry, int, boolean)}, but enqueue the
+	 * {@link Entry} with a deadline.
+	 */
+	protected void loadOrEnqueue( final Entry entry, final int priority, final boolean enqueuToFront, final long deadlineNanos )
 	{
 		final IoStatistics stats = cacheIoTiming.getThreadGroupIoStatistics();
 		final IoTimeBudget budget = stats.getIoTimeBudget();
@@ -369,7 +1785,7 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 			{
 				if ( entry.data.getData().isValid() )
 					return;
-				enqueueEntry( entry, priority, enqueuToFront );
+				enqueueEntry( entry, priority, enqueuToFront, deadlineNanos );
 				final long t0 = stats.getIoNanoTime();
 				stats.start();
 				try
@@ -384,7 +1800,7 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 			}
 		}
 		else
-			enqueueEntry( entry, priority, enqueuToFront );
+			enqueueEntry( entry, priority, enqueuToFront, deadlineNanos );
 	}
 
 	/**
@@ -423,18 +1839,20 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 */
 	public VolatileCell< A > getGlobalIfCached( final int timepoint, final int setup, final int level, final int index, final CacheHints cacheHints )
 	{
-		final Key k = new Key( timepoint, setup, level, index );
-		final Reference< Entry > ref = softReferenceCache.get( k );
+		final MyWeakReference ref = weakReferenceCache.get( key( timepoint, setup, level, index ) );
 		if ( ref != null )
 		{
 			final Entry entry = ref.get();
 			if ( entry != null )
 			{
+				entry.touch();
+				entry.lastAccessFrame = currentQueueFrame;
+				metrics.access( setup, level, entry.data.getData().isValid() );
 				switch ( cacheHints.getLoadingStrategy() )
 				{
 				case VOLATILE:
 				default:
-					enqueueEntry( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront() );
+					enqueueEntry( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront(), cacheHints.getDeadlineNanos() );
 					break;
 				case BLOCKING:
 					while ( true )
@@ -448,7 +1866,7 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 					break;
 				case BUDGETED:
 					if ( !entry.data.getData().isValid() )
-						loadOrEnqueue( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront() );
+						loadOrEnqueue( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront(), cacheHints.getDeadlineNanos() );
 					break;
 				case DONTLOAD:
 					break;
@@ -494,28 +1912,15 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 */
 	public VolatileCell< A > createGlobal( final int[] cellDims, final long[] cellMin, final int timepoint, final int setup, final int level, final int index, final CacheHints cacheHints )
 	{
-		final Key k = new Key( timepoint, setup, level, index );
-		Entry entry = null;
-
-		synchronized ( softReferenceCache )
-		{
-			final Reference< Entry > ref = softReferenceCache.get( k );
-			if ( ref != null )
-				entry = ref.get();
-
-			if ( entry == null )
-			{
-				final VolatileCell< A > cell = new VolatileCell< A >( cellDims, cellMin, loader.emptyArray( cellDims ) );
-				entry = new Entry( k, cell );
-				softReferenceCache.put( k, new MyWeakReference( entry, finalizeQueue ) );
-			}
-		}
+		final Entry entry = getOrCreateEntry( cellDims, cellMin, timepoint, setup, level, index );
+		entry.lastAccessFrame = currentQueueFrame;
+		metrics.access( setup, level, entry.data.getData().isValid() );
 
 		switch ( cacheHints.getLoadingStrategy() )
 		{
 		case VOLATILE:
 		default:
-			enqueueEntry( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront() );
+			enqueueEntry( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront(), cacheHints.getDeadlineNanos() );
 			break;
 		case BLOCKING:
 			while ( true )
@@ -529,7 +1934,7 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 			break;
 		case BUDGETED:
 			if ( !entry.data.getData().isValid() )
-				loadOrEnqueue( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront() );
+				loadOrEnqueue( entry, cacheHints.getQueuePriority(), cacheHints.isEnqueuToFront(), cacheHints.getDeadlineNanos() );
 			break;
 		case DONTLOAD:
 			break;
@@ -537,6 +1942,34 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 		return entry.data;
 	}
 
+	/**
+	 * Get the {@link Entry} with the specified coordinates, or create and add
+	 * a new (not yet loaded) one if it isn't in the cache.
+	 */
+	private Entry getOrCreateEntry( final int[] cellDims, final long[] cellMin, final int timepoint, final int setup, final int level, final int index )
+	{
+		final long k = key( timepoint, setup, level, index );
+		Entry entry = null;
+
+		synchronized ( weakReferenceCache )
+		{
+			final MyWeakReference ref = weakReferenceCache.get( k );
+			if ( ref != null )
+				entry = ref.get();
+
+			if ( entry == null )
+			{
+				final VolatileCell< A > cell = new VolatileCell< A >( cellDims, cellMin, loader.emptyArray( cellDims ) );
+				entry = new Entry( k, timepoint, setup, level, cell );
+				entry.ref = new MyWeakReference( entry, finalizeQueue );
+				weakReferenceCache.put( entry.ref );
+			}
+			else
+				entry.touch();
+		}
+		return entry;
+	}
+
 	/**
 	 * Prepare the cache for providing data for the "next frame":
 	 * <ul>
@@ -552,6 +1985,46 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 		currentFrameEntries.clear();
 		finalizeRemovedCacheEntries();
 		++currentQueueFrame;
+		adjustNumFetcherThreads();
+	}
+
+	/**
+	 * Drop pending requests that were enqueued more than
+	 * {@link #setNumValidQueueFrames(int) a number of} frames ago. Stale
+	 * requests are skipped by the fetcher threads. Loads of stale requests
+	 * that are in progress are interrupted. (Whether this actually aborts the
+	 * load depends on the {@link CacheArrayLoader}.)
+	 * <p>
+	 * This should be called when the view changes discontinuously, e.g., when
+	 * the timepoint changes, or the viewer jumps to a bookmark.
+	 */
+	@Override
+	public void cancelStaleRequests()
+	{
+		final int n = numValidQueueFrames;
+		final long frame = currentQueueFrame - n + 1;
+		if ( frame > oldestValidQueueFrame )
+			oldestValidQueueFrame = frame;
+		if ( n == 0 )
+			queue.clearAll();
+		for ( final Fetcher f : fetchers )
+			f.cancelIfStale();
+	}
+
+	/**
+	 * Set how many frames of requests are kept when
+	 * {@link #cancelStaleRequests()} is called. 0 means that all pending
+	 * requests are dropped (this is the default). 1 means that requests
+	 * enqueued in the current frame are kept, etc.
+	 */
+	public void setNumValidQueueFrames( final int numFrames )
+	{
+		numValidQueueFrames = Math.max( 0, numFrames );
+	}
+
+	public int getNumValidQueueFrames()
+	{
+		return numValidQueueFrames;
 	}
 
 	/**
@@ -585,17 +2058,344 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	}
 
 	/**
-	 * Remove all references to loaded data as well as all enqueued requests
-	 * from the cache.
+	 * Set a persistent second-level cache. Cells that are not in memory are
+	 * looked up in the {@link DiskCellCache} before they are loaded by the
+	 * {@link CacheArrayLoader}. Loaded cells are stored in the
+	 * {@link DiskCellCache}.
+	 *
+	 * @param diskCache
+	 *            the disk cache, or {@code null} to disable disk caching.
+	 */
+	public void setDiskCache( final DiskCellCache< A > diskCache )
+	{
+		this.diskCache = diskCache;
+	}
+
+	public DiskCellCache< A > getDiskCache()
+	{
+		return diskCache;
+	}
+
+	/**
+	 * Set the cell grids of the dataset. They are used to validate a
+	 * {@link #readManifest(Reader) manifest}.
+	 */
+	public void setCellGrids( final CellGrids cellGrids )
+	{
+		this.cellGrids = cellGrids;
+	}
+
+	/**
+	 * Describe everything that determines which cell a {@link DiskCellCache}
+	 * file holds: the layout of the {@link #key(int, int, int, int) keys},
+	 * the image and cell dimensions of every (timepoint, setup, level), and
+	 * the version of the dataset. Use this as the {@code datasetFingerprint}
+	 * of a {@link DiskCellCache}.
+	 *
+	 * @param grids
+	 *            the cell grids of the dataset.
+	 * @param version
+	 *            version of the dataset, e.g., an HTTP ETag or last
+	 *            modification time, or {@code null} if unknown.
+	 */
+	public String describeDataset( final CellGrids grids, final String version )
+	{
+		final StringBuilder layout = new StringBuilder();
+		for ( int timepoint = 0; timepoint < maxNumTimepoints; ++timepoint )
+			for ( int setup = 0; setup < maxNumSetups; ++setup )
+				for ( int level = 0; level < maxNumLevels; ++level )
+				{
+					final long[] dimensions = grids.getImageDimensions( timepoint, setup, level );
+					if ( dimensions == null )
+						continue;
+					layout.append( timepoint ).append( ' ' ).append( setup ).append( ' ' ).append( level );
+					layout.append( ' ' ).append( Arrays.toString( dimensions ) );
+					layout.append( ' ' ).append( Arrays.toString( grids.getCellDimensions( timepoint, setup, level ) ) );
+					layout.append( '\n' );
+				}
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append( "keys " ).append( packed ? "packed" : "interned" );
+		sb.append( " timepoints " ).append( maxNumTimepoints );
+		sb.append( " setups " ).append( maxNumSetups ).append( " setupBits " ).append( setupBits );
+		sb.append( " levels " ).append( maxNumLevels ).append( " levelBits " ).append( levelBits );
+		sb.append( "\nversion " ).append( version == null ? "unknown" : version );
+		sb.append( "\ngrids " ).append( sha1( layout.toString() ) );
+		return sb.toString();
+	}
+
+	private static String sha1( final String s )
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( s.getBytes( "UTF-8" ) );
+			final StringBuilder sb = new StringBuilder();
+			for ( final byte b : digest )
+				sb.append( String.format( "%02x", b & 0xff ) );
+			return sb.toString();
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * Set an in-memory tier of compressed cells. Cells that are evicted from
+	 * the {@link #getMemoryBudget() memory budget} are compressed into the
+	 * {@link CompressedCellTier}, and are decompressed from there (instead of
+	 * being loaded again) when they are requested.
+	 *
+	 * @param compressedTier
+	 *            the compressed tier, or {@code null} to disable it.
+	 */
+	public void setCompressedTier( final CompressedCellTier< A > compressedTier )
+	{
+		final CompressedCellTier< A > previous = this.compressedTier;
+		this.compressedTier = compressedTier;
+		if ( previous != null )
+			previous.clear();
+		if ( compressedTier == null )
+			compressEvictedEntries();
+	}
+
+	public CompressedCellTier< A > getCompressedTier()
+	{
+		return compressedTier;
+	}
+
+	/**
+	 * Get the {@link ClockMemoryBudget} that keeps track of loaded cells. If
+	 * this cache is registered with a {@link CacheManager}, this is shared
+	 * with other caches.
+	 */
+	public ClockMemoryBudget getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Get the part of the {@link #getMemoryBudget() memory budget} used by
+	 * this cache.
+	 */
+	public ClockMemoryBudget.Share getMemoryBudgetShare()
+	{
+		return budgetShare;
+	}
+
+	/**
+	 * Get the {@link CacheManager} this cache is registered with, or
+	 * {@code null}.
+	 */
+	public CacheManager getCacheManager()
+	{
+		return manager;
+	}
+
+	/**
+	 * Get the pool of data arrays of evicted cells, or {@code null} if the
+	 * {@link CacheArrayLoader} does not support recycling.
+	 */
+	public CellArrayPool< A > getArrayPool()
+	{
+		return arrayPool;
+	}
+
+	/**
+	 * Get the {@link CacheMetrics} of this cache.
+	 */
+	public CacheMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Write a manifest of the cells that are currently loaded, most recently
+	 * accessed first. The manifest can be used to warm up the cache in a later
+	 * session, see {@link #readManifest(Reader)}.
+	 * <p>
+	 * The manifest is plain text, with one line per cell: timepoint, setup,
+	 * level, index, number of dimensions <em>n</em>, <em>n</em> cell
+	 * dimensions, and <em>n</em> cell min coordinates, separated by spaces.
+	 *
+	 * @param writer
+	 *            the manifest is written to this {@link Writer}.
+	 * @param maxNumCells
+	 *            at most this many (the most recently accessed) cells are
+	 *            written.
+	 * @throws IOException
+	 */
+	public void writeManifest( final Writer writer, final int maxNumCells ) throws IOException
+	{
+		final ArrayList< Entry > entries = new ArrayList< Entry >();
+		for ( final MyWeakReference ref : weakReferenceCache.values() )
+		{
+			final Entry entry = ref.get();
+			if ( entry != null && entry.data.getData().isValid() )
+				entries.add( entry );
+		}
+		Collections.sort( entries, new Comparator< Entry >()
+		{
+			@Override
+			public int compare( final Entry e1, final Entry e2 )
+			{
+				final long f1 = e1.lastAccessFrame;
+				final long f2 = e2.lastAccessFrame;
+				return f1 > f2 ? -1 : ( f1 < f2 ? 1 : 0 );
+			}
+		} );
+
+		final StringBuilder line = new StringBuilder();
+		final int numCells = Math.min( entries.size(), maxNumCells );
+		for ( int i = 0; i < numCells; ++i )
+		{
+			final Entry entry = entries.get( i );
+			final int[] dims = entry.data.getDimensions();
+			final long[] min = entry.data.getMin();
+			line.setLength( 0 );
+			line.append( entry.timepoint ).append( ' ' );
+			line.append( entry.setup ).append( ' ' );
+			line.append( entry.level ).append( ' ' );
+			line.append( ( int ) entry.key ).append( ' ' );
+			line.append( dims.length );
+			for ( final int d : dims )
+				line.append( ' ' ).append( d );
+			for ( final long m : min )
+				line.append( ' ' ).append( m );
+			line.append( '\n' );
+			writer.write( line.toString() );
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Read a manifest written by {@link #writeManifest(Writer, int)}, and
+	 * enqueue the listed cells for loading, in the order of the manifest, with
+	 * the lowest priority. Cells that are already loaded, and lines that do not
+	 * match the dataset, are ignored.
+	 * <p>
+	 * Each line is checked against the {@link #setCellGrids(CellGrids) cell
+	 * grids} of the dataset: the cell index must be in range, and the cell
+	 * dimensions and min must be those of the cell with that index. Lines
+	 * that were written for a different version of the dataset are therefore
+	 * ignored. If no cell grids are set, the manifest is ignored.
+	 * <p>
+	 * The whole manifest is parsed before any cell is enqueued. If a line is
+	 * malformed, an {@link IOException} is thrown and nothing is enqueued.
+	 * <p>
+	 * This should be called before the first frame is rendered. Requests
+	 * that are not handled during the first frame are moved to the prefetch
+	 * queue by {@link #prepareNextFrame()}.
+	 *
+	 * @param reader
+	 *            the manifest is read from this {@link Reader}.
+	 * @return the number of enqueued cells.
+	 * @throws IOException
+	 *             if the manifest could not be read, or is malformed.
+	 */
+	public int readManifest( final Reader reader ) throws IOException
+	{
+		final CellGrids grids = cellGrids;
+		if ( grids == null )
+			return 0;
+
+		// parse all lines first, so that a corrupt manifest is ignored as a whole
+		final ArrayList< long[] > lines = new ArrayList< long[] >();
+		final BufferedReader in = new BufferedReader( reader );
+		int lineNumber = 0;
+		for ( String line = in.readLine(); line != null; line = in.readLine() )
+		{
+			++lineNumber;
+			final String trimmed = line.trim();
+			if ( trimmed.isEmpty() )
+				continue;
+			final String[] fields = trimmed.split( "\\s+" );
+			try
+			{
+				if ( fields.length < 5 || fields.length != 5 + 2 * Integer.parseInt( fields[ 4 ] ) )
+					throw new IOException( "malformed manifest line " + lineNumber + ": \"" + line + "\"" );
+				final long[] values = new long[ fields.length ];
+				for ( int i = 0; i < fields.length; ++i )
+					values[ i ] = i < 5 ? Integer.parseInt( fields[ i ] ) : Long.parseLong( fields[ i ] );
+				lines.add( values );
+			}
+			catch ( final NumberFormatException e )
+			{
+				throw new IOException( "malformed manifest line " + lineNumber + ": \"" + line + "\"", e );
+			}
+		}
+
+		int numEnqueued = 0;
+		for ( final long[] values : lines )
+		{
+			final int timepoint = ( int ) values[ 0 ];
+			final int setup = ( int ) values[ 1 ];
+			final int level = ( int ) values[ 2 ];
+			final int index = ( int ) values[ 3 ];
+			final int n = ( int ) values[ 4 ];
+			if ( timepoint < 0 || timepoint >= maxNumTimepoints ||
+					setup < 0 || setup >= maxNumSetups ||
+					level < 0 || level >= maxNumLevels )
+				continue;
+			final long[] dimensions = grids.getImageDimensions( timepoint, setup, level );
+			if ( dimensions == null || dimensions.length != n )
+				continue;
+			final int[] cellDimensions = grids.getCellDimensions( timepoint, setup, level );
+			if ( index < 0 || index >= numCells( dimensions, cellDimensions ) )
+				continue;
+			final int[] cellDims = new int[ n ];
+			final long[] cellMin = new long[ n ];
+			getCell( dimensions, cellDimensions, index, cellDims, cellMin );
+			boolean matches = true;
+			for ( int d = 0; d < n; ++d )
+				if ( cellDims[ d ] != values[ 5 + d ] || cellMin[ d ] != values[ 5 + n + d ] )
+					matches = false;
+			if ( !matches )
+				continue;
+			final Entry entry = getOrCreateEntry( cellDims, cellMin, timepoint, setup, level, index );
+			if ( !entry.data.getData().isValid() )
+			{
+				enqueueEntry( entry, maxNumLevels - 1, false );
+				++numEnqueued;
+			}
+		}
+		return numEnqueued;
+	}
+
+	/**
+	 * Remove all references to loaded data (including pinned data) as well as
+	 * all enqueued requests from the cache. Loads in progress are
+	 * interrupted. A running {@link #preloadPinned(CellGrids) preload} is not
+	 * stopped, so pinned cells are loaded again.
 	 */
 	public void clearCache()
 	{
-		for ( final Reference< Entry > ref : softReferenceCache.values() )
+		if ( manager != null )
+		{
+			registered = false;
+			manager.unregister( this );
+		}
+		memoryBudget.removeShare( budgetShare );
+		synchronized ( pinnedEntries )
+		{
+			for ( final Entry entry : pinnedEntries )
+				metrics.pinned( -1, -sizeInBytes( entry.data ) );
+			pinnedEntries.clear();
+		}
+		evictedEntries.clear();
+		final CompressedCellTier< A > tier = compressedTier;
+		if ( tier != null )
+			tier.clear();
+		if ( arrayPool != null )
+			arrayPool.clear();
+		for ( final MyWeakReference ref : weakReferenceCache.values() )
 			ref.clear();
-		softReferenceCache.clear();
+		weakReferenceCache.clear();
+		queue.clearAll();
+		oldestValidQueueFrame = currentQueueFrame + 1;
+		for ( final Fetcher f : fetchers )
+			f.cancelIfStale();
 		prepareNextFrame();
-		// TODO: add a full clear to BlockingFetchQueues.
-		// (BlockingFetchQueues.clear() moves stuff to the prefetchQueue.)
 	}
 
 	public class VolatileCellCache implements CellCache< A >
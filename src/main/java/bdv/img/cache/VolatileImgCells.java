@@ -61,6 +61,35 @@ public class VolatileImgCells< A extends VolatileAccess > extends AbstractCells<
 		return cells;
 	}
 
+	/**
+	 * Get the cell at the specified flattened index in the cell grid. If the
+	 * cell is not in the cache, it is loaded according to the current
+	 * {@link CacheHints}.
+	 */
+	public VolatileCell< A > getCell( final int index )
+	{
+		return cells.get( index );
+	}
+
+	/**
+	 * Get the number of cells in each dimension of the cell grid.
+	 */
+	public void getGridDimensions( final long[] gridDimensions )
+	{
+		for ( int d = 0; d < n; ++d )
+			gridDimensions[ d ] = numCells[ d ];
+	}
+
+	/**
+	 * Get the dimensions of a standard cell (cells at the border may be
+	 * smaller).
+	 */
+	public void getStandardCellDimensions( final int[] dimensions )
+	{
+		for ( int d = 0; d < n; ++d )
+			dimensions[ d ] = cellDimensions[ d ];
+	}
+
 	public class CachedCells extends AbstractListImg< VolatileCell< A > >
 	{
 		protected CachedCells( final long[] dim )
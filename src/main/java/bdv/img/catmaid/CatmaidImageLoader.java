@@ -1,5 +1,7 @@
 package bdv.img.catmaid;
 
+import java.io.File;
+
 import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.NativeImg;
@@ -12,10 +14,13 @@ import net.imglib2.util.Fraction;
 import bdv.AbstractViewerImgLoader;
 import bdv.img.cache.CacheHints;
 import bdv.img.cache.CachedCellImg;
+import bdv.img.cache.DiskCellCache;
 import bdv.img.cache.LoadingStrategy;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.cache.VolatileGlobalCellCache.CellGrids;
 import bdv.img.cache.VolatileImgCells;
 import bdv.img.cache.VolatileImgCells.CellCache;
+import bdv.util.NioHttpClient;
 
 public class CatmaidImageLoader extends AbstractViewerImgLoader< ARGBType, VolatileARGBType >
 {
@@ -33,6 +38,23 @@ public class CatmaidImageLoader extends AbstractViewerImgLoader< ARGBType, Volat
 
 	private final VolatileGlobalCellCache< VolatileIntArray > cache;
 
+	private final String urlFormat;
+
+	private final CellGrids cellGrids = new CellGrids()
+	{
+		@Override
+		public long[] getImageDimensions( final int timepoint, final int setup, final int level )
+		{
+			return imageDimensions[ level ];
+		}
+
+		@Override
+		public int[] getCellDimensions( final int timepoint, final int setup, final int level )
+		{
+			return new int[] { tileWidth, tileHeight, 1 };
+		}
+	};
+
 	public CatmaidImageLoader(
 			final long width,
 			final long height,
@@ -47,6 +69,7 @@ public class CatmaidImageLoader extends AbstractViewerImgLoader< ARGBType, Volat
 		this.numScales = numScales;
 		this.tileWidth = tileWidth;
 		this.tileHeight = tileHeight;
+		this.urlFormat = urlFormat;
 
 		mipmapResolutions = new double[ numScales ][];
 		imageDimensions = new long[ numScales ][];
@@ -76,6 +99,8 @@ public class CatmaidImageLoader extends AbstractViewerImgLoader< ARGBType, Volat
 
 		cache = new VolatileGlobalCellCache< VolatileIntArray >(
 				new CatmaidVolatileIntArrayLoader( urlFormat, tileWidth, tileHeight, zScales ), 1, 1, numScales, 10 );
+		cache.setCellGrids( cellGrids );
+		cache.setAdaptiveNumFetcherThreads( 1, 64 );
 	}
 
 	final static public int getNumScales( long width, long height, final long tileWidth, final long tileHeight )
@@ -136,12 +161,79 @@ public class CatmaidImageLoader extends AbstractViewerImgLoader< ARGBType, Volat
 		return img;
 	}
 
+	/**
+	 * Keep all cells of mipmap levels {@code >= minLevel} (that is, the
+	 * coarsest levels) in memory permanently, and start loading them in the
+	 * background. Rendering can then always fall back to these levels without
+	 * waiting for I/O.
+	 */
+	public void pinLevels( final int minLevel )
+	{
+		cache.pinLevels( minLevel );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Keep all cells of the timepoints in {@code [minTimepoint, maxTimepoint]}
+	 * in memory permanently, and start loading them in the background.
+	 */
+	public void pinTimepoints( final int minTimepoint, final int maxTimepoint )
+	{
+		cache.pinTimepoints( minTimepoint, maxTimepoint );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Stop loading, clear the cache, and release its memory to the
+	 * {@link bdv.img.cache.CacheManager}. Images that were obtained from this
+	 * loader will stop working, and the loader must not be used afterwards.
+	 */
+	public void close()
+	{
+		cache.close();
+	}
+
 	@Override
 	public VolatileGlobalCellCache< VolatileIntArray > getCache()
 	{
 		return cache;
 	}
 
+	/**
+	 * Fetch cells asynchronously, with up to {@code maxNumRequestsInFlight}
+	 * requests served by a non-blocking {@link NioHttpClient} (see
+	 * {@link VolatileGlobalCellCache#setMaxNumRequestsInFlight(int)}). By
+	 * default, cells are fetched by blocking {@link java.net.HttpURLConnection
+	 * HttpURLConnections}. Asynchronous fetching is only possible for plain
+	 * {@code http} tile URLs without an HTTP proxy.
+	 *
+	 * @param maxNumRequestsInFlight
+	 *            maximum number of concurrent requests, or 0 to fetch
+	 *            cells with blocking connections.
+	 * @return whether cells are fetched asynchronously.
+	 */
+	public boolean setMaxNumRequestsInFlight( final int maxNumRequestsInFlight )
+	{
+		return cache.setMaxNumRequestsInFlight( maxNumRequestsInFlight );
+	}
+
+	/**
+	 * Enable a persistent on-disk cache for cells fetched from CATMAID. Cells
+	 * are then loaded from local files instead of over the network, if they
+	 * were fetched before (in this or a previous session).
+	 *
+	 * @param cacheDirectory
+	 *            root directory of the disk cache. It may be shared by
+	 *            several datasets.
+	 * @param maxSizeInBytes
+	 *            maximum size of the cached cells of this dataset on disk.
+	 */
+	public void setDiskCache( final File cacheDirectory, final long maxSizeInBytes )
+	{
+		final String fingerprint = cache.describeDataset( cellGrids, null );
+		cache.setDiskCache( new DiskCellCache< VolatileIntArray >( cacheDirectory, urlFormat, fingerprint, maxSizeInBytes, DiskCellCache.INT_ARRAY_CODEC ) );
+	}
+
 	@Override
 	public AffineTransform3D[] getMipmapTransforms( final int setup )
 	{
@@ -2,17 +2,26 @@ package bdv.img.catmaid;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.PixelGrabber;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.imageio.ImageIO;
 
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import bdv.img.cache.AsyncCacheArrayLoader;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
+import bdv.util.NioHttpClient;
 
-public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< VolatileIntArray >
+public class CatmaidVolatileIntArrayLoader implements AsyncCacheArrayLoader< VolatileIntArray >, RecyclingCacheArrayLoader< VolatileIntArray >, UniformCellCacheArrayLoader< VolatileIntArray >
 {
-	private VolatileIntArray theEmptyArray;
+	private volatile VolatileIntArray theEmptyArray;
 
 	private final String urlFormat;
 
@@ -74,6 +83,37 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 			final int level,
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException
+	{
+		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] ];
+		final boolean loaded = load( level, dimensions, min, data );
+		return new VolatileIntArray( data, loaded );
+	}
+
+	@Override
+	public VolatileIntArray loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min,
+			final VolatileIntArray buffer ) throws InterruptedException
+	{
+		final int[] data = buffer.getCurrentStorageArray();
+		final boolean loaded = load( level, dimensions, min, data );
+		return new VolatileIntArray( data, loaded );
+	}
+
+	/**
+	 * Load the tiles of a cell into {@code data}.
+	 *
+	 * @return true, if all tiles were loaded. false, if a request failed or a
+	 *         tile could not be decoded.
+	 */
+	private boolean load(
+			final int level,
+			final int[] dimensions,
+			final long[] min,
+			final int[] data ) throws InterruptedException
 	{
 		final int c = ( int ) min[ 0 ] / tileWidth;
 		final int r = ( int ) min[ 1 ] / tileHeight;
@@ -81,7 +121,6 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 
 		final int w = dimensions[ 0 ];
 		final int h = dimensions[ 1 ];
-		final int[] data = new int[ w * h ];
 
 		try
 		{
@@ -93,6 +132,8 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 					final String urlString = String.format( urlFormat, level, scale, min[ 0 ], min[ 1 ], z + dz, tileWidth, tileHeight, r, c );
 					final URL url = new URL( urlString );
 					final BufferedImage jpg = ImageIO.read( url );
+					if ( jpg == null )
+						throw new IOException( "cannot decode " + urlString );
 					/* This gymnastic is necessary to get reproducible gray
 					* values, just opening a JPG or PNG, even when saved by
 					* ImageIO, and grabbing its pixels results in gray values
@@ -124,6 +165,8 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 				final URL url = new URL( urlString );
 //				final Image image = toolkit.createImage( url );
 				final BufferedImage jpg = ImageIO.read( url );
+				if ( jpg == null )
+					throw new IOException( "cannot decode " + urlString );
 
 				/* This gymnastic is necessary to get reproducible gray
 				 * values, just opening a JPG or PNG, even when saved by
@@ -137,17 +180,151 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 
 //				System.out.println( "success loading r=" + entry.key.r + " c=" + entry.key.c + " url(" + urlString + ")" );
 			}
-
+			return true;
 		}
 		catch (final IOException e)
 		{
-			System.out.println( "failed loading r=" + r + " c=" + c );
+			return false;
+		}
+	}
+
+	@Override
+	public boolean isAsyncSupported()
+	{
+		try
+		{
+			return NioHttpClient.supports( new URL( urlFormat ) );
+		}
+		catch ( final MalformedURLException e )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Request all tiles of the cell concurrently, and average them when the
+	 * last one arrives. If any tile fails, the cell fails.
+	 */
+	@Override
+	public void loadArrayAsync(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min,
+			final Callback< ? super VolatileIntArray > callback )
+	{
+		final int c = ( int ) min[ 0 ] / tileWidth;
+		final int r = ( int ) min[ 1 ] / tileHeight;
+		final double scale = 1.0 / Math.pow(2.0, level);
+
+		final int w = dimensions[ 0 ];
+		final int h = dimensions[ 1 ];
+		final int[] data = new int[ w * h ];
+
+		final int numSlices = Math.max( 1, zScales[ level ] );
+		final long z = zScales[ level ] > 1 ? min[ 2 ] * zScales[ level ] : min[ 2 ];
+		final int[][] slices = new int[ numSlices ][];
+		final AtomicInteger remaining = new AtomicInteger( numSlices );
+		final AtomicReference< Exception > failure = new AtomicReference< Exception >();
+		for ( int dz = 0; dz < numSlices; ++dz )
+		{
+			final int slice = dz;
+			final String urlString = String.format( urlFormat, level, scale, min[ 0 ], min[ 1 ], z + dz, tileWidth, tileHeight, r, c );
+			final NioHttpClient.Callback sliceCallback = new NioHttpClient.Callback()
+			{
+				@Override
+				public void completed( final byte[] body )
+				{
+					try
+					{
+						final BufferedImage jpg = ImageIO.read( new ByteArrayInputStream( body ) );
+						if ( jpg == null )
+							throw new IOException( "cannot decode " + urlString );
+						slices[ slice ] = grab( jpg, w, h );
+						done();
+					}
+					catch ( final Exception e )
+					{
+						failed( e );
+					}
+				}
+
+				@Override
+				public void failed( final Exception e )
+				{
+					failure.compareAndSet( null, e );
+					done();
+				}
+
+				private void done()
+				{
+					if ( remaining.decrementAndGet() == 0 )
+					{
+						final Exception e = failure.get();
+						if ( e != null )
+							callback.failed( new IOException( "failed loading r=" + r + " c=" + c, e ) );
+						else
+						{
+							average( slices, data );
+							callback.loaded( new VolatileIntArray( data, true ) );
+						}
+					}
+				}
+			};
+			try
+			{
+				NioHttpClient.getDefault().get( new URL( urlString ), sliceCallback );
+			}
+			catch ( final MalformedURLException e )
+			{
+				sliceCallback.failed( e );
+			}
 		}
-		catch (final InterruptedException e)
+	}
+
+	/**
+	 * Get the RGB pixels of {@code jpg}.
+	 */
+	private static int[] grab( final BufferedImage jpg, final int w, final int h ) throws InterruptedException
+	{
+		/* Draw to an RGB image first, to get reproducible gray values (see
+		 * loadArray()). */
+		final int[] data = new int[ w * h ];
+		final BufferedImage image = new BufferedImage( w, h, BufferedImage.TYPE_INT_RGB );
+		image.createGraphics().drawImage( jpg, 0, 0, null );
+		final PixelGrabber pg = new PixelGrabber( image, 0, 0, w, h, data, 0, w );
+		pg.grabPixels();
+		return data;
+	}
+
+	/**
+	 * Average the RGB values of {@code slices} into {@code data}.
+	 */
+	private static void average( final int[][] slices, final int[] data )
+	{
+		if ( slices.length == 1 )
+		{
+			System.arraycopy( slices[ 0 ], 0, data, 0, data.length );
+			return;
+		}
+		final long[] rs = new long[ data.length ], gs = new long[ data.length ], bs = new long[ data.length ];
+		for ( final int[] slice : slices )
 		{
-			e.printStackTrace();
+			for ( int i = 0; i < data.length; ++i )
+			{
+				rs[ i ] += ( slice[ i ] >> 16 ) & 0xff;
+				gs[ i ] += ( slice[ i ] >> 8 ) & 0xff;
+				bs[ i ] += slice[ i ] & 0xff;
+			}
+		}
+		for ( int i = 0; i < data.length; ++i )
+		{
+			final int red = ( int )( rs[ i ] / slices.length );
+			final int green = ( int )( gs[ i ] / slices.length );
+			final int blue = ( int )( bs[ i ] / slices.length );
+			data[ i ] = ( ( ( ( red << 8 ) | green ) << 8 ) | blue ) | 0xff000000;
 		}
-		return new VolatileIntArray( data, true );
 	}
 
 	@Override
@@ -156,8 +333,24 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileIntArray( numEntities, false );
-		return theEmptyArray;
+		VolatileIntArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileIntArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
+	}
+
+	@Override
+	public VolatileIntArray getUniformArray( final VolatileIntArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileIntArray wrapStorage( final VolatileIntArray array )
+	{
+		return new VolatileIntArray( array.getCurrentStorageArray(), false );
 	}
 }
@@ -50,9 +50,15 @@ class HDF5Access implements IHDF5Access
 	}
 
 	@Override
-	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException
+	public synchronized short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException
 	{
-		System.arraycopy( readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min ), 0, dataBlock, 0, dataBlock.length );
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		Util.reorder( dimensions, reorderedDimensions );
+		Util.reorder( min, reorderedMin );
+		// read directly into dataBlock, MDShortArray does not copy it
+		final MDShortArray array = new MDShortArray( dataBlock, reorderedDimensions );
+		hdf5Reader.int16().readToMDArrayBlockWithOffset( Util.getCellsPath( timepoint, setup, level ), array, reorderedDimensions, reorderedMin, new int[ 3 ] );
 		return dataBlock;
 	}
 
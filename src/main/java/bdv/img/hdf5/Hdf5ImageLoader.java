@@ -4,6 +4,7 @@ import static bdv.img.hdf5.Util.getResolutionsPath;
 import static bdv.img.hdf5.Util.getSubdivisionsPath;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -30,7 +31,10 @@ import net.imglib2.img.NativeImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.basictypeaccess.array.FloatArray;
 import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileShortAccess;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.basictypeaccess.volatiles.buffer.DirectBufferSlabAllocator;
+import net.imglib2.img.basictypeaccess.volatiles.buffer.VolatileShortBuffer;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.img.cell.DefaultCell;
@@ -45,10 +49,14 @@ import net.imglib2.view.Views;
 import bdv.AbstractViewerImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.img.cache.Cache;
+import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.CacheHints;
 import bdv.img.cache.CachedCellImg;
+import bdv.img.cache.CompressedCellTier;
+import bdv.img.cache.DiskCellCache.ArrayCodec;
 import bdv.img.cache.LoadingStrategy;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.cache.VolatileGlobalCellCache.CellGrids;
 import bdv.img.cache.VolatileImgCells;
 import bdv.img.cache.VolatileImgCells.CellCache;
 import bdv.util.ConstantRandomAccessible;
@@ -72,7 +80,19 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 
 	protected IHDF5Access hdf5Access;
 
-	protected VolatileGlobalCellCache< VolatileShortArray > cache;
+	protected VolatileGlobalCellCache< VolatileShortAccess > cache;
+
+	/**
+	 * Whether cell data is stored in off-heap memory. See
+	 * {@link #setUseOffHeapCache(boolean)}.
+	 */
+	protected boolean useOffHeapCache = false;
+
+	/**
+	 * Allocates the off-heap cell data of the current {@link #cache}, or
+	 * {@code null} if cell data is stored in Java arrays.
+	 */
+	protected DirectBufferSlabAllocator offHeapAllocator;
 
 	/**
 	 * Description of available mipmap levels for each {@link BasicViewSetup}.
@@ -98,6 +118,25 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 
 	protected final AbstractSequenceDescription< ?, ?, ? > sequenceDescription;
 
+	private final CellGrids cellGrids = new CellGrids()
+	{
+		@Override
+		public long[] getImageDimensions( final int timepoint, final int setup, final int level )
+		{
+			final MipmapInfo mipmapInfo = perSetupMipmapInfo.get( setup );
+			if ( mipmapInfo == null || level >= mipmapInfo.getNumLevels() )
+				return null;
+			final DimsAndExistence dims = getDimsAndExistence( new ViewLevelId( timepoint, setup, level ) );
+			return dims.exists() ? dims.getDimensions() : null;
+		}
+
+		@Override
+		public int[] getCellDimensions( final int timepoint, final int setup, final int level )
+		{
+			return perSetupMipmapInfo.get( setup ).getSubdivisions()[ level ];
+		}
+	};
+
 	/**
 	 *
 	 * @param hdf5File
@@ -180,7 +219,14 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 					e.printStackTrace();
 					hdf5Access = new HDF5Access( hdf5Reader );
 				}
-				cache = new VolatileGlobalCellCache< VolatileShortArray >( new Hdf5VolatileShortArrayLoader( hdf5Access ), maxNumTimepoints, maxNumSetups, maxNumLevels, 1 );
+				final CacheArrayLoader< ? extends VolatileShortAccess > loader;
+				offHeapAllocator = useOffHeapCache ? new DirectBufferSlabAllocator() : null;
+				if ( offHeapAllocator != null )
+					loader = new Hdf5VolatileShortBufferLoader( hdf5Access, offHeapAllocator );
+				else
+					loader = new Hdf5VolatileShortArrayLoader( hdf5Access );
+				cache = new VolatileGlobalCellCache< VolatileShortAccess >( loader, maxNumTimepoints, maxNumSetups, maxNumLevels, 1 );
+				cache.setCellGrids( cellGrids );
 			}
 		}
 	}
@@ -201,7 +247,7 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 					return;
 				isOpen = false;
 
-				cache.clearCache();
+				cache.close();
 				hdf5Access.closeAllDataSets();
 
 				// only close reader if constructed it ourselves
@@ -211,6 +257,32 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 		}
 	}
 
+	/**
+	 * Set whether cached cell data should be stored in off-heap memory (direct
+	 * {@link java.nio.ByteBuffer}s) instead of Java arrays. Off-heap cells do
+	 * not need to be scanned or copied by the garbage collector and allow
+	 * cache sizes beyond the maximum heap size (up to
+	 * {@code -XX:MaxDirectMemorySize}).
+	 *
+	 * <p>
+	 * If this changes the setting while the loader is open, the loader is
+	 * {@link #close() closed}. It will be reopened with a new cache on the
+	 * next request.
+	 */
+	public synchronized void setUseOffHeapCache( final boolean useOffHeapCache )
+	{
+		if ( this.useOffHeapCache != useOffHeapCache )
+		{
+			close();
+			this.useOffHeapCache = useOffHeapCache;
+		}
+	}
+
+	public boolean isUseOffHeapCache()
+	{
+		return useOffHeapCache;
+	}
+
 	public void initCachedDimensionsFromHdf5( final boolean background )
 	{
 		open();
@@ -263,7 +335,7 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 					id.getTimePointId(), id.getViewSetupId(), id.getLevel() ) );
 			return getMissingDataImage( id, new UnsignedShortType() );
 		}
-		final CachedCellImg< UnsignedShortType, VolatileShortArray >  img = prepareCachedImage( id, LoadingStrategy.BLOCKING );
+		final CachedCellImg< UnsignedShortType, VolatileShortAccess >  img = prepareCachedImage( id, LoadingStrategy.BLOCKING );
 		final UnsignedShortType linkedType = new UnsignedShortType( img );
 		img.setLinkedType( linkedType );
 		return img;
@@ -280,14 +352,94 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 					id.getTimePointId(), id.getViewSetupId(), id.getLevel() ) );
 			return getMissingDataImage( id, new VolatileUnsignedShortType() );
 		}
-		final CachedCellImg< VolatileUnsignedShortType, VolatileShortArray >  img = prepareCachedImage( id, LoadingStrategy.BUDGETED );
+		final CachedCellImg< VolatileUnsignedShortType, VolatileShortAccess >  img = prepareCachedImage( id, LoadingStrategy.BUDGETED );
 		final VolatileUnsignedShortType linkedType = new VolatileUnsignedShortType( img );
 		img.setLinkedType( linkedType );
 		return img;
 	}
 
+	/**
+	 * Keep all cells of mipmap levels {@code >= minLevel} (that is, the
+	 * coarsest levels) in memory permanently, and start loading them in the
+	 * background. Rendering can then always fall back to these levels without
+	 * waiting for I/O.
+	 */
+	public void pinLevels( final int minLevel )
+	{
+		open();
+		cache.pinLevels( minLevel );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Keep all cells of the timepoints in {@code [minTimepoint, maxTimepoint]}
+	 * in memory permanently, and start loading them in the background.
+	 */
+	public void pinTimepoints( final int minTimepoint, final int maxTimepoint )
+	{
+		open();
+		cache.pinTimepoints( minTimepoint, maxTimepoint );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Keep cells that are evicted from memory in compressed form, up to
+	 * {@code maxSizeInBytes} of compressed data. Cells are then decompressed
+	 * instead of read from the hdf5 file again, when they are revisited.
+	 *
+	 * @param maxSizeInBytes
+	 *            maximum size of the compressed cells, or 0 to disable the
+	 *            compressed tier.
+	 */
+	public void setCompressedCacheSize( final long maxSizeInBytes )
+	{
+		final VolatileGlobalCellCache< VolatileShortAccess > c = getCache();
+		c.setCompressedTier( maxSizeInBytes <= 0 ? null : new CompressedCellTier< VolatileShortAccess >( maxSizeInBytes, createShortAccessCodec( offHeapAllocator ) ) );
+	}
+
+	/**
+	 * Create a codec that serializes {@link VolatileShortAccess} cell data
+	 * (which may be array or buffer backed) element by element. Cells are
+	 * read back into the same kind of access that the loader creates: into
+	 * {@link VolatileShortBuffer}s from {@code allocator}, or into
+	 * {@link VolatileShortArray}s if {@code allocator == null}.
+	 */
+	private static ArrayCodec< VolatileShortAccess > createShortAccessCodec( final DirectBufferSlabAllocator allocator )
+	{
+		return new ArrayCodec< VolatileShortAccess >()
+		{
+			@Override
+			public int getBytesPerElement()
+			{
+				return 2;
+			}
+
+			@Override
+			public void write( final VolatileShortAccess array, final ByteBuffer buffer, final int numElements )
+			{
+				for ( int i = 0; i < numElements; ++i )
+					buffer.putShort( array.getValue( i ) );
+			}
+
+			@Override
+			public VolatileShortAccess read( final ByteBuffer buffer, final int numElements )
+			{
+				if ( allocator == null )
+				{
+					final short[] data = new short[ numElements ];
+					buffer.asShortBuffer().get( data );
+					return new VolatileShortArray( data, true );
+				}
+				final VolatileShortBuffer data = new VolatileShortBuffer( allocator, numElements, true );
+				for ( int i = 0; i < numElements; ++i )
+					data.setValue( i, buffer.getShort() );
+				return data;
+			}
+		};
+	}
+
 	@Override
-	public VolatileGlobalCellCache< VolatileShortArray > getCache()
+	public VolatileGlobalCellCache< VolatileShortAccess > getCache()
 	{
 		open();
 		return cache;
@@ -362,7 +514,7 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 	 * The created image needs a {@link NativeImg#setLinkedType(net.imglib2.type.Type) linked type} before it can be used.
 	 * The type should be either {@link UnsignedShortType} and {@link VolatileUnsignedShortType}.
 	 */
-	protected < T extends NativeType< T > > CachedCellImg< T, VolatileShortArray > prepareCachedImage( final ViewLevelId id, final LoadingStrategy loadingStrategy )
+	protected < T extends NativeType< T > > CachedCellImg< T, VolatileShortAccess > prepareCachedImage( final ViewLevelId id, final LoadingStrategy loadingStrategy )
 	{
 		open();
 		final int timepointId = id.getTimePointId();
@@ -375,9 +527,9 @@ public class Hdf5ImageLoader extends AbstractViewerImgLoader< UnsignedShortType,
 
 		final int priority = mipmapInfo.getMaxLevel() - level;
 		final CacheHints cacheHints = new CacheHints( loadingStrategy, priority, false );
-		final CellCache< VolatileShortArray > c = cache.new VolatileCellCache( timepointId, setupId, level, cacheHints );
-		final VolatileImgCells< VolatileShortArray > cells = new VolatileImgCells< VolatileShortArray >( c, new Fraction(), dimensions, cellDimensions );
-		final CachedCellImg< T, VolatileShortArray > img = new CachedCellImg< T, VolatileShortArray >( cells );
+		final CellCache< VolatileShortAccess > c = cache.new VolatileCellCache( timepointId, setupId, level, cacheHints );
+		final VolatileImgCells< VolatileShortAccess > cells = new VolatileImgCells< VolatileShortAccess >( c, new Fraction(), dimensions, cellDimensions );
+		final CachedCellImg< T, VolatileShortAccess > img = new CachedCellImg< T, VolatileShortAccess >( cells );
 		return img;
 	}
 
@@ -1,17 +1,38 @@
 package bdv.img.hdf5;
 
+import java.util.List;
+
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
-import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.BatchCacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
 
-public class Hdf5VolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
+public class Hdf5VolatileShortArrayLoader implements BatchCacheArrayLoader< VolatileShortArray >, RecyclingCacheArrayLoader< VolatileShortArray >, UniformCellCacheArrayLoader< VolatileShortArray >
 {
+	public static final int DEFAULT_MAX_BATCH_SIZE = 8;
+
 	private final IHDF5Access hdf5Access;
 
-	private VolatileShortArray theEmptyArray;
+	private final int maxBatchSize;
+
+	private volatile VolatileShortArray theEmptyArray;
 
 	public Hdf5VolatileShortArrayLoader( final IHDF5Access hdf5Access )
+	{
+		this( hdf5Access, DEFAULT_MAX_BATCH_SIZE );
+	}
+
+	/**
+	 * @param hdf5Access
+	 * @param maxBatchSize
+	 *            maximum number of adjacent cells to read in one hyperslab
+	 *            selection.
+	 */
+	public Hdf5VolatileShortArrayLoader( final IHDF5Access hdf5Access, final int maxBatchSize )
 	{
 		this.hdf5Access = hdf5Access;
+		this.maxBatchSize = maxBatchSize;
 		theEmptyArray = new VolatileShortArray( 32 * 32 * 32, false );
 	}
 
@@ -22,15 +43,63 @@ public class Hdf5VolatileShortArrayLoader implements CacheArrayLoader< VolatileS
 		return new VolatileShortArray( array, true );
 	}
 
+	@Override
+	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final VolatileShortArray buffer ) throws InterruptedException
+	{
+		final short[] array = hdf5Access.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, buffer.getCurrentStorageArray() );
+		return new VolatileShortArray( array, true );
+	}
+
+	/**
+	 * Read the box covered by all cells with one hyperslab selection, and
+	 * split it into the individual cells.
+	 */
+	@Override
+	public void loadArrays( final int timepoint, final int setup, final int level, final int[][] dimensions, final long[][] min, final List< ? super VolatileShortArray > arrays ) throws InterruptedException
+	{
+		final int numCells = dimensions.length;
+		final int n = dimensions[ 0 ].length;
+		final int[] boxDimensions = dimensions[ 0 ].clone();
+		boxDimensions[ 0 ] = 0;
+		for ( int i = 0; i < numCells; ++i )
+			boxDimensions[ 0 ] += dimensions[ i ][ 0 ];
+		final short[] box = hdf5Access.readShortMDArrayBlockWithOffset( timepoint, setup, level, boxDimensions, min[ 0 ] );
+
+		int numLines = 1;
+		for ( int d = 1; d < n; ++d )
+			numLines *= boxDimensions[ d ];
+		final int boxLineLength = boxDimensions[ 0 ];
+		int offset = 0;
+		for ( int i = 0; i < numCells; ++i )
+		{
+			final int lineLength = dimensions[ i ][ 0 ];
+			final short[] data = new short[ lineLength * numLines ];
+			for ( int l = 0; l < numLines; ++l )
+				System.arraycopy( box, l * boxLineLength + offset, data, l * lineLength, lineLength );
+			arrays.add( new VolatileShortArray( data, true ) );
+			offset += lineLength;
+		}
+	}
+
+	@Override
+	public int getMaxBatchSize()
+	{
+		return maxBatchSize;
+	}
+
 	@Override
 	public VolatileShortArray emptyArray( final int[] dimensions )
 	{
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileShortArray( numEntities, false );
-		return theEmptyArray;
+		VolatileShortArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileShortArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
 	}
 
 	@Override
@@ -78,4 +147,16 @@ public class Hdf5VolatileShortArrayLoader implements CacheArrayLoader< VolatileS
 //
 //		return new VolatileShortArray( array, true );
 //	}
+
+	@Override
+	public VolatileShortArray getUniformArray( final VolatileShortArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileShortArray wrapStorage( final VolatileShortArray array )
+	{
+		return new VolatileShortArray( array.getCurrentStorageArray(), false );
+	}
 }
@@ -0,0 +1,97 @@
+package bdv.img.hdf5;
+
+import java.util.ArrayList;
+
+import net.imglib2.img.basictypeaccess.volatiles.buffer.DirectBufferSlabAllocator;
+import net.imglib2.img.basictypeaccess.volatiles.buffer.VolatileShortBuffer;
+import bdv.img.cache.CacheArrayLoader;
+
+/**
+ * Loads cells from hdf5 into off-heap {@link VolatileShortBuffer}s, allocated
+ * from a {@link DirectBufferSlabAllocator}. Cached data then does not occupy
+ * the Java heap.
+ *
+ * <p>
+ * The hdf5 library can only read into Java arrays. Cells are read into a
+ * staging array, which is reused by each loading thread (one per cell size),
+ * and copied into the off-heap buffer. So loading does not produce garbage
+ * on the Java heap.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class Hdf5VolatileShortBufferLoader implements CacheArrayLoader< VolatileShortBuffer >
+{
+	private final IHDF5Access hdf5Access;
+
+	private final DirectBufferSlabAllocator allocator;
+
+	private volatile VolatileShortBuffer theEmptyArray;
+
+	/**
+	 * Staging arrays of the current thread, one per cell size. There are only
+	 * a few cell sizes (the standard size and the sizes of border cells).
+	 */
+	private final ThreadLocal< ArrayList< short[] > > stagingArrays = new ThreadLocal< ArrayList< short[] > >()
+	{
+		@Override
+		protected ArrayList< short[] > initialValue()
+		{
+			return new ArrayList< short[] >();
+		}
+	};
+
+	public Hdf5VolatileShortBufferLoader( final IHDF5Access hdf5Access, final DirectBufferSlabAllocator allocator )
+	{
+		this.hdf5Access = hdf5Access;
+		this.allocator = allocator;
+		theEmptyArray = new VolatileShortBuffer( allocator, 32 * 32 * 32, false );
+	}
+
+	@Override
+	public VolatileShortBuffer loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final short[] array = hdf5Access.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, stagingArray( dimensions ) );
+		final VolatileShortBuffer buffer = new VolatileShortBuffer( allocator, array.length, true );
+		buffer.set( array );
+		return buffer;
+	}
+
+	/**
+	 * Get the staging array of the current thread for a cell with the given
+	 * dimensions.
+	 */
+	private short[] stagingArray( final int[] dimensions )
+	{
+		int numEntities = 1;
+		for ( int i = 0; i < dimensions.length; ++i )
+			numEntities *= dimensions[ i ];
+		final ArrayList< short[] > arrays = stagingArrays.get();
+		for ( int i = 0; i < arrays.size(); ++i )
+			if ( arrays.get( i ).length == numEntities )
+				return arrays.get( i );
+		final short[] array = new short[ numEntities ];
+		arrays.add( array );
+		return array;
+	}
+
+	@Override
+	public VolatileShortBuffer emptyArray( final int[] dimensions )
+	{
+		int numEntities = 1;
+		for ( int i = 0; i < dimensions.length; ++i )
+			numEntities *= dimensions[ i ];
+		VolatileShortBuffer empty = theEmptyArray;
+		if ( empty.size() < numEntities )
+		{
+			empty = new VolatileShortBuffer( allocator, numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return 2;
+	}
+}
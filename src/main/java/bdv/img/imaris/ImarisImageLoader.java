@@ -25,6 +25,7 @@ import bdv.img.cache.CacheHints;
 import bdv.img.cache.CachedCellImg;
 import bdv.img.cache.LoadingStrategy;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.cache.VolatileGlobalCellCache.CellGrids;
 import bdv.img.cache.VolatileImgCells;
 import bdv.img.cache.VolatileImgCells.CellCache;
 import bdv.img.hdf5.DimsAndExistence;
@@ -50,6 +51,21 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 
 	private VolatileGlobalCellCache< A > cache;
 
+	private final CellGrids cellGrids = new CellGrids()
+	{
+		@Override
+		public long[] getImageDimensions( final int timepoint, final int setup, final int level )
+		{
+			return mipmapDimensions[ level ];
+		}
+
+		@Override
+		public int[] getCellDimensions( final int timepoint, final int setup, final int level )
+		{
+			return mipmapInfo.getSubdivisions()[ level ];
+		}
+	};
+
 	/**
 	 * Maps {@link ViewLevelId} (timepoint, setup, level) to
 	 * {@link DimsAndExistence}. Every entry is either null or the existence and
@@ -105,6 +121,30 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 				}
 				final CacheArrayLoader< A > loader = dataType.createArrayLoader( hdf5Access );
 				cache = new VolatileGlobalCellCache< A >( loader, maxNumTimepoints, maxNumSetups, maxNumLevels, 1 );
+				cache.setCellGrids( cellGrids );
+			}
+		}
+	}
+
+	/**
+	 * Stop loading, clear the cache, and release its memory to the
+	 * {@link bdv.img.cache.CacheManager}. Images that were obtained from this
+	 * loader before {@link #close()} will stop working. Requesting images
+	 * after {@link #close()} will cause the file to be reopened (with a new
+	 * cache). The previous hdf5 reader is closed when it is garbage collected.
+	 */
+	public void close()
+	{
+		if ( isOpen )
+		{
+			synchronized ( this )
+			{
+				if ( !isOpen )
+					return;
+				isOpen = false;
+
+				cache.close();
+				hdf5Access = null;
 			}
 		}
 	}
@@ -170,6 +210,30 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 		return mipmapInfo.getNumLevels();
 	}
 
+	/**
+	 * Keep all cells of mipmap levels {@code >= minLevel} (that is, the
+	 * coarsest levels) in memory permanently, and start loading them in the
+	 * background. Rendering can then always fall back to these levels without
+	 * waiting for I/O.
+	 */
+	public void pinLevels( final int minLevel )
+	{
+		open();
+		cache.pinLevels( minLevel );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Keep all cells of the timepoints in {@code [minTimepoint, maxTimepoint]}
+	 * in memory permanently, and start loading them in the background.
+	 */
+	public void pinTimepoints( final int minTimepoint, final int maxTimepoint )
+	{
+		open();
+		cache.pinTimepoints( minTimepoint, maxTimepoint );
+		cache.preloadPinned( cellGrids );
+	}
+
 	@Override
 	public Cache getCache()
 	{
@@ -1,13 +1,15 @@
 package bdv.img.imaris;
 
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
-import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
 
-public class ImarisVolatileByteArrayLoader implements CacheArrayLoader< VolatileByteArray >
+public class ImarisVolatileByteArrayLoader implements RecyclingCacheArrayLoader< VolatileByteArray >, UniformCellCacheArrayLoader< VolatileByteArray >
 {
 	private final IHDF5Access hdf5Access;
 
-	private VolatileByteArray theEmptyArray;
+	private volatile VolatileByteArray theEmptyArray;
 
 	public ImarisVolatileByteArrayLoader( final IHDF5Access hdf5Access )
 	{
@@ -22,15 +24,26 @@ public class ImarisVolatileByteArrayLoader implements CacheArrayLoader< Volatile
 		return new VolatileByteArray( array, true );
 	}
 
+	@Override
+	public VolatileByteArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final VolatileByteArray buffer ) throws InterruptedException
+	{
+		final byte[] array = hdf5Access.readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, buffer.getCurrentStorageArray() );
+		return new VolatileByteArray( array, true );
+	}
+
 	@Override
 	public VolatileByteArray emptyArray( final int[] dimensions )
 	{
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileByteArray( numEntities, false );
-		return theEmptyArray;
+		VolatileByteArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileByteArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
 	}
 
 	@Override
@@ -38,4 +51,16 @@ public class ImarisVolatileByteArrayLoader implements CacheArrayLoader< Volatile
 	{
 		return 1;
 	}
+
+	@Override
+	public VolatileByteArray getUniformArray( final VolatileByteArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileByteArray wrapStorage( final VolatileByteArray array )
+	{
+		return new VolatileByteArray( array.getCurrentStorageArray(), false );
+	}
 }
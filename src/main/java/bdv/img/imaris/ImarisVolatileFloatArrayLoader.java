@@ -1,13 +1,15 @@
 package bdv.img.imaris;
 
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
-import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
 
-public class ImarisVolatileFloatArrayLoader implements CacheArrayLoader< VolatileFloatArray >
+public class ImarisVolatileFloatArrayLoader implements RecyclingCacheArrayLoader< VolatileFloatArray >, UniformCellCacheArrayLoader< VolatileFloatArray >
 {
 	private final IHDF5Access hdf5Access;
 
-	private VolatileFloatArray theEmptyArray;
+	private volatile VolatileFloatArray theEmptyArray;
 
 	public ImarisVolatileFloatArrayLoader( final IHDF5Access hdf5Access )
 	{
@@ -22,15 +24,26 @@ public class ImarisVolatileFloatArrayLoader implements CacheArrayLoader< Volatil
 		return new VolatileFloatArray( array, true );
 	}
 
+	@Override
+	public VolatileFloatArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final VolatileFloatArray buffer ) throws InterruptedException
+	{
+		final float[] array = hdf5Access.readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, buffer.getCurrentStorageArray() );
+		return new VolatileFloatArray( array, true );
+	}
+
 	@Override
 	public VolatileFloatArray emptyArray( final int[] dimensions )
 	{
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileFloatArray( numEntities, false );
-		return theEmptyArray;
+		VolatileFloatArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileFloatArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
 	}
 
 	@Override
@@ -38,4 +51,16 @@ public class ImarisVolatileFloatArrayLoader implements CacheArrayLoader< Volatil
 	{
 		return 2;
 	}
+
+	@Override
+	public VolatileFloatArray getUniformArray( final VolatileFloatArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileFloatArray wrapStorage( final VolatileFloatArray array )
+	{
+		return new VolatileFloatArray( array.getCurrentStorageArray(), false );
+	}
 }
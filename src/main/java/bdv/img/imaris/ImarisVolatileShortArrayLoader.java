@@ -1,13 +1,15 @@
 package bdv.img.imaris;
 
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
-import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
 
-public class ImarisVolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
+public class ImarisVolatileShortArrayLoader implements RecyclingCacheArrayLoader< VolatileShortArray >, UniformCellCacheArrayLoader< VolatileShortArray >
 {
 	private final IHDF5Access hdf5Access;
 
-	private VolatileShortArray theEmptyArray;
+	private volatile VolatileShortArray theEmptyArray;
 
 	public ImarisVolatileShortArrayLoader( final IHDF5Access hdf5Access )
 	{
@@ -22,15 +24,26 @@ public class ImarisVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 		return new VolatileShortArray( array, true );
 	}
 
+	@Override
+	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final VolatileShortArray buffer ) throws InterruptedException
+	{
+		final short[] array = hdf5Access.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, buffer.getCurrentStorageArray() );
+		return new VolatileShortArray( array, true );
+	}
+
 	@Override
 	public VolatileShortArray emptyArray( final int[] dimensions )
 	{
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileShortArray( numEntities, false );
-		return theEmptyArray;
+		VolatileShortArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileShortArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
 	}
 
 	@Override
@@ -38,4 +51,16 @@ public class ImarisVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 	{
 		return 2;
 	}
+
+	@Override
+	public VolatileShortArray getUniformArray( final VolatileShortArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileShortArray wrapStorage( final VolatileShortArray array )
+	{
+		return new VolatileShortArray( array.getCurrentStorageArray(), false );
+	}
 }
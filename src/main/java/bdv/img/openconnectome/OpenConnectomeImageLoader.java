@@ -1,5 +1,6 @@
 package bdv.img.openconnectome;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
@@ -19,10 +20,13 @@ import bdv.AbstractViewerImgLoader;
 import bdv.img.cache.Cache;
 import bdv.img.cache.CacheHints;
 import bdv.img.cache.CachedCellImg;
+import bdv.img.cache.DiskCellCache;
 import bdv.img.cache.LoadingStrategy;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.cache.VolatileGlobalCellCache.CellGrids;
 import bdv.img.cache.VolatileImgCells;
 import bdv.img.cache.VolatileImgCells.CellCache;
+import bdv.util.NioHttpClient;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonIOException;
@@ -42,9 +46,30 @@ public class OpenConnectomeImageLoader extends AbstractViewerImgLoader< Unsigned
 
 	protected VolatileGlobalCellCache< VolatileByteArray > cache;
 
+	/**
+	 * Identifies the dataset for the {@link DiskCellCache}.
+	 */
+	private final String identity;
+
+	private final CellGrids cellGrids = new CellGrids()
+	{
+		@Override
+		public long[] getImageDimensions( final int timepoint, final int setup, final int level )
+		{
+			return imageDimensions[ level ];
+		}
+
+		@Override
+		public int[] getCellDimensions( final int timepoint, final int setup, final int level )
+		{
+			return blockDimensions[ level ];
+		}
+	};
+
 	public OpenConnectomeImageLoader( final String baseUrl, final String token, final String mode )
 	{
 		super( new UnsignedByteType(), new VolatileUnsignedByteType() );
+		identity = baseUrl + "/" + token + "/" + mode;
 
 		final OpenConnectomeTokenInfo info = tryFetchTokenInfo( baseUrl, token, 20 );
 
@@ -57,6 +82,8 @@ public class OpenConnectomeImageLoader extends AbstractViewerImgLoader< Unsigned
 
 		cache = new VolatileGlobalCellCache< VolatileByteArray >(
 				new OpenConnectomeVolatileArrayLoader( baseUrl, token, mode, info.getMinZ() ), 1, 1, numScales, 10 );
+		cache.setCellGrids( cellGrids );
+		cache.setAdaptiveNumFetcherThreads( 1, 64 );
 	}
 
 	/**
@@ -218,12 +245,79 @@ public class OpenConnectomeImageLoader extends AbstractViewerImgLoader< Unsigned
 		return img;
 	}
 
+	/**
+	 * Keep all cells of mipmap levels {@code >= minLevel} (that is, the
+	 * coarsest levels) in memory permanently, and start loading them in the
+	 * background. Rendering can then always fall back to these levels without
+	 * waiting for I/O.
+	 */
+	public void pinLevels( final int minLevel )
+	{
+		cache.pinLevels( minLevel );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Keep all cells of the timepoints in {@code [minTimepoint, maxTimepoint]}
+	 * in memory permanently, and start loading them in the background.
+	 */
+	public void pinTimepoints( final int minTimepoint, final int maxTimepoint )
+	{
+		cache.pinTimepoints( minTimepoint, maxTimepoint );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Stop loading, clear the cache, and release its memory to the
+	 * {@link bdv.img.cache.CacheManager}. Images that were obtained from this
+	 * loader will stop working, and the loader must not be used afterwards.
+	 */
+	public void close()
+	{
+		cache.close();
+	}
+
 	@Override
 	public Cache getCache()
 	{
 		return cache;
 	}
 
+	/**
+	 * Fetch cells asynchronously, with up to {@code maxNumRequestsInFlight}
+	 * requests served by a non-blocking {@link NioHttpClient} (see
+	 * {@link VolatileGlobalCellCache#setMaxNumRequestsInFlight(int)}). By
+	 * default, cells are fetched by blocking {@link java.net.HttpURLConnection
+	 * HttpURLConnections}. Asynchronous fetching is only possible for plain
+	 * {@code http} service URLs without an HTTP proxy.
+	 *
+	 * @param maxNumRequestsInFlight
+	 *            maximum number of concurrent requests, or 0 to fetch
+	 *            cells with blocking connections.
+	 * @return whether cells are fetched asynchronously.
+	 */
+	public boolean setMaxNumRequestsInFlight( final int maxNumRequestsInFlight )
+	{
+		return cache.setMaxNumRequestsInFlight( maxNumRequestsInFlight );
+	}
+
+	/**
+	 * Enable a persistent on-disk cache for cells fetched from the Open Connectome service. Cells
+	 * are then loaded from local files instead of over the network, if they
+	 * were fetched before (in this or a previous session).
+	 *
+	 * @param cacheDirectory
+	 *            root directory of the disk cache. It may be shared by
+	 *            several datasets.
+	 * @param maxSizeInBytes
+	 *            maximum size of the cached cells of this dataset on disk.
+	 */
+	public void setDiskCache( final File cacheDirectory, final long maxSizeInBytes )
+	{
+		final String fingerprint = cache.describeDataset( cellGrids, null );
+		cache.setDiskCache( new DiskCellCache< VolatileByteArray >( cacheDirectory, identity, fingerprint, maxSizeInBytes, DiskCellCache.BYTE_ARRAY_CODEC ) );
+	}
+
 	@Override
 	public AffineTransform3D[] getMipmapTransforms( final int setup )
 	{
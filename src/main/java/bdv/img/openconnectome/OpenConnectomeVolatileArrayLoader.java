@@ -3,16 +3,22 @@ package bdv.img.openconnectome;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import bdv.img.cache.AsyncCacheArrayLoader;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
+import bdv.util.NioHttpClient;
 
-public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< VolatileByteArray >
+public class OpenConnectomeVolatileArrayLoader implements AsyncCacheArrayLoader< VolatileByteArray >, RecyclingCacheArrayLoader< VolatileByteArray >, UniformCellCacheArrayLoader< VolatileByteArray >
 {
-	private VolatileByteArray theEmptyArray;
+	private volatile VolatileByteArray theEmptyArray;
 
 	final private String tokenUrl;
 
@@ -74,6 +80,20 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 		}
 	}
 
+	@Override
+	public VolatileByteArray loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min,
+			final VolatileByteArray buffer ) throws InterruptedException
+	{
+		final byte[] data = buffer.getCurrentStorageArray();
+		final boolean loaded = load( level, dimensions, min, data );
+		return new VolatileByteArray( data, loaded );
+	}
+
 	public VolatileByteArray tryLoadArray(
 			final int timepoint,
 			final int setup,
@@ -82,7 +102,140 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 			final long[] min ) throws InterruptedException
 	{
 		final byte[] data = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final boolean loaded = load( level, dimensions, min, data );
+		return new VolatileByteArray( data, loaded );
+	}
+
+	/**
+	 * Load the data of a cell into {@code data}.
+	 *
+	 * @return true, if the cell was loaded completely. false, if the request
+	 *         failed or the response could not be unpacked.
+	 */
+	private boolean load(
+			final int level,
+			final int[] dimensions,
+			final long[] min,
+			final byte[] data ) throws InterruptedException
+	{
+		final String url = cellUrl( level, dimensions, min );
+
+		try
+		{
+			final URL file = new URL( url );
+			final InputStream in = file.openStream();
+			final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+			final byte[] chunk = new byte[ 4096 ];
+			try
+			{
+				for ( int l = in.read( chunk ); l > 0; l = in.read( chunk ) )
+				{
+					if ( Thread.interrupted() )
+						throw new InterruptedException();
+					byteStream.write( chunk, 0, l );
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+
+			inflate( byteStream.toByteArray(), data );
+			byteStream.close();
+			return true;
+		}
+		catch ( final IOException e )
+		{
+			return false;
+		}
+		catch( final DataFormatException e )
+		{
+			return false;
+		}
+	}
 
+	@Override
+	public boolean isAsyncSupported()
+	{
+		try
+		{
+			return NioHttpClient.supports( new URL( tokenUrl ) );
+		}
+		catch ( final MalformedURLException e )
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public void loadArrayAsync(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min,
+			final Callback< ? super VolatileByteArray > callback )
+	{
+		final byte[] data = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final String url = cellUrl( level, dimensions, min );
+		final NioHttpClient.Callback zipCallback = new NioHttpClient.Callback()
+		{
+			@Override
+			public void completed( final byte[] zippedData )
+			{
+				try
+				{
+					inflate( zippedData, data );
+				}
+				catch ( final DataFormatException e )
+				{
+					callback.failed( new IOException( "failed unpacking x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url + ")", e ) );
+					return;
+				}
+				callback.loaded( new VolatileByteArray( data, true ) );
+			}
+
+			@Override
+			public void failed( final Exception e )
+			{
+				callback.failed( new IOException( "failed loading x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url + ")", e ) );
+			}
+		};
+		try
+		{
+			NioHttpClient.getDefault().get( new URL( url ), zipCallback );
+		}
+		catch ( final MalformedURLException e )
+		{
+			zipCallback.failed( e );
+		}
+	}
+
+	/**
+	 * Unpack {@code zippedData} into {@code data}.
+	 *
+	 * @throws DataFormatException
+	 *             if {@code zippedData} is corrupt or does not fill
+	 *             {@code data} completely.
+	 */
+	private static void inflate( final byte[] zippedData, final byte[] data ) throws DataFormatException
+	{
+		final Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput( zippedData );
+			final int n = inflater.inflate( data );
+			if ( n < data.length )
+				throw new DataFormatException( "truncated data: " + n + " of " + data.length + " bytes" );
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	private String cellUrl( final int level, final int[] dimensions, final long[] min )
+	{
 		final StringBuffer url = new StringBuffer( tokenUrl );
 
 		final long z = min[ 2 ] + zMin;
@@ -102,33 +255,7 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 		url.append( z + dimensions[ 2 ] );
 		url.append( mode );
 
-		try
-		{
-			final URL file = new URL( url.toString() );
-			final InputStream in = file.openStream();
-			final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-			final byte[] chunk = new byte[ 4096 ];
-			int l;
-			for ( l = in.read( chunk ); l > 0; l = in.read( chunk ) )
-			    byteStream.write( chunk, 0, l );
-
-			final byte[] zippedData = byteStream.toByteArray();
-			final Inflater inflater = new Inflater();
-			inflater.setInput( zippedData );
-			inflater.inflate( data );
-			inflater.end();
-			byteStream.close();
-		}
-		catch ( final IOException e )
-		{
-			System.out.println( "failed loading x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
-		}
-		catch( final DataFormatException e )
-		{
-			System.out.println( "failed unpacking x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
-		}
-
-		return new VolatileByteArray( data, true );
+		return url.toString();
 	}
 
 	@Override
@@ -137,8 +264,24 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileByteArray( numEntities, false );
-		return theEmptyArray;
+		VolatileByteArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileByteArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
+	}
+
+	@Override
+	public VolatileByteArray getUniformArray( final VolatileByteArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileByteArray wrapStorage( final VolatileByteArray array )
+	{
+		return new VolatileByteArray( array.getCurrentStorageArray(), false );
 	}
 }
@@ -1,8 +1,10 @@
 package bdv.img.remote;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.HashMap;
 
 import mpicbg.spim.data.sequence.ViewId;
@@ -20,14 +22,18 @@ import net.imglib2.view.Views;
 import bdv.AbstractViewerImgLoader;
 import bdv.img.cache.CacheHints;
 import bdv.img.cache.CachedCellImg;
+import bdv.img.cache.CompressedCellTier;
+import bdv.img.cache.DiskCellCache;
 import bdv.img.cache.LoadingStrategy;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.cache.VolatileGlobalCellCache.CellGrids;
 import bdv.img.cache.VolatileImgCells;
 import bdv.img.cache.VolatileImgCells.CellCache;
 import bdv.img.hdf5.DimsAndExistence;
 import bdv.img.hdf5.MipmapInfo;
 import bdv.img.hdf5.ViewLevelId;
 import bdv.util.ConstantRandomAccessible;
+import bdv.util.NioHttpClient;
 
 import com.google.gson.GsonBuilder;
 
@@ -41,6 +47,31 @@ public class RemoteImageLoader extends AbstractViewerImgLoader< UnsignedShortTyp
 
 	protected VolatileGlobalCellCache< VolatileShortArray > cache;
 
+	/**
+	 * Version of the dataset reported by the server (ETag or last
+	 * modification time of the metadata), or {@code null} if unknown.
+	 */
+	private String datasetVersion;
+
+	private final CellGrids cellGrids = new CellGrids()
+	{
+		@Override
+		public long[] getImageDimensions( final int timepoint, final int setup, final int level )
+		{
+			final MipmapInfo mipmapInfo = metadata.perSetupMipmapInfo.get( setup );
+			if ( mipmapInfo == null || level >= mipmapInfo.getNumLevels() )
+				return null;
+			final DimsAndExistence dims = metadata.dimsAndExistence.get( new ViewLevelId( timepoint, setup, level ) );
+			return ( dims != null && dims.exists() ) ? dims.getDimensions() : null;
+		}
+
+		@Override
+		public int[] getCellDimensions( final int timepoint, final int setup, final int level )
+		{
+			return metadata.perSetupMipmapInfo.get( setup ).getSubdivisions()[ level ];
+		}
+	};
+
 	public RemoteImageLoader( final String baseUrl ) throws IOException
 	{
 		this( baseUrl, true );
@@ -67,22 +98,50 @@ public class RemoteImageLoader extends AbstractViewerImgLoader< UnsignedShortTyp
 				isOpen = true;
 
 				final URL url = new URL( baseUrl + "?p=init" );
+				final URLConnection connection = url.openConnection();
 				final GsonBuilder gsonBuilder = new GsonBuilder();
 				gsonBuilder.registerTypeAdapter( AffineTransform3D.class, new AffineTransform3DJsonSerializer() );
 				metadata = gsonBuilder.create().fromJson(
-						new InputStreamReader( url.openStream() ),
+						new InputStreamReader( connection.getInputStream() ),
 						RemoteImageLoaderMetaData.class );
+				final String etag = connection.getHeaderField( "ETag" );
+				final long lastModified = connection.getLastModified();
+				datasetVersion = etag != null ? "etag " + etag : ( lastModified > 0 ? "modified " + lastModified : null );
 				cache = new VolatileGlobalCellCache< VolatileShortArray >(
 						new RemoteVolatileShortArrayLoader( this ),
 						metadata.maxNumTimepoints,
 						metadata.maxNumSetups,
 						metadata.maxNumLevels,
 						10 );
+				cache.setCellGrids( cellGrids );
+				cache.setAdaptiveNumFetcherThreads( 1, 64 );
 				cellsDimensions = metadata.createCellsDimensions();
 			}
 		}
 	}
 
+	/**
+	 * Stop loading, clear the cache, and release its memory to the
+	 * {@link bdv.img.cache.CacheManager}. Images that were obtained from this
+	 * loader before {@link #close()} will stop working. Requesting images
+	 * after {@link #close()} will cause the metadata to be fetched again
+	 * (with a new cache).
+	 */
+	public void close()
+	{
+		if ( isOpen )
+		{
+			synchronized ( this )
+			{
+				if ( !isOpen )
+					return;
+				isOpen = false;
+
+				cache.close();
+			}
+		}
+	}
+
 	private void tryopen()
 	{
 		try
@@ -129,6 +188,30 @@ public class RemoteImageLoader extends AbstractViewerImgLoader< UnsignedShortTyp
 		return img;
 	}
 
+	/**
+	 * Keep all cells of mipmap levels {@code >= minLevel} (that is, the
+	 * coarsest levels) in memory permanently, and start loading them in the
+	 * background. Rendering can then always fall back to these levels without
+	 * waiting for I/O.
+	 */
+	public void pinLevels( final int minLevel )
+	{
+		tryopen();
+		cache.pinLevels( minLevel );
+		cache.preloadPinned( cellGrids );
+	}
+
+	/**
+	 * Keep all cells of the timepoints in {@code [minTimepoint, maxTimepoint]}
+	 * in memory permanently, and start loading them in the background.
+	 */
+	public void pinTimepoints( final int minTimepoint, final int maxTimepoint )
+	{
+		tryopen();
+		cache.pinTimepoints( minTimepoint, maxTimepoint );
+		cache.preloadPinned( cellGrids );
+	}
+
 	@Override
 	public VolatileGlobalCellCache< VolatileShortArray > getCache()
 	{
@@ -136,6 +219,55 @@ public class RemoteImageLoader extends AbstractViewerImgLoader< UnsignedShortTyp
 		return cache;
 	}
 
+	/**
+	 * Fetch cells asynchronously, with up to {@code maxNumRequestsInFlight}
+	 * requests served by a non-blocking {@link NioHttpClient} (see
+	 * {@link VolatileGlobalCellCache#setMaxNumRequestsInFlight(int)}). By
+	 * default, cells are fetched by blocking {@link java.net.HttpURLConnection
+	 * HttpURLConnections}. Asynchronous fetching is only possible for plain
+	 * {@code http} server URLs without an HTTP proxy.
+	 *
+	 * @param maxNumRequestsInFlight
+	 *            maximum number of concurrent requests, or 0 to fetch
+	 *            cells with blocking connections.
+	 * @return whether cells are fetched asynchronously.
+	 */
+	public boolean setMaxNumRequestsInFlight( final int maxNumRequestsInFlight )
+	{
+		return getCache().setMaxNumRequestsInFlight( maxNumRequestsInFlight );
+	}
+
+	/**
+	 * Enable a persistent on-disk cache for cells fetched from the server. Cells
+	 * are then loaded from local files instead of over the network, if they
+	 * were fetched before (in this or a previous session).
+	 *
+	 * @param cacheDirectory
+	 *            root directory of the disk cache. It may be shared by
+	 *            several datasets.
+	 * @param maxSizeInBytes
+	 *            maximum size of the cached cells of this dataset on disk.
+	 */
+	public void setDiskCache( final File cacheDirectory, final long maxSizeInBytes )
+	{
+		final String fingerprint = getCache().describeDataset( cellGrids, datasetVersion );
+		cache.setDiskCache( new DiskCellCache< VolatileShortArray >( cacheDirectory, baseUrl, fingerprint, maxSizeInBytes, DiskCellCache.SHORT_ARRAY_CODEC ) );
+	}
+
+	/**
+	 * Keep cells that are evicted from memory in compressed form, up to
+	 * {@code maxSizeInBytes} of compressed data. Cells are then decompressed
+	 * instead of fetched from the server again, when they are revisited.
+	 *
+	 * @param maxSizeInBytes
+	 *            maximum size of the compressed cells, or 0 to disable the
+	 *            compressed tier.
+	 */
+	public void setCompressedCacheSize( final long maxSizeInBytes )
+	{
+		getCache().setCompressedTier( maxSizeInBytes <= 0 ? null : new CompressedCellTier< VolatileShortArray >( maxSizeInBytes, DiskCellCache.SHORT_ARRAY_CODEC ) );
+	}
+
 	@Override
 	public double[][] getMipmapResolutions( final int setupId )
 	{
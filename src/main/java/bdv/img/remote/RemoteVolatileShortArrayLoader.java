@@ -6,11 +6,20 @@ import java.net.MalformedURLException;
 import java.net.URL;
 
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
-import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.AsyncCacheArrayLoader;
+import bdv.img.cache.RecyclingCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
+import bdv.img.cache.UniformCellCacheArrayLoader;
+import bdv.util.NioHttpClient;
 
-public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
+public class RemoteVolatileShortArrayLoader implements AsyncCacheArrayLoader< VolatileShortArray >, RecyclingCacheArrayLoader< VolatileShortArray >, UniformCellCacheArrayLoader< VolatileShortArray >
 {
-	private VolatileShortArray theEmptyArray;
+	/**
+	 * Per-thread buffer for received bytes, grown as necessary.
+	 */
+	private final ThreadLocal< byte[] > receiveBuffer = new ThreadLocal< byte[] >();
+
+	private volatile VolatileShortArray theEmptyArray;
 
 	private final RemoteImageLoader imgLoader;
 
@@ -23,38 +32,134 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 	@Override
 	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
-		final int index = imgLoader.getCellIndex( timepoint, setup, level, min );
 		final short[] data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final boolean loaded = load( timepoint, setup, level, dimensions, min, data );
+		return new VolatileShortArray( data, loaded );
+	}
+
+	@Override
+	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final VolatileShortArray buffer ) throws InterruptedException
+	{
+		final short[] data = buffer.getCurrentStorageArray();
+		final boolean loaded = load( timepoint, setup, level, dimensions, min, data );
+		return new VolatileShortArray( data, loaded );
+	}
+
+	/**
+	 * Load the data of a cell into {@code data}.
+	 *
+	 * @return true, if the cell was loaded completely. false, if the request
+	 *         failed or the response was truncated. The cache then handles
+	 *         the load as failed and retries it.
+	 */
+	private boolean load( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] data ) throws InterruptedException
+	{
 		try
 		{
-			final URL url = new URL( String.format( "%s?p=cell/%d/%d/%d/%d/%d/%d/%d/%d/%d/%d",
-					imgLoader.baseUrl,
-					index,
-					timepoint,
-					setup,
-					level,
-					dimensions[ 0 ],
-					dimensions[ 1 ],
-					dimensions[ 2 ],
-					min[ 0 ],
-					min[ 1 ],
-					min[ 2 ] ) );
+			final URL url = cellUrl( timepoint, setup, level, dimensions, min );
 			final InputStream s = url.openStream();
-			final byte[] buf = new byte[ data.length * 2 ];
-			for ( int i = 0, l = s.read( buf, 0, buf.length ); l > 0; i += l, l = s.read( buf, i, buf.length - i ) );
-			for ( int i = 0, j = 0; i < data.length; ++i, j += 2 )
-				data[ i ] = ( short ) ( ( ( buf[ j ] & 0xff ) << 8 ) | ( buf[ j + 1 ] & 0xff ) );
-			s.close();
+			byte[] buf = receiveBuffer.get();
+			if ( buf == null || buf.length < data.length * 2 )
+			{
+				buf = new byte[ data.length * 2 ];
+				receiveBuffer.set( buf );
+			}
+			int numBytes = 0;
+			try
+			{
+				for ( int l = s.read( buf, 0, data.length * 2 ); l > 0; numBytes += l, l = s.read( buf, numBytes, data.length * 2 - numBytes ) )
+					if ( Thread.interrupted() )
+						throw new InterruptedException();
+			}
+			finally
+			{
+				s.close();
+			}
+			if ( numBytes < data.length * 2 )
+				throw new IOException( "truncated response for " + url + ": " + numBytes + " of " + ( data.length * 2 ) + " bytes" );
+			decode( buf, data );
+			return true;
+		}
+		catch ( final IOException e )
+		{
+			// the invalid array is reported to the cache as a failed load
+			return false;
+		}
+	}
+
+	@Override
+	public boolean isAsyncSupported()
+	{
+		try
+		{
+			return NioHttpClient.supports( new URL( imgLoader.baseUrl ) );
 		}
 		catch ( final MalformedURLException e )
 		{
-			e.printStackTrace();
+			return false;
 		}
-		catch ( final IOException e )
+	}
+
+	@Override
+	public void loadArrayAsync( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final Callback< ? super VolatileShortArray > callback )
+	{
+		final short[] data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final URL url;
+		try
+		{
+			url = cellUrl( timepoint, setup, level, dimensions, min );
+		}
+		catch ( final MalformedURLException e )
 		{
-			e.printStackTrace();
+			callback.failed( e );
+			return;
 		}
-		return new VolatileShortArray( data, true );
+		NioHttpClient.getDefault().get( url, new NioHttpClient.Callback()
+		{
+			@Override
+			public void completed( final byte[] body )
+			{
+				if ( body.length < data.length * 2 )
+				{
+					callback.failed( new IOException( "truncated response for " + url + ": " + body.length + " of " + ( data.length * 2 ) + " bytes" ) );
+					return;
+				}
+				decode( body, data );
+				callback.loaded( new VolatileShortArray( data, true ) );
+			}
+
+			@Override
+			public void failed( final Exception e )
+			{
+				callback.failed( e );
+			}
+		} );
+	}
+
+	private URL cellUrl( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws MalformedURLException
+	{
+		final int index = imgLoader.getCellIndex( timepoint, setup, level, min );
+		return new URL( String.format( "%s?p=cell/%d/%d/%d/%d/%d/%d/%d/%d/%d/%d",
+				imgLoader.baseUrl,
+				index,
+				timepoint,
+				setup,
+				level,
+				dimensions[ 0 ],
+				dimensions[ 1 ],
+				dimensions[ 2 ],
+				min[ 0 ],
+				min[ 1 ],
+				min[ 2 ] ) );
+	}
+
+	/**
+	 * Convert big-endian bytes to shorts.
+	 */
+	private static void decode( final byte[] buf, final short[] data )
+	{
+		for ( int i = 0, j = 0; i < data.length; ++i, j += 2 )
+			data[ i ] = ( short ) ( ( ( buf[ j ] & 0xff ) << 8 ) | ( buf[ j + 1 ] & 0xff ) );
 	}
 
 	@Override
@@ -63,9 +168,13 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 		int numEntities = 1;
 		for ( int i = 0; i < dimensions.length; ++i )
 			numEntities *= dimensions[ i ];
-		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
-			theEmptyArray = new VolatileShortArray( numEntities, false );
-		return theEmptyArray;
+		VolatileShortArray empty = theEmptyArray;
+		if ( empty.getCurrentStorageArray().length < numEntities )
+		{
+			empty = new VolatileShortArray( numEntities, false );
+			theEmptyArray = empty;
+		}
+		return empty;
 	}
 
 	@Override
@@ -73,4 +182,15 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 		return 2;
 	}
 
+	@Override
+	public VolatileShortArray getUniformArray( final VolatileShortArray data, final int numElements )
+	{
+		return UniformArrays.uniform( data, numElements );
+	}
+
+	@Override
+	public VolatileShortArray wrapStorage( final VolatileShortArray array )
+	{
+		return new VolatileShortArray( array.getCurrentStorageArray(), false );
+	}
 }
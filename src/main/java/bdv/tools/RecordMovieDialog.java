@@ -33,14 +33,11 @@ import javax.swing.event.ChangeListener;
 
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.ui.OverlayRenderer;
-import net.imglib2.ui.PainterThread;
-import net.imglib2.ui.RenderTarget;
 import bdv.export.ProgressWriter;
-import bdv.img.cache.Cache;
 import bdv.util.Prefs;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.BatchRenderer;
 import bdv.viewer.state.ViewerState;
 
 public class RecordMovieDialog extends JDialog implements OverlayRenderer
@@ -239,51 +236,25 @@ public class RecordMovieDialog extends JDialog implements OverlayRenderer
 		affine.set( affine.get( 1, 3 ) + height / 2, 1, 3 );
 		renderState.setViewerTransform( affine );
 
-		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
-
-		class MyTarget implements RenderTarget
+		final boolean showScaleBar = Prefs.showScaleBarInMovie();
+		final BatchRenderer.FrameWriter writer = new BatchRenderer.FrameWriter()
 		{
-			BufferedImage bi;
-
 			@Override
-			public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
+			public void write( final ViewerState state, final BufferedImage image ) throws IOException
 			{
-				bi = bufferedImage;
-				return null;
-			}
-
-			@Override
-			public int getWidth()
-			{
-				return width;
-			}
-
-			@Override
-			public int getHeight()
-			{
-				return height;
-			}
-		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer( target, new PainterThread( null ), new double[] { 1 }, 0, false, 1, null, false, new Cache.Dummy() );
-		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
-		{
-			renderState.setCurrentTimepoint( timepoint );
-			renderer.requestRepaint();
-			renderer.paint( renderState );
+				if ( showScaleBar )
+				{
+					final ScaleBarOverlayRenderer scalebar = new ScaleBarOverlayRenderer();
+					final Graphics2D g2 = image.createGraphics();
+					g2.setClip( 0, 0, width, height );
+					scalebar.setViewerState( state );
+					scalebar.paint( g2 );
+				}
 
-			if ( Prefs.showScaleBarInMovie() )
-			{
-				final Graphics2D g2 = target.bi.createGraphics();
-				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
+				ImageIO.write( image, "png", new File( String.format( "%s/img-%03d.png", dir, state.getCurrentTimepoint() ) ) );
 			}
-
-			ImageIO.write( target.bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
-		}
+		};
+		new BatchRenderer( width, height ).render( renderState, minTimepointIndex, maxTimepointIndex, writer, progressWriter );
 	}
 
 	@Override
@@ -0,0 +1,456 @@
+package bdv.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal asynchronous HTTP client, intended for image loaders that fetch
+ * many small cells over high-latency links. All connections are served by a
+ * single selector thread using non-blocking I/O, so hundreds of requests can
+ * be in flight without one thread per request. Response bodies are handed to
+ * {@link Callback callbacks} which are executed on a small pool of worker
+ * threads (such that decoding does not block the selector).
+ *
+ * <p>
+ * Only plain {@code http} URLs and {@code GET} requests are supported. Every
+ * request uses its own HTTP/1.0 connection, which is closed by the server
+ * after the response. Redirects are not followed. HTTP proxies are not
+ * supported, so no requests are made if the {@code http.proxyHost} system
+ * property is set (see {@link #supports(URL)}).
+ *
+ * <p>
+ * All failures, including failures of the selector thread itself, are
+ * reported to the {@link Callback} of the affected requests.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class NioHttpClient
+{
+	/**
+	 * Receives the result of a request. Exactly one of the methods is called
+	 * for each request.
+	 */
+	public interface Callback
+	{
+		/**
+		 * Called with the response body, if the request succeeded with
+		 * status 200.
+		 */
+		public void completed( byte[] body );
+
+		public void failed( Exception e );
+	}
+
+	private static NioHttpClient defaultClient;
+
+	/**
+	 * Get a shared client with one worker thread per available processor.
+	 */
+	public static synchronized NioHttpClient getDefault()
+	{
+		if ( defaultClient == null )
+			defaultClient = new NioHttpClient( Runtime.getRuntime().availableProcessors(), DEFAULT_TIMEOUT_MILLIS );
+		return defaultClient;
+	}
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 60000;
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private final long timeoutMillis;
+
+	private final Selector selector;
+
+	private final ExecutorService workers;
+
+	/**
+	 * Requests that have not been registered with the {@link #selector} yet.
+	 */
+	private final ConcurrentLinkedQueue< Request > pending;
+
+	private final ConcurrentHashMap< String, InetAddress > addresses;
+
+	private final Thread selectorThread;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param numWorkerThreads
+	 *            number of threads executing {@link Callback callbacks}.
+	 * @param timeoutMillis
+	 *            requests that take longer than this fail with a
+	 *            {@link SocketTimeoutException}.
+	 */
+	public NioHttpClient( final int numWorkerThreads, final long timeoutMillis )
+	{
+		this.timeoutMillis = timeoutMillis;
+		try
+		{
+			selector = Selector.open();
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		final AtomicInteger workerId = new AtomicInteger();
+		workers = Executors.newFixedThreadPool( numWorkerThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread( final Runnable r )
+			{
+				final Thread t = new Thread( r, "NioHttpClient-worker-" + workerId.getAndIncrement() );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
+		pending = new ConcurrentLinkedQueue< Request >();
+		addresses = new ConcurrentHashMap< String, InetAddress >();
+		closed = false;
+		selectorThread = new Thread( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				selectLoop();
+			}
+		}, "NioHttpClient-selector" );
+		selectorThread.setDaemon( true );
+		selectorThread.start();
+	}
+
+	/**
+	 * Whether requests to {@code url} are supported by this client. This is
+	 * the case for {@code http} URLs, unless an HTTP proxy is configured with
+	 * the {@code http.proxyHost} system property. Callers should fall back to
+	 * {@link java.net.HttpURLConnection}, which honours the proxy settings,
+	 * otherwise.
+	 */
+	public static boolean supports( final URL url )
+	{
+		return "http".equals( url.getProtocol() ) && !isProxyConfigured();
+	}
+
+	private static boolean isProxyConfigured()
+	{
+		final String proxyHost = System.getProperty( "http.proxyHost" );
+		return proxyHost != null && !proxyHost.isEmpty();
+	}
+
+	/**
+	 * Start a {@code GET} request. This returns immediately.
+	 *
+	 * @param url
+	 *            the requested URL.
+	 * @param callback
+	 *            receives the response body or failure.
+	 */
+	public void get( final URL url, final Callback callback )
+	{
+		if ( !"http".equals( url.getProtocol() ) )
+		{
+			callback.failed( new IOException( "unsupported protocol: " + url.getProtocol() ) );
+			return;
+		}
+		if ( isProxyConfigured() )
+		{
+			callback.failed( new IOException( "HTTP proxy is not supported: " + System.getProperty( "http.proxyHost" ) ) );
+			return;
+		}
+		if ( closed )
+		{
+			callback.failed( new IOException( "client is closed" ) );
+			return;
+		}
+		final Request request;
+		try
+		{
+			request = new Request( url, callback );
+		}
+		catch ( final IOException e )
+		{
+			callback.failed( e );
+			return;
+		}
+		pending.add( request );
+		selector.wakeup();
+
+		// the selector thread may have stopped before it saw the request
+		if ( closed && pending.remove( request ) )
+			request.fail( new IOException( "client is closed" ) );
+	}
+
+	/**
+	 * Stop the selector and worker threads. Requests in flight fail.
+	 */
+	public void close()
+	{
+		closed = true;
+		selector.wakeup();
+	}
+
+	private class Request
+	{
+		final URL url;
+
+		final Callback callback;
+
+		final InetSocketAddress address;
+
+		final ByteBuffer request;
+
+		final ByteArrayOutputStream response;
+
+		final long deadline;
+
+		SocketChannel channel;
+
+		Request( final URL url, final Callback callback ) throws IOException
+		{
+			this.url = url;
+			this.callback = callback;
+			final String host = url.getHost();
+			InetAddress inet = addresses.get( host );
+			if ( inet == null )
+			{
+				inet = InetAddress.getByName( host );
+				addresses.put( host, inet );
+			}
+			address = new InetSocketAddress( inet, url.getPort() < 0 ? url.getDefaultPort() : url.getPort() );
+			final String path = url.getFile().isEmpty() ? "/" : url.getFile();
+			final String header = "GET " + path + " HTTP/1.0\r\nHost: " + host + "\r\nConnection: close\r\n\r\n";
+			request = ByteBuffer.wrap( header.getBytes( "ISO-8859-1" ) );
+			response = new ByteArrayOutputStream();
+			deadline = System.currentTimeMillis() + timeoutMillis;
+		}
+
+		void start() throws IOException
+		{
+			channel = SocketChannel.open();
+			channel.configureBlocking( false );
+			if ( channel.connect( address ) )
+				channel.register( selector, SelectionKey.OP_WRITE, this );
+			else
+				channel.register( selector, SelectionKey.OP_CONNECT, this );
+		}
+
+		void fail( final Exception e )
+		{
+			closeChannel();
+			execute( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					callback.failed( e );
+				}
+			} );
+		}
+
+		void complete()
+		{
+			closeChannel();
+			execute( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					final byte[] bytes = response.toByteArray();
+					final int headerEnd = headerEnd( bytes );
+					if ( headerEnd < 0 )
+					{
+						callback.failed( new IOException( "malformed response from " + url ) );
+						return;
+					}
+					final int status = status( bytes );
+					if ( status != 200 )
+					{
+						callback.failed( new IOException( "HTTP status " + status + " from " + url ) );
+						return;
+					}
+					final byte[] body = new byte[ bytes.length - headerEnd ];
+					System.arraycopy( bytes, headerEnd, body, 0, body.length );
+					callback.completed( body );
+				}
+			} );
+		}
+
+		void closeChannel()
+		{
+			if ( channel != null )
+				try
+				{
+					channel.close();
+				}
+				catch ( final IOException e )
+				{}
+		}
+	}
+
+	/**
+	 * Run {@code task} on a worker thread, or on the current thread if the
+	 * workers were shut down.
+	 */
+	private void execute( final Runnable task )
+	{
+		try
+		{
+			workers.execute( task );
+		}
+		catch ( final RejectedExecutionException e )
+		{
+			task.run();
+		}
+	}
+
+	private void selectLoop()
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+		Exception failure = null;
+		try
+		{
+			while ( !closed )
+			{
+				for ( Request r = pending.poll(); r != null; r = pending.poll() )
+					try
+					{
+						r.start();
+					}
+					catch ( final IOException e )
+					{
+						r.fail( e );
+					}
+
+				selector.select( 1000 );
+
+				final Iterator< SelectionKey > it = selector.selectedKeys().iterator();
+				while ( it.hasNext() )
+				{
+					final SelectionKey key = it.next();
+					it.remove();
+					final Request r = ( Request ) key.attachment();
+					try
+					{
+						if ( key.isConnectable() )
+						{
+							r.channel.finishConnect();
+							key.interestOps( SelectionKey.OP_WRITE );
+						}
+						else if ( key.isWritable() )
+						{
+							r.channel.write( r.request );
+							if ( !r.request.hasRemaining() )
+								key.interestOps( SelectionKey.OP_READ );
+						}
+						else if ( key.isReadable() )
+						{
+							buffer.clear();
+							final int n = r.channel.read( buffer );
+							if ( n < 0 )
+							{
+								key.cancel();
+								r.complete();
+							}
+							else
+								r.response.write( buffer.array(), 0, n );
+						}
+					}
+					catch ( final IOException e )
+					{
+						key.cancel();
+						r.fail( e );
+					}
+				}
+
+				// fail requests that exceeded the timeout
+				final long now = System.currentTimeMillis();
+				for ( final SelectionKey key : selector.keys() )
+				{
+					final Request r = ( Request ) key.attachment();
+					if ( key.isValid() && now > r.deadline )
+					{
+						key.cancel();
+						r.fail( new SocketTimeoutException( "timeout requesting " + r.url ) );
+					}
+				}
+			}
+		}
+		catch ( final ClosedSelectorException e )
+		{}
+		catch ( final IOException e )
+		{
+			failure = e;
+		}
+		catch ( final RuntimeException e )
+		{
+			failure = e;
+		}
+
+		// no new requests are accepted after the selector thread stopped
+		closed = true;
+
+		// fail everything that is still in flight
+		final IOException cause = failure == null
+				? new IOException( "client is closed" )
+				: new IOException( "client failed", failure );
+		try
+		{
+			for ( final SelectionKey key : selector.keys() )
+				if ( key.isValid() )
+					( ( Request ) key.attachment() ).fail( cause );
+		}
+		catch ( final ClosedSelectorException e )
+		{}
+		for ( Request r = pending.poll(); r != null; r = pending.poll() )
+			r.fail( cause );
+		try
+		{
+			selector.close();
+		}
+		catch ( final IOException e )
+		{}
+		workers.shutdown();
+	}
+
+	/**
+	 * Get the index of the first byte after the header (after the empty line),
+	 * or -1 if there is none.
+	 */
+	private static int headerEnd( final byte[] bytes )
+	{
+		for ( int i = 3; i < bytes.length; ++i )
+			if ( bytes[ i ] == '\n' && bytes[ i - 1 ] == '\r' && bytes[ i - 2 ] == '\n' && bytes[ i - 3 ] == '\r' )
+				return i + 1;
+		return -1;
+	}
+
+	/**
+	 * Parse the status code from the status line ("HTTP/1.x 200 OK").
+	 */
+	private static int status( final byte[] bytes )
+	{
+		int i = 0;
+		while ( i < bytes.length && bytes[ i ] != ' ' )
+			++i;
+		int status = 0;
+		for ( ++i; i < bytes.length && bytes[ i ] >= '0' && bytes[ i ] <= '9'; ++i )
+			status = 10 * status + ( bytes[ i ] - '0' );
+		return status;
+	}
+}
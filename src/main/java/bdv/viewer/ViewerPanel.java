@@ -57,6 +57,8 @@ import bdv.viewer.animate.TextOverlayAnimator.TextPosition;
 import bdv.viewer.overlay.MultiBoxOverlayRenderer;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
+import bdv.viewer.render.DefaultFramePacingController;
+import bdv.viewer.render.FramePacingController;
 import bdv.viewer.render.MultiResolutionRenderer;
 import bdv.viewer.render.TransformAwareBufferedImageOverlayRenderer;
 import bdv.viewer.state.SourceGroup;
@@ -135,6 +137,11 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	 */
 	protected final ExecutorService renderingExecutorService;
 
+	/**
+	 * Controls IO budgeting and fetcher queue.
+	 */
+	protected final Cache cache;
+
 	/**
 	 * Keeps track of the current mouse coordinates, which are used to provide
 	 * the current global position (see {@link #getGlobalMouseCoordinates(RealPositionable)}).
@@ -201,6 +208,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 
 		private boolean useVolatileIfAvailable = true;
 
+		private FramePacingController framePacingController = null;
+
 		private MessageOverlayAnimator msgOverlay = new MessageOverlayAnimator( 800 );
 
 		private TransformEventHandlerFactory< AffineTransform3D > transformEventHandlerFactory = TransformEventHandler3D.factory();
@@ -247,6 +256,20 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 			return this;
 		}
 
+		/**
+		 * Set the {@link FramePacingController} that chooses the coarsest
+		 * screen scale and the IO time budget. If {@code null} (default), a
+		 * {@link DefaultFramePacingController} with
+		 * {@link #targetRenderNanos(long) targetRenderNanos} is used. The
+		 * parameters of the controller may be changed while the viewer is
+		 * running.
+		 */
+		public Options framePacingController( final FramePacingController c )
+		{
+			framePacingController = c;
+			return this;
+		}
+
 		public Options msgOverlay( final MessageOverlayAnimator o )
 		{
 			msgOverlay = o;
@@ -312,11 +335,15 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		display.addOverlayRenderer( renderTarget );
 		display.addOverlayRenderer( this );
 
+		this.cache = cache;
 		renderingExecutorService = Executors.newFixedThreadPool( optional.numRenderingThreads );
 		imageRenderer = new MultiResolutionRenderer(
 				renderTarget, painterThread,
 				optional.screenScales, optional.targetRenderNanos, optional.doubleBuffered,
-				optional.numRenderingThreads, renderingExecutorService, optional.useVolatileIfAvailable, cache );
+				optional.numRenderingThreads, renderingExecutorService, optional.useVolatileIfAvailable, cache,
+				optional.framePacingController != null
+						? optional.framePacingController
+						: new DefaultFramePacingController( optional.targetRenderNanos ) );
 
 		mouseCoordinates = new MouseCoordinateListener();
 		display.addHandler( mouseCoordinates );
@@ -444,6 +471,17 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		imageRenderer.requestRepaint();
 	}
 
+	/**
+	 * Drop pending cell requests of the cache that are no longer wanted. This
+	 * should be called when the view changes discontinuously, e.g., when
+	 * jumping to a bookmark. (This is done automatically when the timepoint
+	 * changes.)
+	 */
+	public void cancelStaleRequests()
+	{
+		cache.cancelStaleRequests();
+	}
+
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
@@ -658,8 +696,13 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	{
 		if ( state.getCurrentTimepoint() != timepoint )
 		{
+			// During playback, pending requests are for the timepoints that
+			// come next, so they are kept.
+			final boolean readAhead = imageRenderer.getTimepointReadAhead().timepointChanged( timepoint );
 			state.setCurrentTimepoint( timepoint );
 			sliderTime.setValue( timepoint );
+			if ( !readAhead )
+				cancelStaleRequests();
 			requestRepaint();
 		}
 	}
@@ -702,6 +745,17 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		return display;
 	}
 
+	/**
+	 * Get the {@link FramePacingController} that chooses the coarsest screen
+	 * scale and the IO time budget. Its parameters may be changed at runtime.
+	 *
+	 * @return the frame pacing controller.
+	 */
+	public FramePacingController getFramePacingController()
+	{
+		return imageRenderer.getFramePacingController();
+	}
+
 	/**
 	 * Display the specified message in a text overlay for a short time.
 	 *
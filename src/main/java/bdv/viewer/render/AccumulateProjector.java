@@ -178,4 +178,13 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
 	{
 		return valid;
 	}
+
+	@Override
+	public int getNumInvalidPixels()
+	{
+		int n = 0;
+		for ( final VolatileProjector p : sourceProjectors )
+			n += p.getNumInvalidPixels();
+		return n;
+	}
 }
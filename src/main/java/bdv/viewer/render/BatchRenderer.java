@@ -0,0 +1,309 @@
+package bdv.viewer.render;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.ui.PainterThread;
+import net.imglib2.ui.RenderTarget;
+import bdv.export.ProgressWriter;
+import bdv.img.cache.Cache;
+import bdv.viewer.state.SourceState;
+import bdv.viewer.state.ViewerState;
+
+/**
+ * Headless renderer for a range of timepoints, e.g., to export a movie.
+ *
+ * <p>
+ * Frames are rendered concurrently, each by its own single-threaded
+ * {@link MultiResolutionRenderer} from its own {@link ViewerState#copy() copy}
+ * of the viewer state. Sources are rendered non-volatile, that is, cells are
+ * loaded {@link bdv.img.cache.LoadingStrategy#BLOCKING blocking} and every
+ * frame is complete when it is handed on. Rendered frames are passed to a
+ * {@link FrameWriter} on a separate, bounded pool of encoder threads. If the
+ * encoders fall behind, rendering threads encode themselves, so the number of
+ * frames held in memory stays bounded. A prefetch thread loads the cells
+ * visible in upcoming timepoints into the cache, so that I/O overlaps with
+ * rendering and encoding.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class BatchRenderer
+{
+	/**
+	 * Receives rendered frames. Called concurrently from several threads, and
+	 * not necessarily in timepoint order.
+	 */
+	public interface FrameWriter
+	{
+		/**
+		 * @param state
+		 *            the state from which the frame was rendered. Its current
+		 *            timepoint is the timepoint of the frame.
+		 * @param image
+		 *            the rendered frame. It is owned by the callee.
+		 */
+		public void write( ViewerState state, BufferedImage image ) throws IOException;
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final int numRenderThreads;
+
+	private final int numEncoderThreads;
+
+	private final int numPrefetchAhead;
+
+	/**
+	 * Create a renderer that uses all available processors for rendering, and
+	 * half as many threads for encoding.
+	 *
+	 * @param width
+	 *            width of the rendered frames.
+	 * @param height
+	 *            height of the rendered frames.
+	 */
+	public BatchRenderer( final int width, final int height )
+	{
+		this( width, height,
+				Runtime.getRuntime().availableProcessors(),
+				Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ),
+				Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * @param width
+	 *            width of the rendered frames.
+	 * @param height
+	 *            height of the rendered frames.
+	 * @param numRenderThreads
+	 *            how many frames to render concurrently.
+	 * @param numEncoderThreads
+	 *            how many frames to hand to the {@link FrameWriter}
+	 *            concurrently.
+	 * @param numPrefetchAhead
+	 *            how many timepoints ahead of the last frame submitted for
+	 *            rendering to prefetch. 0 disables prefetching.
+	 */
+	public BatchRenderer( final int width, final int height, final int numRenderThreads, final int numEncoderThreads, final int numPrefetchAhead )
+	{
+		this.width = width;
+		this.height = height;
+		this.numRenderThreads = Math.max( 1, numRenderThreads );
+		this.numEncoderThreads = Math.max( 1, numEncoderThreads );
+		this.numPrefetchAhead = Math.max( 0, numPrefetchAhead );
+	}
+
+	/**
+	 * Render timepoints {@code minTimepoint} to {@code maxTimepoint}
+	 * (inclusive) of {@code state} and pass the frames to {@code writer}.
+	 * Returns when all frames are written, the first time the writer fails, or
+	 * when the calling thread is interrupted.
+	 *
+	 * @param state
+	 *            the state to render. It is copied for each frame and not
+	 *            modified.
+	 * @param progressWriter
+	 *            receives the fraction of frames written.
+	 * @throws IOException
+	 *             the first exception thrown by the {@code writer}.
+	 */
+	public void render( final ViewerState state, final int minTimepoint, final int maxTimepoint, final FrameWriter writer, final ProgressWriter progressWriter ) throws IOException
+	{
+		final int numFrames = maxTimepoint - minTimepoint + 1;
+		if ( numFrames <= 0 )
+			return;
+
+		final ExecutorService renderers = Executors.newFixedThreadPool( numRenderThreads );
+		final ThreadPoolExecutor encoders = new ThreadPoolExecutor(
+				numEncoderThreads, numEncoderThreads,
+				0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue< Runnable >( numEncoderThreads ),
+				new ThreadPoolExecutor.CallerRunsPolicy() );
+		final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+
+		// frames submitted for rendering but not yet written
+		final Semaphore framesInFlight = new Semaphore( numRenderThreads + 2 * numEncoderThreads );
+		final AtomicInteger lastStartedTimepoint = new AtomicInteger( minTimepoint - 1 );
+		final AtomicInteger numWritten = new AtomicInteger();
+		final AtomicReference< Exception > failure = new AtomicReference< Exception >();
+
+		progressWriter.setProgress( 0 );
+		try
+		{
+			int nextPrefetchTimepoint = minTimepoint;
+			for ( int timepoint = minTimepoint; timepoint <= maxTimepoint && failure.get() == null; ++timepoint )
+			{
+				framesInFlight.acquire();
+
+				final int maxPrefetchTimepoint = Math.min( maxTimepoint, timepoint + numPrefetchAhead );
+				for ( ; numPrefetchAhead > 0 && nextPrefetchTimepoint <= maxPrefetchTimepoint; ++nextPrefetchTimepoint )
+				{
+					final ViewerState prefetchState = state.copy();
+					prefetchState.setCurrentTimepoint( nextPrefetchTimepoint );
+					prefetcher.execute( new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							// once rendering started, the renderer loads the cells itself
+							if ( prefetchState.getCurrentTimepoint() > lastStartedTimepoint.get() && failure.get() == null )
+								prefetch( prefetchState );
+						}
+					} );
+				}
+
+				final ViewerState frameState = state.copy();
+				frameState.setCurrentTimepoint( timepoint );
+				renderers.execute( new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if ( failure.get() != null )
+						{
+							framesInFlight.release();
+							return;
+						}
+						lastStartedTimepoint.set( frameState.getCurrentTimepoint() );
+						final BufferedImage image;
+						try
+						{
+							image = renderFrame( frameState );
+						}
+						catch ( final RuntimeException e )
+						{
+							failure.compareAndSet( null, e );
+							framesInFlight.release();
+							return;
+						}
+						encoders.execute( new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								try
+								{
+									if ( failure.get() == null )
+									{
+										writer.write( frameState, image );
+										synchronized ( progressWriter )
+										{
+											progressWriter.setProgress( ( double ) numWritten.incrementAndGet() / numFrames );
+										}
+									}
+								}
+								catch ( final Exception e )
+								{
+									failure.compareAndSet( null, e );
+								}
+								finally
+								{
+									framesInFlight.release();
+								}
+							}
+						} );
+					}
+				} );
+			}
+
+			renderers.shutdown();
+			renderers.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+			encoders.shutdown();
+			encoders.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+		}
+		catch ( final InterruptedException e )
+		{
+			renderers.shutdownNow();
+			encoders.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			prefetcher.shutdownNow();
+		}
+
+		final Exception e = failure.get();
+		if ( e instanceof IOException )
+			throw ( IOException ) e;
+		else if ( e != null )
+			throw new RuntimeException( e );
+	}
+
+	/**
+	 * Render the current timepoint of {@code state} into a new image.
+	 */
+	private BufferedImage renderFrame( final ViewerState state )
+	{
+		final Target target = new Target( width, height );
+		final MultiResolutionRenderer renderer = new MultiResolutionRenderer( target, new PainterThread( null ), new double[] { 1 }, 0, false, 1, null, false, new Cache.Dummy() );
+		renderer.requestRepaint();
+		renderer.paint( state );
+		return target.bufferedImage;
+	}
+
+	/**
+	 * Load the cells that are needed to render the current timepoint of
+	 * {@code state}, at the mipmap levels that {@link #renderFrame(ViewerState)}
+	 * will use.
+	 */
+	private void prefetch( final ViewerState state )
+	{
+		final AffineTransform3D screenScaleTransform = new AffineTransform3D();
+		final FinalInterval screenInterval = new FinalInterval( width, height );
+		final int timepoint = state.getCurrentTimepoint();
+		for ( final int i : state.getVisibleSourceIndices() )
+		{
+			if ( Thread.currentThread().isInterrupted() )
+				return;
+			final SourceState< ? > source = state.getSources().get( i );
+			final int mipmapIndex = state.getBestMipMapLevel( screenScaleTransform, i );
+			MultiResolutionRenderer.prefetch( state, source.getSpimSource(), screenScaleTransform, mipmapIndex, timepoint, screenInterval, null );
+		}
+	}
+
+	private static class Target implements RenderTarget
+	{
+		private final int width;
+
+		private final int height;
+
+		BufferedImage bufferedImage;
+
+		Target( final int width, final int height )
+		{
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
+		{
+			this.bufferedImage = bufferedImage;
+			return null;
+		}
+
+		@Override
+		public int getWidth()
+		{
+			return width;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return height;
+		}
+	}
+}
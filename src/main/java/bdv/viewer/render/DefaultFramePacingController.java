@@ -0,0 +1,220 @@
+package bdv.viewer.render;
+
+/**
+ * {@link FramePacingController} that tries to keep the time for the first
+ * (coarsest) frame after a repaint request, rendering plus budgeted I/O, close
+ * to a target frame time.
+ *
+ * <p>
+ * The rendering time per unit of screen area is estimated from the measured
+ * rendering times of all frames, and used to predict the rendering time at
+ * each screen scale. The target frame time is split between rendering and
+ * I/O. The I/O share grows while many pixels of coarsest frames are invalid
+ * although I/O used up its budget, and shrinks again when few pixels are
+ * invalid. The coarsest screen scale is chosen such that its predicted
+ * rendering time fits into the rendering share, and the I/O budget is the
+ * remaining frame time.
+ *
+ * <p>
+ * To avoid oscillation, measurements are smoothed exponentially, the screen
+ * scale changes by at most one step per frame, and a finer screen scale is
+ * only chosen if its predicted rendering time is well below the rendering
+ * share (see {@link #setHysteresis(double)}).
+ *
+ * <p>
+ * All parameters can be changed while rendering.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class DefaultFramePacingController implements FramePacingController
+{
+	private long targetFrameNanos;
+
+	private long minIoBudgetNanos = 10l * 1000000l;
+
+	private long maxIoBudgetNanos = 100l * 1000000l;
+
+	private double targetInvalidFraction = 0.01;
+
+	private double minIoShare = 0.1;
+
+	private double maxIoShare = 0.8;
+
+	private double smoothing = 0.3;
+
+	private double hysteresis = 0.75;
+
+	/**
+	 * Squared screen scales, proportional to the number of pixels rendered at
+	 * each screen scale.
+	 */
+	private double[] areas = new double[] { 1 };
+
+	/**
+	 * Smoothed rendering time per area (rendering time at screen scale 1), or
+	 * NaN if no frame was measured yet.
+	 */
+	private double renderNanosPerArea = Double.NaN;
+
+	/**
+	 * Smoothed fraction of invalid pixels in coarsest frames.
+	 */
+	private double invalidFraction = 0;
+
+	/**
+	 * Fraction of {@link #targetFrameNanos} reserved for I/O.
+	 */
+	private double ioShare = 0.3;
+
+	private int maxScreenScaleIndex;
+
+	private long[] ioBudget;
+
+	/**
+	 * @param targetFrameNanos
+	 *            target time in nanoseconds for rendering and I/O of the first
+	 *            frame after a repaint request.
+	 */
+	public DefaultFramePacingController( final long targetFrameNanos )
+	{
+		this.targetFrameNanos = targetFrameNanos;
+		maxScreenScaleIndex = 0;
+		updateIoBudget();
+	}
+
+	@Override
+	public synchronized void init( final double[] screenScales )
+	{
+		areas = new double[ screenScales.length ];
+		for ( int i = 0; i < areas.length; ++i )
+			areas[ i ] = screenScales[ i ] * screenScales[ i ];
+		maxScreenScaleIndex = areas.length - 1;
+		renderNanosPerArea = Double.NaN;
+		updateIoBudget();
+	}
+
+	@Override
+	public synchronized void frameRendered( final int screenScaleIndex, final long renderNanos, final long ioNanos, final long numPixels, final long numInvalidPixels )
+	{
+		if ( renderNanos > 0 )
+		{
+			final double perArea = renderNanos / areas[ screenScaleIndex ];
+			renderNanosPerArea = Double.isNaN( renderNanosPerArea )
+					? perArea
+					: renderNanosPerArea + smoothing * ( perArea - renderNanosPerArea );
+		}
+
+		if ( screenScaleIndex == maxScreenScaleIndex && numPixels > 0 )
+		{
+			final double fraction = ( double ) numInvalidPixels / numPixels;
+			invalidFraction += smoothing * ( fraction - invalidFraction );
+			final boolean ioLimited = ioNanos >= 0.9 * ioBudget[ 0 ];
+			if ( invalidFraction > targetInvalidFraction && ioLimited )
+				ioShare += smoothing * ( maxIoShare - ioShare );
+			else if ( invalidFraction < targetInvalidFraction / 2 )
+				ioShare += smoothing * ( minIoShare - ioShare );
+		}
+
+		if ( !Double.isNaN( renderNanosPerArea ) )
+		{
+			final double renderBudget = ( 1 - ioShare ) * targetFrameNanos;
+			if ( predictRenderNanos( maxScreenScaleIndex ) > renderBudget && maxScreenScaleIndex < areas.length - 1 )
+				++maxScreenScaleIndex;
+			else if ( maxScreenScaleIndex > 0 && predictRenderNanos( maxScreenScaleIndex - 1 ) < hysteresis * renderBudget )
+				--maxScreenScaleIndex;
+		}
+		updateIoBudget();
+	}
+
+	@Override
+	public synchronized int getMaxScreenScaleIndex()
+	{
+		return maxScreenScaleIndex;
+	}
+
+	@Override
+	public synchronized long[] getIoBudget()
+	{
+		return ioBudget;
+	}
+
+	private double predictRenderNanos( final int screenScaleIndex )
+	{
+		return renderNanosPerArea * areas[ screenScaleIndex ];
+	}
+
+	private void updateIoBudget()
+	{
+		final double remaining = Double.isNaN( renderNanosPerArea )
+				? ioShare * targetFrameNanos
+				: targetFrameNanos - predictRenderNanos( maxScreenScaleIndex );
+		final long budget = Math.max( minIoBudgetNanos, Math.min( maxIoBudgetNanos, ( long ) remaining ) );
+		ioBudget = new long[] { budget, budget / 10 };
+	}
+
+	public synchronized long getTargetFrameNanos()
+	{
+		return targetFrameNanos;
+	}
+
+	/**
+	 * Set the target time in nanoseconds for rendering and I/O of the first
+	 * frame after a repaint request.
+	 */
+	public synchronized void setTargetFrameNanos( final long targetFrameNanos )
+	{
+		this.targetFrameNanos = targetFrameNanos;
+		updateIoBudget();
+	}
+
+	/**
+	 * Set the range of the I/O budget for the first frame after a repaint
+	 * request. Finer frames get a tenth of it.
+	 */
+	public synchronized void setIoBudgetRange( final long minIoBudgetNanos, final long maxIoBudgetNanos )
+	{
+		this.minIoBudgetNanos = minIoBudgetNanos;
+		this.maxIoBudgetNanos = Math.max( minIoBudgetNanos, maxIoBudgetNanos );
+		updateIoBudget();
+	}
+
+	/**
+	 * Set the range of the fraction of the target frame time that may be
+	 * reserved for I/O.
+	 */
+	public synchronized void setIoShareRange( final double minIoShare, final double maxIoShare )
+	{
+		this.minIoShare = Math.max( 0, Math.min( 1, minIoShare ) );
+		this.maxIoShare = Math.max( this.minIoShare, Math.min( 1, maxIoShare ) );
+		ioShare = Math.max( this.minIoShare, Math.min( this.maxIoShare, ioShare ) );
+		updateIoBudget();
+	}
+
+	/**
+	 * Set the fraction of invalid pixels in coarsest frames above which the
+	 * I/O share is increased.
+	 */
+	public synchronized void setTargetInvalidFraction( final double targetInvalidFraction )
+	{
+		this.targetInvalidFraction = targetInvalidFraction;
+	}
+
+	/**
+	 * Set the weight (in {@code (0, 1]}) of a new measurement in the
+	 * exponentially smoothed estimates. Smaller is smoother but slower.
+	 */
+	public synchronized void setSmoothing( final double smoothing )
+	{
+		this.smoothing = Math.max( Double.MIN_VALUE, Math.min( 1, smoothing ) );
+	}
+
+	/**
+	 * Set the fraction (in {@code (0, 1]}) of the rendering share that the
+	 * predicted rendering time of the next finer screen scale must be below to
+	 * switch to it. Smaller values make switching less frequent.
+	 */
+	public synchronized void setHysteresis( final double hysteresis )
+	{
+		this.hysteresis = Math.max( Double.MIN_VALUE, Math.min( 1, hysteresis ) );
+	}
+}
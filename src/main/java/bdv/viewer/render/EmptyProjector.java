@@ -50,4 +50,10 @@ public class EmptyProjector< T extends NumericType< T> > implements VolatileProj
 	{
 		return true;
 	}
+
+	@Override
+	public int getNumInvalidPixels()
+	{
+		return 0;
+	}
 }
@@ -0,0 +1,50 @@
+package bdv.viewer.render;
+
+import bdv.img.cache.Cache;
+import bdv.img.cache.LoadingStrategy;
+
+/**
+ * Decides, from measurements of rendered frames, with which screen scale the
+ * {@link MultiResolutionRenderer} starts rendering a new frame and how much
+ * time rendering may block on {@link LoadingStrategy#BUDGETED budgeted} I/O.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public interface FramePacingController
+{
+	/**
+	 * Called once by the renderer before any other method.
+	 *
+	 * @param screenScales
+	 *            the screen scales of the renderer, finest first.
+	 */
+	public void init( double[] screenScales );
+
+	/**
+	 * Report measurements for a rendered (not cancelled) frame.
+	 *
+	 * @param screenScaleIndex
+	 *            the index of the screen scale that was rendered.
+	 * @param renderNanos
+	 *            rendering time, excluding time spent waiting for I/O.
+	 * @param ioNanos
+	 *            time spent waiting for I/O.
+	 * @param numPixels
+	 *            number of rendered pixels.
+	 * @param numInvalidPixels
+	 *            number of rendered pixels for which data was missing.
+	 */
+	public void frameRendered( int screenScaleIndex, long renderNanos, long ioNanos, long numPixels, long numInvalidPixels );
+
+	/**
+	 * @return the index of the (coarsest) screen scale with which to start
+	 *         rendering a new frame.
+	 */
+	public int getMaxScreenScaleIndex();
+
+	/**
+	 * @return the I/O time budget to pass to
+	 *         {@link Cache#initIoTimeBudget(long[])}.
+	 */
+	public long[] getIoBudget();
+}
@@ -0,0 +1,355 @@
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.ui.util.StopWatch;
+import bdv.img.cache.CacheIoTiming;
+import bdv.img.cache.CacheIoTiming.IoStatistics;
+
+/**
+ * {@link VolatileProjector} that renders several sources, each a hierarchy of
+ * {@link Volatile} inputs (see {@link VolatileHierarchyProjector}), into one
+ * ARGB target in a single pass. For every target pixel, each source is sampled
+ * at its best valid level, converted, and the ARGB values of all sources are
+ * summed (like {@link AccumulateProjectorARGB}) and written to the target.
+ * There are no intermediate images per source.
+ *
+ * <p>
+ * For every source, a mask records the level at which each pixel was last
+ * valid. Pixels that are valid at the best level for all sources are final
+ * and are skipped by subsequent {@link #map()} calls, as are tiles consisting
+ * only of final pixels. The target is traversed in Z-ordered tiles of
+ * {@link VolatileHierarchyProjector#DEFAULT_TILE_SIZE} pixels, and
+ * cancellation is checked for every tile.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class FusedVolatileProjector implements VolatileProjector
+{
+	/**
+	 * The levels of one source, in render order (best first), the converter
+	 * to ARGB, and the mask of the level at which each pixel was last valid.
+	 */
+	public static class SourceLevels< T extends Volatile< ? > >
+	{
+		private final List< ? extends RandomAccessible< T > > levels;
+
+		private final Converter< ? super T, ARGBType > converter;
+
+		private final byte[] mask;
+
+		public SourceLevels(
+				final List< ? extends RandomAccessible< T > > levels,
+				final Converter< ? super T, ARGBType > converter,
+				final byte[] maskArray )
+		{
+			this.levels = levels;
+			this.converter = converter;
+			this.mask = maskArray;
+		}
+
+		Sampler< T > sampler()
+		{
+			return new Sampler< T >( this );
+		}
+	}
+
+	/**
+	 * Samples the levels of one source. Used by one rendering thread.
+	 */
+	private static class Sampler< T extends Volatile< ? > >
+	{
+		private final RandomAccess< T >[] accesses;
+
+		private final Converter< ? super T, ARGBType > converter;
+
+		final ARGBType argb = new ARGBType();
+
+		@SuppressWarnings( "unchecked" )
+		Sampler( final SourceLevels< T > source )
+		{
+			final int numLevels = source.levels.size();
+			accesses = new RandomAccess[ numLevels ];
+			for ( int i = 0; i < numLevels; ++i )
+			{
+				final RandomAccessible< T > level = source.levels.get( i );
+				accesses[ i ] = level.randomAccess();
+				accesses[ i ].setPosition( new long[ level.numDimensions() ] );
+			}
+			converter = source.converter;
+		}
+
+		void setRow( final long y )
+		{
+			for ( final RandomAccess< T > access : accesses )
+				access.setPosition( y, 1 );
+		}
+
+		/**
+		 * Sample the source at {@code x} in the current row.
+		 *
+		 * @return the best level at which the source is valid, or -1 if it is
+		 *         invalid at all levels. If a level is returned, the converted
+		 *         value is in {@link #argb}.
+		 */
+		int sample( final long x )
+		{
+			for ( int i = 0; i < accesses.length; ++i )
+			{
+				final RandomAccess< T > access = accesses[ i ];
+				access.setPosition( x, 0 );
+				final T t = access.get();
+				if ( t.isValid() )
+				{
+					converter.convert( t, argb );
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private final ArrayList< SourceLevels< ? > > sources;
+
+	private final int[] targetData;
+
+	private final int width;
+
+	private final int height;
+
+	private final int tileSize;
+
+	private final int numTilesX;
+
+	/**
+	 * Tile indices in the order in which tiles are rendered.
+	 */
+	private final int[] tileOrder;
+
+	/**
+	 * For every tile, whether all its pixels are final.
+	 */
+	private final boolean[] tileDone;
+
+	private final int numThreads;
+
+	private final ExecutorService executorService;
+
+	private final CacheIoTiming cacheIoTiming;
+
+	private long lastFrameRenderNanoTime;
+
+	private final AtomicInteger numInvalidPixels = new AtomicInteger();
+
+	private final AtomicBoolean interrupted = new AtomicBoolean();
+
+	private volatile boolean valid = false;
+
+	public FusedVolatileProjector(
+			final List< SourceLevels< ? > > sources,
+			final ARGBScreenImage target,
+			final int numThreads,
+			final ExecutorService executorService,
+			final CacheIoTiming cacheIoTiming )
+	{
+		this.sources = new ArrayList< SourceLevels< ? > >( sources );
+		targetData = target.getData();
+		width = ( int ) target.dimension( 0 );
+		height = ( int ) target.dimension( 1 );
+		tileSize = VolatileHierarchyProjector.DEFAULT_TILE_SIZE;
+		numTilesX = ( width + tileSize - 1 ) / tileSize;
+		final int numTilesY = ( height + tileSize - 1 ) / tileSize;
+		tileOrder = VolatileHierarchyProjector.zOrderTiles( numTilesX, numTilesY );
+		tileDone = new boolean[ tileOrder.length ];
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+		this.cacheIoTiming = cacheIoTiming;
+		lastFrameRenderNanoTime = -1;
+		for ( final SourceLevels< ? > source : sources )
+			Arrays.fill( source.mask, 0, width * height, Byte.MAX_VALUE );
+	}
+
+	@Override
+	public void cancel()
+	{
+		interrupted.set( true );
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public int getNumInvalidPixels()
+	{
+		return numInvalidPixels.get();
+	}
+
+	@Override
+	public boolean map()
+	{
+		return map( true );
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		interrupted.set( false );
+
+		final StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+		final IoStatistics iostat = cacheIoTiming.getThreadGroupIoStatistics();
+		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
+
+		final int numTiles = tileOrder.length;
+		final int numTasks = numThreads > 1 ? Math.min( numThreads * 10, numTiles ) : 1;
+		final double tilesPerTask = ( double ) numTiles / numTasks;
+
+		numInvalidPixels.set( 0 );
+		final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final int myFirstTile = ( int ) ( taskNum * tilesPerTask );
+			final int myLastTile = ( taskNum == numTasks - 1 ) ? numTiles : ( int ) ( ( taskNum + 1 ) * tilesPerTask );
+			tasks.add( createTileTask( myFirstTile, myLastTile, clearUntouchedTargetPixels ) );
+		}
+
+		final boolean createExecutor = ( executorService == null );
+		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
+		try
+		{
+			ex.invokeAll( tasks );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		if ( createExecutor )
+			ex.shutdown();
+
+		final long lastFrameTime = stopWatch.nanoTime();
+		lastFrameRenderNanoTime = lastFrameTime - ( iostat.getCumulativeIoNanoTime() - startTimeIoCumulative ) / numThreads;
+
+		if ( interrupted.get() )
+			return false;
+
+		valid = numInvalidPixels.get() == 0;
+		return true;
+	}
+
+	/**
+	 * Create a task that renders tiles {@code tileOrder[firstTile]} to
+	 * {@code tileOrder[lastTile - 1]}.
+	 */
+	private Callable< Void > createTileTask( final int firstTile, final int lastTile, final boolean clearUntouchedTargetPixels )
+	{
+		return new Callable< Void >()
+		{
+			@Override
+			public Void call()
+			{
+				final int numSources = sources.size();
+				final Sampler< ? >[] samplers = new Sampler[ numSources ];
+				final byte[][] masks = new byte[ numSources ][];
+				for ( int s = 0; s < numSources; ++s )
+				{
+					samplers[ s ] = sources.get( s ).sampler();
+					masks[ s ] = sources.get( s ).mask;
+				}
+
+				int myNumInvalidPixels = 0;
+				for ( int t = firstTile; t < lastTile; ++t )
+				{
+					if ( interrupted.get() )
+						return null;
+					final int tile = tileOrder[ t ];
+					if ( tileDone[ tile ] )
+						continue;
+					final int x0 = ( tile % numTilesX ) * tileSize;
+					final int y0 = ( tile / numTilesX ) * tileSize;
+					final int x1 = Math.min( x0 + tileSize, width );
+					final int y1 = Math.min( y0 + tileSize, height );
+					int tileNumNotFinal = 0;
+					for ( int y = y0; y < y1; ++y )
+					{
+						for ( final Sampler< ? > sampler : samplers )
+							sampler.setRow( y );
+						int index = y * width + x0;
+						for ( int x = x0; x < x1; ++x, ++index )
+						{
+							boolean isFinal = true;
+							for ( int s = 0; s < numSources && isFinal; ++s )
+								isFinal = masks[ s ][ index ] == 0;
+							if ( isFinal )
+								continue;
+
+							int aSum = 0, rSum = 0, gSum = 0, bSum = 0;
+							boolean touched = false;
+							boolean best = true;
+							for ( int s = 0; s < numSources; ++s )
+							{
+								final Sampler< ? > sampler = samplers[ s ];
+								final int level = sampler.sample( x );
+								if ( level < 0 )
+								{
+									best = false;
+									continue;
+								}
+								masks[ s ][ index ] = ( byte ) level;
+								touched = true;
+								best &= level == 0;
+								final int value = sampler.argb.get();
+								aSum += ARGBType.alpha( value );
+								rSum += ARGBType.red( value );
+								gSum += ARGBType.green( value );
+								bSum += ARGBType.blue( value );
+							}
+							if ( !best )
+							{
+								++myNumInvalidPixels;
+								++tileNumNotFinal;
+							}
+							if ( touched || clearUntouchedTargetPixels )
+							{
+								if ( aSum > 255 )
+									aSum = 255;
+								if ( rSum > 255 )
+									rSum = 255;
+								if ( gSum > 255 )
+									gSum = 255;
+								if ( bSum > 255 )
+									bSum = 255;
+								targetData[ index ] = ARGBType.rgba( rSum, gSum, bSum, aSum );
+							}
+						}
+					}
+					if ( tileNumNotFinal == 0 )
+						tileDone[ tile ] = true;
+				}
+				numInvalidPixels.addAndGet( myNumInvalidPixels );
+				return null;
+			}
+		};
+	}
+}
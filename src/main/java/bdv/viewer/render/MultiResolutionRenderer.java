@@ -16,10 +16,13 @@ import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.converter.Converter;
+import net.imglib2.display.RealARGBColorConverter;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileShortAccess;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
 import net.imglib2.ui.PainterThread;
 import net.imglib2.ui.RenderTarget;
 import net.imglib2.ui.Renderer;
@@ -27,6 +30,8 @@ import net.imglib2.ui.SimpleInterruptibleProjector;
 import net.imglib2.ui.TransformListener;
 import net.imglib2.ui.util.GuiUtil;
 import bdv.img.cache.Cache;
+import bdv.img.cache.CacheHints;
+import bdv.img.cache.CacheIoTiming.IoStatistics;
 import bdv.img.cache.CachedCellImg;
 import bdv.img.cache.LoadingStrategy;
 import bdv.viewer.Interpolation;
@@ -62,13 +67,12 @@ import bdv.viewer.state.ViewerState;
  * {@link #requestRepaint() repaint request} will cancel rendering, such that
  * display remains interactive.
  * <p>
- * The renderer tries to maintain a per-frame rendering time close to a desired
- * number of <code>targetRenderNanos</code> nanoseconds. If the rendering time
- * (in nanoseconds) for the (currently) highest scaled screen image is above
- * this threshold, a coarser screen scale is chosen as the highest screen scale
- * to use. Similarly, if the rendering time for the (currently) second-highest
- * scaled screen image is below this threshold, this finer screen scale chosen
- * as the highest screen scale to use.
+ * The highest screen scale and the I/O time budget are chosen by a
+ * {@link FramePacingController}, from the measured rendering time, I/O time and
+ * number of invalid pixels of rendered frames. By default, a
+ * {@link DefaultFramePacingController} tries to maintain a time for the first
+ * frame after a repaint request close to <code>targetRenderNanos</code>
+ * nanoseconds.
  * <p>
  * The renderer uses multiple threads (if desired) and double-buffering (if
  * desired).
@@ -88,7 +92,9 @@ import bdv.viewer.state.ViewerState;
  * and all coarser levels is rendered to a {@link #renderImages temporary image}
  * for each visible source. Then the temporary images are combined to the final
  * image for display. The number of passes required until all data is valid
- * might differ between visible sources.
+ * might differ between visible sources. If all visible sources are volatile,
+ * they are instead rendered and combined in a single pass by a
+ * {@link FusedVolatileProjector}, without temporary images.
  * <p>
  * Rendering timing is tied to a {@link Cache} control for IO budgeting, etc.
  *
@@ -178,22 +184,21 @@ public class MultiResolutionRenderer
 	protected AffineTransform3D[] screenScaleTransforms;
 
 	/**
-	 * If the rendering time (in nanoseconds) for the (currently) highest scaled
-	 * screen image is above this threshold, increase the
-	 * {@link #maxScreenScaleIndex index} of the highest screen scale to use.
-	 * Similarly, if the rendering time for the (currently) second-highest
-	 * scaled screen image is below this threshold, decrease the
-	 * {@link #maxScreenScaleIndex index} of the highest screen scale to use.
+	 * Target rendering time (in nanoseconds) for the (currently) highest
+	 * scaled screen image. Used to set deadlines for cell requests.
 	 */
 	protected final long targetRenderNanos;
 
+	/**
+	 * Chooses the {@link #maxScreenScaleIndex} and the I/O time budget.
+	 */
+	protected final FramePacingController framePacingController;
+
 	/**
 	 * The index of the (coarsest) screen scale with which to start rendering.
 	 * Once this level is painted, rendering proceeds to lower screen scales
 	 * until index 0 (full resolution) has been reached. While rendering, the
-	 * maxScreenScaleIndex is adapted such that it is the highest index for
-	 * which rendering in {@link #targetRenderNanos} nanoseconds is still
-	 * possible.
+	 * maxScreenScaleIndex is adapted by the {@link #framePacingController}.
 	 */
 	protected int maxScreenScaleIndex;
 
@@ -241,12 +246,22 @@ public class MultiResolutionRenderer
 	 */
 	protected int previousTimepoint;
 
-	// TODO: should be settable
-	protected long[] iobudget = new long[] { 100l * 1000000l,  10l * 1000000l };
+	/**
+	 * {@link System#nanoTime()} by which the cells requested for the projector
+	 * currently being {@link #createProjector(ViewerState, int, ARGBScreenImage) created}
+	 * should be loaded. Cells of coarse screen scales, which are rendered
+	 * first, get earlier deadlines than cells of the full resolution.
+	 */
+	private long renderDeadlineNanos;
 
 	// TODO: should be settable
 	protected boolean prefetchCells = true;
 
+	/**
+	 * Decides how many timepoints to prefetch ahead during playback.
+	 */
+	protected final TimepointReadAhead timepointReadAhead = new TimepointReadAhead();
+
 	/**
 	 * @param display
 	 *            The canvas that will display the images we render.
@@ -287,6 +302,54 @@ public class MultiResolutionRenderer
 			final ExecutorService renderingExecutorService,
 			final boolean useVolatileIfAvailable,
 			final Cache cache )
+	{
+		this( display, painterThread, screenScales, targetRenderNanos, doubleBuffered, numRenderingThreads, renderingExecutorService, useVolatileIfAvailable, cache,
+				new DefaultFramePacingController( targetRenderNanos ) );
+	}
+
+	/**
+	 * @param display
+	 *            The canvas that will display the images we render.
+	 * @param painterThread
+	 *            Thread that triggers repainting of the display. Requests for
+	 *            repainting are send there.
+	 * @param screenScales
+	 *            Scale factors from the viewer canvas to screen images of
+	 *            different resolutions. A scale factor of 1 means 1 pixel in
+	 *            the screen image is displayed as 1 pixel on the canvas, a
+	 *            scale factor of 0.5 means 1 pixel in the screen image is
+	 *            displayed as 2 pixel on the canvas, etc.
+	 * @param targetRenderNanos
+	 *            Target rendering time in nanoseconds. The rendering time for
+	 *            the coarsest rendered scale should be below this threshold.
+	 * @param doubleBuffered
+	 *            Whether to use double buffered rendering.
+	 * @param numRenderingThreads
+	 *            How many threads to use for rendering.
+	 * @param renderingExecutorService
+	 *            if non-null, this is used for rendering. Note, that it is
+	 *            still important to supply the numRenderingThreads parameter,
+	 *            because that is used to determine into how many sub-tasks
+	 *            rendering is split.
+	 * @param useVolatileIfAvailable
+	 *            whether volatile versions of sources should be used if
+	 *            available.
+	 * @param cache
+	 *            the cache controls IO budgeting and fetcher queue.
+	 * @param framePacingController
+	 *            chooses the highest screen scale and the IO time budget.
+	 */
+	public MultiResolutionRenderer(
+			final RenderTarget display,
+			final PainterThread painterThread,
+			final double[] screenScales,
+			final long targetRenderNanos,
+			final boolean doubleBuffered,
+			final int numRenderingThreads,
+			final ExecutorService renderingExecutorService,
+			final boolean useVolatileIfAvailable,
+			final Cache cache,
+			final FramePacingController framePacingController )
 	{
 		this.display = wrapTransformAwareRenderTarget( display );
 		this.painterThread = painterThread;
@@ -303,8 +366,10 @@ public class MultiResolutionRenderer
 		screenScaleTransforms = new AffineTransform3D[ screenScales.length ];
 
 		this.targetRenderNanos = targetRenderNanos;
+		this.framePacingController = framePacingController;
+		framePacingController.init( this.screenScales );
 
-		maxScreenScaleIndex = screenScales.length - 1;
+		maxScreenScaleIndex = framePacingController.getMaxScreenScaleIndex();
 		requestedScreenScaleIndex = maxScreenScaleIndex;
 		renderingMayBeCancelled = true;
 		this.numRenderingThreads = numRenderingThreads;
@@ -451,7 +516,7 @@ public class MultiResolutionRenderer
 				synchronized ( state )
 				{
 					final int numVisibleSources = state.getVisibleSourceIndices().size();
-					checkRenewRenderImages( numVisibleSources );
+					checkRenewRenderImages( useFusedProjector( state ) ? 0 : numVisibleSources );
 					checkRenewMaskArrays( numVisibleSources );
 					p = createProjector( state, currentScreenScaleIndex, screenImage );
 				}
@@ -467,8 +532,11 @@ public class MultiResolutionRenderer
 		}
 
 		// try rendering
+		final IoStatistics iostat = cache.getCacheIoTiming().getThreadGroupIoStatistics();
+		final long startTimeIo = iostat.getIoNanoTime();
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long iotime = iostat.getIoNanoTime() - startTimeIo;
 
 		synchronized ( this )
 		{
@@ -486,23 +554,17 @@ public class MultiResolutionRenderer
 							renderIdQueue.add( id );
 					}
 
-					if ( currentScreenScaleIndex == maxScreenScaleIndex )
-					{
-						if ( rendertime > targetRenderNanos && maxScreenScaleIndex < screenScales.length - 1 )
-							maxScreenScaleIndex++;
-						else if ( rendertime < targetRenderNanos / 3 && maxScreenScaleIndex > 0 )
-							maxScreenScaleIndex--;
-					}
-					else if ( currentScreenScaleIndex == maxScreenScaleIndex - 1 )
-					{
-						if ( rendertime < targetRenderNanos && maxScreenScaleIndex > 0 )
-							maxScreenScaleIndex--;
-					}
+					final long numPixels = screenImages[ currentScreenScaleIndex ][ 0 ].size();
+					framePacingController.frameRendered( currentScreenScaleIndex, rendertime, iotime, numPixels, p.getNumInvalidPixels() );
+					maxScreenScaleIndex = framePacingController.getMaxScreenScaleIndex();
 //					System.out.println( String.format( "rendering:%4d ms", rendertime / 1000000 ) );
 //					System.out.println( "scale = " + currentScreenScaleIndex );
 //					System.out.println( "maxScreenScaleIndex = " + maxScreenScaleIndex + "  (" + screenImages[ maxScreenScaleIndex ][ 0 ].dimension( 0 ) + " x " + screenImages[ maxScreenScaleIndex ][ 0 ].dimension( 1 ) + ")" );
 				}
 
+				if ( currentScreenScaleIndex == 0 )
+					timepointReadAhead.rendered( previousTimepoint, p.isValid() );
+
 				if ( currentScreenScaleIndex > 0 )
 					requestRepaint( currentScreenScaleIndex - 1 );
 				else if ( !p.isValid() )
@@ -521,6 +583,24 @@ public class MultiResolutionRenderer
 		return success;
 	}
 
+	/**
+	 * Get the {@link FramePacingController} that chooses the highest screen
+	 * scale and the IO time budget.
+	 */
+	public FramePacingController getFramePacingController()
+	{
+		return framePacingController;
+	}
+
+	/**
+	 * Get the {@link TimepointReadAhead} that decides how many timepoints are
+	 * prefetched during playback.
+	 */
+	public TimepointReadAhead getTimepointReadAhead()
+	{
+		return timepointReadAhead;
+	}
+
 	/**
 	 * Request a repaint of the display from the painter thread, with maximum
 	 * screen scale index and mipmap level.
@@ -552,6 +632,8 @@ public class MultiResolutionRenderer
 			final ARGBScreenImage screenImage )
 	{
 		cache.initIoTimeBudget( null ); // clear time budget such that prefetching doesn't wait for loading blocks.
+		final double relativeScale = screenScales[ screenScaleIndex ] / screenScales[ maxScreenScaleIndex ];
+		renderDeadlineNanos = System.nanoTime() + ( long ) ( targetRenderNanos * relativeScale * relativeScale );
 		final List< SourceState< ? > > sources = viewerState.getSources();
 		final List< Integer > visibleSourceIndices = viewerState.getVisibleSourceIndices();
 		VolatileProjector projector;
@@ -562,6 +644,8 @@ public class MultiResolutionRenderer
 			final int i = visibleSourceIndices.get( 0 );
 			projector = createSingleSourceProjector( viewerState, sources.get( i ), i, currentScreenScaleIndex, screenImage, renderMaskArrays[ 0 ] );
 		}
+		else if ( useFusedProjector( viewerState ) )
+			projector = createFusedProjector( viewerState, screenImage );
 		else
 		{
 			final ArrayList< VolatileProjector > sourceProjectors = new ArrayList< VolatileProjector >();
@@ -582,7 +666,7 @@ public class MultiResolutionRenderer
 		}
 		previousTimepoint = viewerState.getCurrentTimepoint();
 		viewerState.getViewerTransform( currentProjectorTransform );
-		cache.initIoTimeBudget( iobudget );
+		cache.initIoTimeBudget( framePacingController.getIoBudget() );
 		return projector;
 	}
 
@@ -612,6 +696,12 @@ public class MultiResolutionRenderer
 		{
 			return valid;
 		}
+
+		@Override
+		public int getNumInvalidPixels()
+		{
+			return 0;
+		}
 	}
 
 	private < T > VolatileProjector createSingleSourceProjector(
@@ -646,6 +736,34 @@ public class MultiResolutionRenderer
 	{
 		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
 		final ArrayList< RandomAccessible< T > > renderList = new ArrayList< RandomAccessible< T > >();
+		final ArrayList< Integer > renderLevels = new ArrayList< Integer >();
+		createRenderList( viewerState, source, screenImage, renderList, renderLevels );
+
+		final VolatileProjector unsignedShortProjector = createUnsignedShortProjector( viewerState, source, renderLevels, renderList, screenScaleTransform, screenImage, maskArray );
+		if ( unsignedShortProjector != null )
+			return unsignedShortProjector;
+
+		return new VolatileHierarchyProjector< T, ARGBType >( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService, cache.getCacheIoTiming() );
+	}
+
+	/**
+	 * Set cache hints and prefetch for the mipmap levels of a volatile
+	 * source, and collect the levels to render, best first.
+	 *
+	 * @param renderList
+	 *            the transformed levels to render are added to this list.
+	 * @param renderLevels
+	 *            the mipmap indices of the levels to render are added to this
+	 *            list.
+	 */
+	private < T extends Volatile< ? > > void createRenderList(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final ARGBScreenImage screenImage,
+			final List< RandomAccessible< T > > renderList,
+			final List< Integer > renderLevels )
+	{
+		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
 		final Source< T > spimSource = source.getSpimSource();
 		final int t = viewerState.getCurrentTimepoint();
 
@@ -669,24 +787,124 @@ public class MultiResolutionRenderer
 				for ( final Level l : levels )
 				{
 					if ( l.getPrefetchCacheHints() == null || l.getPrefetchCacheHints().getLoadingStrategy() != LoadingStrategy.DONTLOAD )
-					{
-						sls.setCacheHints( l.getMipmapLevel(), l.getPrefetchCacheHints() );
-						prefetch( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel(), screenImage );
-					}
+						prefetch( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel(), t, screenImage, l.getPrefetchCacheHints() );
 				}
+				readAhead( viewerState, spimSource, ordering, screenTransform, screenScaleTransform, screenImage );
 			}
 
 			Collections.sort( levels, MipmapOrdering.renderOrderComparator );
 			for ( final Level l : levels )
 			{
-				sls.setCacheHints( l.getMipmapLevel(), l.getRenderCacheHints() );
+				// get the source first: it makes t the current timepoint of
+				// spimSource again, in case readAhead() changed it
 				renderList.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel() ) );
+				sls.setCacheHints( l.getMipmapLevel(), withDeadline( l.getRenderCacheHints() ) );
+				renderLevels.add( l.getMipmapLevel() );
 			}
 
 			if ( hints.renewHintsAfterPaintingOnce() )
 				newFrameRequest = true;
 		}
-		return new VolatileHierarchyProjector< T, ARGBType >( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService, cache.getCacheIoTiming() );
+	}
+
+	/**
+	 * Whether several visible sources are rendered by a
+	 * {@link FusedVolatileProjector}. This is the case if all of them have a
+	 * volatile version that is used.
+	 */
+	protected boolean useFusedProjector( final ViewerState viewerState )
+	{
+		final List< Integer > visibleSourceIndices = viewerState.getVisibleSourceIndices();
+		if ( !useVolatileIfAvailable || visibleSourceIndices.size() < 2 )
+			return false;
+		final List< SourceState< ? > > sources = viewerState.getSources();
+		for ( final int i : visibleSourceIndices )
+			if ( sources.get( i ).asVolatile() == null )
+				return false;
+		return true;
+	}
+
+	private VolatileProjector createFusedProjector(
+			final ViewerState viewerState,
+			final ARGBScreenImage screenImage )
+	{
+		final List< SourceState< ? > > sources = viewerState.getSources();
+		final ArrayList< FusedVolatileProjector.SourceLevels< ? > > sourceLevels = new ArrayList< FusedVolatileProjector.SourceLevels< ? > >();
+		int j = 0;
+		for ( final int i : viewerState.getVisibleSourceIndices() )
+			sourceLevels.add( createSourceLevels( viewerState, sources.get( i ).asVolatile(), screenImage, renderMaskArrays[ j++ ] ) );
+		return new FusedVolatileProjector( sourceLevels, screenImage, numRenderingThreads, renderingExecutorService, cache.getCacheIoTiming() );
+	}
+
+	private < T extends Volatile< ? > > FusedVolatileProjector.SourceLevels< T > createSourceLevels(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final ARGBScreenImage screenImage,
+			final byte[] maskArray )
+	{
+		final ArrayList< RandomAccessible< T > > renderList = new ArrayList< RandomAccessible< T > >();
+		createRenderList( viewerState, source, screenImage, renderList, new ArrayList< Integer >() );
+		return new FusedVolatileProjector.SourceLevels< T >( renderList, source.getConverter(), maskArray );
+	}
+
+	/**
+	 * Create a {@link VolatileUnsignedShortHierarchyProjector} if all rendered
+	 * levels of the source are 3D {@link VolatileUnsignedShortType}
+	 * {@link CachedCellImg}s, interpolation is nearest-neighbor, and the
+	 * converter is a plain {@link RealARGBColorConverter}. Otherwise return
+	 * {@code null}.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private < T extends Volatile< ? > > VolatileProjector createUnsignedShortProjector(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final List< Integer > renderLevels,
+			final List< RandomAccessible< T > > renderList,
+			final AffineTransform3D screenScaleTransform,
+			final ARGBScreenImage screenImage,
+			final byte[] maskArray )
+	{
+		final Source< T > spimSource = source.getSpimSource();
+		if ( renderLevels.isEmpty()
+				|| viewerState.getInterpolation() != Interpolation.NEARESTNEIGHBOR
+				|| !( spimSource.getType() instanceof VolatileUnsignedShortType )
+				|| !VolatileUnsignedShortHierarchyProjector.isSupportedConverter( source.getConverter() ) )
+			return null;
+
+		final int t = viewerState.getCurrentTimepoint();
+		final ArrayList< CachedCellImg< VolatileUnsignedShortType, ? extends VolatileShortAccess > > imgs = new ArrayList< CachedCellImg< VolatileUnsignedShortType, ? extends VolatileShortAccess > >();
+		final ArrayList< AffineTransform3D > sourceToScreens = new ArrayList< AffineTransform3D >();
+		for ( final int level : renderLevels )
+		{
+			final RandomAccessibleInterval< T > img = spimSource.getSource( t, level );
+			if ( !( img instanceof CachedCellImg ) || img.numDimensions() != 3 )
+				return null;
+			imgs.add( ( CachedCellImg ) img );
+
+			final AffineTransform3D sourceToScreen = new AffineTransform3D();
+			viewerState.getViewerTransform( sourceToScreen );
+			final AffineTransform3D sourceTransform = new AffineTransform3D();
+			spimSource.getSourceTransform( t, level, sourceTransform );
+			sourceToScreen.concatenate( sourceTransform );
+			sourceToScreen.preConcatenate( screenScaleTransform );
+			sourceToScreens.add( sourceToScreen );
+		}
+
+		return new VolatileUnsignedShortHierarchyProjector(
+				( List ) renderList, imgs, sourceToScreens,
+				( RealARGBColorConverter< VolatileUnsignedShortType > ) source.getConverter(),
+				screenImage, maskArray, numRenderingThreads, renderingExecutorService, cache.getCacheIoTiming() );
+	}
+
+	/**
+	 * Add the {@link #renderDeadlineNanos deadline} of the current frame to
+	 * render {@link CacheHints}.
+	 */
+	private CacheHints withDeadline( final CacheHints hints )
+	{
+		if ( hints == null || hints.getLoadingStrategy() == LoadingStrategy.DONTLOAD )
+			return hints;
+		return new CacheHints( hints.getLoadingStrategy(), hints.getQueuePriority(), hints.isEnqueuToFront(), renderDeadlineNanos );
 	}
 
 	private static < T > RandomAccessible< T > getTransformedSource( final ViewerState viewerState, final Source< T > source, final AffineTransform3D screenScaleTransform, final int mipmapIndex )
@@ -705,18 +923,72 @@ public class MultiResolutionRenderer
 		return RealViews.affine( img, sourceToScreen );
 	}
 
-	private static < T > void prefetch(
+	/**
+	 * If playback is detected by {@link #timepointReadAhead}, prefetch the
+	 * cells visible in the next timepoints, with lowest priority (after all
+	 * requests for the current timepoint). For each timepoint, the levels are
+	 * prefetched that will be rendered when it is reached. The cache hints are
+	 * set on the images of the prefetched timepoints only, so the hints of the
+	 * current timepoint are not affected.
+	 */
+	private < T > void readAhead(
 			final ViewerState viewerState,
 			final Source< T > source,
+			final MipmapOrdering ordering,
+			final AffineTransform3D screenTransform,
 			final AffineTransform3D screenScaleTransform,
-			final int mipmapIndex,
 			final Dimensions screenInterval )
 	{
-		final int timepoint = viewerState.getCurrentTimepoint();
+		final int numReadAhead = timepointReadAhead.getNumReadAhead();
+		final int direction = timepointReadAhead.getDirection();
+		if ( numReadAhead == 0 || direction == 0 )
+			return;
+
+		final int lowestPriority = source.getNumMipmapLevels() - 1;
+		final CacheHints readAheadHints = new CacheHints( LoadingStrategy.VOLATILE, lowestPriority, false );
+		final int t = viewerState.getCurrentTimepoint();
+		for ( int i = 1; i <= numReadAhead; ++i )
+		{
+			final int timepoint = t + i * direction;
+			if ( timepoint < 0 || timepoint >= viewerState.getNumTimePoints() )
+				break;
+			if ( !source.isPresent( timepoint ) )
+				continue;
+			final List< Level > levels = ordering.getMipmapHints( screenTransform, timepoint, timepoint - direction ).getLevels();
+			Collections.sort( levels, MipmapOrdering.prefetchOrderComparator );
+			for ( final Level l : levels )
+			{
+				// without cache hints, loading might block
+				if ( l.getPrefetchCacheHints() == null )
+					continue;
+				prefetch( viewerState, source, screenScaleTransform, l.getMipmapLevel(), timepoint, screenInterval, readAheadHints );
+			}
+		}
+	}
+
+	/**
+	 * Request the cells of a source level that are visible on screen at the
+	 * given timepoint.
+	 *
+	 * @param cacheHints
+	 *            hints to set on the image of {@code timepoint} before
+	 *            requesting the cells, or {@code null} to keep its hints.
+	 */
+	static < T > void prefetch(
+			final ViewerState viewerState,
+			final Source< T > source,
+			final AffineTransform3D screenScaleTransform,
+			final int mipmapIndex,
+			final int timepoint,
+			final Dimensions screenInterval,
+			final CacheHints cacheHints )
+	{
 		final RandomAccessibleInterval< T > img = source.getSource( timepoint, mipmapIndex );
 		if ( CachedCellImg.class.isInstance( img ) )
 		{
 			final CachedCellImg< ?, ? > cellImg = (bdv.img.cache.CachedCellImg< ?, ? > ) img;
+			if ( cacheHints != null )
+				cellImg.setCacheHints( cacheHints );
 			final int[] cellDimensions = new int[ 3 ];
 			cellImg.getCells().cellDimensions( cellDimensions );
 			final long[] dimensions = new long[ 3 ];
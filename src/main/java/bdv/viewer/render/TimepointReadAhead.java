@@ -0,0 +1,183 @@
+package bdv.viewer.render;
+
+/**
+ * Detects playback through a time series (repeated steps by one timepoint in
+ * the same direction) and decides how many of the following timepoints should
+ * be prefetched by the {@link MultiResolutionRenderer}.
+ *
+ * <p>
+ * The number of read-ahead timepoints adapts to how fast data is actually
+ * loaded. The {@link MultiResolutionRenderer} reports whether the first
+ * full-resolution frame at a new timepoint was complete. If it was not, the
+ * time until it becomes complete is measured, and the read-ahead is increased
+ * such that the timepoints are requested early enough. While frames are
+ * complete on arrival, the read-ahead slowly decreases again.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class TimepointReadAhead
+{
+	/**
+	 * Steps further apart than this are not considered playback.
+	 */
+	private static final long MAX_STEP_INTERVAL_NANOS = 2000l * 1000000l;
+
+	/**
+	 * How many steps in the same direction are required to detect playback.
+	 */
+	private static final int MIN_PLAYBACK_STEPS = 2;
+
+	private int maxReadAhead = 8;
+
+	private int previousTimepoint = -1;
+
+	private long previousStepNanos;
+
+	/**
+	 * +1 or -1, the direction of playback.
+	 */
+	private int direction;
+
+	/**
+	 * Number of consecutive steps in {@link #direction}.
+	 */
+	private int numSteps;
+
+	/**
+	 * Smoothed time between steps.
+	 */
+	private double stepIntervalNanos;
+
+	/**
+	 * Estimated time it takes to load a timepoint, from the first read-ahead
+	 * request until it is complete.
+	 */
+	private double loadNanos;
+
+	/**
+	 * Number of read-ahead timepoints when the current timepoint was reached.
+	 */
+	private int readAheadOnArrival;
+
+	/**
+	 * Whether completion of the current timepoint has been reported.
+	 */
+	private boolean arrivalDone;
+
+	/**
+	 * Notify that the viewer moved to {@code timepoint}.
+	 *
+	 * @return whether {@code timepoint} was being read ahead, that is, whether
+	 *         pending requests are still wanted.
+	 */
+	public synchronized boolean timepointChanged( final int timepoint )
+	{
+		final long now = System.nanoTime();
+		final int numReadAhead = getNumReadAhead( now );
+		final int step = timepoint - previousTimepoint;
+		final boolean wasReadAhead = numReadAhead > 0 && step == direction;
+
+		if ( !arrivalDone && wasReadAhead )
+		{
+			// the previous timepoint did not complete before the user moved on
+			sampleLoadTime( now );
+		}
+
+		final long interval = now - previousStepNanos;
+		if ( previousTimepoint >= 0 && ( step == 1 || step == -1 ) && interval < MAX_STEP_INTERVAL_NANOS )
+		{
+			if ( step == direction )
+			{
+				++numSteps;
+				stepIntervalNanos = 0.5 * ( stepIntervalNanos + interval );
+			}
+			else
+			{
+				direction = step;
+				numSteps = 1;
+				stepIntervalNanos = interval;
+			}
+		}
+		else
+		{
+			direction = 0;
+			numSteps = 0;
+		}
+
+		previousTimepoint = timepoint;
+		previousStepNanos = now;
+		readAheadOnArrival = numReadAhead;
+		arrivalDone = false;
+		return wasReadAhead;
+	}
+
+	/**
+	 * Notify that a full-resolution frame of {@code timepoint} was rendered.
+	 *
+	 * @param complete
+	 *            whether all data for the frame was available.
+	 */
+	public synchronized void rendered( final int timepoint, final boolean complete )
+	{
+		if ( timepoint != previousTimepoint || arrivalDone || !complete )
+			return;
+		arrivalDone = true;
+		if ( readAheadOnArrival == 0 )
+			return;
+		final long now = System.nanoTime();
+		if ( now - previousStepNanos < stepIntervalNanos / 2 )
+			// complete on arrival (or nearly). Slowly reduce read-ahead.
+			loadNanos *= 0.9;
+		else
+			sampleLoadTime( now );
+	}
+
+	private void sampleLoadTime( final long now )
+	{
+		final double sample = readAheadOnArrival * stepIntervalNanos + ( now - previousStepNanos );
+		loadNanos = Math.max( sample, 0.5 * ( loadNanos + sample ) );
+	}
+
+	/**
+	 * Get the direction of playback: +1 for forward, -1 for backward, 0 if
+	 * not playing.
+	 */
+	public synchronized int getDirection()
+	{
+		return getNumReadAhead( System.nanoTime() ) > 0 ? direction : 0;
+	}
+
+	/**
+	 * Get the number of timepoints after the current one (in
+	 * {@link #getDirection() direction}) that should be prefetched. This is 0
+	 * if no playback is detected.
+	 */
+	public synchronized int getNumReadAhead()
+	{
+		return getNumReadAhead( System.nanoTime() );
+	}
+
+	private int getNumReadAhead( final long now )
+	{
+		if ( numSteps < MIN_PLAYBACK_STEPS )
+			return 0;
+		// playback stopped?
+		if ( now - previousStepNanos > Math.max( 2 * stepIntervalNanos, MAX_STEP_INTERVAL_NANOS / 4 ) )
+			return 0;
+		final int n = ( int ) Math.ceil( loadNanos / Math.max( stepIntervalNanos, 1 ) );
+		return Math.max( 1, Math.min( maxReadAhead, n ) );
+	}
+
+	/**
+	 * Set the maximum number of timepoints to read ahead.
+	 */
+	public synchronized void setMaxReadAhead( final int maxReadAhead )
+	{
+		this.maxReadAhead = Math.max( 0, maxReadAhead );
+	}
+
+	public synchronized int getMaxReadAhead()
+	{
+		return maxReadAhead;
+	}
+}
@@ -32,6 +32,15 @@ import bdv.img.cache.CacheIoTiming.IoStatistics;
  * {@link #map()} call, the projector has a {@link #isValid() state} that
  * signalizes whether all projected pixels were perfect.
  *
+ * <p>
+ * By default, the target is traversed in square tiles of
+ * {@link #DEFAULT_TILE_SIZE} pixels, which are handed to the rendering threads
+ * in Z-order. For oblique views, this keeps consecutive source accesses within
+ * a few cells, instead of crossing many cells along each full row. Tiles that
+ * are completely valid at some level are skipped in later passes, and
+ * cancellation is checked for every tile. With {@link #setTileSize(int) tile
+ * size} 0, the target is traversed in horizontal strips of full rows.
+ *
  * @author Stephan Saalfeld &lt;saalfeld@mpi-cbg.de&gt;
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
@@ -39,7 +48,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 {
 	protected final ArrayList< RandomAccessible< A > > sources = new ArrayList< RandomAccessible< A > >();
 
-	private final byte[] maskArray;
+	protected final byte[] maskArray;
 
 	protected final Img< ByteType > mask;
 
@@ -109,6 +118,30 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 	 */
 	protected final CacheIoTiming cacheIoTiming;
 
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	/**
+	 * Width and height of the tiles in which the target is traversed, or 0 to
+	 * traverse in strips.
+	 */
+	protected int tileSize;
+
+	protected int numTilesX;
+
+	protected int numTilesY;
+
+	/**
+	 * Tile indices in the order in which tiles are rendered.
+	 */
+	protected int[] tileOrder;
+
+	/**
+	 * For every tile, the highest (worst) {@link #mask} value of its pixels
+	 * after it was last rendered. A tile is skipped in passes for level
+	 * greater or equal to that.
+	 */
+	protected byte[] tileLevels;
+
 	public VolatileHierarchyProjector(
 			final List< ? extends RandomAccessible< A > > sources,
 			final Converter< ? super A, B > converter,
@@ -155,9 +188,74 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		this.cacheIoTiming = cacheIoTiming;
 
 		lastFrameRenderNanoTime = -1;
+		setTileSize( DEFAULT_TILE_SIZE );
 		clearMask();
 	}
 
+	/**
+	 * Set the width and height of the tiles in which the target is traversed.
+	 * 0 means to traverse the target in horizontal strips of full rows.
+	 */
+	public void setTileSize( final int tileSize )
+	{
+		this.tileSize = Math.max( 0, tileSize );
+		if ( this.tileSize == 0 )
+		{
+			numTilesX = numTilesY = 0;
+			tileOrder = new int[ 0 ];
+			tileLevels = new byte[ 0 ];
+			return;
+		}
+
+		numTilesX = ( width + this.tileSize - 1 ) / this.tileSize;
+		numTilesY = ( height + this.tileSize - 1 ) / this.tileSize;
+		tileOrder = zOrderTiles( numTilesX, numTilesY );
+
+		tileLevels = new byte[ tileOrder.length ];
+		Arrays.fill( tileLevels, Byte.MAX_VALUE );
+	}
+
+	/**
+	 * Get the indices {@code ty * numTilesX + tx} of the tiles of a
+	 * {@code numTilesX} by {@code numTilesY} grid, sorted by the Z-order
+	 * (Morton) code of their grid position.
+	 */
+	static int[] zOrderTiles( final int numTilesX, final int numTilesY )
+	{
+		final int numTiles = numTilesX * numTilesY;
+		final long[] keys = new long[ numTiles ];
+		for ( int ty = 0; ty < numTilesY; ++ty )
+			for ( int tx = 0; tx < numTilesX; ++tx )
+			{
+				final int index = ty * numTilesX + tx;
+				keys[ index ] = ( mortonCode( tx, ty ) << 32 ) | index;
+			}
+		Arrays.sort( keys );
+		final int[] order = new int[ numTiles ];
+		for ( int i = 0; i < numTiles; ++i )
+			order[ i ] = ( int ) keys[ i ];
+		return order;
+	}
+
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
+	/**
+	 * Interleave the bits of (16 bit) {@code x} and {@code y}.
+	 */
+	private static long mortonCode( final int x, final int y )
+	{
+		long code = 0;
+		for ( int b = 0; b < 16; ++b )
+		{
+			code |= ( long ) ( ( x >> b ) & 1 ) << ( 2 * b );
+			code |= ( long ) ( ( y >> b ) & 1 ) << ( 2 * b + 1 );
+		}
+		return code;
+	}
+
 	@Override
 	public void cancel()
 	{
@@ -181,6 +279,12 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		return valid;
 	}
 
+	@Override
+	public int getNumInvalidPixels()
+	{
+		return numInvalidPixels.get();
+	}
+
 	/**
 	 * Set all pixels in target to 100% transparent zero, and mask to all
 	 * Integer.MAX_VALUE.
@@ -188,6 +292,8 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 	public void clearMask()
 	{
 		Arrays.fill( maskArray, 0, ( int ) mask.size(), Byte.MAX_VALUE );
+		if ( tileLevels != null )
+			Arrays.fill( tileLevels, Byte.MAX_VALUE );
 		numInvalidLevels = sources.size();
 	}
 
@@ -202,6 +308,78 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 				t.setZero();
 	}
 
+	/**
+	 * Create a task that renders tiles {@code tileOrder[firstTile]} to
+	 * {@code tileOrder[lastTile - 1]} from the source at the given level.
+	 */
+	protected Callable< Void > createTileTask( final byte level, final int firstTile, final int lastTile )
+	{
+		return new Callable< Void >()
+		{
+			@Override
+			public Void call()
+			{
+				final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+				final RandomAccess< A > sourceRandomAccess = sources.get( level ).randomAccess( sourceInterval );
+				final long[] smin = new long[ n ];
+				System.arraycopy( min, 0, smin, 0, n );
+				int myNumInvalidPixels = 0;
+				for ( int t = firstTile; t < lastTile; ++t )
+				{
+					if ( interrupted.get() )
+						return null;
+					final int tile = tileOrder[ t ];
+					if ( tileLevels[ tile ] <= level )
+						continue;
+					final int x0 = ( tile % numTilesX ) * tileSize;
+					final int y0 = ( tile / numTilesX ) * tileSize;
+					final int x1 = Math.min( x0 + tileSize, width );
+					final int y1 = Math.min( y0 + tileSize, height );
+					byte tileLevel = 0;
+					for ( int y = y0; y < y1; ++y )
+					{
+						smin[ 0 ] = min[ 0 ] + x0;
+						smin[ 1 ] = min[ 1 ] + y;
+						sourceRandomAccess.setPosition( smin );
+						targetRandomAccess.setPosition( min[ 0 ] + x0, 0 );
+						targetRandomAccess.setPosition( min[ 1 ] + y, 1 );
+						int maskIndex = y * width + x0;
+						for ( int x = x0; x < x1; ++x, ++maskIndex )
+						{
+							final byte m = maskArray[ maskIndex ];
+							if ( m > level )
+							{
+								final A a = sourceRandomAccess.get();
+								if ( a.isValid() )
+								{
+									converter.convert( a, targetRandomAccess.get() );
+									maskArray[ maskIndex ] = level;
+									if ( level > tileLevel )
+										tileLevel = level;
+								}
+								else
+								{
+									++myNumInvalidPixels;
+									if ( m > tileLevel )
+										tileLevel = m;
+								}
+							}
+							else if ( m > tileLevel )
+								tileLevel = m;
+							sourceRandomAccess.fwd( 0 );
+							targetRandomAccess.fwd( 0 );
+						}
+					}
+					tileLevels[ tile ] = tileLevel;
+				}
+				numInvalidPixels.addAndGet( myNumInvalidPixels );
+				if ( myNumInvalidPixels != 0 )
+					valid = false;
+				return null;
+			}
+		};
+	}
+
 	@Override
 	public boolean map()
 	{
@@ -220,14 +398,16 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
 //		final long startIoBytes = iostat.getIoBytes();
 
+		final int numUnits = tileSize > 0 ? tileOrder.length : height;
 		final int numTasks;
 		if ( numThreads > 1 )
 		{
-			numTasks = Math.min( numThreads * 10, height );
+			numTasks = Math.min( numThreads * 10, numUnits );
 		}
 		else
 			numTasks = 1;
 		final double taskHeight = ( double )height / numTasks;
+		final double tilesPerTask = ( double ) numUnits / numTasks;
 
 		int i;
 
@@ -243,7 +423,16 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 			numInvalidPixels.set( 0 );
 
 			final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numTasks );
-			for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+			if ( tileSize > 0 )
+			{
+				for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+				{
+					final int myFirstTile = ( int ) ( taskNum * tilesPerTask );
+					final int myLastTile = ( taskNum == numTasks - 1 ) ? numUnits : ( int ) ( ( taskNum + 1 ) * tilesPerTask );
+					tasks.add( createTileTask( iFinal, myFirstTile, myLastTile ) );
+				}
+			}
+			else for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
 			{
 				final int myOffset = width * ( int ) ( taskNum * taskHeight );
 				final long myMinY = min[ 1 ] + ( int ) ( taskNum * taskHeight );
@@ -18,4 +18,11 @@ public interface VolatileProjector extends InterruptibleProjector
 	 * @return true if all mapped pixels were {@link Volatile#isValid() valid}.
 	 */
 	public boolean isValid();
+
+	/**
+	 * @return the number of target pixels for which data was missing
+	 *         (not {@link Volatile#isValid() valid}) in the last
+	 *         {@link #map(boolean)}.
+	 */
+	public int getNumInvalidPixels();
 }
@@ -0,0 +1,287 @@
+package bdv.viewer.render;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileShortAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import bdv.img.cache.CacheIoTiming;
+import bdv.img.cache.CachedCellImg;
+import bdv.img.cache.VolatileCell;
+import bdv.img.cache.VolatileImgCells;
+
+/**
+ * {@link VolatileHierarchyProjector} for the common case of 3D
+ * {@link VolatileUnsignedShortType} {@link CachedCellImg cached} sources with
+ * nearest-neighbor interpolation, and a {@link RealARGBColorConverter}.
+ *
+ * <p>
+ * Instead of sampling each pixel through an interpolated, transformed
+ * {@link RandomAccessible} and converting into an {@link ARGBType}, source
+ * coordinates are computed incrementally from the screen-to-source transform,
+ * the {@code short[]} storage of the current cell is indexed directly (other
+ * {@link VolatileShortAccess}es, e.g., off-heap buffers, are read through
+ * {@link VolatileShortAccess#getValue(int)}), and
+ * ARGB values are written straight into the {@code int[]} of the
+ * {@link ARGBScreenImage}. Pixels in {@link VolatileCell#isUniform() uniform}
+ * cells are filled with one value that is converted once per cell. Only
+ * {@link #setTileSize(int) tiled} traversal takes the fast path. Strips are
+ * rendered through the generic sources.
+ *
+ * <p>
+ * Like the generic sources, pixels outside the source image are rendered as
+ * (valid) 0.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class VolatileUnsignedShortHierarchyProjector extends VolatileHierarchyProjector< VolatileUnsignedShortType, ARGBType >
+{
+	/**
+	 * Cells and screen-to-source transform of one source level.
+	 */
+	private static class LevelData
+	{
+		final VolatileImgCells< ? extends VolatileShortAccess > cells;
+
+		final long[] dimensions = new long[ 3 ];
+
+		final long[] gridDimensions = new long[ 3 ];
+
+		final int[] cellDimensions = new int[ 3 ];
+
+		/**
+		 * Source coordinates of screen pixel (0,0).
+		 */
+		final double[] origin = new double[ 3 ];
+
+		/**
+		 * Source coordinate increments for one pixel step in screen X.
+		 */
+		final double[] stepX = new double[ 3 ];
+
+		/**
+		 * Source coordinate increments for one pixel step in screen Y.
+		 */
+		final double[] stepY = new double[ 3 ];
+
+		LevelData( final CachedCellImg< VolatileUnsignedShortType, ? extends VolatileShortAccess > img, final AffineTransform3D sourceToScreen )
+		{
+			cells = img.getVolatileImgCells();
+			img.dimensions( dimensions );
+			cells.getGridDimensions( gridDimensions );
+			cells.getStandardCellDimensions( cellDimensions );
+			final AffineTransform3D screenToSource = sourceToScreen.inverse();
+			for ( int d = 0; d < 3; ++d )
+			{
+				origin[ d ] = screenToSource.get( d, 3 );
+				stepX[ d ] = screenToSource.get( d, 0 );
+				stepY[ d ] = screenToSource.get( d, 1 );
+			}
+		}
+	}
+
+	private final LevelData[] levels;
+
+	private final RealARGBColorConverter< VolatileUnsignedShortType > colorConverter;
+
+	private final int[] targetData;
+
+	/**
+	 * @param sources
+	 *            the generic (interpolated, transformed) sources, in render
+	 *            order.
+	 * @param imgs
+	 *            the {@link CachedCellImg}s underlying {@code sources}.
+	 * @param sourceToScreen
+	 *            transforms from {@code imgs} to screen coordinates.
+	 */
+	public VolatileUnsignedShortHierarchyProjector(
+			final List< ? extends RandomAccessible< VolatileUnsignedShortType > > sources,
+			final List< ? extends CachedCellImg< VolatileUnsignedShortType, ? extends VolatileShortAccess > > imgs,
+			final List< AffineTransform3D > sourceToScreen,
+			final RealARGBColorConverter< VolatileUnsignedShortType > converter,
+			final ARGBScreenImage target,
+			final byte[] maskArray,
+			final int numThreads,
+			final ExecutorService executorService,
+			final CacheIoTiming cacheIoTiming )
+	{
+		super( sources, converter, target, maskArray, numThreads, executorService, cacheIoTiming );
+		levels = new LevelData[ imgs.size() ];
+		for ( int i = 0; i < levels.length; ++i )
+			levels[ i ] = new LevelData( imgs.get( i ), sourceToScreen.get( i ) );
+		colorConverter = converter;
+		targetData = target.getData();
+	}
+
+	/**
+	 * Whether the {@code converter} is one of the {@link RealARGBColorConverter}
+	 * implementations whose conversion this projector applies directly.
+	 */
+	public static boolean isSupportedConverter( final Object converter )
+	{
+		return converter != null && (
+				converter.getClass() == RealARGBColorConverter.Imp0.class ||
+				converter.getClass() == RealARGBColorConverter.Imp1.class ||
+				converter.getClass() == RealARGBColorConverter.Lut0.class ||
+				converter.getClass() == RealARGBColorConverter.Lut1.class );
+	}
+
+	@Override
+	protected Callable< Void > createTileTask( final byte level, final int firstTile, final int lastTile )
+	{
+		final LevelData l = levels[ level ];
+
+		// use the table of Lut0 / Lut1, otherwise convert like Imp0 / Imp1
+		final int[] lut = colorConverter instanceof RealARGBColorConverter.Lut
+				? ( ( RealARGBColorConverter.Lut< ? > ) colorConverter ).getLut()
+				: new int[ 0 ];
+		final int outside = colorConverter.toARGB( 0 );
+
+		return new Callable< Void >()
+		{
+			/**
+			 * The data access of the current cell. The storage of evicted
+			 * cells is recycled by the cache once their data array is
+			 * unreachable, so it is kept here while its storage is used.
+			 */
+			private VolatileShortAccess caccess;
+
+			@Override
+			public Void call()
+			{
+				final long dimX = l.dimensions[ 0 ];
+				final long dimY = l.dimensions[ 1 ];
+				final long dimZ = l.dimensions[ 2 ];
+				final int cellW = l.cellDimensions[ 0 ];
+				final int cellH = l.cellDimensions[ 1 ];
+				final int cellD = l.cellDimensions[ 2 ];
+				final long gridW = l.gridDimensions[ 0 ];
+				final long gridH = l.gridDimensions[ 1 ];
+
+				// current cell
+				long cminX = 0, cminY = 0, cminZ = 0;
+				long cmaxX = -1, cmaxY = -1, cmaxZ = -1;
+				int cstrideY = 0, cstrideZ = 0;
+				boolean cvalid = false;
+				// the storage of the current cell, if it is a VolatileShortArray
+				short[] cdata = null;
+
+				// if the current cell is uniform, its converted value
+				boolean cuniform = false;
+				int cuniformARGB = 0;
+
+				int myNumInvalidPixels = 0;
+				for ( int t = firstTile; t < lastTile; ++t )
+				{
+					if ( interrupted.get() )
+						return null;
+					final int tile = tileOrder[ t ];
+					if ( tileLevels[ tile ] <= level )
+						continue;
+					final int x0 = ( tile % numTilesX ) * tileSize;
+					final int y0 = ( tile / numTilesX ) * tileSize;
+					final int x1 = Math.min( x0 + tileSize, width );
+					final int y1 = Math.min( y0 + tileSize, height );
+					byte tileLevel = 0;
+					for ( int y = y0; y < y1; ++y )
+					{
+						double sx = l.origin[ 0 ] + y * l.stepY[ 0 ] + x0 * l.stepX[ 0 ];
+						double sy = l.origin[ 1 ] + y * l.stepY[ 1 ] + x0 * l.stepX[ 1 ];
+						double sz = l.origin[ 2 ] + y * l.stepY[ 2 ] + x0 * l.stepX[ 2 ];
+						int index = y * width + x0;
+						for ( int x = x0; x < x1; ++x, ++index, sx += l.stepX[ 0 ], sy += l.stepX[ 1 ], sz += l.stepX[ 2 ] )
+						{
+							final byte m = maskArray[ index ];
+							if ( m <= level )
+							{
+								if ( m > tileLevel )
+									tileLevel = m;
+								continue;
+							}
+
+							// nearest neighbor
+							final double rx = sx + 0.5;
+							final double ry = sy + 0.5;
+							final double rz = sz + 0.5;
+							if ( rx < 0 || ry < 0 || rz < 0 || rx >= dimX || ry >= dimY || rz >= dimZ )
+							{
+								targetData[ index ] = outside;
+								maskArray[ index ] = level;
+								if ( level > tileLevel )
+									tileLevel = level;
+								continue;
+							}
+							final long ix = ( long ) rx;
+							final long iy = ( long ) ry;
+							final long iz = ( long ) rz;
+
+							if ( ix < cminX || ix > cmaxX || iy < cminY || iy > cmaxY || iz < cminZ || iz > cmaxZ )
+							{
+								final long gx = ix / cellW;
+								final long gy = iy / cellH;
+								final long gz = iz / cellD;
+								final VolatileCell< ? extends VolatileShortAccess > cell = l.cells.getCell( ( int ) ( gx + gridW * ( gy + gridH * gz ) ) );
+								final VolatileShortAccess access = cell.getData();
+								caccess = access;
+								cminX = gx * cellW;
+								cminY = gy * cellH;
+								cminZ = gz * cellD;
+								final int w = ( int ) Math.min( cellW, dimX - cminX );
+								final int h = ( int ) Math.min( cellH, dimY - cminY );
+								cmaxX = cminX + w - 1;
+								cmaxY = cminY + h - 1;
+								cmaxZ = cminZ + Math.min( cellD, dimZ - cminZ ) - 1;
+								cstrideY = w;
+								cstrideZ = w * h;
+								cvalid = access.isValid();
+								cdata = cvalid && access instanceof VolatileShortArray
+										? ( ( VolatileShortArray ) access ).getCurrentStorageArray()
+										: null;
+								cuniform = cvalid && cell.isUniform();
+								if ( cuniform )
+								{
+									final int value = access.getValue( 0 ) & 0xffff;
+									cuniformARGB = value < lut.length ? lut[ value ] : colorConverter.toARGB( value );
+								}
+							}
+
+							if ( !cvalid )
+							{
+								++myNumInvalidPixels;
+								if ( m > tileLevel )
+									tileLevel = m;
+								continue;
+							}
+
+							if ( cuniform )
+								targetData[ index ] = cuniformARGB;
+							else
+							{
+								final int i = ( int ) ( ix - cminX ) + cstrideY * ( int ) ( iy - cminY ) + cstrideZ * ( int ) ( iz - cminZ );
+								final int value = ( cdata != null ? cdata[ i ] : caccess.getValue( i ) ) & 0xffff;
+								targetData[ index ] = value < lut.length ? lut[ value ] : colorConverter.toARGB( value );
+							}
+							maskArray[ index ] = level;
+							if ( level > tileLevel )
+								tileLevel = level;
+						}
+					}
+					tileLevels[ tile ] = tileLevel;
+				}
+				caccess = null;
+				numInvalidPixels.addAndGet( myNumInvalidPixels );
+				if ( myNumInvalidPixels != 0 )
+					valid = false;
+				return null;
+			}
+		};
+	}
+}
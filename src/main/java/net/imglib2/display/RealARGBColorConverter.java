@@ -74,7 +74,7 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		update();
 	}
 
-	private void update()
+	protected void update()
 	{
 		final double scale = 1.0 / ( max - min );
 		final int value = color.get();
@@ -85,6 +85,21 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		black = ARGBType.rgba( 0, 0, 0, A );
 	}
 
+	/**
+	 * Compute the ARGB value for an input value. This is the conversion
+	 * performed by {@link #convert(Object, ARGBType)} of all implementations.
+	 */
+	public int toARGB( final double value )
+	{
+		final double v = value - min;
+		if ( v < 0 )
+			return black;
+		final int r = Math.min( 255, ( int ) ( scaleR * v + 0.5 ) );
+		final int g = Math.min( 255, ( int ) ( scaleG * v + 0.5 ) );
+		final int b = Math.min( 255, ( int ) ( scaleB * v + 0.5 ) );
+		return ARGBType.rgba( r, g, b, A );
+	}
+
 	public static class Imp0< R extends RealType< ? > > extends RealARGBColorConverter< R >
 	{
 		public Imp0( final double min, final double max )
@@ -95,21 +110,7 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		@Override
 		public void convert( final R input, final ARGBType output )
 		{
-			final double v = input.getRealDouble() - min;
-			if ( v < 0 )
-			{
-				output.set( black );
-			}
-			else
-			{
-				final int r0 = ( int ) ( scaleR * v + 0.5 );
-				final int g0 = ( int ) ( scaleG * v + 0.5 );
-				final int b0 = ( int ) ( scaleB * v + 0.5 );
-				final int r = Math.min( 255, r0 );
-				final int g = Math.min( 255, g0 );
-				final int b = Math.min( 255, b0 );
-				output.set( ARGBType.rgba( r, g, b, A) );
-			}
+			output.set( toARGB( input.getRealDouble() ) );
 		}
 	}
 
@@ -123,21 +124,112 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		@Override
 		public void convert( final R input, final ARGBType output )
 		{
-			final double v = input.getRealDouble() - min;
-			if ( v < 0 )
+			output.set( toARGB( input.getRealDouble() ) );
+		}
+	}
+
+	/**
+	 * Converts integer input values in {@code [0, size)} by looking up a table
+	 * of ARGB values, e.g., with {@code size} 256 for 8-bit or 65536 for
+	 * 16-bit sources. The table is rebuilt on the next conversion after min,
+	 * max, or color changed. Other input values are converted like
+	 * {@link Imp0}.
+	 *
+	 * <p>
+	 * A table is only published for reuse if min, max, and color did not
+	 * change while it was built (see {@link #getLut()}).
+	 */
+	public static abstract class Lut< R extends RealType< ? > > extends RealARGBColorConverter< R >
+	{
+		private final int size;
+
+		private volatile int[] lut;
+
+		/**
+		 * Incremented by every {@link #update()}, after the conversion
+		 * parameters changed. Modified only while holding {@code this}.
+		 */
+		private volatile long generation;
+
+		public Lut( final double min, final double max, final int size )
+		{
+			super( min, max );
+			this.size = size;
+		}
+
+		@Override
+		protected void update()
+		{
+			super.update();
+			synchronized ( this )
 			{
-				output.set( black );
+				++generation;
+				lut = null;
 			}
-			else
+		}
+
+		/**
+		 * Get the table of ARGB values for inputs {@code [0, size)}. The
+		 * returned array must not be modified.
+		 *
+		 * <p>
+		 * If the table has to be rebuilt, and min, max, or color change
+		 * concurrently, the returned table may be built from a mix of old and
+		 * new values. It is then returned to this caller only, and not kept.
+		 */
+		public int[] getLut()
+		{
+			final int[] l = lut;
+			if ( l != null )
+				return l;
+
+			final long g = generation;
+			final int[] built = new int[ size ];
+			for ( int i = 0; i < size; ++i )
+				built[ i ] = toARGB( i );
+			synchronized ( this )
 			{
-				final int r0 = ( int ) ( scaleR * v + 0.5 );
-				final int g0 = ( int ) ( scaleG * v + 0.5 );
-				final int b0 = ( int ) ( scaleB * v + 0.5 );
-				final int r = Math.min( 255, r0 );
-				final int g = Math.min( 255, g0 );
-				final int b = Math.min( 255, b0 );
-				output.set( ARGBType.rgba( r, g, b, A) );
+				if ( generation == g )
+					lut = built;
 			}
+			return built;
+		}
+
+		protected int lookup( final double value )
+		{
+			final int[] l = getLut();
+			final int i = ( int ) value;
+			if ( i == value && i >= 0 && i < l.length )
+				return l[ i ];
+			return toARGB( value );
+		}
+	}
+
+	public static class Lut0< R extends RealType< ? > > extends Lut< R >
+	{
+		public Lut0( final double min, final double max, final int size )
+		{
+			super( min, max, size );
+		}
+
+		@Override
+		public void convert( final R input, final ARGBType output )
+		{
+			output.set( lookup( input.getRealDouble() ) );
+		}
+	}
+
+	public static class Lut1< R extends RealType< ? > > extends Lut< R >
+	{
+		public Lut1( final double min, final double max, final int size )
+		{
+			super( min, max, size );
+		}
+
+		@Override
+		public void convert( final R input, final ARGBType output )
+		{
+			output.set( lookup( input.getRealDouble() ) );
 		}
 	}
 }
@@ -12,6 +12,11 @@ public abstract class ScaledARGBConverter< T > implements ColorConverter, Conver
 
 	protected double scale;
 
+	/**
+	 * Scaled value for each channel value 0..255.
+	 */
+	private volatile int[] channelLut;
+
 	private ScaledARGBConverter( final double min, final double max )
 	{
 		this.min = min;
@@ -64,14 +69,19 @@ public abstract class ScaledARGBConverter< T > implements ColorConverter, Conver
 	private void update()
 	{
 		scale = 255.0 / ( max - min );
+		final int[] lut = new int[ 256 ];
+		for ( int i = 0; i < 256; ++i )
+			lut[ i ] = Math.min( 255, ( int ) ( scale * Math.max( 0, i - min ) + 0.5 ) );
+		channelLut = lut;
 	}
 
 	int getScaledColor( final int color )
 	{
+		final int[] lut = channelLut;
 		final int a = ARGBType.alpha( color );
-		final int r = Math.min( 255, ( int ) ( scale * Math.max( 0, ARGBType.red( color ) - min ) + 0.5 ) );
-		final int g = Math.min( 255, ( int ) ( scale * Math.max( 0, ARGBType.green( color ) - min ) + 0.5 ) );
-		final int b = Math.min( 255, ( int ) ( scale * Math.max( 0, ARGBType.blue( color ) - min ) + 0.5 ) );
+		final int r = lut[ ARGBType.red( color ) ];
+		final int g = lut[ ARGBType.green( color ) ];
+		final int b = lut[ ARGBType.blue( color ) ];
 		return ARGBType.rgba( r, g, b, a );
 	}
 
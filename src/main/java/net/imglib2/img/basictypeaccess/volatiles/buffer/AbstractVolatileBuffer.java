@@ -0,0 +1,54 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import java.nio.ByteBuffer;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+
+/**
+ * A {@link VolatileAccess} backed by a (typically direct) {@link ByteBuffer}.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public abstract class AbstractVolatileBuffer implements VolatileAccess
+{
+	protected final boolean isValid;
+
+	protected final ByteBuffer buffer;
+
+	/**
+	 * Wrap an existing {@link ByteBuffer}. The byte order of the buffer is
+	 * used as is.
+	 */
+	public AbstractVolatileBuffer( final ByteBuffer buffer, final boolean isValid )
+	{
+		this.isValid = isValid;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Allocate {@code numBytes} bytes of direct memory from the given
+	 * allocator. The memory is returned to the allocator when this access is
+	 * garbage collected.
+	 */
+	public AbstractVolatileBuffer( final DirectBufferSlabAllocator allocator, final int numBytes, final boolean isValid )
+	{
+		this.isValid = isValid;
+		this.buffer = allocator.allocate( numBytes, this );
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return isValid;
+	}
+
+	/**
+	 * Get the underlying {@link ByteBuffer}. If this access was allocated from
+	 * a {@link DirectBufferSlabAllocator}, the buffer must not be used after
+	 * the access became unreachable.
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+}
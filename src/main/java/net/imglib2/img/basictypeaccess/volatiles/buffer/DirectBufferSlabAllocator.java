@@ -0,0 +1,177 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Hands out chunks of direct (off-heap) memory for {@link AbstractVolatileBuffer
+ * volatile buffer accesses}. Chunks are cut from large direct
+ * {@link ByteBuffer} slabs, so that there are only a few direct buffers for
+ * the garbage collector to keep track of.
+ *
+ * <p>
+ * Every chunk is tied to an owner object, typically the access that wraps it.
+ * When the owner becomes phantom reachable, the chunk is put on a free list
+ * and handed out again for the next request of the same (aligned) size. This
+ * makes sure that memory is never reused while it is still accessible.
+ *
+ * <p>
+ * Note that the total amount of direct memory is limited by the
+ * {@code -XX:MaxDirectMemorySize} JVM option.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class DirectBufferSlabAllocator
+{
+	public static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Chunk sizes are rounded up to multiples of this.
+	 */
+	private static final int ALIGNMENT = 64;
+
+	private class ChunkReference extends PhantomReference< Object >
+	{
+		private final ByteBuffer chunk;
+
+		public ChunkReference( final Object owner, final ByteBuffer chunk )
+		{
+			super( owner, ownerQueue );
+			this.chunk = chunk;
+		}
+	}
+
+	private final int slabSize;
+
+	/**
+	 * The slab from which new chunks are cut.
+	 */
+	private ByteBuffer slab;
+
+	/**
+	 * Free chunks, by chunk size.
+	 */
+	private final HashMap< Integer, ArrayDeque< ByteBuffer > > freeChunks;
+
+	/**
+	 * Keeps the {@link ChunkReference}s reachable until they are enqueued.
+	 */
+	private final HashSet< ChunkReference > liveChunks;
+
+	private final ReferenceQueue< Object > ownerQueue;
+
+	private long reservedBytes;
+
+	private long usedBytes;
+
+	public DirectBufferSlabAllocator()
+	{
+		this( DEFAULT_SLAB_SIZE );
+	}
+
+	/**
+	 * @param slabSize
+	 *            size in bytes of the direct buffers from which chunks are
+	 *            cut. Requests larger than this get a dedicated direct buffer.
+	 */
+	public DirectBufferSlabAllocator( final int slabSize )
+	{
+		this.slabSize = slabSize;
+		slab = null;
+		freeChunks = new HashMap< Integer, ArrayDeque< ByteBuffer > >();
+		liveChunks = new HashSet< ChunkReference >();
+		ownerQueue = new ReferenceQueue< Object >();
+		reservedBytes = 0;
+		usedBytes = 0;
+	}
+
+	/**
+	 * Allocate a chunk of direct memory with native byte order. The contents
+	 * of the returned buffer are unspecified. The chunk is returned to the
+	 * allocator when {@code owner} is garbage collected.
+	 *
+	 * @param numBytes
+	 *            the size of the chunk.
+	 * @param owner
+	 *            the object that controls the lifetime of the chunk.
+	 * @return a buffer with position 0 and capacity {@code numBytes}.
+	 */
+	public synchronized ByteBuffer allocate( final int numBytes, final Object owner )
+	{
+		reclaim();
+		final int size = ( numBytes + ALIGNMENT - 1 ) / ALIGNMENT * ALIGNMENT;
+		ByteBuffer chunk = null;
+		final ArrayDeque< ByteBuffer > free = freeChunks.get( size );
+		if ( free != null )
+			chunk = free.poll();
+		if ( chunk == null )
+		{
+			if ( size > slabSize )
+				chunk = ByteBuffer.allocateDirect( size );
+			else
+			{
+				if ( slab == null || slab.remaining() < size )
+					slab = ByteBuffer.allocateDirect( slabSize );
+				slab.limit( slab.position() + size );
+				chunk = slab.slice();
+				slab.position( slab.limit() );
+				slab.limit( slab.capacity() );
+			}
+			reservedBytes += size;
+		}
+		usedBytes += size;
+		liveChunks.add( new ChunkReference( owner, chunk ) );
+
+		chunk.clear();
+		chunk.limit( numBytes );
+		return chunk.slice().order( ByteOrder.nativeOrder() );
+	}
+
+	/**
+	 * Get the total size of chunks handed out so far, including chunks that
+	 * are on the free list.
+	 */
+	public synchronized long getReservedBytes()
+	{
+		return reservedBytes;
+	}
+
+	/**
+	 * Get the total size of chunks whose owners have not been garbage
+	 * collected (as far as the allocator knows).
+	 */
+	public synchronized long getUsedBytes()
+	{
+		reclaim();
+		return usedBytes;
+	}
+
+	/**
+	 * Move chunks of garbage collected owners to the free list.
+	 */
+	private void reclaim()
+	{
+		Reference< ? > ref;
+		while ( ( ref = ownerQueue.poll() ) != null )
+		{
+			final ChunkReference chunkRef = ( ChunkReference ) ref;
+			liveChunks.remove( chunkRef );
+			final ByteBuffer chunk = chunkRef.chunk;
+			final int size = chunk.capacity();
+			ArrayDeque< ByteBuffer > free = freeChunks.get( size );
+			if ( free == null )
+			{
+				free = new ArrayDeque< ByteBuffer >();
+				freeChunks.put( size, free );
+			}
+			free.add( chunk );
+			usedBytes -= size;
+		}
+	}
+}
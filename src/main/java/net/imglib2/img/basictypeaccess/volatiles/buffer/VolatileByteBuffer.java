@@ -0,0 +1,67 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import java.nio.ByteBuffer;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileByteAccess;
+
+/**
+ * A {@link VolatileByteAccess} backed by a {@link ByteBuffer}, usually a
+ * chunk of off-heap memory from a {@link DirectBufferSlabAllocator}.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class VolatileByteBuffer extends AbstractVolatileBuffer implements VolatileByteAccess
+{
+	protected final ByteBuffer data;
+
+	public VolatileByteBuffer( final ByteBuffer buffer, final boolean isValid )
+	{
+		super( buffer, isValid );
+		data = buffer.duplicate();
+	}
+
+	public VolatileByteBuffer( final DirectBufferSlabAllocator allocator, final int numEntities, final boolean isValid )
+	{
+		super( allocator, numEntities * 1, isValid );
+		data = buffer.duplicate();
+	}
+
+	@Override
+	public byte getValue( final int index )
+	{
+		return data.get( index );
+	}
+
+	@Override
+	public void setValue( final int index, final byte value )
+	{
+		data.put( index, value );
+	}
+
+	/**
+	 * Copy {@code values} to the beginning of this buffer.
+	 */
+	public void set( final byte[] values )
+	{
+		set( values, values.length );
+	}
+
+	/**
+	 * Copy the first {@code length} elements of {@code values} to the
+	 * beginning of this buffer.
+	 */
+	public void set( final byte[] values, final int length )
+	{
+		final ByteBuffer d = data.duplicate();
+		d.clear();
+		d.put( values, 0, length );
+	}
+
+	/**
+	 * Get the number of elements in this buffer.
+	 */
+	public int size()
+	{
+		return data.capacity();
+	}
+}
@@ -0,0 +1,68 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileFloatAccess;
+
+/**
+ * A {@link VolatileFloatAccess} backed by a {@link ByteBuffer}, usually a
+ * chunk of off-heap memory from a {@link DirectBufferSlabAllocator}.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class VolatileFloatBuffer extends AbstractVolatileBuffer implements VolatileFloatAccess
+{
+	protected final FloatBuffer data;
+
+	public VolatileFloatBuffer( final ByteBuffer buffer, final boolean isValid )
+	{
+		super( buffer, isValid );
+		data = buffer.asFloatBuffer();
+	}
+
+	public VolatileFloatBuffer( final DirectBufferSlabAllocator allocator, final int numEntities, final boolean isValid )
+	{
+		super( allocator, numEntities * 4, isValid );
+		data = buffer.asFloatBuffer();
+	}
+
+	@Override
+	public float getValue( final int index )
+	{
+		return data.get( index );
+	}
+
+	@Override
+	public void setValue( final int index, final float value )
+	{
+		data.put( index, value );
+	}
+
+	/**
+	 * Copy {@code values} to the beginning of this buffer.
+	 */
+	public void set( final float[] values )
+	{
+		set( values, values.length );
+	}
+
+	/**
+	 * Copy the first {@code length} elements of {@code values} to the
+	 * beginning of this buffer.
+	 */
+	public void set( final float[] values, final int length )
+	{
+		final FloatBuffer d = data.duplicate();
+		d.clear();
+		d.put( values, 0, length );
+	}
+
+	/**
+	 * Get the number of elements in this buffer.
+	 */
+	public int size()
+	{
+		return data.capacity();
+	}
+}
@@ -0,0 +1,68 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileIntAccess;
+
+/**
+ * A {@link VolatileIntAccess} backed by a {@link ByteBuffer}, usually a
+ * chunk of off-heap memory from a {@link DirectBufferSlabAllocator}.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class VolatileIntBuffer extends AbstractVolatileBuffer implements VolatileIntAccess
+{
+	protected final IntBuffer data;
+
+	public VolatileIntBuffer( final ByteBuffer buffer, final boolean isValid )
+	{
+		super( buffer, isValid );
+		data = buffer.asIntBuffer();
+	}
+
+	public VolatileIntBuffer( final DirectBufferSlabAllocator allocator, final int numEntities, final boolean isValid )
+	{
+		super( allocator, numEntities * 4, isValid );
+		data = buffer.asIntBuffer();
+	}
+
+	@Override
+	public int getValue( final int index )
+	{
+		return data.get( index );
+	}
+
+	@Override
+	public void setValue( final int index, final int value )
+	{
+		data.put( index, value );
+	}
+
+	/**
+	 * Copy {@code values} to the beginning of this buffer.
+	 */
+	public void set( final int[] values )
+	{
+		set( values, values.length );
+	}
+
+	/**
+	 * Copy the first {@code length} elements of {@code values} to the
+	 * beginning of this buffer.
+	 */
+	public void set( final int[] values, final int length )
+	{
+		final IntBuffer d = data.duplicate();
+		d.clear();
+		d.put( values, 0, length );
+	}
+
+	/**
+	 * Get the number of elements in this buffer.
+	 */
+	public int size()
+	{
+		return data.capacity();
+	}
+}
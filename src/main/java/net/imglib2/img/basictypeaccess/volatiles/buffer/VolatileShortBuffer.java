@@ -0,0 +1,68 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileShortAccess;
+
+/**
+ * A {@link VolatileShortAccess} backed by a {@link ByteBuffer}, usually a
+ * chunk of off-heap memory from a {@link DirectBufferSlabAllocator}.
+ *
+ * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
+ */
+public class VolatileShortBuffer extends AbstractVolatileBuffer implements VolatileShortAccess
+{
+	protected final ShortBuffer data;
+
+	public VolatileShortBuffer( final ByteBuffer buffer, final boolean isValid )
+	{
+		super( buffer, isValid );
+		data = buffer.asShortBuffer();
+	}
+
+	public VolatileShortBuffer( final DirectBufferSlabAllocator allocator, final int numEntities, final boolean isValid )
+	{
+		super( allocator, numEntities * 2, isValid );
+		data = buffer.asShortBuffer();
+	}
+
+	@Override
+	public short getValue( final int index )
+	{
+		return data.get( index );
+	}
+
+	@Override
+	public void setValue( final int index, final short value )
+	{
+		data.put( index, value );
+	}
+
+	/**
+	 * Copy {@code values} to the beginning of this buffer.
+	 */
+	public void set( final short[] values )
+	{
+		set( values, values.length );
+	}
+
+	/**
+	 * Copy the first {@code length} elements of {@code values} to the
+	 * beginning of this buffer.
+	 */
+	public void set( final short[] values, final int length )
+	{
+		final ShortBuffer d = data.duplicate();
+		d.clear();
+		d.put( values, 0, length );
+	}
+
+	/**
+	 * Get the number of elements in this buffer.
+	 */
+	public int size()
+	{
+		return data.capacity();
+	}
+}
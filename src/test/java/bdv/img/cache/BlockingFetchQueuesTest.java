@@ -0,0 +1,251 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class BlockingFetchQueuesTest
+{
+	@Test
+	public void testHigherPriorityFirst()
+	{
+		final BlockingFetchQueues< String > q = new BlockingFetchQueues< String >( 3 );
+		q.put( "p2", 2, false );
+		q.put( "p0", 0, false );
+		q.put( "p1", 1, false );
+		assertEquals( 3, q.size() );
+		assertEquals( "p0", q.poll() );
+		assertEquals( "p1", q.poll() );
+		assertEquals( "p2", q.poll() );
+		assertNull( q.poll() );
+		assertEquals( 0, q.size() );
+	}
+
+	@Test
+	public void testFrontAndBack()
+	{
+		final BlockingFetchQueues< String > q = new BlockingFetchQueues< String >( 1 );
+		q.put( "a", 0, false );
+		q.put( "b", 0, false );
+		q.put( "c", 0, true );
+		assertEquals( "c", q.poll() );
+		assertEquals( "a", q.poll() );
+		assertEquals( "b", q.poll() );
+	}
+
+	@Test
+	public void testEarliestDeadlineFirst()
+	{
+		final BlockingFetchQueues< String > q = new BlockingFetchQueues< String >( 1 );
+		q.setAgingNanos( Long.MAX_VALUE );
+		final long now = System.nanoTime();
+		q.put( "none", 0, true );
+		q.put( "late", 0, false, now + 2000 );
+		q.put( "early", 0, false, now + 1000 );
+		q.put( "late2", 0, false, now + 2000 );
+		assertEquals( "early", q.poll() );
+		assertEquals( "late", q.poll() );
+		assertEquals( "late2", q.poll() );
+		assertEquals( "none", q.poll() );
+	}
+
+	@Test
+	public void testAging()
+	{
+		final BlockingFetchQueues< String > q = new BlockingFetchQueues< String >( 2 );
+		q.setAgingNanos( 0 );
+		q.put( "deadline", 0, false, System.nanoTime() );
+		q.put( "waiting", 0, false );
+		// the deque has waited long enough, so it is served before the deadline
+		assertEquals( "waiting", q.poll() );
+		assertEquals( "deadline", q.poll() );
+
+		// likewise, the prefetch deque is served before the priority queues
+		q.put( "prefetch", 1, false );
+		q.clear();
+		q.put( "p0", 0, false );
+		assertEquals( "prefetch", q.poll() );
+		assertEquals( "p0", q.poll() );
+	}
+
+	@Test
+	public void testClearMovesToPrefetch()
+	{
+		final BlockingFetchQueues< String > q = new BlockingFetchQueues< String >( 3 );
+		q.setAgingNanos( Long.MAX_VALUE );
+		q.put( "b2", 2, false );
+		q.put( "a0", 0, false );
+		q.put( "a1", 1, false );
+		q.put( "b0", 0, false );
+		q.clear();
+		assertEquals( 4, q.size() );
+		assertEquals( 4, q.getPrefetchSize() );
+		for ( int p = 0; p < 3; ++p )
+			assertEquals( 0, q.getQueueSize( p ) );
+
+		// new requests go before prefetched ones
+		q.put( "new", 2, false );
+		assertEquals( "new", q.poll() );
+
+		// the highest priority queue goes first, then the others in order
+		assertEquals( "a0", q.poll() );
+		assertEquals( "b0", q.poll() );
+		assertEquals( "a1", q.poll() );
+		assertEquals( "b2", q.poll() );
+		assertNull( q.poll() );
+		assertEquals( 0, q.size() );
+	}
+
+	@Test
+	public void testPrefetchCapacity()
+	{
+		final BlockingFetchQueues< Integer > q = new BlockingFetchQueues< Integer >( 2, 3 );
+		for ( int i = 0; i < 5; ++i )
+			q.put( i, 1, false );
+		q.clear();
+		assertEquals( 3, q.size() );
+		assertEquals( 3, q.getPrefetchSize() );
+		assertEquals( 2, q.getNumPrefetchDropped() );
+	}
+
+	@Test
+	public void testClearAll()
+	{
+		final BlockingFetchQueues< Integer > q = new BlockingFetchQueues< Integer >( 2 );
+		q.put( 1, 0, false );
+		q.put( 2, 1, false );
+		q.clear();
+		q.put( 3, 1, false );
+		q.clearAll();
+		assertEquals( 0, q.size() );
+		assertEquals( 0, q.getPrefetchSize() );
+		assertNull( q.poll() );
+	}
+
+	/**
+	 * After clearing, a take must block until an element is put, instead of
+	 * spinning on a stale element count.
+	 */
+	@Test
+	public void testTakeBlocksAfterClearAll() throws InterruptedException
+	{
+		final BlockingFetchQueues< Integer > q = new BlockingFetchQueues< Integer >( 2 );
+		q.put( 1, 0, false );
+		q.put( 2, 1, false );
+		q.clearAll();
+
+		final AtomicReference< Integer > taken = new AtomicReference< Integer >();
+		final Thread consumer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					taken.set( q.take() );
+				}
+				catch ( final InterruptedException e )
+				{}
+			}
+		};
+		consumer.start();
+		for ( int i = 0; i < 100 && consumer.getState() != Thread.State.WAITING; ++i )
+			Thread.sleep( 10 );
+		assertEquals( Thread.State.WAITING, consumer.getState() );
+
+		q.put( 3, 1, false );
+		consumer.join( 10000 );
+		assertFalse( consumer.isAlive() );
+		assertEquals( Integer.valueOf( 3 ), taken.get() );
+	}
+
+	/**
+	 * Concurrent puts, polls, and clears: every element is either taken once
+	 * or counted as dropped, and the count is exact when the queue is
+	 * drained.
+	 */
+	@Test
+	public void testConcurrentPutPollClear() throws InterruptedException
+	{
+		final int numPriorities = 4;
+		final int numProducers = 2;
+		final int numPerProducer = 20000;
+		final BlockingFetchQueues< Integer > q = new BlockingFetchQueues< Integer >( numPriorities, 1000 );
+		final AtomicInteger numTaken = new AtomicInteger();
+		final boolean[] seen = new boolean[ numProducers * numPerProducer ];
+		final AtomicInteger numDuplicates = new AtomicInteger();
+
+		final Thread[] producers = new Thread[ numProducers ];
+		for ( int p = 0; p < numProducers; ++p )
+		{
+			final int offset = p * numPerProducer;
+			producers[ p ] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for ( int i = 0; i < numPerProducer; ++i )
+					{
+						final int e = offset + i;
+						if ( i % 3 == 0 )
+							q.put( e, e % numPriorities, false, System.nanoTime() + i );
+						else
+							q.put( e, e % numPriorities, i % 2 == 0 );
+					}
+				}
+			};
+		}
+		final Thread consumer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				while ( !isInterrupted() )
+				{
+					final Integer e = q.poll();
+					if ( e != null )
+					{
+						synchronized ( seen )
+						{
+							if ( seen[ e ] )
+								numDuplicates.incrementAndGet();
+							seen[ e ] = true;
+						}
+						numTaken.incrementAndGet();
+					}
+					else
+						Thread.yield();
+				}
+			}
+		};
+		consumer.start();
+		for ( final Thread p : producers )
+			p.start();
+		boolean producing = true;
+		while ( producing )
+		{
+			q.clear();
+			Thread.yield();
+			producing = false;
+			for ( final Thread p : producers )
+				producing |= p.isAlive();
+		}
+		for ( final Thread p : producers )
+			p.join();
+		for ( int i = 0; i < 1000 && q.size() > 0; ++i )
+			Thread.sleep( 10 );
+		consumer.interrupt();
+		consumer.join();
+
+		assertEquals( 0, q.size() );
+		assertEquals( 0, numDuplicates.get() );
+		assertEquals( numProducers * numPerProducer, numTaken.get() + q.getNumPrefetchDropped() );
+		assertTrue( q.poll() == null );
+	}
+}
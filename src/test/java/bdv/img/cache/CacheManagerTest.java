@@ -0,0 +1,126 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+import org.junit.Test;
+
+public class CacheManagerTest
+{
+	private static class EmptyLoader implements CacheArrayLoader< VolatileShortArray >
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 2;
+		}
+
+		@Override
+		public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min )
+		{
+			return emptyArray( dimensions );
+		}
+
+		@Override
+		public VolatileShortArray emptyArray( final int[] dimensions )
+		{
+			return new VolatileShortArray( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], false );
+		}
+	}
+
+	@Test
+	public void testPermitsUpToMaximum()
+	{
+		final CacheManager manager = new CacheManager( 1024, 2 );
+		manager.acquireLoadPermit( 0 );
+		manager.acquireLoadPermit( 0 );
+		assertEquals( 2, manager.getNumConcurrentLoads() );
+		assertEquals( 0, manager.getNumWaitingLoads() );
+		manager.releaseLoadPermit();
+		manager.releaseLoadPermit();
+		assertEquals( 0, manager.getNumConcurrentLoads() );
+	}
+
+	/**
+	 * Released permits are handed to the waiting thread with the highest
+	 * priority, and among those to the one that waited longest.
+	 */
+	@Test
+	public void testPermitHandoffByPriority() throws InterruptedException
+	{
+		final CacheManager manager = new CacheManager( 1024, 1 );
+		final List< String > order = Collections.synchronizedList( new ArrayList< String >() );
+		manager.acquireLoadPermit( 0 );
+
+		final Thread low = startWaiter( manager, 5, "low", order, 1 );
+		final Thread high1 = startWaiter( manager, 0, "high1", order, 2 );
+		final Thread high2 = startWaiter( manager, 0, "high2", order, 3 );
+		assertEquals( 1, manager.getNumConcurrentLoads() );
+
+		manager.releaseLoadPermit();
+		for ( final Thread t : Arrays.asList( low, high1, high2 ) )
+		{
+			t.join( 10000 );
+			assertFalse( t.isAlive() );
+		}
+		assertEquals( Arrays.asList( "high1", "high2", "low" ), order );
+		assertEquals( 0, manager.getNumConcurrentLoads() );
+		assertEquals( 0, manager.getNumWaitingLoads() );
+	}
+
+	/**
+	 * Start a thread that acquires a permit, records {@code name}, and
+	 * releases the permit. Returns when the thread is waiting for the permit.
+	 */
+	private static Thread startWaiter( final CacheManager manager, final int priority, final String name, final List< String > order, final int numWaiting ) throws InterruptedException
+	{
+		final Thread t = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				manager.acquireLoadPermit( priority );
+				order.add( name );
+				manager.releaseLoadPermit();
+			}
+		};
+		t.start();
+		for ( int i = 0; i < 1000 && manager.getNumWaitingLoads() < numWaiting; ++i )
+			Thread.sleep( 10 );
+		assertEquals( numWaiting, manager.getNumWaitingLoads() );
+		return t;
+	}
+
+	@Test
+	public void testClearedAndClosedCachesAreUnregistered()
+	{
+		final CacheManager manager = new CacheManager( 1024, 1 );
+		final VolatileGlobalCellCache< VolatileShortArray > cache = new VolatileGlobalCellCache< VolatileShortArray >( new EmptyLoader(), 1, 1, 1, 0, manager );
+		assertTrue( manager.getCaches().contains( cache ) );
+		cache.clearCache();
+		assertFalse( manager.getCaches().contains( cache ) );
+		cache.close();
+		assertTrue( manager.getCaches().isEmpty() );
+	}
+
+	@Test
+	public void testUnreachableCachesAreNotRetained() throws InterruptedException
+	{
+		final CacheManager manager = new CacheManager( 1024, 1 );
+		new VolatileGlobalCellCache< VolatileShortArray >( new EmptyLoader(), 1, 1, 1, 0, manager );
+		for ( int i = 0; i < 100 && !manager.getCaches().isEmpty(); ++i )
+		{
+			System.gc();
+			Thread.sleep( 10 );
+		}
+		assertTrue( manager.getCaches().isEmpty() );
+	}
+}
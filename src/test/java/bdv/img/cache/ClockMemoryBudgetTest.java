@@ -0,0 +1,173 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClockMemoryBudgetTest
+{
+	private static class TestResident extends ClockMemoryBudget.Resident
+	{
+		final String name;
+
+		final List< String > evicted;
+
+		TestResident( final String name, final List< String > evicted )
+		{
+			this.name = name;
+			this.evicted = evicted;
+		}
+
+		@Override
+		protected void evict()
+		{
+			evicted.add( name );
+		}
+	}
+
+	@Test
+	public void testNoEvictionWithinBudget()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 30 );
+		for ( int i = 0; i < 3; ++i )
+			budget.add( new TestResident( "r" + i, evicted ), 10 );
+		assertEquals( 3, budget.getNumResident() );
+		assertEquals( 30, budget.getResidentBytes() );
+		assertTrue( evicted.isEmpty() );
+	}
+
+	@Test
+	public void testReferencedEntriesGetSecondChance()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 3 );
+		final TestResident a = new TestResident( "a", evicted );
+		final TestResident b = new TestResident( "b", evicted );
+		final TestResident c = new TestResident( "c", evicted );
+		budget.add( a, 1 );
+		budget.add( b, 1 );
+		budget.add( c, 1 );
+		a.touch();
+		budget.add( new TestResident( "d", evicted ), 1 );
+
+		assertEquals( 1, evicted.size() );
+		assertEquals( "b", evicted.get( 0 ) );
+		assertTrue( a.isResident() );
+		assertFalse( b.isResident() );
+		assertEquals( 3, budget.getResidentBytes() );
+		assertEquals( 1, budget.getNumEvicted() );
+	}
+
+	@Test
+	public void testAddedEntryIsNeverEvicted()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 10 );
+		final TestResident a = new TestResident( "a", evicted );
+		final TestResident big = new TestResident( "big", evicted );
+		budget.add( a, 10 );
+		budget.add( big, 100 );
+
+		assertFalse( a.isResident() );
+		assertTrue( big.isResident() );
+		assertEquals( 100, budget.getResidentBytes() );
+	}
+
+	@Test
+	public void testAddingResidentEntryAgainHasNoEffect()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 10 );
+		final TestResident a = new TestResident( "a", evicted );
+		budget.add( a, 4 );
+		budget.add( a, 4 );
+		assertEquals( 1, budget.getNumResident() );
+		assertEquals( 4, budget.getResidentBytes() );
+	}
+
+	@Test
+	public void testRemove()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 10 );
+		final TestResident a = new TestResident( "a", evicted );
+		budget.add( a, 4 );
+		assertTrue( budget.remove( a ) );
+		assertFalse( budget.remove( a ) );
+		assertEquals( 0, budget.getNumResident() );
+		assertEquals( 0, budget.getResidentBytes() );
+		assertTrue( evicted.isEmpty() );
+	}
+
+	@Test
+	public void testShareBelowFairSizeIsNotEvicted()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 100 );
+		final ClockMemoryBudget.Share s1 = budget.newShare();
+		final ClockMemoryBudget.Share s2 = budget.newShare();
+		for ( int i = 0; i < 10; ++i )
+			budget.add( new TestResident( "s1-" + i, evicted ), 10, s1 );
+		for ( int i = 0; i < 20; ++i )
+			budget.add( new TestResident( "s2-" + i, evicted ), 10, s2 );
+
+		// fair size is 100 / ( 2 * 2 ) = 25 bytes. A share is evicted from
+		// only while it holds more than that, so at most one entry less
+		// remains.
+		assertTrue( s1.getResidentBytes() >= 25 - 10 );
+		assertTrue( budget.getResidentBytes() <= 100 );
+		assertEquals( budget.getResidentBytes(), s1.getResidentBytes() + s2.getResidentBytes() );
+		assertEquals( s1.getNumEvicted() + s2.getNumEvicted(), budget.getNumEvicted() );
+	}
+
+	@Test
+	public void testEmptySharesDoNotReduceFairSize()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 100 );
+		final ClockMemoryBudget.Share s1 = budget.newShare();
+		final ClockMemoryBudget.Share s2 = budget.newShare();
+		for ( int i = 0; i < 8; ++i )
+			budget.newShare();
+		for ( int i = 0; i < 10; ++i )
+			budget.add( new TestResident( "s1-" + i, evicted ), 10, s1 );
+		for ( int i = 0; i < 20; ++i )
+			budget.add( new TestResident( "s2-" + i, evicted ), 10, s2 );
+
+		// the 8 empty shares do not count, so s1 keeps its fair part of 25
+		// bytes (minus at most one entry), not 100 / ( 2 * 10 ) = 5 bytes
+		assertTrue( s1.getResidentBytes() >= 25 - 10 );
+	}
+
+	@Test
+	public void testRemoveShare()
+	{
+		final List< String > evicted = new ArrayList< String >();
+		final ClockMemoryBudget budget = new ClockMemoryBudget( 100 );
+		final ClockMemoryBudget.Share s1 = budget.newShare();
+		final ClockMemoryBudget.Share s2 = budget.newShare();
+		for ( int i = 0; i < 5; ++i )
+		{
+			budget.add( new TestResident( "s1-" + i, evicted ), 10, s1 );
+			budget.add( new TestResident( "s2-" + i, evicted ), 10, s2 );
+		}
+		budget.removeShare( s1 );
+
+		assertEquals( 0, s1.getNumResident() );
+		assertEquals( 0, s1.getResidentBytes() );
+		assertEquals( 5, s2.getNumResident() );
+		assertEquals( 50, budget.getResidentBytes() );
+		assertTrue( evicted.isEmpty() );
+
+		// s2 is the only share with entries now, so it is evicted from freely
+		for ( int i = 0; i < 10; ++i )
+			budget.add( new TestResident( "x-" + i, evicted ), 10 );
+		assertEquals( 0, s2.getNumResident() );
+	}
+}
@@ -0,0 +1,123 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConcurrentLongKeyMapTest
+{
+	private static class Value implements ConcurrentLongKeyMap.Keyed
+	{
+		final long key;
+
+		Value( final long key )
+		{
+			this.key = key;
+		}
+
+		@Override
+		public long getKey()
+		{
+			return key;
+		}
+	}
+
+	@Test
+	public void testPutGetReplace()
+	{
+		final ConcurrentLongKeyMap< Value > map = new ConcurrentLongKeyMap< Value >();
+		final Value a = new Value( 42 );
+		final Value b = new Value( 42 );
+		assertNull( map.put( a ) );
+		assertSame( a, map.get( 42 ) );
+		assertSame( a, map.put( b ) );
+		assertSame( b, map.get( 42 ) );
+		assertEquals( 1, map.size() );
+		assertNull( map.get( 43 ) );
+	}
+
+	@Test
+	public void testRemoveOnlyIdenticalValue()
+	{
+		final ConcurrentLongKeyMap< Value > map = new ConcurrentLongKeyMap< Value >();
+		final Value a = new Value( 7 );
+		map.put( a );
+		assertFalse( map.remove( new Value( 7 ) ) );
+		assertSame( a, map.get( 7 ) );
+		assertTrue( map.remove( a ) );
+		assertFalse( map.remove( a ) );
+		assertNull( map.get( 7 ) );
+		assertEquals( 0, map.size() );
+	}
+
+	@Test
+	public void testExtremeKeys()
+	{
+		final ConcurrentLongKeyMap< Value > map = new ConcurrentLongKeyMap< Value >();
+		final long[] keys = { 0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1l << 32, 0xffffffffL };
+		for ( final long key : keys )
+			map.put( new Value( key ) );
+		for ( final long key : keys )
+			assertEquals( key, map.get( key ).getKey() );
+		assertEquals( keys.length, map.size() );
+	}
+
+	/**
+	 * Random puts and removes, with many colliding probe sequences and
+	 * resizes, checked against a {@link HashMap}.
+	 */
+	@Test
+	public void testAgainstHashMap()
+	{
+		final ConcurrentLongKeyMap< Value > map = new ConcurrentLongKeyMap< Value >();
+		final HashMap< Long, Value > expected = new HashMap< Long, Value >();
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < 100000; ++i )
+		{
+			// keys that differ only in the upper 32 bits, as for the cells
+			// with the same index in different images
+			final long key = ( ( long ) random.nextInt( 64 ) << 32 ) | random.nextInt( 256 );
+			if ( random.nextInt( 3 ) == 0 )
+			{
+				final Value v = expected.remove( key );
+				if ( v != null )
+					assertTrue( map.remove( v ) );
+			}
+			else
+			{
+				final Value v = new Value( key );
+				assertSame( expected.put( key, v ), map.put( v ) );
+			}
+		}
+		assertEquals( expected.size(), map.size() );
+		for ( final Value v : expected.values() )
+			assertSame( v, map.get( v.getKey() ) );
+		for ( final Value v : map.values() )
+			assertSame( v, expected.get( v.getKey() ) );
+	}
+
+	@Test
+	public void testClear()
+	{
+		final ConcurrentLongKeyMap< Value > map = new ConcurrentLongKeyMap< Value >();
+		final ArrayList< Value > values = new ArrayList< Value >();
+		for ( int i = 0; i < 1000; ++i )
+		{
+			final Value v = new Value( i );
+			values.add( v );
+			map.put( v );
+		}
+		map.clear();
+		assertEquals( 0, map.size() );
+		for ( final Value v : values )
+			assertNull( map.get( v.getKey() ) );
+	}
+}
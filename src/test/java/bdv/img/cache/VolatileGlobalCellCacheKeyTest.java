@@ -0,0 +1,109 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+import org.junit.Test;
+
+public class VolatileGlobalCellCacheKeyTest
+{
+	private static class EmptyLoader implements CacheArrayLoader< VolatileShortArray >
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 2;
+		}
+
+		@Override
+		public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min )
+		{
+			return emptyArray( dimensions );
+		}
+
+		@Override
+		public VolatileShortArray emptyArray( final int[] dimensions )
+		{
+			return new VolatileShortArray( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], false );
+		}
+	}
+
+	private static VolatileGlobalCellCache< VolatileShortArray > createCache( final int maxNumTimepoints, final int maxNumSetups, final int maxNumLevels )
+	{
+		return new VolatileGlobalCellCache< VolatileShortArray >( new EmptyLoader(), maxNumTimepoints, maxNumSetups, maxNumLevels, 0, 1024 * 1024 );
+	}
+
+	@Test
+	public void testPackedKeysAreDistinctAndPersistent()
+	{
+		final VolatileGlobalCellCache< VolatileShortArray > cache = createCache( 3, 5, 4 );
+		try
+		{
+			final int[] indices = { 0, 1, 12345, Integer.MAX_VALUE, -1 };
+			final HashSet< Long > keys = new HashSet< Long >();
+			for ( int t = 0; t < 3; ++t )
+				for ( int s = 0; s < 5; ++s )
+					for ( int l = 0; l < 4; ++l )
+						for ( final int i : indices )
+						{
+							final long key = cache.key( t, s, l, i );
+							assertTrue( VolatileGlobalCellCache.isPersistentKey( key ) );
+							assertEquals( i, ( int ) key );
+							assertTrue( keys.add( key ) );
+						}
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testIdsOutOfRangeAreInterned()
+	{
+		final VolatileGlobalCellCache< VolatileShortArray > cache = createCache( 3, 5, 4 );
+		try
+		{
+			final long a = cache.key( 3, 0, 0, 7 );
+			final long b = cache.key( 0, 5, 0, 7 );
+			final long c = cache.key( 0, 0, -1, 7 );
+			assertFalse( VolatileGlobalCellCache.isPersistentKey( a ) );
+			assertFalse( VolatileGlobalCellCache.isPersistentKey( b ) );
+			assertFalse( VolatileGlobalCellCache.isPersistentKey( c ) );
+			assertEquals( a, cache.key( 3, 0, 0, 7 ) );
+			assertEquals( 3, new HashSet< Long >( Arrays.asList( a, b, c ) ).size() );
+			assertTrue( a != cache.key( 0, 0, 0, 7 ) );
+			assertEquals( 7, ( int ) a );
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testLargeDatasetsUseInternedKeys()
+	{
+		// 20 + 10 + 4 bits do not fit into 31 bits
+		final VolatileGlobalCellCache< VolatileShortArray > cache = createCache( 1 << 20, 1 << 10, 1 << 4 );
+		try
+		{
+			final long a = cache.key( 0, 0, 0, 0 );
+			final long b = cache.key( ( 1 << 20 ) - 1, ( 1 << 10 ) - 1, ( 1 << 4 ) - 1, 0 );
+			assertFalse( VolatileGlobalCellCache.isPersistentKey( a ) );
+			assertFalse( VolatileGlobalCellCache.isPersistentKey( b ) );
+			assertTrue( a != b );
+			assertEquals( b, cache.key( ( 1 << 20 ) - 1, ( 1 << 10 ) - 1, ( 1 << 4 ) - 1, 0 ) );
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+}
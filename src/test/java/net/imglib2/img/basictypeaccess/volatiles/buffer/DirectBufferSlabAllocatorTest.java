@@ -0,0 +1,78 @@
+package net.imglib2.img.basictypeaccess.volatiles.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class DirectBufferSlabAllocatorTest
+{
+	@Test
+	public void testAllocate()
+	{
+		final DirectBufferSlabAllocator allocator = new DirectBufferSlabAllocator( 4096 );
+		final Object owner = new Object();
+		final ByteBuffer b = allocator.allocate( 100, owner );
+		assertTrue( b.isDirect() );
+		assertEquals( 0, b.position() );
+		assertEquals( 100, b.capacity() );
+		assertEquals( 100, b.limit() );
+		assertEquals( ByteOrder.nativeOrder(), b.order() );
+		// sizes are aligned to 64 bytes
+		assertEquals( 128, allocator.getReservedBytes() );
+		assertEquals( 128, allocator.getUsedBytes() );
+	}
+
+	@Test
+	public void testChunksDoNotOverlap()
+	{
+		final DirectBufferSlabAllocator allocator = new DirectBufferSlabAllocator( 4096 );
+		final Object owner = new Object();
+		final ByteBuffer[] chunks = new ByteBuffer[ 100 ];
+		for ( int i = 0; i < chunks.length; ++i )
+		{
+			// more than fits into one slab
+			chunks[ i ] = allocator.allocate( 100, owner );
+			for ( int j = 0; j < 100; ++j )
+				chunks[ i ].put( j, ( byte ) i );
+		}
+		for ( int i = 0; i < chunks.length; ++i )
+			for ( int j = 0; j < 100; ++j )
+				assertEquals( ( byte ) i, chunks[ i ].get( j ) );
+	}
+
+	@Test
+	public void testLargeRequest()
+	{
+		final DirectBufferSlabAllocator allocator = new DirectBufferSlabAllocator( 4096 );
+		final Object owner = new Object();
+		final ByteBuffer b = allocator.allocate( 10000, owner );
+		assertEquals( 10000, b.capacity() );
+		b.put( 9999, ( byte ) 1 );
+		assertEquals( 10048, allocator.getReservedBytes() );
+	}
+
+	@Test
+	public void testChunkIsReusedAfterOwnerIsCollected() throws InterruptedException
+	{
+		final DirectBufferSlabAllocator allocator = new DirectBufferSlabAllocator( 4096 );
+		Object owner = new Object();
+		allocator.allocate( 1000, owner );
+		final long reserved = allocator.getReservedBytes();
+		owner = null;
+		for ( int i = 0; i < 100 && allocator.getUsedBytes() > 0; ++i )
+		{
+			System.gc();
+			Thread.sleep( 10 );
+		}
+		assertEquals( 0, allocator.getUsedBytes() );
+
+		final Object owner2 = new Object();
+		allocator.allocate( 1000, owner2 );
+		assertEquals( reserved, allocator.getReservedBytes() );
+		assertEquals( reserved, allocator.getUsedBytes() );
+	}
+}